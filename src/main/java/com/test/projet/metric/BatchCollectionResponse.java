@@ -3,12 +3,22 @@ package com.test.projet.metric;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Résultat compact d'une collecte en lot : un résumé par (typeCarte, operationType)
+ * et le détail uniquement pour les éléments en échec, repérés par leur index dans la requête.
+ * Tout élément absent de {@code failures} et appartenant à un groupe réussi a été pris en compte.
+ * {@code successes} conserve le typeCarte de chaque élément pris en compte, comme avant l'ajout des groupes.
+ */
 public class BatchCollectionResponse {
+    private int total;
+    private int accepted;
     private List<String> successes;
+    private List<BatchGroup> groups;
     private List<BatchFailure> failures;
 
     public BatchCollectionResponse() {
         this.successes = new ArrayList<>();
+        this.groups = new ArrayList<>();
         this.failures = new ArrayList<>();
     }
 
@@ -16,8 +26,33 @@ public class BatchCollectionResponse {
         successes.add(typeCarte);
     }
 
-    public void addFailure(String typeCarte, String errorMessage) {
-        failures.add(new BatchFailure(typeCarte, errorMessage));
+    public void addGroup(String typeCarte, String operationType, long count) {
+        groups.add(new BatchGroup(typeCarte, operationType, count, null));
+        accepted += (int) count;
+    }
+
+    public void addGroupFailure(String typeCarte, String operationType, long count, String errorMessage) {
+        groups.add(new BatchGroup(typeCarte, operationType, count, errorMessage));
+    }
+
+    public void addFailure(int index, String typeCarte, String errorMessage) {
+        failures.add(new BatchFailure(index, typeCarte, errorMessage));
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getAccepted() {
+        return accepted;
+    }
+
+    public void setAccepted(int accepted) {
+        this.accepted = accepted;
     }
 
     public List<String> getSuccesses() {
@@ -28,6 +63,14 @@ public class BatchCollectionResponse {
         this.successes = successes;
     }
 
+    public List<BatchGroup> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(List<BatchGroup> groups) {
+        this.groups = groups;
+    }
+
     public List<BatchFailure> getFailures() {
         return failures;
     }
@@ -36,17 +79,75 @@ public class BatchCollectionResponse {
         this.failures = failures;
     }
 
+    public static class BatchGroup {
+        private String typeCarte;
+        private String operationType;
+        private long count;
+        private String errorMessage;
+
+        public BatchGroup() {}
+
+        public BatchGroup(String typeCarte, String operationType, long count, String errorMessage) {
+            this.typeCarte = typeCarte;
+            this.operationType = operationType;
+            this.count = count;
+            this.errorMessage = errorMessage;
+        }
+
+        public String getTypeCarte() {
+            return typeCarte;
+        }
+
+        public void setTypeCarte(String typeCarte) {
+            this.typeCarte = typeCarte;
+        }
+
+        public String getOperationType() {
+            return operationType;
+        }
+
+        public void setOperationType(String operationType) {
+            this.operationType = operationType;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void setCount(long count) {
+            this.count = count;
+        }
+
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+
+        public void setErrorMessage(String errorMessage) {
+            this.errorMessage = errorMessage;
+        }
+    }
+
     public static class BatchFailure {
+        private int index;
         private String typeCarte;
         private String errorMessage;
 
         public BatchFailure() {}
 
-        public BatchFailure(String typeCarte, String errorMessage) {
+        public BatchFailure(int index, String typeCarte, String errorMessage) {
+            this.index = index;
             this.typeCarte = typeCarte;
             this.errorMessage = errorMessage;
         }
 
+        public int getIndex() {
+            return index;
+        }
+
+        public void setIndex(int index) {
+            this.index = index;
+        }
+
         public String getTypeCarte() {
             return typeCarte;
         }
@@ -63,4 +164,4 @@ public class BatchCollectionResponse {
             this.errorMessage = errorMessage;
         }
     }
-}
\ No newline at end of file
+}
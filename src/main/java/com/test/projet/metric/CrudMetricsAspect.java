@@ -1,6 +1,8 @@
-
 package com.test.projet.metric;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
@@ -12,6 +14,9 @@ public class CrudMetricsAspect {
 
     private final MetricsRecorder recorder;
 
+    // Nom d'entité par classe de repository, calculé une seule fois
+    private final Map<Class<?>, String> entityNames = new ConcurrentHashMap<>();
+
     public CrudMetricsAspect(MetricsRecorder recorder) {
         this.recorder = recorder;
     }
@@ -28,19 +33,26 @@ public class CrudMetricsAspect {
         return record(pjp, "DELETE");
     }
 
+    // Sans lambda ni encapsulation d'exception : l'exception d'origine est propagée telle quelle
     private Object record(ProceedingJoinPoint pjp, String op) throws Throwable {
         String entity = resolveEntityName(pjp);
-        return recorder.timeAndRecord(entity, op, () -> {
-            try {
-                return pjp.proceed();
-            } catch (Throwable t) {
-                throw new RuntimeException(t);
-            }
-        });
+        long start = recorder.start();
+        boolean error = true;
+        try {
+            Object result = pjp.proceed();
+            error = false;
+            return result;
+        } finally {
+            recorder.stop(entity, op, start, error);
+        }
     }
 
     private String resolveEntityName(ProceedingJoinPoint pjp) {
-        String cls = pjp.getTarget().getClass().getSimpleName();
-        return cls.replace("Repository", "");
+        Class<?> target = pjp.getTarget().getClass();
+        String entity = entityNames.get(target);
+        if (entity == null) {
+            entity = entityNames.computeIfAbsent(target, cls -> cls.getSimpleName().replace("Repository", ""));
+        }
+        return entity;
     }
 }
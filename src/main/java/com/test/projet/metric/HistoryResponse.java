@@ -0,0 +1,145 @@
+package com.test.projet.metric;
+
+import java.util.List;
+
+/**
+ * Série historique d'un couple (typeCarte, operationType), lue dans un seul niveau de
+ * {@link MetricsHistoryStore}. Les buckets sans exécution sont omis ; les durées sont exprimées dans {@code unit}.
+ */
+public class HistoryResponse {
+    private String typeCarte;
+    private String operationType;
+    private String tier;
+    private long resolutionSeconds;
+    private long from;
+    private long to;
+    private String unit;
+    private List<Point> points;
+
+    public HistoryResponse() {}
+
+    public String getTypeCarte() {
+        return typeCarte;
+    }
+
+    public void setTypeCarte(String typeCarte) {
+        this.typeCarte = typeCarte;
+    }
+
+    public String getOperationType() {
+        return operationType;
+    }
+
+    public void setOperationType(String operationType) {
+        this.operationType = operationType;
+    }
+
+    public String getTier() {
+        return tier;
+    }
+
+    public void setTier(String tier) {
+        this.tier = tier;
+    }
+
+    public long getResolutionSeconds() {
+        return resolutionSeconds;
+    }
+
+    public void setResolutionSeconds(long resolutionSeconds) {
+        this.resolutionSeconds = resolutionSeconds;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public void setFrom(long from) {
+        this.from = from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    public void setTo(long to) {
+        this.to = to;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public void setUnit(String unit) {
+        this.unit = unit;
+    }
+
+    public List<Point> getPoints() {
+        return points;
+    }
+
+    public void setPoints(List<Point> points) {
+        this.points = points;
+    }
+
+    /**
+     * Un bucket : {@code timestamp} est son début (epoch, ms)
+     */
+    public static class Point {
+        private long timestamp;
+        private long count;
+        private double averageTime;
+        private double minTime;
+        private double maxTime;
+
+        public Point() {}
+
+        public Point(long timestamp, long count, double averageTime, double minTime, double maxTime) {
+            this.timestamp = timestamp;
+            this.count = count;
+            this.averageTime = averageTime;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public void setTimestamp(long timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void setCount(long count) {
+            this.count = count;
+        }
+
+        public double getAverageTime() {
+            return averageTime;
+        }
+
+        public void setAverageTime(double averageTime) {
+            this.averageTime = averageTime;
+        }
+
+        public double getMinTime() {
+            return minTime;
+        }
+
+        public void setMinTime(double minTime) {
+            this.minTime = minTime;
+        }
+
+        public double getMaxTime() {
+            return maxTime;
+        }
+
+        public void setMaxTime(double maxTime) {
+            this.maxTime = maxTime;
+        }
+    }
+}
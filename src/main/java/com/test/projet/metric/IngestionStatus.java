@@ -0,0 +1,69 @@
+package com.test.projet.metric;
+
+public class IngestionStatus {
+    private String mode;
+    private String overflowPolicy;
+    private int capacity;
+    private int[] queueDepths;
+    private long dropped;
+    private long sampledOut;
+    private long failed;
+
+    public IngestionStatus() {}
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public String getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int[] getQueueDepths() {
+        return queueDepths;
+    }
+
+    public void setQueueDepths(int[] queueDepths) {
+        this.queueDepths = queueDepths;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public void setDropped(long dropped) {
+        this.dropped = dropped;
+    }
+
+    public long getSampledOut() {
+        return sampledOut;
+    }
+
+    public void setSampledOut(long sampledOut) {
+        this.sampledOut = sampledOut;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+}
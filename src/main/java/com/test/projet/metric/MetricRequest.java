@@ -1,9 +1,13 @@
 package com.test.projet.metric;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class MetricRequest {
     private String typeCarte;
     private String operationType;
     private long executionTime;
+    // Unité de executionTime : ms (par défaut), us ou ns
+    private String unit;
 
     public MetricRequest() {}
 
@@ -36,4 +40,17 @@ public class MetricRequest {
     public void setExecutionTime(long executionTime) {
         this.executionTime = executionTime;
     }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public void setUnit(String unit) {
+        this.unit = unit;
+    }
+
+    @JsonIgnore
+    public MetricsTimeUnit getTimeUnit() {
+        return MetricsTimeUnit.parse(unit);
+    }
 }
\ No newline at end of file
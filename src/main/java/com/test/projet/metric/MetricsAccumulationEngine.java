@@ -0,0 +1,509 @@
+package com.test.projet.metric;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import com.test.projet.metric.codec.MetricsCodecRegistry;
+
+/**
+ * Moteur d'accumulation atomique côté Redis.
+ *
+ * Chaque delta met à jour la vue par carte ({@code metrics:{typeCarte}}) et la vue agrégée
+ * ({@code metrics:{typeCarte}:{op}}) dans un seul script Lua exécuté par EVALSHA :
+ * un aller-retour par événement et aucune mise à jour perdue entre écrivains concurrents.
+ *
+ * Lorsque les documents sont stockés dans un codec binaire ({@code metrics.codec}), le script
+ * ne peut pas les lire : le delta est alors fusionné côté Java dans une transaction optimiste
+ * (WATCH / MULTI / EXEC), rejouée en cas d'écriture concurrente.
+ *
+ * En disposition {@link MetricsStorageLayout#HASH}, la vue par carte est un hash mis à jour par
+ * HINCRBY dans {@code metrics-accumulate-hash.lua} ; la vue agrégée est lue dans ce même hash.
+ * Un document écrit avant le passage en disposition hash est converti à sa première écriture.
+ *
+ * Avec {@code metrics.histogram.enabled}, le même script incrémente aussi les buckets de
+ * {@link MetricsHistogram} du delta dans {@code metrics-histogram:{typeCarte}:{op}} : l'histogramme
+ * reste cohérent avec les compteurs, sans aller-retour supplémentaire. Il en va de même pour le
+ * bucket de la minute courante des {@link MetricsRollingWindows} ({@code metrics.window.enabled})
+ * et du bucket 10 s de l'historique ({@link MetricsHistoryStore}, {@code metrics.history.enabled}).
+ *
+ * Le script enregistre enfin le typeCarte et l'opération dans le registre des clés
+ * ({@link MetricsKeyRegistry}) : les listes de types et les exports n'ont pas à parcourir le keyspace.
+ */
+@Component
+public class MetricsAccumulationEngine {
+
+    static final RedisScript<Long> ACCUMULATE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/metrics-accumulate.lua"), Long.class);
+
+    static final RedisScript<Long> ACCUMULATE_HASH_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/metrics-accumulate-hash.lua"), Long.class);
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsAccumulationEngine.class);
+
+    private static final String NOT_JSON_ERROR = "METRICS_NOT_JSON";
+
+    private static final String NOT_HASH_ERROR = "METRICS_NOT_HASH";
+
+    private static final int MAX_OPTIMISTIC_ATTEMPTS = 10;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final MetricsCodecRegistry codecRegistry;
+
+    private final MetricsStorageLayout storageLayout;
+
+    /** Unité des durées portées par les deltas */
+    private final MetricsTimeUnit timeUnit;
+
+    private final boolean histogramEnabled;
+
+    private final MetricsRollingWindows rollingWindows;
+
+    private final MetricsHistoryStore historyStore;
+
+    private final MetricsKeyRegistry keyRegistry;
+
+    /** EVALSHA pipelinés du script de la disposition active */
+    private final MetricsScriptPipeline scriptPipeline;
+
+    public MetricsAccumulationEngine(StringRedisTemplate redisTemplate, MetricsCodecRegistry codecRegistry,
+            @Value("${metrics.storage.layout:DOCUMENT}") MetricsStorageLayout storageLayout,
+            @Value("${metrics.time-unit:MILLISECONDS}") MetricsTimeUnit timeUnit,
+            @Value("${metrics.histogram.enabled:false}") boolean histogramEnabled,
+            MetricsRollingWindows rollingWindows, MetricsHistoryStore historyStore,
+            MetricsKeyRegistry keyRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.codecRegistry = codecRegistry;
+        this.storageLayout = storageLayout;
+        this.timeUnit = timeUnit;
+        this.histogramEnabled = histogramEnabled;
+        this.rollingWindows = rollingWindows;
+        this.historyStore = historyStore;
+        this.keyRegistry = keyRegistry;
+        this.scriptPipeline = new MetricsScriptPipeline(redisTemplate,
+                storageLayout == MetricsStorageLayout.HASH ? ACCUMULATE_HASH_SCRIPT : ACCUMULATE_SCRIPT);
+    }
+
+    /**
+     * Applique un delta de manière atomique.
+     *
+     * @param delta le delta à appliquer
+     * @return le nombre cumulé d'exécutions pour (typeCarte, operationType)
+     */
+    public Long apply(MetricsDelta delta) {
+        if (delta.isEmpty()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        keyRegistry.remember(delta.getTypeCarte());
+        if (storageLayout == MetricsStorageLayout.HASH) {
+            try {
+                return applyHash(delta, now);
+            } catch (RuntimeException e) {
+                if (!MetricsScriptPipeline.hasErrorMessage(e, NOT_HASH_ERROR)) {
+                    throw e;
+                }
+                migrateToHash(delta.getTypeCarte());
+                return applyHash(delta, now);
+            }
+        }
+        if (!codecRegistry.isJson()) {
+            return applyWithCodec(delta, now);
+        }
+        try {
+            return redisTemplate.execute(ACCUMULATE_SCRIPT,
+                    withExtensions(keys(delta), delta, now), (Object[]) withExtensions(args(delta, now, timeUnit), delta, now));
+        } catch (RuntimeException e) {
+            if (!MetricsScriptPipeline.hasErrorMessage(e, NOT_JSON_ERROR)) {
+                throw e;
+            }
+            // Document écrit par un codec binaire (avant un retour au JSON par exemple)
+            return applyWithCodec(delta, now);
+        }
+    }
+
+    private Long applyHash(MetricsDelta delta, long now) {
+        return redisTemplate.execute(ACCUMULATE_HASH_SCRIPT,
+                withExtensions(hashKeys(delta), delta, now), (Object[]) withExtensions(hashArgs(delta, now, timeUnit), delta, now));
+    }
+
+    /**
+     * Convertit en hash le document (JSON ou codec binaire) stocké à {@code metrics:{typeCarte}} avant le
+     * passage en disposition hash, sous WATCH / MULTI / EXEC : les métriques déjà cumulées sont conservées.
+     */
+    void migrateToHash(String typeCarte) {
+        byte[] cardKey = MetricsKeys.cardKey(typeCarte).getBytes(StandardCharsets.UTF_8);
+        for (int attempt = 0; attempt < MAX_OPTIMISTIC_ATTEMPTS; attempt++) {
+            Boolean migrated = redisTemplate.execute(
+                    (RedisCallback<Boolean>) connection -> convertToHash(connection, cardKey, typeCarte));
+            if (migrated != null) {
+                return;
+            }
+        }
+        throw new IllegalStateException("Écritures concurrentes répétées pendant la conversion en hash de " + typeCarte);
+    }
+
+    /**
+     * @return true une fois la clé convertie (ou déjà convertie par une autre instance), null si la
+     *         transaction a été annulée par un écrivain concurrent
+     */
+    private Boolean convertToHash(RedisConnection connection, byte[] cardKey, String typeCarte) {
+        connection.watch(cardKey);
+        if (connection.keyCommands().type(cardKey) != DataType.STRING) {
+            connection.unwatch();
+            return Boolean.TRUE;
+        }
+        Map<byte[], byte[]> fields = new LinkedHashMap<>();
+        MetricsHashLayout.fromMetricsDto(readCard(connection, cardKey, typeCarte)).forEach((field, value) ->
+                fields.put(field.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8)));
+
+        connection.multi();
+        connection.keyCommands().del(cardKey);
+        if (!fields.isEmpty()) {
+            connection.hashCommands().hMSet(cardKey, fields);
+        }
+        List<Object> results = connection.exec();
+        if (results == null || results.isEmpty()) {
+            return null;
+        }
+        LOG.info("Metrics document {} converted to the hash layout ({} fields)", typeCarte, fields.size());
+        return Boolean.TRUE;
+    }
+
+    /**
+     * Applique plusieurs deltas en un seul aller-retour (pipeline d'EVALSHA).
+     * Chaque delta reste atomique individuellement.
+     *
+     * @param deltas les deltas à appliquer
+     * @throws RedisPipelineException si une partie des deltas n'a pas été appliquée : {@code getResults()}
+     *         contient, dans l'ordre des deltas non vides, le résultat de chacun ou l'exception qui l'a
+     *         fait échouer. Les deltas dont le résultat n'est pas une exception sont écrits.
+     */
+    public void applyAll(Collection<MetricsDelta> deltas) {
+        List<MetricsDelta> pending = deltas.stream().filter(delta -> !delta.isEmpty()).toList();
+        if (pending.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        pending.forEach(delta -> keyRegistry.remember(delta.getTypeCarte()));
+        if (storageLayout == MetricsStorageLayout.DOCUMENT && !codecRegistry.isJson()) {
+            applyAllWithCodec(pending, now);
+            return;
+        }
+        scriptPipeline.execute(() -> executePipelined(pending, now));
+    }
+
+    /**
+     * Applique chaque delta côté Java ; un échec n'interrompt pas les deltas suivants
+     */
+    private void applyAllWithCodec(List<MetricsDelta> pending, long now) {
+        List<Object> results = new ArrayList<>(pending.size());
+        RuntimeException failure = null;
+        for (MetricsDelta delta : pending) {
+            try {
+                results.add(applyWithCodec(delta, now));
+            } catch (RuntimeException e) {
+                results.add(e);
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw new RedisPipelineException(failure.getMessage(), failure, results);
+        }
+    }
+
+    /**
+     * Applique un delta hors Lua : lecture et décodage des deux documents sous WATCH, fusion en
+     * mémoire, puis réécriture dans le codec actif par MULTI / EXEC.
+     *
+     * @return le nombre cumulé d'exécutions pour (typeCarte, operationType)
+     */
+    Long applyWithCodec(MetricsDelta delta, long now) {
+        byte[] cardKey = MetricsKeys.cardKey(delta.getTypeCarte()).getBytes(StandardCharsets.UTF_8);
+        byte[] operationKey = MetricsKeys.redisKey(delta.getTypeCarte(), delta.getOperationType())
+                .getBytes(StandardCharsets.UTF_8);
+        for (int attempt = 0; attempt < MAX_OPTIMISTIC_ATTEMPTS; attempt++) {
+            Long count = redisTemplate.execute(
+                    (RedisCallback<Long>) connection -> accumulateWithCodec(connection, delta, cardKey, operationKey, now));
+            if (count != null) {
+                // Hors script : les buckets de fenêtre glissante et d'historique sont mis à jour séparément
+                rollingWindows.record(delta, now, timeUnit);
+                historyStore.record(delta, now, timeUnit);
+                return count;
+            }
+        }
+        throw new IllegalStateException("Écritures concurrentes répétées sur les métriques "
+                + delta.getTypeCarte() + "/" + delta.getOperationType());
+    }
+
+    /**
+     * @return le nombre cumulé d'exécutions, ou null si la transaction a été annulée par un écrivain concurrent
+     */
+    private Long accumulateWithCodec(RedisConnection connection, MetricsDelta delta,
+            byte[] cardKey, byte[] operationKey, long now) {
+        connection.watch(cardKey, operationKey);
+        DataType cardType = connection.keyCommands().type(cardKey);
+        DataType operationType = connection.keyCommands().type(operationKey);
+        // Même règle que le script : une clé d'un autre type Redis n'est pas touchée
+        boolean cardWritable = cardType == DataType.NONE || cardType == DataType.STRING;
+        boolean operationWritable = operationType == DataType.NONE || operationType == DataType.STRING;
+        if (!cardWritable && !operationWritable) {
+            connection.unwatch();
+            return 0L;
+        }
+
+        try {
+            byte[] cardDocument = null;
+            if (cardWritable) {
+                MetricsDto metrics = readCard(connection, cardKey, delta.getTypeCarte());
+                MetricsUtils.accumulate(metrics, delta, timeUnit);
+                cardDocument = codecRegistry.encode(metrics);
+            }
+            MetricsAggregated aggregated = null;
+            byte[] operationDocument = null;
+            if (operationWritable) {
+                aggregated = readOperation(connection, operationKey, delta);
+                aggregated.updateMetrics(delta, now, timeUnit);
+                operationDocument = codecRegistry.encode(aggregated);
+            }
+
+            connection.multi();
+            if (cardDocument != null) {
+                connection.stringCommands().set(cardKey, cardDocument);
+            }
+            if (operationDocument != null) {
+                connection.stringCommands().set(operationKey, operationDocument);
+            }
+            byte[] typeCarte = delta.getTypeCarte().getBytes(StandardCharsets.UTF_8);
+            byte[] operation = delta.getOperationType().getBytes(StandardCharsets.UTF_8);
+            connection.zSetCommands().zAdd(MetricsKeys.registryCardsKey().getBytes(StandardCharsets.UTF_8), now, typeCarte);
+            connection.zSetCommands().zAdd(MetricsKeys.registryOperationsKey().getBytes(StandardCharsets.UTF_8), now, operation);
+            connection.zSetCommands().zAdd(MetricsKeys.registryOperationsKey(delta.getTypeCarte())
+                    .getBytes(StandardCharsets.UTF_8), now, operation);
+            MetricsKeyRegistry.recordChange(connection, delta.getTypeCarte());
+            if (histogramEnabled) {
+                byte[] histogramKey = MetricsKeys.histogramKey(delta.getTypeCarte(), delta.getOperationType())
+                        .getBytes(StandardCharsets.UTF_8);
+                histogramBuckets(delta, timeUnit).forEach((bucket, count) -> connection.hashCommands()
+                        .hIncrBy(histogramKey, String.valueOf(bucket).getBytes(StandardCharsets.UTF_8), count));
+            }
+            List<Object> results = connection.exec();
+            if (results == null || results.isEmpty()) {
+                return null;
+            }
+            return aggregated != null ? aggregated.getCount() : 0L;
+        } catch (IOException e) {
+            connection.unwatch();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MetricsDto readCard(RedisConnection connection, byte[] key, String typeCarte) {
+        byte[] raw = connection.stringCommands().get(key);
+        if (raw != null && raw.length > 0) {
+            try {
+                return codecRegistry.decodeCard(raw);
+            } catch (IOException e) {
+                // Comme le script : un document illisible est remplacé
+                LOG.warn("Unreadable metrics document {} replaced: {}", typeCarte, e.getMessage());
+            }
+        }
+        return new MetricsDto(typeCarte);
+    }
+
+    private MetricsAggregated readOperation(RedisConnection connection, byte[] key, MetricsDelta delta) {
+        byte[] raw = connection.stringCommands().get(key);
+        if (raw != null && raw.length > 0) {
+            try {
+                return codecRegistry.decodeOperation(raw);
+            } catch (IOException e) {
+                LOG.warn("Unreadable metrics document {}/{} replaced: {}",
+                        delta.getTypeCarte(), delta.getOperationType(), e.getMessage());
+            }
+        }
+        return new MetricsAggregated(delta.getTypeCarte(), delta.getOperationType());
+    }
+
+    private List<Object> executePipelined(List<MetricsDelta> pending, long now) {
+        boolean hash = storageLayout == MetricsStorageLayout.HASH;
+        String sha = scriptPipeline.getSha1();
+        try {
+            return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (MetricsDelta delta : pending) {
+                    List<String> keys = withExtensions(hash ? hashKeys(delta) : keys(delta), delta, now);
+                    String[] args = withExtensions(hash ? hashArgs(delta, now, timeUnit) : args(delta, now, timeUnit), delta, now);
+                    connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, keys.size(), keysAndArgs(keys, args));
+                }
+                return null;
+            });
+        } catch (RedisPipelineException e) {
+            // Les deltas refusés par le script (documents non JSON, ou document à convertir en hash)
+            // n'ont rien écrit : les appliquer côté Java, ou après conversion
+            List<Object> results = new ArrayList<>(e.getResults());
+            boolean otherFailure = false;
+            for (int i = 0; i < results.size() && i < pending.size(); i++) {
+                if (results.get(i) instanceof Throwable failure) {
+                    boolean notJson = MetricsScriptPipeline.hasErrorMessage(failure, NOT_JSON_ERROR);
+                    if (!notJson && !MetricsScriptPipeline.hasErrorMessage(failure, NOT_HASH_ERROR)) {
+                        otherFailure = true;
+                        continue;
+                    }
+                    try {
+                        if (notJson) {
+                            results.set(i, applyWithCodec(pending.get(i), now));
+                        } else {
+                            migrateToHash(pending.get(i).getTypeCarte());
+                            results.set(i, applyHash(pending.get(i), now));
+                        }
+                    } catch (RuntimeException recoveryFailure) {
+                        results.set(i, recoveryFailure);
+                        otherFailure = true;
+                    }
+                }
+            }
+            if (otherFailure) {
+                // Résultats mis à jour : les deltas appliqués côté Java ne sont plus signalés en échec
+                throw new RedisPipelineException(e.getMessage(), e, results);
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Ajoute aux clés du script celles du registre, puis celles de l'histogramme, du bucket de fenêtre
+     * glissante et de l'historique, si activés. Le script les reconnaît à leur préfixe.
+     */
+    private List<String> withExtensions(List<String> keys, MetricsDelta delta, long now) {
+        List<String> extended = new ArrayList<>(keys);
+        extended.add(MetricsKeys.registryCardsKey());
+        extended.add(MetricsKeys.registryOperationsKey());
+        extended.add(MetricsKeys.registryOperationsKey(delta.getTypeCarte()));
+        extended.add(MetricsKeys.registryChangesKey());
+        extended.add(MetricsKeys.registrySequenceKey());
+        if (histogramEnabled) {
+            extended.add(MetricsKeys.histogramKey(delta.getTypeCarte(), delta.getOperationType()));
+        }
+        if (rollingWindows.isEnabled()) {
+            extended.add(rollingWindows.key(delta.getTypeCarte(), delta.getOperationType(), MetricsRollingWindows.minute(now)));
+        }
+        if (historyStore.isEnabled()) {
+            extended.add(historyStore.key(delta.getTypeCarte(), delta.getOperationType()));
+        }
+        return extended;
+    }
+
+    /**
+     * Ajoute aux arguments du script la minute courante, la durée de vie des buckets de fenêtre,
+     * le bucket 10 s et la durée de vie de l'historique, puis les paires (bucket, compteur) de l'histogramme
+     */
+    private String[] withExtensions(String[] args, MetricsDelta delta, long now) {
+        if (!hasExtensions()) {
+            return args;
+        }
+        String[] buckets = histogramEnabled ? histogramArgs(delta, timeUnit) : new String[0];
+        String[] extended = Arrays.copyOf(args, args.length + 4 + buckets.length);
+        extended[args.length] = String.valueOf(MetricsRollingWindows.minute(now));
+        extended[args.length + 1] = String.valueOf(rollingWindows.ttlSeconds());
+        extended[args.length + 2] = String.valueOf(MetricsHistoryStore.bucket(now));
+        extended[args.length + 3] = String.valueOf(historyStore.retentionSeconds(MetricsHistoryTier.TEN_SECONDS));
+        System.arraycopy(buckets, 0, extended, args.length + 4, buckets.length);
+        return extended;
+    }
+
+    private boolean hasExtensions() {
+        return histogramEnabled || rollingWindows.isEnabled() || historyStore.isEnabled();
+    }
+
+    /**
+     * Buckets (sur les nanosecondes) d'un delta dont les durées sont exprimées en {@code unit}.
+     * Un delta cumulé sans buckets n'alimente l'histogramme que si toutes ses exécutions ont la même durée.
+     */
+    static Map<Integer, Long> histogramBuckets(MetricsDelta delta, MetricsTimeUnit unit) {
+        Map<Integer, Long> buckets = delta.getBuckets();
+        if (buckets.isEmpty() && delta.hasExtremes() && delta.getMin() == delta.getMax()) {
+            buckets = Map.of(MetricsHistogram.bucketOf(delta.getMin()), delta.getCount());
+        }
+        return MetricsHistogram.toNanos(buckets, unit);
+    }
+
+    static String[] histogramArgs(MetricsDelta delta, MetricsTimeUnit unit) {
+        Map<Integer, Long> buckets = histogramBuckets(delta, unit);
+        String[] args = new String[buckets.size() * 2];
+        int i = 0;
+        for (Map.Entry<Integer, Long> entry : buckets.entrySet()) {
+            args[i++] = String.valueOf(entry.getKey());
+            args[i++] = String.valueOf(entry.getValue());
+        }
+        return args;
+    }
+
+    static List<String> keys(MetricsDelta delta) {
+        return List.of(
+                MetricsKeys.cardKey(delta.getTypeCarte()),
+                MetricsKeys.redisKey(delta.getTypeCarte(), delta.getOperationType()));
+    }
+
+    static String[] args(MetricsDelta delta, long now, MetricsTimeUnit unit) {
+        return new String[] {
+                delta.getTypeCarte(),
+                delta.getOperationType(),
+                String.valueOf(delta.getCount()),
+                String.valueOf(delta.getSum()),
+                delta.hasExtremes() ? String.valueOf(delta.getMin()) : "",
+                delta.hasExtremes() ? String.valueOf(delta.getMax()) : "",
+                String.valueOf(now),
+                unit.getSymbol()
+        };
+    }
+
+    static List<String> hashKeys(MetricsDelta delta) {
+        return List.of(MetricsKeys.cardKey(delta.getTypeCarte()));
+    }
+
+    static String[] hashArgs(MetricsDelta delta, long now, MetricsTimeUnit unit) {
+        return new String[] {
+                delta.getOperationType(),
+                String.valueOf(delta.getCount()),
+                String.valueOf(delta.getSum()),
+                delta.hasExtremes() ? String.valueOf(delta.getMin()) : "",
+                delta.hasExtremes() ? String.valueOf(delta.getMax()) : "",
+                String.valueOf(now),
+                unit.getSymbol()
+        };
+    }
+
+    static byte[][] keysAndArgs(MetricsDelta delta, long now, MetricsTimeUnit unit) {
+        return keysAndArgs(keys(delta), args(delta, now, unit));
+    }
+
+    static byte[][] keysAndArgs(List<String> keys, String[] args) {
+        byte[][] keysAndArgs = new byte[keys.size() + args.length][];
+        for (int i = 0; i < keys.size(); i++) {
+            keysAndArgs[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        for (int i = 0; i < args.length; i++) {
+            keysAndArgs[keys.size() + i] = args[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return keysAndArgs;
+    }
+}
@@ -1,6 +1,8 @@
 package com.test.projet.metric;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
@@ -36,6 +38,11 @@ public class MetricsAggregated {
     @JsonProperty("lastUpdated")
     private long lastUpdated;
 
+    /** Unité des durées : ms, us ou ns ; absente pour les documents historiques (ms) */
+    @JsonProperty("unit")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String unit;
+
     // Constructeur par défaut pour Jackson
     public MetricsAggregated() {
         this.count = 0;
@@ -88,6 +95,52 @@ public class MetricsAggregated {
         this.lastUpdated = System.currentTimeMillis();
     }
 
+    /**
+     * Cumule un delta de plusieurs exécutions, avec les mêmes règles que le script
+     * {@code metrics-accumulate.lua}
+     */
+    public void updateMetrics(MetricsDelta delta, long now, MetricsTimeUnit deltaUnit) {
+        long factor = alignUnit(deltaUnit);
+        long previousCount = this.count;
+        this.count += delta.getCount();
+        this.totalTime += delta.getSum() * factor;
+        this.averageTime = (double) this.totalTime / this.count;
+
+        long mean = delta.getSum() * factor / delta.getCount();
+        long min = delta.getMin() * factor;
+        long max = delta.getMax() * factor;
+        if (previousCount == 0 || (delta.hasExtremes() && min < this.minTime)) {
+            this.minTime = delta.hasExtremes() ? min : mean;
+        }
+        if (previousCount == 0 || (delta.hasExtremes() && max > this.maxTime)) {
+            this.maxTime = delta.hasExtremes() ? max : mean;
+        }
+
+        this.lastUpdated = now;
+    }
+
+    /**
+     * Ramène le document et une écriture exprimée en {@code writeUnit} à la plus fine des deux
+     * unités ; les durées stockées sont converties si nécessaire.
+     *
+     * @return le facteur à appliquer aux durées de l'écriture
+     */
+    public long alignUnit(MetricsTimeUnit writeUnit) {
+        MetricsTimeUnit current = getTimeUnit();
+        MetricsTimeUnit target = current.finest(writeUnit);
+        long documentFactor = current.getNanos() / target.getNanos();
+        if (documentFactor > 1) {
+            this.totalTime *= documentFactor;
+            this.averageTime *= documentFactor;
+            if (this.minTime != Long.MAX_VALUE) {
+                this.minTime *= documentFactor;
+            }
+            this.maxTime *= documentFactor;
+        }
+        this.unit = target.getSymbol();
+        return writeUnit.getNanos() / target.getNanos();
+    }
+
     // Getters et Setters
     public String getTypeCarte() {
         return typeCarte;
@@ -145,6 +198,19 @@ public class MetricsAggregated {
         this.maxTime = maxTime;
     }
 
+    public String getUnit() {
+        return unit;
+    }
+
+    public void setUnit(String unit) {
+        this.unit = unit;
+    }
+
+    @JsonIgnore
+    public MetricsTimeUnit getTimeUnit() {
+        return MetricsTimeUnit.fromSymbol(unit);
+    }
+
     public long getLastUpdated() {
         return lastUpdated;
     }
@@ -156,8 +222,8 @@ public class MetricsAggregated {
     @Override
     public String toString() {
         return String.format("MetricsAggregated{typeCarte='%s', operationType='%s', count=%d, " +
-                           "totalTime=%d, averageTime=%.2f, minTime=%d, maxTime=%d, lastUpdated=%d}",
+                           "totalTime=%d, averageTime=%.2f, minTime=%d, maxTime=%d, unit=%s, lastUpdated=%d}",
                            typeCarte, operationType, count, totalTime, averageTime, 
-                           getMinTime(), maxTime, lastUpdated);
+                           getMinTime(), maxTime, getTimeUnit().getSymbol(), lastUpdated);
     }
 }
\ No newline at end of file
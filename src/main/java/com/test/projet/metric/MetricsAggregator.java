@@ -1,42 +1,140 @@
-
 package com.test.projet.metric;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import org.springframework.data.redis.core.BoundHashOperations;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+/**
+ * Agrégats CRUD par (entité, opération) dans le hash {@code metrics:{entity}:{op}}, inscrits
+ * dans le registre {@code metrics-registry:crud} (membre {@code {entity}:{op}}).
+ *
+ * Tous les champs (compteurs, dernière durée, min/max) sont mis à jour par un script Lua :
+ * un seul aller-retour par échantillon, et plus de course entre lecture et écriture de min/max.
+ */
 @Service
 public class MetricsAggregator {
 
+    static final RedisScript<Long> RECORD_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/metrics-aggregator-record.lua"), Long.class);
+
     private final StringRedisTemplate redis;
 
+    private final MetricsScriptPipeline recordPipeline;
+
     public MetricsAggregator(StringRedisTemplate redis) {
         this.redis = redis;
+        this.recordPipeline = new MetricsScriptPipeline(redis, RECORD_SCRIPT);
     }
 
     public void record(String entity, String op, long durationMs, boolean error) {
-        String key = MetricsKeys.redisKey(entity, op);
-        BoundHashOperations<String, Object, Object> h = redis.boundHashOps(key);
+        Sample sample = new Sample(entity, op, durationMs, error);
+        redis.execute(RECORD_SCRIPT, List.of(MetricsKeys.redisKey(entity, op), MetricsKeys.registryCrudKey()),
+                (Object[]) scriptArgs(new SampleGroup(sample), System.currentTimeMillis()));
+    }
 
-        h.increment("count", 1);
-        h.increment("sumMs", durationMs);
-        h.put("lastMs", String.valueOf(durationMs));
-        if (error) h.increment("errors", 1);
+    /**
+     * Enregistre plusieurs échantillons : regroupement par (entité, opération), puis un script
+     * par groupe, le tout dans un seul pipeline.
+     */
+    public void recordAll(Collection<Sample> samples) {
+        Map<String, SampleGroup> groups = group(samples);
+        if (groups.isEmpty()) {
+            return;
+        }
+        recordPipeline.execute(() -> executePipelined(groups));
+    }
 
-        updateMinMax(h, durationMs);
+    private List<Object> executePipelined(Map<String, SampleGroup> groups) {
+        String sha = recordPipeline.getSha1();
+        byte[] registryKey = MetricsKeys.registryCrudKey().getBytes(StandardCharsets.UTF_8);
+        long now = System.currentTimeMillis();
+        return redis.executePipelined((RedisCallback<Object>) connection -> {
+            groups.forEach((key, group) -> {
+                String[] args = scriptArgs(group, now);
+                byte[][] keysAndArgs = new byte[args.length + 2][];
+                keysAndArgs[0] = key.getBytes(StandardCharsets.UTF_8);
+                keysAndArgs[1] = registryKey;
+                for (int i = 0; i < args.length; i++) {
+                    keysAndArgs[i + 2] = args[i].getBytes(StandardCharsets.UTF_8);
+                }
+                connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 2, keysAndArgs);
+            });
+            return null;
+        });
     }
 
-    private void updateMinMax(BoundHashOperations<String, Object, Object> h, long v) {
-        String max = (String) h.get("maxMs");
-        if (max == null || v > Double.parseDouble(max)) h.put("maxMs", String.valueOf(v));
-        String min = (String) h.get("minMs");
-        if (min == null || v < Double.parseDouble(min)) h.put("minMs", String.valueOf(v));
+    /**
+     * Arguments du script : ceux du groupe suivis de l'horodatage d'inscription au registre CRUD
+     */
+    private static String[] scriptArgs(SampleGroup group, long now) {
+        String[] args = Arrays.copyOf(group.args(), 7);
+        args[6] = String.valueOf(now);
+        return args;
+    }
+
+    static Map<String, SampleGroup> group(Collection<Sample> samples) {
+        Map<String, SampleGroup> groups = new LinkedHashMap<>();
+        if (samples == null) {
+            return groups;
+        }
+        for (Sample sample : samples) {
+            SampleGroup group = groups.get(sample.key());
+            if (group == null) {
+                groups.put(sample.key(), new SampleGroup(sample));
+            } else {
+                group.add(sample);
+            }
+        }
+        return groups;
     }
 
     public Map<String, Object> read(String entity, String op) {
-        Map<Object, Object> raw = redis.opsForHash().entries(MetricsKeys.redisKey(entity, op));
+        return view(redis.opsForHash().entries(MetricsKeys.redisKey(entity, op)));
+    }
+
+    /**
+     * Lit plusieurs agrégats en un seul pipeline de HGETALL
+     *
+     * @param pairs les couples {@code entité:opération}
+     * @return les agrégats par couple, dans l'ordre demandé ; les couples jamais enregistrés sont absents
+     */
+    public Map<String, Map<String, Object>> readAll(Collection<String> pairs) {
+        List<String> distinct = List.copyOf(new LinkedHashSet<>(pairs));
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        if (distinct.isEmpty()) {
+            return result;
+        }
+        List<Object> entries;
+        try {
+            entries = redis.executePipelined((RedisCallback<Object>) connection -> {
+                distinct.forEach(pair -> connection.hashCommands().hGetAll(("metrics:" + pair).getBytes(StandardCharsets.UTF_8)));
+                return null;
+            });
+        } catch (RedisPipelineException e) {
+            // Clés d'un autre type (documents de MetricsService) : leurs résultats sont des erreurs, ignorées
+            entries = e.getResults();
+        }
+        for (int i = 0; i < distinct.size() && i < entries.size(); i++) {
+            if (entries.get(i) instanceof Map<?, ?> raw && !raw.isEmpty()) {
+                result.put(distinct.get(i), view(raw));
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Object> view(Map<?, ?> raw) {
         Map<String, Object> out = new LinkedHashMap<>();
         raw.forEach((k,v) -> out.put(k.toString(), v.toString()));
         long count = Long.parseLong((String) out.getOrDefault("count", "0"));
@@ -44,4 +142,63 @@ public class MetricsAggregator {
         out.put("avgMs", count == 0 ? 0 : sum / count);
         return out;
     }
+
+    /**
+     * Un échantillon CRUD : durée d'une opération sur une entité
+     */
+    public static final class Sample {
+        private final String entity;
+        private final String op;
+        private final long durationMs;
+        private final boolean error;
+
+        public Sample(String entity, String op, long durationMs, boolean error) {
+            this.entity = entity;
+            this.op = op;
+            this.durationMs = durationMs;
+            this.error = error;
+        }
+
+        String key() {
+            return MetricsKeys.redisKey(entity, op);
+        }
+    }
+
+    /**
+     * Échantillons cumulés d'un même hash ; la dernière durée est celle du dernier échantillon ajouté
+     */
+    static final class SampleGroup {
+        private long count;
+        private long sumMs;
+        private long lastMs;
+        private long errors;
+        private long minMs = Long.MAX_VALUE;
+        private long maxMs = Long.MIN_VALUE;
+
+        SampleGroup(Sample first) {
+            add(first);
+        }
+
+        void add(Sample sample) {
+            count++;
+            sumMs += sample.durationMs;
+            lastMs = sample.durationMs;
+            if (sample.error) {
+                errors++;
+            }
+            minMs = Math.min(minMs, sample.durationMs);
+            maxMs = Math.max(maxMs, sample.durationMs);
+        }
+
+        String[] args() {
+            return new String[] {
+                    String.valueOf(count),
+                    String.valueOf(sumMs),
+                    String.valueOf(lastMs),
+                    String.valueOf(errors),
+                    String.valueOf(minMs),
+                    String.valueOf(maxMs)
+            };
+        }
+    }
 }
@@ -0,0 +1,128 @@
+package com.test.projet.metric;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtre de Bloom sur des chaînes, sûr entre threads et sans suppression.
+ *
+ * {@link #mightContain} ne se trompe que dans un sens : une chaîne ajoutée est toujours reconnue,
+ * une chaîne absente est reconnue à tort avec une probabilité proche de {@code fpp} tant que le nombre
+ * d'ajouts reste sous {@code expectedInsertions}. Les positions sont dérivées d'un hachage 128 bits
+ * (MurmurHash3 x64) par double hachage.
+ */
+public class MetricsBloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    public MetricsBloomFilter(long expectedInsertions, double fpp) {
+        long n = Math.max(1, expectedInsertions);
+        double p = Math.min(0.5, Math.max(1e-9, fpp));
+        long m = Math.max(64, (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2))));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (m + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    public void put(String value) {
+        long[] hash = hash(value);
+        long combined = hash[0];
+        for (int i = 0; i < hashCount; i++) {
+            long bit = (combined & Long.MAX_VALUE) % bitCount;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+            } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+            combined += hash[1];
+        }
+    }
+
+    public boolean mightContain(String value) {
+        long[] hash = hash(value);
+        long combined = hash[0];
+        for (int i = 0; i < hashCount; i++) {
+            long bit = (combined & Long.MAX_VALUE) % bitCount;
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+            combined += hash[1];
+        }
+        return true;
+    }
+
+    int getHashCount() {
+        return hashCount;
+    }
+
+    long getBitCount() {
+        return bitCount;
+    }
+
+    /**
+     * MurmurHash3 x64 128 bits (graine 0) des octets UTF-8
+     */
+    static long[] hash(String value) {
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        long c1 = 0x87c37b91114253d5L;
+        long c2 = 0x4cf5ad432745937fL;
+        long h1 = 0;
+        long h2 = 0;
+        int blocks = data.length / 16;
+        for (int i = 0; i < blocks; i++) {
+            long k1 = littleEndian(data, i * 16);
+            long k2 = littleEndian(data, i * 16 + 8);
+            h1 ^= Long.rotateLeft(k1 * c1, 31) * c2;
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= Long.rotateLeft(k2 * c2, 33) * c1;
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        long k1 = 0;
+        long k2 = 0;
+        int tail = blocks * 16;
+        for (int i = data.length - tail - 1; i >= 8; i--) {
+            k2 = (k2 << 8) | (data[tail + i] & 0xff);
+        }
+        for (int i = Math.min(7, data.length - tail - 1); i >= 0; i--) {
+            k1 = (k1 << 8) | (data[tail + i] & 0xff);
+        }
+        if (k2 != 0) {
+            h2 ^= Long.rotateLeft(k2 * c2, 33) * c1;
+        }
+        if (k1 != 0) {
+            h1 ^= Long.rotateLeft(k1 * c1, 31) * c2;
+        }
+        h1 ^= data.length;
+        h2 ^= data.length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[] {h1, h2};
+    }
+
+    private static long littleEndian(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -1,9 +1,12 @@
 package com.test.projet.metric;
 
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -15,6 +18,14 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.test.projet.metric.codec.CodecMigrationReport;
+import com.test.projet.metric.codec.MetricsCodecMigrator;
+import com.test.projet.metric.series.MetricsSeriesStore;
+import com.test.projet.metric.series.SeriesResponse;
+import com.test.projet.metric.sketch.MetricsSketchRegistry;
+import com.test.projet.metric.sketch.SketchPercentilesResponse;
+import com.test.projet.metric.sketch.SketchStatus;
+
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -27,25 +38,76 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 @Tag(name = "Metrics Management", description = "API pour la gestion et la consultation des métriques")
 public class MetricsController {
 
+    /** Nombre maximal de clés lues par une requête groupée */
+    static final int MAX_BULK_KEYS = 1000;
+
     @Autowired
     private MetricsService metricsService;
 
+    @Autowired
+    private MetricsIngestionPipeline ingestionPipeline;
+
+    @Autowired
+    private MetricsCodecMigrator codecMigrator;
+
+    @Autowired
+    private MetricsSketchRegistry sketchRegistry;
+
+    @Autowired
+    private MetricsRollingWindows rollingWindows;
+
+    @Autowired
+    private MetricsHistoryStore historyStore;
+
+    @Autowired
+    private MetricsSeriesStore seriesStore;
+
+    @Autowired
+    private MetricsKeyRegistry keyRegistry;
+
+    @Autowired
+    private MetricsAggregator aggregator;
+
+    @Value("${metrics.ingestion.mode:SYNC}")
+    private MetricsIngestionMode ingestionMode;
+
+    @Value("${metrics.time-unit:MILLISECONDS}")
+    private MetricsTimeUnit timeUnit = MetricsTimeUnit.MILLISECONDS;
+
     @PostMapping("/collect")
     @Operation(summary = "Collecter et stocker des métriques", description = "Collecte les métriques pour un type de carte donné et les stocke dans Redis")
     @ApiResponses(value = {
                     @ApiResponse(responseCode = "200", description = "Métriques collectées et stockées avec succès"),
+                    @ApiResponse(responseCode = "202", description = "Métriques mises en file (mode ASYNC)"),
                     @ApiResponse(responseCode = "400", description = "Paramètres invalides"),
-                    @ApiResponse(responseCode = "500", description = "Erreur interne du serveur")
+                    @ApiResponse(responseCode = "500", description = "Erreur interne du serveur"),
+                    @ApiResponse(responseCode = "503", description = "File d'ingestion saturée (mode ASYNC)")
     })
     public ResponseEntity<String> collectMetrics(
                     @Parameter(description = "Type de carte (VISA, MASTERCARD, AMEX, etc.)", required = true) @RequestParam String typeCarte,
 
                     @Parameter(description = "Type d'opération (PAYMENT, REFUND, AUTHORIZATION, CAPTURE)", required = true) @RequestParam String operationType,
 
-                    @Parameter(description = "Temps d'exécution en millisecondes", required = true) @RequestParam long executionTime) {
+                    @Parameter(description = "Temps d'exécution (en millisecondes par défaut)", required = true) @RequestParam long executionTime,
+
+                    @Parameter(description = "Unité de executionTime : ms, us ou ns") @RequestParam(defaultValue = "ms") String unit) {
 
+        long storedTime;
         try {
-            metricsService.collectAndStoreMetrics(typeCarte, operationType, executionTime);
+            // Conversion dans l'unité de stockage (metrics.time-unit)
+            storedTime = timeUnit.convert(executionTime, MetricsTimeUnit.parse(unit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        try {
+            if (ingestionMode == MetricsIngestionMode.ASYNC) {
+                if (ingestionPipeline.submit(typeCarte, operationType, storedTime)) {
+                    return ResponseEntity.accepted().body("Métriques mises en file pour " + typeCarte);
+                }
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                .body("File d'ingestion saturée, métriques abandonnées pour " + typeCarte);
+            }
+            metricsService.collectAndStoreMetrics(typeCarte, operationType, storedTime);
             return ResponseEntity.ok("Métriques collectées et stockées avec succès pour " + typeCarte);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -60,10 +122,19 @@ public class MetricsController {
                     @ApiResponse(responseCode = "404", description = "Aucune métrique trouvée pour ce type de carte"),
                     @ApiResponse(responseCode = "500", description = "Erreur interne du serveur")
     })
-    public ResponseEntity<MetricsDto> getMetrics(
+    public ResponseEntity<?> getMetrics(
                     @Parameter(description = "Type de carte (VISA, MASTERCARD, AMEX, etc.)", required = true) @PathVariable String typeCarte) {
 
+        if (!keyRegistry.mightContain(typeCarte)) {
+            // Type jamais écrit : réponse du filtre de Bloom local, sans aller-retour Redis
+            return ResponseEntity.notFound().build();
+        }
         try {
+            if (metricsService.isRawJsonReadable()) {
+                // Document stocké recopié tel quel, sans décodage ni resérialisation
+                byte[] json = metricsService.getRawMetricsJson(typeCarte);
+                return json != null ? rawJson(json) : ResponseEntity.notFound().build();
+            }
             MetricsDto metrics = metricsService.getMetricsFromRedis(typeCarte);
             if (metrics != null) {
                 return ResponseEntity.ok(metrics);
@@ -75,23 +146,267 @@ public class MetricsController {
         }
     }
 
+    @GetMapping("/bulk")
+    @Operation(summary = "Récupérer les métriques de plusieurs types de carte", description = "Lit les métriques de tous les types de carte demandés en un seul aller-retour Redis (MGET, ou pipeline de HGETALL en disposition hash)")
+    @ApiResponses(value = {
+                    @ApiResponse(responseCode = "200", description = "Métriques par type de carte ; les types sans métriques sont absents"),
+                    @ApiResponse(responseCode = "400", description = "Liste vide ou de plus de " + MAX_BULK_KEYS + " éléments"),
+                    @ApiResponse(responseCode = "500", description = "Erreur interne du serveur")
+    })
+    public ResponseEntity<?> getMetricsBulk(
+                    @Parameter(description = "Types de carte, séparés par des virgules", required = true) @RequestParam List<String> typeCartes) {
+        if (typeCartes.isEmpty() || typeCartes.size() > MAX_BULK_KEYS) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (metricsService.isRawJsonReadable()) {
+            byte[] json = metricsService.getRawMetricsJson(typeCartes);
+            return json != null ? rawJson(json) : ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        Map<String, MetricsDto> metrics = metricsService.getMetricsFromRedis(typeCartes);
+        if (metrics == null) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        return ResponseEntity.ok(metrics);
+    }
+
+    @GetMapping("/bulk/operations")
+    @Operation(summary = "Récupérer les métriques agrégées de plusieurs couples", description = "Lit les métriques agrégées de tous les couples typeCarte:operationType demandés en un seul aller-retour Redis")
+    @ApiResponses(value = {
+                    @ApiResponse(responseCode = "200", description = "Métriques par couple ; les couples sans métriques sont absents"),
+                    @ApiResponse(responseCode = "400", description = "Liste vide ou de plus de " + MAX_BULK_KEYS + " éléments"),
+                    @ApiResponse(responseCode = "500", description = "Erreur interne du serveur")
+    })
+    public ResponseEntity<Map<String, MetricsAggregated>> getOperationMetricsBulk(
+                    @Parameter(description = "Couples typeCarte:operationType, séparés par des virgules (ex : VISA:PAYMENT,AMEX:REFUND)", required = true) @RequestParam List<String> pairs) {
+        if (pairs.isEmpty() || pairs.size() > MAX_BULK_KEYS) {
+            return ResponseEntity.badRequest().build();
+        }
+        Map<String, MetricsAggregated> metrics = metricsService.getMetrics(pairs);
+        if (metrics == null) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        return ResponseEntity.ok(metrics);
+    }
+
+    @GetMapping("/bulk/crud")
+    @Operation(summary = "Récupérer plusieurs agrégats CRUD", description = "Lit les agrégats de MetricsAggregator de tous les couples entité:opération demandés en un seul pipeline de HGETALL")
+    @ApiResponses(value = {
+                    @ApiResponse(responseCode = "200", description = "Agrégats par couple ; les couples jamais enregistrés sont absents"),
+                    @ApiResponse(responseCode = "400", description = "Liste vide ou de plus de " + MAX_BULK_KEYS + " éléments"),
+                    @ApiResponse(responseCode = "500", description = "Erreur interne du serveur")
+    })
+    public ResponseEntity<Map<String, Map<String, Object>>> getCrudMetricsBulk(
+                    @Parameter(description = "Couples entité:opération, séparés par des virgules (ex : Customer:UPDATE)", required = true) @RequestParam List<String> pairs) {
+        if (pairs.isEmpty() || pairs.size() > MAX_BULK_KEYS) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(aggregator.readAll(pairs));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/{typeCarte}/{operationType}/window")
+    @Operation(summary = "Métriques sur une fenêtre glissante", description = "Nombre, moyenne, minimum et maximum sur les dernières minutes (1, 5, 15...), fusionnés à partir des buckets par minute (metrics.window.enabled)")
+    @ApiResponses(value = {
+                    @ApiResponse(responseCode = "200", description = "Métriques de la fenêtre"),
+                    @ApiResponse(responseCode = "400", description = "Paramètres invalides (minutes hors de [1, metrics.window.max-minutes])"),
+                    @ApiResponse(responseCode = "404", description = "Fenêtres glissantes désactivées"),
+                    @ApiResponse(responseCode = "500", description = "Erreur interne du serveur")
+    })
+    public ResponseEntity<WindowedMetricsResponse> getWindowedMetrics(
+                    @Parameter(description = "Type de carte (VISA, MASTERCARD, AMEX, etc.)", required = true) @PathVariable String typeCarte,
+
+                    @Parameter(description = "Type d'opération (PAYMENT, REFUND, AUTHORIZATION, CAPTURE)", required = true) @PathVariable String operationType,
+
+                    @Parameter(description = "Largeur de la fenêtre, en minutes (minute en cours comprise)") @RequestParam(defaultValue = "5") int minutes,
+
+                    @Parameter(description = "Unité des durées : ms, us ou ns (par défaut : unité de stockage)") @RequestParam(required = false) String unit) {
+
+        if (!rollingWindows.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        MetricsTimeUnit outputUnit;
+        try {
+            outputUnit = unit == null ? timeUnit : MetricsTimeUnit.parse(unit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (minutes < 1 || minutes > rollingWindows.getMaxMinutes()) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(rollingWindows.query(typeCarte, operationType, minutes, outputUnit));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/{typeCarte}/{operationType}/history")
+    @Operation(summary = "Historique des métriques", description = "Série (nombre, moyenne, minimum, maximum par bucket) lue dans le niveau le plus grossier (10s, 1m, 1h, 1d) qui respecte la résolution demandée et couvre la plage (metrics.history.enabled)")
+    @ApiResponses(value = {
+                    @ApiResponse(responseCode = "200", description = "Série historique"),
+                    @ApiResponse(responseCode = "400", description = "Paramètres invalides"),
+                    @ApiResponse(responseCode = "404", description = "Historique désactivé"),
+                    @ApiResponse(responseCode = "500", description = "Erreur interne du serveur")
+    })
+    public ResponseEntity<HistoryResponse> getHistory(
+                    @Parameter(description = "Type de carte (VISA, MASTERCARD, AMEX, etc.)", required = true) @PathVariable String typeCarte,
+
+                    @Parameter(description = "Type d'opération (PAYMENT, REFUND, AUTHORIZATION, CAPTURE)", required = true) @PathVariable String operationType,
+
+                    @Parameter(description = "Début de la plage (epoch, ms) ; par défaut : une heure avant la fin") @RequestParam(required = false) Long from,
+
+                    @Parameter(description = "Fin de la plage (epoch, ms) ; par défaut : maintenant") @RequestParam(required = false) Long to,
+
+                    @Parameter(description = "Pas souhaité entre deux points, en secondes (par défaut : déduit de points)") @RequestParam(defaultValue = "0") long resolution,
+
+                    @Parameter(description = "Nombre de points visé quand la résolution n'est pas imposée") @RequestParam(defaultValue = "300") int points,
+
+                    @Parameter(description = "Unité des durées : ms, us ou ns (par défaut : unité de stockage)") @RequestParam(required = false) String unit) {
+
+        if (!historyStore.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        MetricsTimeUnit outputUnit;
+        try {
+            outputUnit = unit == null ? timeUnit : MetricsTimeUnit.parse(unit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - 3_600_000L;
+        if (start > end || resolution < 0 || points < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(historyStore.query(typeCarte, operationType, start, end, resolution, points, outputUnit));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/{typeCarte}/{operationType}/series")
+    @Operation(summary = "Série de latence compressée", description = "Points par minute (nombre, moyenne, maximum) d'une plage ; seuls les chunks Gorilla qui la chevauchent sont lus et décodés (metrics.series.enabled)")
+    @ApiResponses(value = {
+                    @ApiResponse(responseCode = "200", description = "Points de la plage"),
+                    @ApiResponse(responseCode = "400", description = "Paramètres invalides"),
+                    @ApiResponse(responseCode = "404", description = "Séries désactivées"),
+                    @ApiResponse(responseCode = "500", description = "Erreur interne du serveur")
+    })
+    public ResponseEntity<SeriesResponse> getSeries(
+                    @Parameter(description = "Type de carte (VISA, MASTERCARD, AMEX, etc.)", required = true) @PathVariable String typeCarte,
+
+                    @Parameter(description = "Type d'opération (PAYMENT, REFUND, AUTHORIZATION, CAPTURE)", required = true) @PathVariable String operationType,
+
+                    @Parameter(description = "Début de la plage (epoch, ms) ; par défaut : un jour avant la fin") @RequestParam(required = false) Long from,
+
+                    @Parameter(description = "Fin de la plage (epoch, ms) ; par défaut : maintenant") @RequestParam(required = false) Long to,
+
+                    @Parameter(description = "Unité des durées : ms, us ou ns (par défaut : unité de stockage)") @RequestParam(required = false) String unit) {
+
+        if (!seriesStore.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        MetricsTimeUnit outputUnit;
+        try {
+            outputUnit = unit == null ? timeUnit : MetricsTimeUnit.parse(unit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - 86_400_000L;
+        if (start > end) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(seriesStore.query(typeCarte, operationType, start, end, outputUnit));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/{typeCarte}/{operationType}/sketch")
+    @Operation(summary = "Percentiles sur une période", description = "Fusionne les sketches de quantiles (metrics.sketch.enabled) de toutes les instances sur les dernières minutes : erreur relative bornée, même sur les queues de distribution")
+    @ApiResponses(value = {
+                    @ApiResponse(responseCode = "200", description = "Percentiles calculés avec succès"),
+                    @ApiResponse(responseCode = "400", description = "Paramètres invalides"),
+                    @ApiResponse(responseCode = "404", description = "Aucun sketch sur la période"),
+                    @ApiResponse(responseCode = "500", description = "Erreur interne du serveur")
+    })
+    public ResponseEntity<SketchPercentilesResponse> getSketchPercentiles(
+                    @Parameter(description = "Type de carte (VISA, MASTERCARD, AMEX, etc.)", required = true) @PathVariable String typeCarte,
+
+                    @Parameter(description = "Type d'opération (PAYMENT, REFUND, AUTHORIZATION, CAPTURE)", required = true) @PathVariable String operationType,
+
+                    @Parameter(description = "Période couverte, en minutes (au plus metrics.sketch.retention-minutes)") @RequestParam(defaultValue = "15") long minutes,
+
+                    @Parameter(description = "Unité des percentiles : ms, us ou ns (par défaut : unité de stockage)") @RequestParam(required = false) String unit) {
+
+        MetricsTimeUnit outputUnit;
+        try {
+            outputUnit = unit == null ? timeUnit : MetricsTimeUnit.parse(unit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        // Au-delà de la rétention, les sketches ont expiré : refusé plutôt que de lire une fenêtre par intervalle
+        if (minutes <= 0 || minutes > sketchRegistry.getRetentionMinutes()) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            SketchPercentilesResponse percentiles = sketchRegistry.percentiles(typeCarte, operationType, minutes, outputUnit);
+            if (percentiles == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(percentiles);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/{typeCarte}/{operationType}/percentiles")
+    @Operation(summary = "Percentiles des temps d'exécution", description = "Calcule p50, p90, p99 et p99.9 à partir de l'histogramme log-linéaire (metrics.histogram.enabled), toutes instances confondues")
+    @ApiResponses(value = {
+                    @ApiResponse(responseCode = "200", description = "Percentiles calculés avec succès"),
+                    @ApiResponse(responseCode = "400", description = "Unité invalide"),
+                    @ApiResponse(responseCode = "404", description = "Aucun histogramme pour ce couple (typeCarte, operationType)")
+    })
+    public ResponseEntity<PercentilesResponse> getPercentiles(
+                    @Parameter(description = "Type de carte (VISA, MASTERCARD, AMEX, etc.)", required = true) @PathVariable String typeCarte,
+
+                    @Parameter(description = "Type d'opération (PAYMENT, REFUND, AUTHORIZATION, CAPTURE)", required = true) @PathVariable String operationType,
+
+                    @Parameter(description = "Unité des percentiles : ms, us ou ns (par défaut : unité de stockage)") @RequestParam(required = false) String unit) {
+
+        MetricsTimeUnit outputUnit;
+        try {
+            outputUnit = unit == null ? timeUnit : MetricsTimeUnit.parse(unit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        PercentilesResponse percentiles = metricsService.getPercentiles(typeCarte, operationType, outputUnit);
+        if (percentiles == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(percentiles);
+    }
+
     @GetMapping("/types")
-    @Operation(summary = "Lister les types de cartes disponibles", description = "Retourne la liste des types de cartes supportés")
+    @Operation(summary = "Lister les types de cartes disponibles", description = "Retourne les types de cartes ayant des métriques, lus dans le registre des clés (les plus récemment mis à jour d'abord)")
     @ApiResponse(responseCode = "200", description = "Liste des types de cartes")
     public ResponseEntity<String[]> getSupportedCardTypes() {
-        String[] cardTypes = {
-                        "VISA", "MASTERCARD", "AMEX", "DISCOVER", "JCB", "DINERS"
-        };
+        String[] cardTypes = keyRegistry.getTypeCartes().toArray(new String[0]);
         return ResponseEntity.ok(cardTypes);
     }
 
     @GetMapping("/operations")
-    @Operation(summary = "Lister les types d'opérations disponibles", description = "Retourne la liste des types d'opérations supportés")
+    @Operation(summary = "Lister les types d'opérations disponibles", description = "Retourne les types d'opérations ayant des métriques, toutes cartes confondues ou pour un type de carte, lus dans le registre des clés")
     @ApiResponse(responseCode = "200", description = "Liste des types d'opérations")
-    public ResponseEntity<String[]> getSupportedOperationTypes() {
-        String[] operationTypes = {
-                        "PAYMENT", "REFUND", "AUTHORIZATION", "CAPTURE", "VOID", "SETTLEMENT"
-        };
+    public ResponseEntity<String[]> getSupportedOperationTypes(
+                    @Parameter(description = "Type de carte (optionnel)") @RequestParam(required = false) String typeCarte) {
+        String[] operationTypes = (typeCarte == null ? keyRegistry.getOperations() : keyRegistry.getOperations(typeCarte))
+                        .toArray(new String[0]);
         return ResponseEntity.ok(operationTypes);
     }
 
@@ -119,7 +434,7 @@ public class MetricsController {
     }
 
     @PostMapping("/collect/batch")
-    @Operation(summary = "Collecte de métriques en lot", description = "Collecte plusieurs métriques en une seule requête")
+    @Operation(summary = "Collecte de métriques en lot", description = "Collecte plusieurs métriques en une seule requête : les éléments sont pré-agrégés par (typeCarte, operationType) puis écrits en un seul aller-retour Redis")
     @ApiResponses(value = {
                     @ApiResponse(responseCode = "200", description = "Toutes les métriques collectées avec succès"),
                     @ApiResponse(responseCode = "207", description = "Certaines métriques collectées avec succès, d'autres en échec"),
@@ -129,23 +444,11 @@ public class MetricsController {
     public ResponseEntity<BatchCollectionResponse> collectMetricsBatch(
                     @RequestBody BatchCollectionRequest request) {
 
-        BatchCollectionResponse response = new BatchCollectionResponse();
-
-        for (MetricRequest metricRequest : request.getMetrics()) {
-            try {
-                metricsService.collectAndStoreMetrics(
-                                metricRequest.getTypeCarte(),
-                                metricRequest.getOperationType(),
-                                metricRequest.getExecutionTime());
-                response.addSuccess(metricRequest.getTypeCarte());
-            } catch (Exception e) {
-                response.addFailure(metricRequest.getTypeCarte(), e.getMessage());
-            }
-        }
+        BatchCollectionResponse response = metricsService.collectAndStoreMetricsBatch(request.getMetrics());
 
-        if (response.getFailures().isEmpty()) {
+        if (response.getAccepted() == response.getTotal()) {
             return ResponseEntity.ok(response);
-        } else if (response.getSuccesses().isEmpty()) {
+        } else if (response.getAccepted() == 0) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
         } else {
             return ResponseEntity.status(HttpStatus.MULTI_STATUS).body(response);
@@ -163,10 +466,50 @@ public class MetricsController {
         return ResponseEntity.ok(status);
     }
 
+    @GetMapping("/ingestion")
+    @Operation(summary = "État du pipeline d'ingestion", description = "Retourne le mode d'ingestion, la profondeur des files par partition et les compteurs d'abandon")
+    @ApiResponse(responseCode = "200", description = "État du pipeline d'ingestion")
+    public ResponseEntity<IngestionStatus> getIngestionStatus() {
+        IngestionStatus status = new IngestionStatus();
+        status.setMode(String.valueOf(ingestionMode));
+        status.setOverflowPolicy(ingestionPipeline.getOverflowPolicy().name());
+        status.setCapacity(ingestionPipeline.getCapacity());
+        status.setQueueDepths(ingestionPipeline.getQueueDepths());
+        status.setDropped(ingestionPipeline.getDroppedCount());
+        status.setSampledOut(ingestionPipeline.getSampledOutCount());
+        status.setFailed(ingestionPipeline.getFailedCount());
+        return ResponseEntity.ok(status);
+    }
+
+    @GetMapping("/sketches/status")
+    @Operation(summary = "Mémoire des sketches de quantiles", description = "Nombre de sketches en mémoire sur cette instance, bins alloués et taille estimée, avec le plafond imposé par metrics.sketch.max-bins")
+    @ApiResponse(responseCode = "200", description = "État des sketches")
+    public ResponseEntity<SketchStatus> getSketchStatus() {
+        return ResponseEntity.ok(sketchRegistry.getStatus());
+    }
+
+    @PostMapping("/admin/codec/migrate")
+    @Operation(summary = "Migrer le format de stockage", description = "Réécrit les documents metrics:* existants dans le codec configuré (metrics.codec), ou en hash si metrics.storage.layout=HASH")
+    @ApiResponses(value = {
+                    @ApiResponse(responseCode = "200", description = "Migration terminée"),
+                    @ApiResponse(responseCode = "500", description = "Erreur interne du serveur")
+    })
+    public ResponseEntity<CodecMigrationReport> migrateCodec() {
+        try {
+            return ResponseEntity.ok(codecMigrator.migrate());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @GetMapping("/getAllMetrics")
     @Operation(summary = "Récupérer toutes les clés Redis", description = "Récupère toutes les clés Redis utilisées pour stocker les métriques")
     @ApiResponse(responseCode = "200", description = "Clés Redis récupérées avec succès")
-    public ResponseEntity<Map<String, MetricsDto>> getAllRedisKeys() {
+    public ResponseEntity<?> getAllRedisKeys() {
+        if (metricsService.isRawJsonReadable()) {
+            byte[] json = metricsService.getAllRawMetricsJson();
+            return json != null ? rawJson(json) : ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
         Map<String, MetricsDto> keys = metricsService.getAllRedisKeys();
         if (keys != null) {
             return ResponseEntity.ok(keys);
@@ -174,4 +517,11 @@ public class MetricsController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Réponse JSON écrite octet pour octet, sans passer par la sérialisation Jackson
+     */
+    private static ResponseEntity<byte[]> rawJson(byte[] json) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(json);
+    }
+}
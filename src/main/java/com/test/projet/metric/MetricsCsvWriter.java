@@ -0,0 +1,111 @@
+package com.test.projet.metric;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Écriture CSV en flux, sans {@code String.format} ni ligne intermédiaire.
+ *
+ * Les champs contenant une virgule, un guillemet ou un saut de ligne sont entourés de guillemets
+ * (RFC 4180). Les nombres sont écrits avec six décimales, comme {@code %.6f} (à l'arrondi près des
+ * valeurs à mi-chemin au septième chiffre), à partir d'un tampon réutilisé : aucune allocation par
+ * valeur tant que |valeur| &lt; 10^9.
+ */
+public class MetricsCsvWriter {
+
+    private static final long SCALE = 1_000_000L;
+    private static final int DECIMALS = 6;
+    private static final double MAX_FIXED = 1e9;
+
+    private final Writer writer;
+    private final char[] digits = new char[32];
+    private boolean firstField = true;
+
+    public MetricsCsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public MetricsCsvWriter field(String value) throws IOException {
+        separator();
+        if (value == null || value.isEmpty()) {
+            return this;
+        }
+        if (!needsQuotes(value)) {
+            writer.write(value);
+            return this;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+        return this;
+    }
+
+    public MetricsCsvWriter field(double value) throws IOException {
+        separator();
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= MAX_FIXED) {
+            // Au-delà, le double n'a plus six décimales significatives : conversion décimale, comme %.6f
+            writer.write(Double.isNaN(value) || Double.isInfinite(value) ? Double.toString(value)
+                    : new BigDecimal(Double.toString(value)).setScale(DECIMALS, RoundingMode.HALF_UP).toPlainString());
+            return this;
+        }
+        // Partie entière et partie décimale séparées : la soustraction est exacte, seul l'arrondi
+        // de la partie décimale à six chiffres intervient
+        double magnitude = Math.abs(value);
+        long integer = (long) magnitude;
+        long fraction = Math.round((magnitude - integer) * SCALE);
+        if (fraction == SCALE) {
+            integer++;
+            fraction = 0;
+        }
+        int position = digits.length;
+        for (int i = 0; i < DECIMALS; i++) {
+            digits[--position] = (char) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        digits[--position] = '.';
+        do {
+            digits[--position] = (char) ('0' + integer % 10);
+            integer /= 10;
+        } while (integer > 0);
+        if (value < 0) {
+            digits[--position] = '-';
+        }
+        writer.write(digits, position, digits.length - position);
+        return this;
+    }
+
+    public void endRow() throws IOException {
+        writer.write('\n');
+        firstField = true;
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    private void separator() throws IOException {
+        if (firstField) {
+            firstField = false;
+        } else {
+            writer.write(',');
+        }
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,150 @@
+package com.test.projet.metric;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Delta de métriques à appliquer pour un couple (typeCarte, operationType).
+ * Un delta résume une ou plusieurs exécutions : nombre, somme, minimum et maximum, ainsi que
+ * leur répartition dans les buckets de {@link MetricsHistogram} (calculés sur les durées telles
+ * qu'enregistrées, dans l'unité de stockage).
+ *
+ * Cette classe n'est pas thread-safe : elle est construite puis appliquée par un seul thread.
+ */
+public class MetricsDelta {
+
+    private final String typeCarte;
+    private final String operationType;
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private Map<Integer, Long> buckets;
+
+    public MetricsDelta(String typeCarte, String operationType) {
+        this.typeCarte = typeCarte;
+        this.operationType = operationType;
+    }
+
+    /**
+     * Crée un delta représentant une seule exécution
+     */
+    public static MetricsDelta of(String typeCarte, String operationType, long executionTime) {
+        return new MetricsDelta(typeCarte, operationType).record(executionTime);
+    }
+
+    /**
+     * Crée un delta à partir de valeurs déjà cumulées.
+     * Un minimum à {@code Long.MAX_VALUE} et un maximum à {@code Long.MIN_VALUE}
+     * signifient que les extrêmes sont inconnus pour ce delta.
+     */
+    public static MetricsDelta of(String typeCarte, String operationType, long count, long sum, long min, long max) {
+        MetricsDelta delta = new MetricsDelta(typeCarte, operationType);
+        delta.count = count;
+        delta.sum = sum;
+        delta.min = min;
+        delta.max = max;
+        return delta;
+    }
+
+    /**
+     * Ajoute une exécution au delta
+     */
+    public MetricsDelta record(long executionTime) {
+        return record(executionTime, 1);
+    }
+
+    /**
+     * Ajoute une exécution échantillonnée représentant {@code weight} exécutions réelles
+     */
+    public MetricsDelta record(long executionTime, long weight) {
+        count += weight;
+        sum += executionTime * weight;
+        if (executionTime < min) {
+            min = executionTime;
+        }
+        if (executionTime > max) {
+            max = executionTime;
+        }
+        return recordBucket(MetricsHistogram.bucketOf(executionTime), weight);
+    }
+
+    /**
+     * Ajoute {@code count} exécutions au bucket d'histogramme {@code bucket}, sans toucher aux
+     * autres statistiques (réinjection de buckets déjà cumulés)
+     */
+    public MetricsDelta recordBucket(int bucket, long count) {
+        if (count == 0) {
+            return this;
+        }
+        if (buckets == null) {
+            buckets = new HashMap<>();
+        }
+        buckets.merge(bucket, count, Long::sum);
+        return this;
+    }
+
+    /**
+     * Fusionne un autre delta portant sur le même couple (typeCarte, operationType)
+     */
+    public MetricsDelta merge(MetricsDelta other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        if (other.buckets != null) {
+            other.buckets.forEach(this::recordBucket);
+        }
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public boolean hasExtremes() {
+        return min <= max;
+    }
+
+    public String getTypeCarte() {
+        return typeCarte;
+    }
+
+    public String getOperationType() {
+        return operationType;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Répartition des exécutions par bucket d'histogramme ; vide si le delta a été construit à
+     * partir de valeurs déjà cumulées sans buckets
+     */
+    public Map<Integer, Long> getBuckets() {
+        return buckets == null ? Collections.emptyMap() : Collections.unmodifiableMap(buckets);
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsDelta{typeCarte='" + typeCarte + "', operationType='" + operationType
+                + "', count=" + count + ", sum=" + sum + ", min=" + min + ", max=" + max + "}";
+    }
+}
@@ -1,48 +1,198 @@
 package com.test.projet.metric;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+/**
+ * Métriques d'un type de carte.
+ *
+ * En mémoire, les statistiques standard (Number, Average, Max, Min) sont indexées par type
+ * d'opération dans des tableaux de doubles à emplacements fixes : lecture et mise à jour en O(1),
+ * sans allocation. Les métriques portant un autre nom sont conservées telles quelles.
+ * La forme JSON reste la liste historique de {@code {name, value, type}}.
+ */
 public class MetricsDto {
+
+    /** Emplacements des statistiques standard dans le tableau d'une opération */
+    public static final int NUMBER = 0;
+    public static final int AVERAGE = 1;
+    public static final int MAX = 2;
+    public static final int MIN = 3;
+
+    private static final String[] STAT_NAMES = { "Number", "Average", "Max", "Min" };
+
     @JsonProperty("typeCarte")
     private String typeCarte;
-    
-    @JsonProperty("metrics")
-    private List<MetricInner> metrics;
+
+    /** Unité des durées (Average, Max, Min) : ms, us ou ns ; absente pour les documents historiques (ms) */
+    @JsonProperty("unit")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String unit;
+
+    private final Map<String, double[]> statsByOperation = new LinkedHashMap<>();
+
+    private final List<MetricInner> otherMetrics = new ArrayList<>();
 
     @JsonCreator
     public MetricsDto(@JsonProperty("typeCarte") String typeCarte) {
         this.typeCarte = typeCarte;
-        this.metrics = new ArrayList<>();
     }
 
     // Constructeur par défaut pour Jackson
     public MetricsDto() {
-        this.metrics = new ArrayList<>();
     }
 
     public void addMetric(String name, double value, String type) {
-        metrics.add(new MetricInner(name, value, type));
+        int slot = slotOf(name);
+        if (slot >= 0) {
+            getOrCreateStats(type)[slot] = value;
+        } else {
+            otherMetrics.add(new MetricInner(name, value, type));
+        }
     }
 
     public void addMetric(MetricInner metricInner) {
-        metrics.add(metricInner);
+        int slot = slotOf(metricInner.getName());
+        if (slot >= 0) {
+            getOrCreateStats(metricInner.getType())[slot] = metricInner.getValue();
+        } else {
+            otherMetrics.add(metricInner);
+        }
+    }
+
+    /**
+     * Statistiques d'une opération, indexées par {@link #NUMBER}, {@link #AVERAGE}, {@link #MAX}
+     * et {@link #MIN} ; une valeur NaN signifie « absente ». Le tableau retourné est modifiable.
+     *
+     * @return le tableau des statistiques, ou null si l'opération est inconnue
+     */
+    @JsonIgnore
+    public double[] getStats(String operationType) {
+        return statsByOperation.get(operationType);
+    }
+
+    /**
+     * Statistiques d'une opération, créées (toutes absentes) si nécessaire
+     */
+    @JsonIgnore
+    public double[] getOrCreateStats(String operationType) {
+        double[] stats = statsByOperation.get(operationType);
+        if (stats == null) {
+            stats = new double[STAT_NAMES.length];
+            Arrays.fill(stats, Double.NaN);
+            statsByOperation.put(operationType, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * @return le nom de la statistique standard à l'emplacement {@code slot} (Number, Average, Max, Min)
+     */
+    public static String getStatName(int slot) {
+        return STAT_NAMES[slot];
+    }
+
+    @JsonIgnore
+    public Set<String> getOperationTypes() {
+        return Collections.unmodifiableSet(statsByOperation.keySet());
+    }
+
+    /**
+     * Métriques dont le nom n'est pas une statistique standard
+     */
+    @JsonIgnore
+    public List<MetricInner> getOtherMetrics() {
+        return Collections.unmodifiableList(otherMetrics);
     }
 
     public String getTypeCarte() {
         return typeCarte;
     }
 
+    public String getUnit() {
+        return unit;
+    }
+
+    public void setUnit(String unit) {
+        this.unit = unit;
+    }
+
+    @JsonIgnore
+    public MetricsTimeUnit getTimeUnit() {
+        return MetricsTimeUnit.fromSymbol(unit);
+    }
+
+    /**
+     * Ramène le document et une écriture exprimée en {@code writeUnit} à la plus fine des deux
+     * unités ; les durées stockées sont converties si nécessaire.
+     *
+     * @return le facteur à appliquer aux durées de l'écriture
+     */
+    public long alignUnit(MetricsTimeUnit writeUnit) {
+        MetricsTimeUnit current = getTimeUnit();
+        MetricsTimeUnit target = current.finest(writeUnit);
+        long documentFactor = current.getNanos() / target.getNanos();
+        if (documentFactor > 1) {
+            for (double[] stats : statsByOperation.values()) {
+                stats[AVERAGE] *= documentFactor;
+                stats[MAX] *= documentFactor;
+                stats[MIN] *= documentFactor;
+            }
+        }
+        this.unit = target.getSymbol();
+        return writeUnit.getNanos() / target.getNanos();
+    }
+
+    /**
+     * Vue liste (forme JSON historique), recalculée à chaque appel : à réserver à la sérialisation
+     * et aux usages hors chemin critique.
+     */
+    @JsonProperty("metrics")
     public List<MetricInner> getMetrics() {
-        return metrics;
+        List<MetricInner> metrics = new ArrayList<>(statsByOperation.size() * STAT_NAMES.length + otherMetrics.size());
+        statsByOperation.forEach((operationType, stats) -> {
+            for (int slot = 0; slot < stats.length; slot++) {
+                if (!Double.isNaN(stats[slot])) {
+                    metrics.add(new MetricInner(STAT_NAMES[slot], stats[slot], operationType));
+                }
+            }
+        });
+        metrics.addAll(otherMetrics);
+        return Collections.unmodifiableList(metrics);
+    }
+
+    @JsonProperty("metrics")
+    void setMetrics(List<MetricInner> metrics) {
+        statsByOperation.clear();
+        otherMetrics.clear();
+        if (metrics != null) {
+            metrics.forEach(this::addMetric);
+        }
+    }
+
+    private static int slotOf(String name) {
+        for (int slot = 0; slot < STAT_NAMES.length; slot++) {
+            if (STAT_NAMES[slot].equals(name)) {
+                return slot;
+            }
+        }
+        return -1;
     }
 
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
-        builder.append("MetricsDto {typeCarte:").append(typeCarte).append(", metrics:").append(metrics).append("}");
+        builder.append("MetricsDto {typeCarte:").append(typeCarte).append(", unit:").append(getTimeUnit().getSymbol()).append(", metrics:").append(getMetrics()).append("}");
         return builder.toString();
     }
-}
\ No newline at end of file
+}
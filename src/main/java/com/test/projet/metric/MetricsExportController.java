@@ -1,203 +1,483 @@
 package com.test.projet.metric;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Measurement;
 import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tag;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.projet.metric.codec.MetricsCodecRegistry;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/metrics")
 public class MetricsExportController {
 
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsExportController.class);
+    
+    private static final int CSV_BUFFER_SIZE = 8192;
+    
+    private static final int MAX_CHANGES_PER_EXPORT = 10_000;
+
     @Autowired
     private MeterRegistry meterRegistry;
     
     @Autowired
-    private StringRedisTemplate redisTemplate;
+    private MetricsKeyspaceIterator keyspaceIterator;
+    
+    @Autowired
+    private MetricsKeyRegistry keyRegistry;
+    
+    @Autowired
+    private MetricsCodecRegistry codecRegistry;
+    
+    @Autowired
+    private MetricsService metricsService;
+    
+    @Autowired
+    private MetricsAggregator aggregator;
     
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     /**
-     * Export toutes les métriques au format JSON
+     * Export toutes les métriques au format JSON, écrit au fil de l'eau : les clés Redis sont lues
+     * page par page (registre puis MGET) et la mémoire utilisée ne dépend pas de la taille du keyspace
      */
     @GetMapping("/export/json")
-    public ResponseEntity<Map<String, Object>> exportMetricsAsJson() {
-        Map<String, Object> exportData = new HashMap<>();
-        exportData.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        exportData.put("application", "metrics-with-redis-starter");
-        
-        // Métriques personnalisées depuis Redis
-        Map<String, Object> customMetrics = new HashMap<>();
-        try {
-            Set<String> redisKeys = redisTemplate.keys("metrics:*");
-            if (redisKeys != null) {
-                for (String key : redisKeys) {
-                    String value = redisTemplate.opsForValue().get(key);
-                    if (value != null) {
-                        try {
-                            // Essayer de parser comme JSON
-                            customMetrics.put(key, objectMapper.readTree(value));
-                        } catch (Exception e) {
-                            // Sinon, stocker comme string
-                            customMetrics.put(key, value);
-                        }
-                    }
+    public ResponseEntity<StreamingResponseBody> exportMetricsAsJson() {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = createGenerator(out)) {
+                json.writeStartObject();
+                json.writeStringField("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+                json.writeStringField("application", "metrics-with-redis-starter");
+
+                // Métriques personnalisées depuis Redis
+                json.writeObjectFieldStart("customMetrics");
+                try {
+                    writeRedisMetrics("metrics:", json);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } catch (Exception e) {
+                    json.writeStringField("error", "Failed to retrieve Redis metrics: " + e.getMessage());
+                }
+                json.writeEndObject();
+
+                // Métriques système (un compteur par nom, le dernier enregistré l'emporte)
+                Map<String, Meter> meters = new LinkedHashMap<>();
+                meterRegistry.getMeters().forEach(meter -> meters.put(meter.getId().getName(), meter));
+                json.writeObjectFieldStart("systemMetrics");
+                for (Map.Entry<String, Meter> entry : meters.entrySet()) {
+                    json.writeFieldName(entry.getKey());
+                    writeMeter(entry.getValue(), json);
                 }
+                json.writeEndObject();
+
+                json.writeEndObject();
             }
-        } catch (Exception e) {
-            customMetrics.put("error", "Failed to retrieve Redis metrics: " + e.getMessage());
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * Générateur écrivant directement dans la réponse ; le flux reste ouvert, Spring le termine
+     */
+    private JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return objectMapper.getFactory().createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    private static void writeMeter(Meter meter, JsonGenerator json) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("type", meter.getId().getType().name());
+        json.writeObjectFieldStart("tags");
+        for (Tag tag : meter.getId().getTags()) {
+            json.writeStringField(tag.getKey(), tag.getValue());
         }
-        exportData.put("customMetrics", customMetrics);
-        
-        // Métriques système
-        Map<String, Object> systemMetrics = new HashMap<>();
-        for (Meter meter : meterRegistry.getMeters()) {
-            String name = meter.getId().getName();
-            Map<String, String> tags = new HashMap<>();
-            meter.getId().getTags().forEach(tag -> tags.put(tag.getKey(), tag.getValue()));
-            
-            Map<String, Object> meterData = new HashMap<>();
-            meterData.put("type", meter.getId().getType().name());
-            meterData.put("tags", tags);
-            
-            List<Map<String, Object>> measurements = new ArrayList<>();
-            meter.measure().forEach(measurement -> {
-                Map<String, Object> measurementData = new HashMap<>();
-                measurementData.put("statistic", measurement.getStatistic().name());
-                measurementData.put("value", measurement.getValue());
-                measurements.add(measurementData);
-            });
-            meterData.put("measurements", measurements);
-            
-            systemMetrics.put(name, meterData);
+        json.writeEndObject();
+        json.writeArrayFieldStart("measurements");
+        for (Measurement measurement : meter.measure()) {
+            json.writeStartObject();
+            json.writeStringField("statistic", measurement.getStatistic().name());
+            json.writeNumberField("value", measurement.getValue());
+            json.writeEndObject();
         }
-        exportData.put("systemMetrics", systemMetrics);
-        
-        return ResponseEntity.ok(exportData);
+        json.writeEndArray();
+        json.writeEndObject();
     }
     
     /**
-     * Export les métriques au format CSV
+     * Export les métriques au format CSV, écrit au fil de l'eau : une ligne par mesure Micrometer (tags
+     * regroupés dans une colonne {@code clé=valeur;...}), puis une ligne par statistique des cartes stockées
+     * dans Redis, lues page par page. Compressé en gzip si le client l'accepte.
      */
     @GetMapping("/export/csv")
-    public ResponseEntity<String> exportMetricsAsCsv() {
-        StringBuilder csv = new StringBuilder();
-        csv.append("timestamp,metric_name,metric_type,tag_key,tag_value,statistic,value\n");
-        
+    public ResponseEntity<StreamingResponseBody> exportMetricsAsCsv(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean gzip = acceptsGzip(acceptEncoding);
         String timestamp = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
         
-        for (Meter meter : meterRegistry.getMeters()) {
-            String name = meter.getId().getName();
-            String type = meter.getId().getType().name();
+        StreamingResponseBody body = out -> {
+            GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, CSV_BUFFER_SIZE) : null;
+            Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(compressed != null ? compressed : out, StandardCharsets.UTF_8), CSV_BUFFER_SIZE);
+            MetricsCsvWriter csv = new MetricsCsvWriter(writer);
+            csv.field("timestamp").field("source").field("metric_name").field("metric_type")
+                    .field("tags").field("statistic").field("value").endRow();
             
-            // Pour chaque tag
-            if (meter.getId().getTags().isEmpty()) {
-                // Pas de tags
-                meter.measure().forEach(measurement -> {
-                    csv.append(String.format("%s,%s,%s,,,%s,%.6f\n",
-                        timestamp, name, type,
-                        measurement.getStatistic().name(),
-                        measurement.getValue()));
-                });
-            } else {
-                meter.getId().getTags().forEach(tag -> {
-                    meter.measure().forEach(measurement -> {
-                        csv.append(String.format("%s,%s,%s,%s,%s,%s,%.6f\n",
-                            timestamp, name, type,
-                            tag.getKey(), tag.getValue(),
-                            measurement.getStatistic().name(),
-                            measurement.getValue()));
-                    });
+            for (Meter meter : meterRegistry.getMeters()) {
+                String name = meter.getId().getName();
+                String type = meter.getId().getType().name();
+                String tags = formatTags(meter.getId().getTags());
+                for (Measurement measurement : meter.measure()) {
+                    csv.field(timestamp).field("micrometer").field(name).field(type)
+                            .field(tags).field(measurement.getStatistic().name()).field(measurement.getValue()).endRow();
+                }
+            }
+            
+            // Métriques par carte stockées dans Redis
+            try {
+                metricsService.forEachCard((typeCarte, metrics) -> {
+                    try {
+                        writeCard(csv, timestamp, typeCarte, metrics);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
                 });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (Exception e) {
+                LOG.error("Error while exporting Redis metrics as CSV: ", e);
             }
-        }
+            
+            csv.flush();
+            if (compressed != null) {
+                compressed.finish();
+            }
+        };
         
         HttpHeaders headers = new HttpHeaders();
         headers.add("Content-Type", "text/csv");
         headers.add("Content-Disposition", "attachment; filename=metrics_" + 
             LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".csv");
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            headers.add(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
         
-        return ResponseEntity.ok().headers(headers).body(csv.toString());
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+    
+    private static void writeCard(MetricsCsvWriter csv, String timestamp, String typeCarte, MetricsDto metrics)
+            throws IOException {
+        String unit = metrics.getUnit() == null ? "" : ";unit=" + metrics.getUnit();
+        for (String operationType : metrics.getOperationTypes()) {
+            String tags = "operationType=" + operationType + unit;
+            double[] stats = metrics.getStats(operationType);
+            for (int slot = 0; slot < stats.length; slot++) {
+                if (!Double.isNaN(stats[slot])) {
+                    csv.field(timestamp).field("redis").field(typeCarte).field("CARD")
+                            .field(tags).field(MetricsDto.getStatName(slot)).field(stats[slot]).endRow();
+                }
+            }
+        }
+        for (MetricInner metric : metrics.getOtherMetrics()) {
+            csv.field(timestamp).field("redis").field(typeCarte).field("CARD")
+                    .field("operationType=" + metric.getType() + unit).field(metric.getName()).field(metric.getValue()).endRow();
+        }
+    }
+    
+    private static String formatTags(List<Tag> tags) {
+        if (tags.isEmpty()) {
+            return "";
+        }
+        StringBuilder formatted = new StringBuilder();
+        for (Tag tag : tags) {
+            if (formatted.length() > 0) {
+                formatted.append(';');
+            }
+            formatted.append(tag.getKey()).append('=').append(tag.getValue());
+        }
+        return formatted.toString();
     }
     
     /**
-     * Export les métriques depuis Redis
+     * @return true si l'en-tête Accept-Encoding accepte gzip (explicitement ou par {@code *}) avec q &gt; 0
      */
-    @GetMapping("/export/redis")
-    public ResponseEntity<Map<String, Object>> exportRedisMetrics() {
-        Map<String, Object> redisData = new HashMap<>();
-        redisData.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        
-        try {
-            Set<String> keys = redisTemplate.keys("metrics:*");
-            Map<String, Object> metrics = new HashMap<>();
-            
-            if (keys != null) {
-                for (String key : keys) {
-                    String value = redisTemplate.opsForValue().get(key);
-                    if (value != null) {
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].trim();
+                    if (parameter.startsWith("q=")) {
                         try {
-                            // Essayer de parser comme JSON
-                            metrics.put(key, objectMapper.readTree(value));
-                        } catch (Exception e) {
-                            // Sinon, stocker comme string
-                            metrics.put(key, value);
+                            return Double.parseDouble(parameter.substring(2)) > 0;
+                        } catch (NumberFormatException e) {
+                            return false;
                         }
                     }
                 }
+                return true;
             }
-            
-            redisData.put("metrics", metrics);
-            redisData.put("totalKeys", keys != null ? keys.size() : 0);
-        } catch (Exception e) {
-            redisData.put("error", "Failed to retrieve Redis data: " + e.getMessage());
         }
-        
-        return ResponseEntity.ok(redisData);
+        return false;
     }
     
     /**
-     * Export des métriques CRUD personnalisées
+     * Export les métriques depuis Redis, écrit au fil de l'eau page par page
      */
-    @GetMapping("/export/crud")
-    public ResponseEntity<Map<String, Object>> exportCrudMetrics(@RequestParam(defaultValue = "all") String entity) {
-        Map<String, Object> crudData = new HashMap<>();
-        crudData.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        
-        try {
-            String pattern = entity.equals("all") ? "metrics:*" : "metrics:" + entity + "*";
-            Set<String> keys = redisTemplate.keys(pattern);
-            
-            Map<String, Object> metrics = new HashMap<>();
-            if (keys != null) {
-                for (String key : keys) {
-                    String value = redisTemplate.opsForValue().get(key);
-                    if (value != null) {
-                        try {
-                            metrics.put(key, objectMapper.readTree(value));
-                        } catch (Exception e) {
-                            metrics.put(key, value);
+    @GetMapping("/export/redis")
+    public ResponseEntity<StreamingResponseBody> exportRedisMetrics() {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = createGenerator(out)) {
+                json.writeStartObject();
+                json.writeStringField("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+                writeRedisExport("metrics:", json, "Failed to retrieve Redis data: ");
+                json.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+    
+    /**
+     * Export incrémental : seules les cartes modifiées après le curseur {@code since} (numéro de séquence
+     * du journal des modifications, 0 pour tout exporter) sont exportées avec leurs opérations, au plus
+     * {@code limit} cartes par appel. Les cartes modifiées puis supprimées sont listées dans
+     * {@code deleted}. Le champ {@code cursor} est à repasser comme {@code since} à l'appel suivant,
+     * immédiatement si {@code hasMore}. En cas d'erreur Redis, le curseur rendu est {@code since}.
+     */
+    @GetMapping("/export/redis/changes")
+    public ResponseEntity<StreamingResponseBody> exportRedisChanges(@RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "1000") int limit) {
+        int pageLimit = Math.min(Math.max(1, limit), MAX_CHANGES_PER_EXPORT);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = createGenerator(out)) {
+                json.writeStartObject();
+                json.writeStringField("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+                json.writeNumberField("since", since);
+                json.writeObjectFieldStart("metrics");
+                try {
+                    MetricsKeyRegistry.CardChanges changes = keyRegistry.changedSince(since, pageLimit);
+                    Set<String> exported = new HashSet<>();
+                    long totalKeys = writeRedisValues(keyRegistry.keys(changes.getTypeCartes()), json, exported::add);
+                    json.writeEndObject();
+                    // Carte du journal sans valeur (chaîne ou hash) : supprimée depuis sa dernière écriture
+                    json.writeArrayFieldStart("deleted");
+                    for (String typeCarte : changes.getTypeCartes()) {
+                        if (!exported.contains(MetricsKeys.cardKey(typeCarte))) {
+                            json.writeString(typeCarte);
                         }
                     }
+                    json.writeEndArray();
+                    json.writeNumberField("totalKeys", totalKeys);
+                    json.writeNumberField("cursor", changes.getCursor());
+                    json.writeBooleanField("hasMore", changes.hasMore());
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } catch (Exception e) {
+                    // Curseur inchangé : les cartes déjà écrites seront réexportées à l'appel suivant
+                    json.writeEndObject();
+                    json.writeStringField("error", "Failed to retrieve Redis changes: " + e.getMessage());
+                    json.writeNumberField("cursor", since);
+                    json.writeBooleanField("hasMore", true);
                 }
+                json.writeEndObject();
             }
-            
-            crudData.put("entity", entity);
-            crudData.put("metrics", metrics);
-            crudData.put("totalKeys", keys != null ? keys.size() : 0);
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+    
+    /**
+     * Export des métriques CRUD personnalisées, écrit au fil de l'eau page par page : clés du registre
+     * des cartes, puis agrégats {@code metrics:{entity}:{op}} de {@link MetricsAggregator}
+     */
+    @GetMapping("/export/crud")
+    public ResponseEntity<StreamingResponseBody> exportCrudMetrics(@RequestParam(defaultValue = "all") String entity) {
+        String prefix = entity.equals("all") ? "metrics:" : "metrics:" + entity;
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = createGenerator(out)) {
+                json.writeStartObject();
+                json.writeStringField("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+                json.writeStringField("entity", entity);
+                writeRedisExport(generator -> writeRedisMetrics(prefix, generator) + writeCrudMetrics(entity, generator),
+                        json, "Failed to retrieve CRUD metrics: ");
+                json.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+    
+    /**
+     * Écrit les champs {@code metrics} et {@code totalKeys} ; en cas d'erreur Redis en cours de parcours,
+     * {@code metrics} est refermé sur les clés déjà écrites et suivi d'un champ {@code error}
+     */
+    private void writeRedisExport(String prefix, JsonGenerator json, String errorMessage) throws IOException {
+        writeRedisExport(generator -> writeRedisMetrics(prefix, generator), json, errorMessage);
+    }
+
+    /**
+     * @param writer écrit les clés exportées et rend leur nombre
+     */
+    private void writeRedisExport(ToLongFunction<JsonGenerator> writer, JsonGenerator json, String errorMessage) throws IOException {
+        json.writeObjectFieldStart("metrics");
+        try {
+            long totalKeys = writer.applyAsLong(json);
+            json.writeEndObject();
+            json.writeNumberField("totalKeys", totalKeys);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         } catch (Exception e) {
-            crudData.put("error", "Failed to retrieve CRUD metrics: " + e.getMessage());
+            json.writeEndObject();
+            json.writeStringField("error", errorMessage + e.getMessage());
+        }
+    }
+    
+    /**
+     * Écrit les clés du registre commençant par le préfixe, une page de cartes (et leurs opérations) à la
+     * fois : chaque page est lue par un MGET puis envoyée au client. Les documents JSON sont recopiés tels
+     * quels ; les autres valeurs sont parsées si possible, sinon exportées comme chaîne brute.
+     *
+     * @return le nombre de clés parcourues
+     */
+    private long writeRedisMetrics(String prefix, JsonGenerator json) {
+        long[] totalKeys = new long[1];
+        keyRegistry.forEachKeyPage(keyspaceIterator.getPageSize(), page -> totalKeys[0] +=
+                writeRedisValues(page.stream().filter(key -> key.startsWith(prefix)).toList(), json));
+        return totalKeys[0];
+    }
+    
+    /**
+     * Écrit les agrégats CRUD de l'entité (ou de toutes si {@code all}), une page du registre
+     * {@code metrics-registry:crud} à la fois : chaque page est lue par un pipeline de HGETALL
+     * ({@link MetricsAggregator#readAll}) puis envoyée au client
+     *
+     * @return le nombre de couples parcourus
+     */
+    private long writeCrudMetrics(String entity, JsonGenerator json) {
+        long[] totalKeys = new long[1];
+        keyRegistry.forEachCrudPage(keyspaceIterator.getPageSize(), page -> {
+            List<String> pairs = page.stream()
+                    .filter(pair -> entity.equals("all") || pair.substring(0, Math.max(0, pair.lastIndexOf(':'))).equals(entity))
+                    .toList();
+            totalKeys[0] += pairs.size();
+            try {
+                for (Map.Entry<String, Map<String, Object>> aggregate : aggregator.readAll(pairs).entrySet()) {
+                    json.writeFieldName("metrics:" + aggregate.getKey());
+                    json.writeTree(objectMapper.valueToTree(aggregate.getValue()));
+                }
+                json.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return totalKeys[0];
+    }
+
+    /**
+     * Écrit la valeur de chaque clé (un MGET par page, puis un pipeline de HGETALL pour les clés qui ne
+     * sont pas des chaînes) puis envoie ce qui a été écrit au client
+     *
+     * @return le nombre de clés parcourues
+     */
+    private long writeRedisValues(List<String> keys, JsonGenerator json) {
+        return writeRedisValues(keys, json, key -> {});
+    }
+
+    /**
+     * @param exported reçoit chaque clé écrite
+     */
+    private long writeRedisValues(List<String> keys, JsonGenerator json, Consumer<String> exported) {
+        long totalKeys = keyspaceIterator.forEachValueOrHash(keys, (key, raw) -> {
+            try {
+                exported.accept(key);
+                json.writeFieldName(key);
+                writeValue(raw, json);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, (key, fields) -> {
+            try {
+                exported.accept(key);
+                json.writeFieldName(key);
+                writeHash(key, fields, json);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        try {
+            json.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return totalKeys;
+    }
+    
+    /**
+     * Carte en disposition hash : exportée comme sa vue par carte, comme en disposition document ;
+     * tout autre hash est exporté champ par champ
+     */
+    private void writeHash(String key, Map<?, ?> fields, JsonGenerator json) throws IOException {
+        MetricsDto metrics;
+        try {
+            metrics = MetricsHashLayout.toMetricsDto(key.substring("metrics:".length()), fields);
+        } catch (NumberFormatException e) {
+            metrics = null;
+        }
+        json.writeTree(objectMapper.valueToTree(metrics != null ? metrics : fields));
+    }
+
+    private void writeValue(byte[] raw, JsonGenerator json) throws IOException {
+        if (codecRegistry.isBinaryDocument(raw)) {
+            // Document smile, cbor ou binary : décodé puis sérialisé, jamais recopié comme chaîne
+            try {
+                json.writeTree(objectMapper.valueToTree(codecRegistry.decode(raw)));
+            } catch (IOException | IllegalArgumentException e) {
+                LOG.warn("Undecodable metrics document exported as null: {}", e.getMessage());
+                json.writeNull();
+            }
+            return;
+        }
+        String value = new String(raw, StandardCharsets.UTF_8);
+        if (codecRegistry.isJsonDocument(raw)) {
+            json.writeRawValue(value);
+            return;
+        }
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(value);
+        } catch (Exception e) {
+            node = null;
+        }
+        if (node != null && !node.isMissingNode()) {
+            json.writeTree(node);
+        } else {
+            json.writeString(value);
         }
-        
-        return ResponseEntity.ok(crudData);
     }
     
     /**
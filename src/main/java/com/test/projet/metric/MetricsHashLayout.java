@@ -0,0 +1,140 @@
+package com.test.projet.metric;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Champs du hash {@code metrics:{typeCarte}} en disposition {@link MetricsStorageLayout#HASH}
+ * et reconstruction des vues historiques à partir de ces champs.
+ *
+ * <pre>
+ * {op}:count        nombre d'exécutions (HINCRBY)
+ * {op}:sum          somme des temps d'exécution (HINCRBY)
+ * {op}:min          temps minimum
+ * {op}:max          temps maximum
+ * {op}:lastUpdated  horodatage de la dernière mise à jour (ms)
+ * unit              unité des durées de la carte : ms, us ou ns (absente : ms)
+ * </pre>
+ */
+public final class MetricsHashLayout {
+
+    public static final String COUNT = "count";
+    public static final String SUM = "sum";
+    public static final String MIN = "min";
+    public static final String MAX = "max";
+    public static final String LAST_UPDATED = "lastUpdated";
+    public static final String UNIT = "unit";
+
+    private static final List<String> STATS = List.of(COUNT, SUM, MIN, MAX, LAST_UPDATED);
+
+    private MetricsHashLayout() {}
+
+    public static String field(String operationType, String stat) {
+        return operationType + ":" + stat;
+    }
+
+    /**
+     * Champs d'une opération suivis de l'unité de la carte, dans l'ordre attendu par {@link #toAggregated}
+     */
+    public static List<String> fields(String operationType) {
+        List<String> fields = new ArrayList<>(STATS.size() + 1);
+        STATS.forEach(stat -> fields.add(field(operationType, stat)));
+        fields.add(UNIT);
+        return fields;
+    }
+
+    /**
+     * Reconstruit la vue par carte (Number, Average, Max, Min par opération) à partir du hash complet
+     *
+     * @return null si le hash est vide
+     */
+    public static MetricsDto toMetricsDto(String typeCarte, Map<?, ?> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return null;
+        }
+        MetricsDto metrics = new MetricsDto(typeCarte);
+        entries.forEach((key, value) -> {
+            String field = key.toString();
+            if (UNIT.equals(field)) {
+                metrics.setUnit(value.toString());
+                return;
+            }
+            int separator = field.lastIndexOf(':');
+            if (separator <= 0) {
+                return;
+            }
+            String operationType = field.substring(0, separator);
+            String stat = field.substring(separator + 1);
+            double number = Double.parseDouble(value.toString());
+            switch (stat) {
+                case COUNT -> metrics.getOrCreateStats(operationType)[MetricsDto.NUMBER] = number;
+                case SUM -> metrics.getOrCreateStats(operationType)[MetricsDto.AVERAGE] = number;
+                case MIN -> metrics.getOrCreateStats(operationType)[MetricsDto.MIN] = number;
+                case MAX -> metrics.getOrCreateStats(operationType)[MetricsDto.MAX] = number;
+                default -> { }
+            }
+        });
+        // AVERAGE contient la somme tant que toutes les opérations n'ont pas été lues
+        for (String operationType : metrics.getOperationTypes()) {
+            double[] stats = metrics.getStats(operationType);
+            double count = stats[MetricsDto.NUMBER];
+            stats[MetricsDto.AVERAGE] = Double.isNaN(count) || count == 0 ? Double.NaN : stats[MetricsDto.AVERAGE] / count;
+        }
+        return metrics;
+    }
+
+    /**
+     * Champs du hash équivalents à une vue par carte, pour convertir un document écrit avant le passage
+     * en disposition hash. La somme est recalculée à partir de la moyenne ; lastUpdated, absent de la
+     * vue par carte, n'est pas renseigné.
+     */
+    public static Map<String, String> fromMetricsDto(MetricsDto metrics) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (String operationType : metrics.getOperationTypes()) {
+            double[] stats = metrics.getStats(operationType);
+            if (Double.isNaN(stats[MetricsDto.NUMBER]) || stats[MetricsDto.NUMBER] <= 0) {
+                continue;
+            }
+            long count = Math.round(stats[MetricsDto.NUMBER]);
+            fields.put(field(operationType, COUNT), String.valueOf(count));
+            double average = Double.isNaN(stats[MetricsDto.AVERAGE]) ? 0 : stats[MetricsDto.AVERAGE];
+            fields.put(field(operationType, SUM), String.valueOf(Math.round(average * count)));
+            if (!Double.isNaN(stats[MetricsDto.MIN])) {
+                fields.put(field(operationType, MIN), String.valueOf(Math.round(stats[MetricsDto.MIN])));
+            }
+            if (!Double.isNaN(stats[MetricsDto.MAX])) {
+                fields.put(field(operationType, MAX), String.valueOf(Math.round(stats[MetricsDto.MAX])));
+            }
+        }
+        if (!fields.isEmpty()) {
+            fields.put(UNIT, metrics.getTimeUnit().getSymbol());
+        }
+        return fields;
+    }
+
+    /**
+     * Reconstruit la vue agrégée d'une opération à partir des valeurs lues par HMGET sur {@link #fields}
+     *
+     * @return null si l'opération n'a jamais été enregistrée
+     */
+    public static MetricsAggregated toAggregated(String typeCarte, String operationType, List<?> values) {
+        if (values == null || values.isEmpty() || values.get(0) == null) {
+            return null;
+        }
+        long count = parseLong(values.get(0));
+        long sum = parseLong(values.get(1));
+        MetricsAggregated aggregated = new MetricsAggregated(typeCarte, operationType, count, sum,
+                count == 0 ? 0.0 : (double) sum / count, parseLong(values.get(2)), parseLong(values.get(3)));
+        aggregated.setLastUpdated(parseLong(values.get(4)));
+        if (values.size() > 5 && values.get(5) != null) {
+            aggregated.setUnit(values.get(5).toString());
+        }
+        return aggregated;
+    }
+
+    private static long parseLong(Object value) {
+        return value == null ? 0 : (long) Double.parseDouble(value.toString());
+    }
+}
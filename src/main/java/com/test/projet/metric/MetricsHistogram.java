@@ -0,0 +1,150 @@
+package com.test.projet.metric;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Histogramme log-linéaire des temps d'exécution, stocké dans le hash
+ * {@code metrics-histogram:{typeCarte}:{op}} : un champ par bucket, incrémenté par HINCRBY.
+ *
+ * Les valeurs sont exprimées en nanosecondes quelle que soit l'unité de stockage
+ * ({@code metrics.time-unit}) : les buckets sont fixes, identiques pour toutes les instances, et
+ * deux histogrammes se fusionnent en additionnant leurs compteurs bucket par bucket.
+ *
+ * Découpage : les valeurs 0 à 7 ont chacune leur bucket, puis chaque puissance de deux est
+ * divisée en 8 buckets de même largeur. L'erreur relative d'un percentile est donc au plus de
+ * 1/16 (milieu d'un bucket de largeur 1/8 de sa borne inférieure), sur toute la plage des longs
+ * et en au plus {@link #MAX_BUCKET} + 1 champs.
+ */
+public final class MetricsHistogram {
+
+    /** Nombre de bits de mantisse conservés : 2^3 = 8 buckets par puissance de deux */
+    static final int SUB_BUCKET_BITS = 3;
+
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Index du bucket contenant {@code Long.MAX_VALUE} */
+    public static final int MAX_BUCKET = bucketOf(Long.MAX_VALUE);
+
+    private MetricsHistogram() {}
+
+    /**
+     * Index du bucket d'une valeur (les valeurs négatives sont ramenées à 0)
+     */
+    public static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(value, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Plus petite valeur du bucket
+     */
+    public static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+        return (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+    }
+
+    /**
+     * Plus grande valeur du bucket
+     */
+    public static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+        return lowerBound(bucket) + (1L << shift) - 1;
+    }
+
+    /**
+     * Valeur représentative du bucket (milieu), utilisée pour les percentiles
+     */
+    public static long midpoint(int bucket) {
+        long lower = lowerBound(bucket);
+        return lower + (upperBound(bucket) - lower) / 2;
+    }
+
+    /**
+     * Convertit des buckets calculés sur des durées exprimées en {@code unit} en buckets sur les
+     * nanosecondes. Chaque bucket source est reporté au bucket de sa valeur représentative :
+     * exact pour les petites valeurs, à la largeur d'un bucket près au-delà.
+     *
+     * @return les buckets convertis, triés par index
+     */
+    public static Map<Integer, Long> toNanos(Map<Integer, Long> buckets, MetricsTimeUnit unit) {
+        Map<Integer, Long> converted = new TreeMap<>();
+        buckets.forEach((bucket, count) -> {
+            long value = midpoint(bucket);
+            long nanos = value > Long.MAX_VALUE / unit.getNanos() ? Long.MAX_VALUE : value * unit.getNanos();
+            converted.merge(bucketOf(nanos), count, Long::sum);
+        });
+        return converted;
+    }
+
+    /**
+     * Lit le contenu d'un hash d'histogramme ; les champs non numériques sont ignorés
+     */
+    public static Map<Integer, Long> fromHash(Map<Object, Object> entries) {
+        Map<Integer, Long> buckets = new TreeMap<>();
+        if (entries == null) {
+            return buckets;
+        }
+        entries.forEach((field, value) -> {
+            try {
+                int bucket = Integer.parseInt(String.valueOf(field));
+                long count = Long.parseLong(String.valueOf(value));
+                if (bucket >= 0 && bucket <= MAX_BUCKET && count > 0) {
+                    buckets.merge(bucket, count, Long::sum);
+                }
+            } catch (NumberFormatException e) {
+                // Champ étranger à l'histogramme
+            }
+        });
+        return buckets;
+    }
+
+    /**
+     * Additionne les compteurs de {@code other} dans {@code target}
+     */
+    public static Map<Integer, Long> merge(Map<Integer, Long> target, Map<Integer, Long> other) {
+        other.forEach((bucket, count) -> target.merge(bucket, count, Long::sum));
+        return target;
+    }
+
+    public static long totalCount(Map<Integer, Long> buckets) {
+        long total = 0;
+        for (long count : buckets.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Valeur du quantile {@code quantile} (entre 0 et 1), au milieu du bucket qui le contient
+     *
+     * @return la valeur estimée, ou -1 si l'histogramme est vide
+     */
+    public static long percentile(Map<Integer, Long> buckets, double quantile) {
+        long total = totalCount(buckets);
+        if (total == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        int last = 0;
+        for (Map.Entry<Integer, Long> entry : new TreeMap<>(buckets).entrySet()) {
+            seen += entry.getValue();
+            last = entry.getKey();
+            if (seen >= rank) {
+                return midpoint(last);
+            }
+        }
+        return midpoint(last);
+    }
+}
@@ -0,0 +1,237 @@
+package com.test.projet.metric;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+/**
+ * Historique des métriques par (typeCarte, operationType), en quatre niveaux ({@link MetricsHistoryTier}).
+ *
+ * Chaque niveau est un hash {@code metrics-history:{niveau}:{typeCarte}:{op}} dont les champs sont les
+ * débuts de bucket (epoch, secondes) et les valeurs {@code "count sum min max"} (durées en nanosecondes).
+ * Le niveau 10 s est alimenté par le script d'accumulation (ou {@code metrics-history.lua} pour les
+ * chemins hors script) ; les suivants par {@link MetricsRollupEngine}, qui applique aussi la rétention
+ * de chaque niveau.
+ *
+ * Une requête lit le niveau le plus grossier qui respecte la résolution demandée et dont la rétention
+ * couvre la plage : quelques centaines de points par HMGET, quelle que soit la longueur de la plage.
+ * Le début de la plage est ramené à la rétention du niveau 1 jour et la lecture bornée à
+ * {@link #MAX_POINTS} buckets (les plus récents).
+ */
+@Component
+public class MetricsHistoryStore {
+
+    static final RedisScript<Long> HISTORY_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/metrics-history.lua"), Long.class);
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsHistoryStore.class);
+
+    /** Nombre maximal de buckets lus par requête */
+    static final int MAX_POINTS = 10_000;
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    private final Map<MetricsHistoryTier, Long> retentionSeconds = new EnumMap<>(MetricsHistoryTier.class);
+
+    public MetricsHistoryStore(StringRedisTemplate redisTemplate,
+            @Value("${metrics.history.enabled:false}") boolean enabled,
+            @Value("${metrics.history.retention-minutes.ten-seconds:360}") long tenSecondsRetention,
+            @Value("${metrics.history.retention-minutes.minute:10080}") long minuteRetention,
+            @Value("${metrics.history.retention-minutes.hour:129600}") long hourRetention,
+            @Value("${metrics.history.retention-minutes.day:2628000}") long dayRetention) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        long[] minutes = {tenSecondsRetention, minuteRetention, hourRetention, dayRetention};
+        for (MetricsHistoryTier tier : MetricsHistoryTier.values()) {
+            long retention = minutes[tier.ordinal()] * 60;
+            // Le compactage lit un bucket complet du niveau suivant, plus le délai de grâce
+            long minimum = tier.next() != null ? 2 * tier.next().getSeconds() + tier.getSeconds() : tier.getSeconds();
+            if (retention < minimum) {
+                LOG.warn("History retention of tier {} raised to {} s", tier.getLabel(), minimum);
+                retention = minimum;
+            }
+            retentionSeconds.put(tier, retention);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long retentionSeconds(MetricsHistoryTier tier) {
+        return retentionSeconds.get(tier);
+    }
+
+    /**
+     * Clé du niveau 10 s, seul niveau écrit à l'ingestion
+     */
+    public String key(String typeCarte, String operationType) {
+        return MetricsKeys.historyKey(MetricsHistoryTier.TEN_SECONDS, typeCarte, operationType);
+    }
+
+    /**
+     * Début (epoch, secondes) du bucket 10 s d'un horodatage en millisecondes
+     */
+    public static long bucket(long now) {
+        return MetricsHistoryTier.TEN_SECONDS.bucketStart(Math.floorDiv(now, 1000L));
+    }
+
+    /**
+     * Met à jour le bucket 10 s courant hors script d'accumulation
+     */
+    public void record(MetricsDelta delta, long now, MetricsTimeUnit unit) {
+        if (!enabled || delta.isEmpty()) {
+            return;
+        }
+        try {
+            long nanos = unit.getNanos();
+            long mean = delta.getSum() / delta.getCount();
+            redisTemplate.execute(HISTORY_SCRIPT,
+                    List.of(key(delta.getTypeCarte(), delta.getOperationType())),
+                    String.valueOf(bucket(now)),
+                    String.valueOf(retentionSeconds(MetricsHistoryTier.TEN_SECONDS)),
+                    String.valueOf(delta.getCount()),
+                    String.valueOf(delta.getSum() * nanos),
+                    String.valueOf((delta.hasExtremes() ? delta.getMin() : mean) * nanos),
+                    String.valueOf((delta.hasExtremes() ? delta.getMax() : mean) * nanos));
+        } catch (Exception e) {
+            LOG.error("Error while updating history for {}/{}: ", delta.getTypeCarte(), delta.getOperationType(), e);
+        }
+    }
+
+    /**
+     * Choisit le niveau à lire : le plus grossier dont la résolution reste inférieure ou égale au pas
+     * demandé et dont la rétention couvre {@code from} ; à défaut, le plus fin qui couvre la plage.
+     *
+     * @param from début de la plage (epoch, secondes)
+     * @param to fin de la plage (epoch, secondes)
+     * @param step pas souhaité entre deux points, en secondes
+     * @param now horodatage courant (epoch, secondes)
+     */
+    public MetricsHistoryTier selectTier(long from, long to, long step, long now) {
+        MetricsHistoryTier coarsestFitting = null;
+        MetricsHistoryTier finestCovering = null;
+        for (MetricsHistoryTier tier : MetricsHistoryTier.values()) {
+            boolean covers = now - retentionSeconds(tier) <= from;
+            boolean bounded = (to - from) / tier.getSeconds() < MAX_POINTS;
+            if (!covers || !bounded) {
+                continue;
+            }
+            if (finestCovering == null) {
+                finestCovering = tier;
+            }
+            if (tier.getSeconds() <= step) {
+                coarsestFitting = tier;
+            }
+        }
+        if (coarsestFitting != null) {
+            return coarsestFitting;
+        }
+        return finestCovering != null ? finestCovering : MetricsHistoryTier.DAY;
+    }
+
+    /**
+     * Série d'un couple (typeCarte, operationType) sur une plage
+     *
+     * @param from début de la plage (epoch, ms), ramené au plus ancien bucket lisible
+     * @param to fin de la plage (epoch, ms)
+     * @param resolution pas souhaité en secondes, ou 0 pour le déduire de {@code maxPoints}
+     * @param maxPoints nombre de points visé quand la résolution n'est pas imposée
+     * @param unit l'unité des durées retournées
+     */
+    public HistoryResponse query(String typeCarte, String operationType, long from, long to,
+            long resolution, int maxPoints, MetricsTimeUnit unit) {
+        long now = System.currentTimeMillis() / 1000L;
+        // Rien n'est conservé au-delà de la rétention du niveau le plus grossier
+        long fromSeconds = Math.max(Math.floorDiv(from, 1000L), now - retentionSeconds(MetricsHistoryTier.DAY));
+        long toSeconds = Math.floorDiv(to, 1000L);
+        long step = resolution > 0 ? resolution : Math.max(1, (toSeconds - fromSeconds) / Math.max(1, maxPoints));
+        MetricsHistoryTier tier = selectTier(fromSeconds, toSeconds, step, now);
+        // Au plus MAX_POINTS buckets lus, même si aucun niveau ne couvre la plage à cette taille
+        fromSeconds = Math.max(fromSeconds, toSeconds - (MAX_POINTS - 1) * tier.getSeconds());
+
+        List<Object> fields = new ArrayList<>();
+        for (long start = tier.bucketStart(fromSeconds); start <= toSeconds; start += tier.getSeconds()) {
+            fields.add(String.valueOf(start));
+        }
+        HashOperations<String, Object, Object> hashOperations = redisTemplate.opsForHash();
+        List<Object> values = fields.isEmpty() ? List.of()
+                : hashOperations.multiGet(MetricsKeys.historyKey(tier, typeCarte, operationType), fields);
+
+        HistoryResponse response = new HistoryResponse();
+        response.setTypeCarte(typeCarte);
+        response.setOperationType(operationType);
+        response.setTier(tier.getLabel());
+        response.setResolutionSeconds(tier.getSeconds());
+        response.setFrom(Math.max(from, fromSeconds * 1000L));
+        response.setTo(to);
+        response.setUnit(unit.getSymbol());
+        double nanos = unit.getNanos();
+        List<HistoryResponse.Point> points = new ArrayList<>();
+        for (int i = 0; i < fields.size() && i < values.size(); i++) {
+            Bucket bucket = Bucket.parse(values.get(i));
+            if (bucket == null || bucket.count == 0) {
+                continue;
+            }
+            points.add(new HistoryResponse.Point(Long.parseLong((String) fields.get(i)) * 1000L, bucket.count,
+                    bucket.sum / nanos / bucket.count, bucket.min / nanos, bucket.max / nanos));
+        }
+        response.setPoints(points);
+        return response;
+    }
+
+    /**
+     * Contenu d'un bucket d'historique : {@code "count sum min max"}, durées en nanosecondes
+     */
+    public static final class Bucket {
+        final long count;
+        final long sum;
+        final long min;
+        final long max;
+
+        Bucket(long count, long sum, long min, long max) {
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * @return le bucket, ou null si la valeur est absente ou illisible
+         */
+        static Bucket parse(Object value) {
+            if (value == null) {
+                return null;
+            }
+            String[] parts = String.valueOf(value).split(" ");
+            if (parts.length != 4) {
+                return null;
+            }
+            try {
+                return new Bucket(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                        Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        Bucket merge(Bucket other) {
+            return new Bucket(count + other.count, sum + other.sum,
+                    Math.min(min, other.min), Math.max(max, other.max));
+        }
+
+        String format() {
+            return count + " " + sum + " " + min + " " + max;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.test.projet.metric;
+
+/**
+ * Niveaux de l'historique des métriques, du plus fin au plus grossier.
+ *
+ * Seul {@link #TEN_SECONDS} est alimenté à l'écriture ; chaque niveau suivant est obtenu par
+ * compactage du précédent ({@link MetricsRollupEngine}). La rétention d'un niveau doit couvrir au
+ * moins un bucket du niveau suivant pour que le compactage trouve ses données.
+ */
+public enum MetricsHistoryTier {
+
+    TEN_SECONDS("10s", 10L),
+    MINUTE("1m", 60L),
+    HOUR("1h", 3_600L),
+    DAY("1d", 86_400L);
+
+    private final String label;
+    private final long seconds;
+
+    MetricsHistoryTier(String label, long seconds) {
+        this.label = label;
+        this.seconds = seconds;
+    }
+
+    /**
+     * Libellé utilisé dans les clés Redis et l'API : 10s, 1m, 1h ou 1d
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Résolution du niveau, en secondes
+     */
+    public long getSeconds() {
+        return seconds;
+    }
+
+    /**
+     * Niveau alimenté par le compactage de celui-ci, ou null pour le plus grossier
+     */
+    public MetricsHistoryTier next() {
+        MetricsHistoryTier[] tiers = values();
+        return ordinal() + 1 < tiers.length ? tiers[ordinal() + 1] : null;
+    }
+
+    /**
+     * Début (epoch, secondes) du bucket contenant {@code epochSeconds}
+     */
+    public long bucketStart(long epochSeconds) {
+        return epochSeconds - Math.floorMod(epochSeconds, seconds);
+    }
+
+    public static MetricsHistoryTier fromLabel(String label) {
+        for (MetricsHistoryTier tier : values()) {
+            if (tier.label.equalsIgnoreCase(label) || tier.name().equalsIgnoreCase(label)) {
+                return tier;
+            }
+        }
+        throw new IllegalArgumentException("Niveau d'historique inconnu : " + label);
+    }
+}
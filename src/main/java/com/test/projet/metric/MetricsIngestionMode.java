@@ -0,0 +1,17 @@
+package com.test.projet.metric;
+
+/**
+ * Mode d'ingestion des métriques collectées par @CardMetrics
+ * (propriété {@code metrics.ingestion.mode}).
+ */
+public enum MetricsIngestionMode {
+
+    /** Écriture Redis synchrone sur le thread métier (comportement historique) */
+    SYNC,
+
+    /** Cumul en mémoire puis écriture différée, par lot, toutes les N ms */
+    WRITE_BEHIND,
+
+    /** File bornée partitionnée par typeCarte, un thread écrivain par partition */
+    ASYNC
+}
@@ -0,0 +1,337 @@
+package com.test.projet.metric;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.stereotype.Component;
+
+import com.test.projet.metric.sketch.MetricsSketchRegistry;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Pipeline d'ingestion asynchrone pour le mode {@link MetricsIngestionMode#ASYNC}.
+ *
+ * Les événements sont répartis par hash du typeCarte dans des files bornées ; chaque partition
+ * est consommée par un unique thread écrivain, ce qui conserve l'ordre par clé sans verrou
+ * applicatif. Le thread métier ne paie que la mise en file. Chaque écrivain regroupe les
+ * événements disponibles par (typeCarte, operationType) et les applique en un seul pipeline.
+ *
+ * Un événement accepté n'est pas abandonné si Redis est injoignable : les deltas en échec sont
+ * conservés par la partition et fusionnés dans son écriture suivante, comme le fait
+ * {@link MetricsWriteBehindBuffer}. Ils sont comptés dans {@code metrics.ingestion.failed}, distinct
+ * de {@code metrics.ingestion.dropped} (débordement des files).
+ */
+@Component
+public class MetricsIngestionPipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsIngestionPipeline.class);
+
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    /**
+     * Politique appliquée quand une partition est saturée
+     */
+    public enum OverflowPolicy {
+        /** L'événement est abandonné si la file est pleine */
+        DROP,
+        /** Le thread métier attend qu'une place se libère */
+        BLOCK,
+        /**
+         * Au-delà de 75 % de remplissage, un événement sur N de chaque (typeCarte, operationType) est
+         * conservé avec un poids N, ce qui garde les compteurs et moyennes de chaque clé non biaisés ;
+         * abandon si la file est pleine
+         */
+        SAMPLE
+    }
+
+    private final MetricsAccumulationEngine accumulationEngine;
+    private final MetricsSketchRegistry sketchRegistry;
+    private final MetricsIngestionMode ingestionMode;
+    private final OverflowPolicy overflowPolicy;
+    private final int capacity;
+    private final int batchSize;
+    private final int sampleRate;
+    private final int highWatermark;
+    private final Partition[] partitions;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private volatile boolean running;
+
+    public MetricsIngestionPipeline(MetricsAccumulationEngine accumulationEngine, MetricsSketchRegistry sketchRegistry,
+            MeterRegistry meterRegistry,
+            @Value("${metrics.ingestion.mode:SYNC}") MetricsIngestionMode ingestionMode,
+            @Value("${metrics.ingestion.async.partitions:4}") int partitionCount,
+            @Value("${metrics.ingestion.async.capacity:8192}") int capacity,
+            @Value("${metrics.ingestion.async.batch-size:512}") int batchSize,
+            @Value("${metrics.ingestion.async.overflow-policy:DROP}") OverflowPolicy overflowPolicy,
+            @Value("${metrics.ingestion.async.sample-rate:10}") int sampleRate) {
+        this.accumulationEngine = accumulationEngine;
+        this.sketchRegistry = sketchRegistry;
+        this.ingestionMode = ingestionMode;
+        this.overflowPolicy = overflowPolicy;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.highWatermark = capacity * 3 / 4;
+        // Files et jauges allouées uniquement si le pipeline est utilisé
+        this.partitions = new Partition[ingestionMode == MetricsIngestionMode.ASYNC ? Math.max(1, partitionCount) : 0];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition(i, capacity);
+            Gauge.builder("metrics.ingestion.queue.depth", partitions[i].queue, ArrayBlockingQueue::size)
+                    .description("Événements en attente d'écriture dans Redis")
+                    .tag("partition", String.valueOf(i))
+                    .register(meterRegistry);
+        }
+        meterRegistry.gauge("metrics.ingestion.dropped", dropped, LongAdder::doubleValue);
+        meterRegistry.gauge("metrics.ingestion.sampled.out", sampledOut, LongAdder::doubleValue);
+        meterRegistry.gauge("metrics.ingestion.failed", failed, LongAdder::doubleValue);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (ingestionMode != MetricsIngestionMode.ASYNC) {
+            return;
+        }
+        running = true;
+        for (Partition partition : partitions) {
+            partition.worker = new Thread(() -> runWorker(partition), "metrics-ingestion-" + partition.index);
+            partition.worker.setDaemon(true);
+            partition.worker.start();
+        }
+        LOG.info("Pipeline d'ingestion asynchrone actif ({} partitions x {} événements, politique {})",
+                partitions.length, capacity, overflowPolicy);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        // Les écrivains vident leur file avant de s'arrêter
+        running = false;
+        for (Partition partition : partitions) {
+            try {
+                partition.worker.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Met un événement en file selon la politique de débordement.
+     *
+     * @return true si l'événement a été accepté (éventuellement échantillonné), false s'il est abandonné
+     * @throws IllegalStateException si le mode d'ingestion n'est pas {@link MetricsIngestionMode#ASYNC}
+     */
+    public boolean submit(String typeCarte, String operationType, long executionTime) {
+        if (partitions.length == 0) {
+            throw new IllegalStateException("Pipeline d'ingestion inactif (metrics.ingestion.mode=" + ingestionMode + ")");
+        }
+        Partition partition = partitions[(typeCarte.hashCode() & Integer.MAX_VALUE) % partitions.length];
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    partition.queue.put(new MetricsEvent(typeCarte, operationType, executionTime, 1));
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.increment();
+                    return false;
+                }
+            case SAMPLE:
+                if (partition.queue.size() >= highWatermark) {
+                    if (partition.sampleCounter(typeCarte, operationType).incrementAndGet() % sampleRate != 0) {
+                        sampledOut.increment();
+                        return true;
+                    }
+                    return offer(partition, new MetricsEvent(typeCarte, operationType, executionTime, sampleRate));
+                }
+                return offer(partition, new MetricsEvent(typeCarte, operationType, executionTime, 1));
+            case DROP:
+            default:
+                return offer(partition, new MetricsEvent(typeCarte, operationType, executionTime, 1));
+        }
+    }
+
+    private boolean offer(Partition partition, MetricsEvent event) {
+        if (partition.queue.offer(event)) {
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    private void runWorker(Partition partition) {
+        List<MetricsEvent> batch = new ArrayList<>(batchSize);
+        while (running || !partition.queue.isEmpty()) {
+            try {
+                MetricsEvent first = partition.queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    partition.queue.drainTo(batch, batchSize - 1);
+                }
+                if (!batch.isEmpty() || !partition.retry.isEmpty()) {
+                    write(partition, batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                failed.add(batch.size());
+                LOG.error("Error while writing metrics batch of partition {}: ", partition.index, e);
+            } finally {
+                batch.clear();
+            }
+        }
+        // Dernière tentative pour les deltas en échec avant l'arrêt
+        if (!partition.retry.isEmpty()) {
+            write(partition, List.of());
+        }
+        if (!partition.retry.isEmpty()) {
+            long lost = partition.retry.stream().mapToLong(MetricsDelta::getCount).sum();
+            LOG.warn("{} metrics events of partition {} lost at shutdown: Redis writes kept failing", lost, partition.index);
+        }
+    }
+
+    /**
+     * Regroupe un lot d'événements par (typeCarte, operationType), y fusionne les deltas en échec de
+     * la partition et l'applique en un aller-retour. Les deltas non écrits sont conservés pour
+     * l'écriture suivante.
+     */
+    private void write(Partition partition, List<MetricsEvent> batch) {
+        Map<String, Map<String, MetricsDelta>> grouped = new LinkedHashMap<>();
+        for (MetricsEvent event : batch) {
+            grouped.computeIfAbsent(event.typeCarte, key -> new LinkedHashMap<>())
+                    .computeIfAbsent(event.operationType, key -> new MetricsDelta(event.typeCarte, key))
+                    .record(event.executionTime, event.weight);
+            sketchRegistry.record(event.typeCarte, event.operationType, event.executionTime, event.weight);
+        }
+        // Les sketches des deltas en échec ont déjà été alimentés : seuls les compteurs sont rejoués
+        for (MetricsDelta delta : partition.retry) {
+            grouped.computeIfAbsent(delta.getTypeCarte(), key -> new LinkedHashMap<>())
+                    .computeIfAbsent(delta.getOperationType(), key -> new MetricsDelta(delta.getTypeCarte(), key))
+                    .merge(delta);
+        }
+        partition.retry.clear();
+        List<MetricsDelta> deltas = new ArrayList<>();
+        grouped.values().forEach(operations -> deltas.addAll(operations.values()));
+        try {
+            accumulationEngine.applyAll(deltas);
+        } catch (RedisPipelineException e) {
+            // Seuls les deltas en échec sont conservés : les autres sont écrits et ne doivent pas être rejoués
+            List<Object> results = e.getResults();
+            for (int i = 0; i < deltas.size(); i++) {
+                if (i >= results.size() || results.get(i) instanceof Throwable) {
+                    partition.retry.add(deltas.get(i));
+                }
+            }
+            retryLater(partition, e);
+        } catch (RuntimeException e) {
+            partition.retry.addAll(deltas);
+            retryLater(partition, e);
+        }
+    }
+
+    private void retryLater(Partition partition, RuntimeException e) {
+        long events = partition.retry.stream().mapToLong(MetricsDelta::getCount).sum();
+        failed.add(events);
+        LOG.warn("Metrics write of partition {} failed, {} events kept for the next write: {}",
+                partition.index, events, e.getMessage());
+    }
+
+    /**
+     * Profondeur courante de chaque partition
+     */
+    public int[] getQueueDepths() {
+        int[] depths = new int[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            depths[i] = partitions[i].queue.size();
+        }
+        return depths;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getSampledOutCount() {
+        return sampledOut.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private static final class Partition {
+        private final int index;
+        private final ArrayBlockingQueue<MetricsEvent> queue;
+        /** Compteurs d'échantillonnage par (typeCarte, operationType) : une clé peu fréquente n'est pas biaisée par les autres */
+        private final Map<String, Map<String, AtomicLong>> sampleCounters = new ConcurrentHashMap<>();
+        /** Deltas dont l'écriture a échoué, fusionnés dans l'écriture suivante (thread écrivain uniquement) */
+        private final List<MetricsDelta> retry = new ArrayList<>();
+        private Thread worker;
+
+        Partition(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        AtomicLong sampleCounter(String typeCarte, String operationType) {
+            Map<String, AtomicLong> operations = sampleCounters.get(typeCarte);
+            if (operations == null) {
+                operations = sampleCounters.computeIfAbsent(typeCarte, key -> new ConcurrentHashMap<>());
+            }
+            AtomicLong counter = operations.get(operationType);
+            if (counter == null) {
+                counter = operations.computeIfAbsent(operationType, key -> new AtomicLong());
+            }
+            return counter;
+        }
+    }
+
+    static final class MetricsEvent {
+        private final String typeCarte;
+        private final String operationType;
+        private final long executionTime;
+        private final long weight;
+
+        MetricsEvent(String typeCarte, String operationType, long executionTime, long weight) {
+            this.typeCarte = typeCarte;
+            this.operationType = operationType;
+            this.executionTime = executionTime;
+            this.weight = weight;
+        }
+    }
+}
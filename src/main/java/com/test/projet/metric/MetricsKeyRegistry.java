@@ -0,0 +1,445 @@
+package com.test.projet.metric;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Registre des clés de métriques, sans parcours du keyspace.
+ *
+ * Chaque écriture ajoute (ZADD, score = horodatage en ms) le typeCarte à {@code metrics-registry:cards}
+ * et l'opération à {@code metrics-registry:ops} et {@code metrics-registry:ops:{typeCarte}} ; le script
+ * d'accumulation le fait dans le même EVALSHA que les compteurs. Les listes de types, d'opérations et de
+ * clés (exports, getAllRedisKeys) sont lues dans ces ensembles triés, les plus récents d'abord.
+ *
+ * Le journal des modifications de l'export incrémental ({@link #changedSince}) est un ensemble distinct,
+ * {@code metrics-registry:changes}, dont le score est un numéro de séquence attribué par Redis (INCR de
+ * {@code metrics-registry:seq}) dans la même écriture : contrairement aux horodatages des instances, il
+ * ne recule jamais, et une modification postérieure à un curseur a toujours un numéro supérieur.
+ *
+ * Un filtre de Bloom local répond « type de carte inconnu » sans aller-retour Redis. Il est chargé au
+ * démarrage puis complété toutes les {@code metrics.registry.refresh-interval-ms} ms par les typeCartes
+ * mis à jour entre-temps (autres instances) : un type créé par une autre instance peut être déclaré
+ * inconnu pendant au plus cet intervalle. Tant qu'il n'est pas chargé, le filtre ne refuse rien.
+ *
+ * Si le registre est absent au démarrage (données antérieures), il est reconstruit une fois par SCAN
+ * de {@code metrics:*}.
+ */
+@Component
+public class MetricsKeyRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsKeyRegistry.class);
+
+    static final RedisScript<Long> CHANGE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/metrics-registry-change.lua"), Long.class);
+
+    /** Source du script, pour l'inclure dans une transaction ou un pipeline (EVAL) */
+    private static final byte[] CHANGE_SCRIPT_SOURCE = bytes(CHANGE_SCRIPT.getScriptAsString());
+
+    /** Marge sur les horloges des autres instances pour le rafraîchissement incrémental */
+    private static final long CLOCK_MARGIN_MS = 60_000;
+
+    private final StringRedisTemplate redisTemplate;
+    private final MetricsKeyspaceIterator keyspaceIterator;
+    private final MetricsBloomFilter bloomFilter;
+    private final long refreshIntervalMs;
+
+    private volatile boolean loaded;
+    private volatile long refreshedUntil;
+    private ScheduledExecutorService scheduler;
+
+    public MetricsKeyRegistry(StringRedisTemplate redisTemplate, MetricsKeyspaceIterator keyspaceIterator,
+            @Value("${metrics.registry.bloom.expected-insertions:100000}") long expectedInsertions,
+            @Value("${metrics.registry.bloom.fpp:0.01}") double fpp,
+            @Value("${metrics.registry.refresh-interval-ms:5000}") long refreshIntervalMs) {
+        this.redisTemplate = redisTemplate;
+        this.keyspaceIterator = keyspaceIterator;
+        this.bloomFilter = new MetricsBloomFilter(expectedInsertions, fpp);
+        this.refreshIntervalMs = Math.max(100, refreshIntervalMs);
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            if (!Boolean.TRUE.equals(redisTemplate.hasKey(MetricsKeys.registryCardsKey()))) {
+                rebuild();
+            } else if (!Boolean.TRUE.equals(redisTemplate.hasKey(MetricsKeys.registryChangesKey()))) {
+                seedChanges();
+            }
+            refresh();
+            loaded = true;
+        } catch (Exception e) {
+            LOG.error("Error while loading metrics key registry: ", e);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-key-registry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+            loaded = true;
+        } catch (Exception e) {
+            LOG.error("Error while refreshing metrics key registry: ", e);
+        }
+    }
+
+    /**
+     * Ajoute au filtre local les typeCartes mis à jour depuis le dernier rafraîchissement
+     */
+    void refresh() {
+        long now = System.currentTimeMillis();
+        double since = refreshedUntil == 0 ? Double.NEGATIVE_INFINITY : refreshedUntil - refreshIntervalMs - CLOCK_MARGIN_MS;
+        Set<String> cards = redisTemplate.opsForZSet().rangeByScore(MetricsKeys.registryCardsKey(),
+                since, Double.POSITIVE_INFINITY);
+        if (cards != null) {
+            cards.forEach(bloomFilter::put);
+        }
+        refreshedUntil = now;
+    }
+
+    /**
+     * Reconstruit le registre à partir des clés existantes : {@code metrics:{typeCarte}} et
+     * {@code metrics:{typeCarte}:{op}} ; les {@code metrics:{entité}:{op}} sans carte sont inscrits au
+     * registre CRUD. Les opérations des cartes en disposition hash, sans clé propre,
+     * sont enregistrées à leur prochaine écriture.
+     */
+    void rebuild() {
+        Set<String> cards = new LinkedHashSet<>();
+        Map<String, Set<String>> operations = new LinkedHashMap<>();
+        long visited = keyspaceIterator.forEachPage("metrics:*", keys -> keys.forEach(key -> {
+            String suffix = key.substring("metrics:".length());
+            int separator = suffix.indexOf(':');
+            if (separator < 0) {
+                cards.add(suffix);
+            } else if (separator > 0 && suffix.indexOf(':', separator + 1) < 0) {
+                operations.computeIfAbsent(suffix.substring(0, separator), card -> new LinkedHashSet<>())
+                        .add(suffix.substring(separator + 1));
+            }
+        }));
+        // Les clés {entité}:{op} sans vue par carte sont celles de MetricsAggregator : pas des types de carte
+        Set<String> crudPairs = new LinkedHashSet<>();
+        operations.forEach((entity, ops) -> {
+            if (!cards.contains(entity)) {
+                ops.forEach(op -> crudPairs.add(entity + ":" + op));
+            }
+        });
+        operations.keySet().retainAll(cards);
+        double now = System.currentTimeMillis();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String card : cards) {
+                connection.zSetCommands().zAdd(bytes(MetricsKeys.registryCardsKey()), now, bytes(card));
+                recordChange(connection, card);
+            }
+            operations.forEach((card, ops) -> ops.forEach(op -> {
+                connection.zSetCommands().zAdd(bytes(MetricsKeys.registryOperationsKey()), now, bytes(op));
+                connection.zSetCommands().zAdd(bytes(MetricsKeys.registryOperationsKey(card)), now, bytes(op));
+            }));
+            for (String pair : crudPairs) {
+                connection.zSetCommands().zAdd(bytes(MetricsKeys.registryCrudKey()), now, bytes(pair));
+            }
+            return null;
+        });
+        LOG.info("Registre des clés reconstruit : {} types de carte ({} clés parcourues)", cards.size(), visited);
+    }
+
+    /**
+     * Inscrit au journal des modifications les cartes d'un registre antérieur au journal, des plus
+     * anciennes aux plus récentes : un consommateur qui part de 0 les exporte toutes
+     */
+    void seedChanges() {
+        Set<String> cards = orEmpty(redisTemplate.opsForZSet().range(MetricsKeys.registryCardsKey(), 0, -1));
+        if (cards.isEmpty()) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            cards.forEach(card -> recordChange(connection, card));
+            return null;
+        });
+        LOG.info("Journal des modifications initialisé : {} types de carte", cards.size());
+    }
+
+    /**
+     * Enregistre une écriture faite hors du script d'accumulation
+     */
+    public void record(String typeCarte, String operationType, long now) {
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.zSetCommands().zAdd(bytes(MetricsKeys.registryCardsKey()), now, bytes(typeCarte));
+            connection.zSetCommands().zAdd(bytes(MetricsKeys.registryOperationsKey()), now, bytes(operationType));
+            connection.zSetCommands().zAdd(bytes(MetricsKeys.registryOperationsKey(typeCarte)), now, bytes(operationType));
+            recordChange(connection, typeCarte);
+            return null;
+        });
+        remember(typeCarte);
+    }
+
+    /**
+     * Ajoute à une transaction ou un pipeline en cours l'inscription d'une modification de
+     * {@code typeCarte} au journal ({@code metrics-registry-change.lua})
+     */
+    static void recordChange(RedisConnection connection, String typeCarte) {
+        connection.scriptingCommands().eval(CHANGE_SCRIPT_SOURCE, ReturnType.INTEGER, 2,
+                bytes(MetricsKeys.registryChangesKey()), bytes(MetricsKeys.registrySequenceKey()), bytes(typeCarte));
+    }
+
+    /**
+     * Ajoute au filtre local un typeCarte écrit par cette instance
+     */
+    public void remember(String typeCarte) {
+        bloomFilter.put(typeCarte);
+    }
+
+    /**
+     * @return false si le typeCarte n'a certainement jamais été écrit
+     */
+    public boolean mightContain(String typeCarte) {
+        return !loaded || bloomFilter.mightContain(typeCarte);
+    }
+
+    /**
+     * Retire un typeCarte supprimé. Le filtre de Bloom ne supprime rien : le type reste « peut-être
+     * connu » et sa lecture retourne simplement une absence. La suppression est inscrite au journal
+     * des modifications : l'export incrémental la signale ({@code deleted}).
+     */
+    public void remove(String typeCarte) {
+        redisTemplate.opsForZSet().remove(MetricsKeys.registryCardsKey(), typeCarte);
+        redisTemplate.delete(MetricsKeys.registryOperationsKey(typeCarte));
+        redisTemplate.execute(CHANGE_SCRIPT, List.of(MetricsKeys.registryChangesKey(), MetricsKeys.registrySequenceKey()),
+                typeCarte);
+    }
+
+    /**
+     * @return les types de carte, les plus récemment mis à jour d'abord
+     */
+    public Set<String> getTypeCartes() {
+        return orEmpty(redisTemplate.opsForZSet().reverseRange(MetricsKeys.registryCardsKey(), 0, -1));
+    }
+
+    /**
+     * @return les types d'opération de toutes les cartes, les plus récemment mis à jour d'abord
+     */
+    public Set<String> getOperations() {
+        return orEmpty(redisTemplate.opsForZSet().reverseRange(MetricsKeys.registryOperationsKey(), 0, -1));
+    }
+
+    public Set<String> getOperations(String typeCarte) {
+        return orEmpty(redisTemplate.opsForZSet().reverseRange(MetricsKeys.registryOperationsKey(typeCarte), 0, -1));
+    }
+
+    /**
+     * @return les clés {@code metrics:{typeCarte}}
+     */
+    public List<String> cardKeys() {
+        List<String> keys = new ArrayList<>();
+        getTypeCartes().forEach(card -> keys.add(MetricsKeys.cardKey(card)));
+        return keys;
+    }
+
+    /**
+     * Clés {@code metrics:{typeCarte}} suivies de leurs {@code metrics:{typeCarte}:{op}}, les opérations
+     * de toutes les cartes étant lues en un seul pipeline
+     */
+    public List<String> keys() {
+        List<String> cards = new ArrayList<>(getTypeCartes());
+        if (cards.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return withOperations(cards);
+    }
+
+    /**
+     * Transmet les types de carte par pages de {@code pageSize}, sans charger le registre entier (ZSCAN de
+     * {@code metrics-registry:cards}). Une carte mise à jour pendant le parcours peut être transmise deux fois.
+     *
+     * @return le nombre de cartes transmises
+     */
+    public long forEachCardPage(int pageSize, Consumer<List<String>> consumer) {
+        return scanPages(MetricsKeys.registryCardsKey(), pageSize, consumer);
+    }
+
+    /**
+     * Transmet les couples {@code {entité}:{op}} des agrégats de {@link MetricsAggregator} par pages de
+     * {@code pageSize} (ZSCAN de {@code metrics-registry:crud})
+     *
+     * @return le nombre de couples transmis
+     */
+    public long forEachCrudPage(int pageSize, Consumer<List<String>> consumer) {
+        return scanPages(MetricsKeys.registryCrudKey(), pageSize, consumer);
+    }
+
+    /**
+     * Types de carte modifiés (écrits ou supprimés) strictement après le numéro de séquence {@code since},
+     * du plus ancien au plus récent, au plus {@code limit} ; le curseur rendu est le numéro de la dernière
+     * carte transmise. Une carte n'apparaît qu'une fois, à sa dernière modification : les valeurs exportées
+     * étant complètes, la relire est sans effet.
+     *
+     * Un curseur supérieur à la séquence courante (curseur horodaté d'une version antérieure, base
+     * réinitialisée) ne correspond à aucune modification : le journal est alors repris depuis le début.
+     */
+    public CardChanges changedSince(long since, int limit) {
+        int size = Math.max(1, limit);
+        long from = since;
+        if (from > 0 && from > currentSequence()) {
+            LOG.warn("Changes cursor {} is ahead of the registry sequence: changes are read from the start", since);
+            from = 0;
+        }
+        Set<ZSetOperations.TypedTuple<String>> range = redisTemplate.opsForZSet().rangeByScoreWithScores(
+                MetricsKeys.registryChangesKey(), from + 1, Double.POSITIVE_INFINITY, 0, size + 1);
+        List<ZSetOperations.TypedTuple<String>> tuples = range == null ? List.of() : new ArrayList<>(range);
+        List<String> cards = new ArrayList<>();
+        long cursor = from;
+        for (int i = 0; i < tuples.size() && i < size; i++) {
+            cards.add(tuples.get(i).getValue());
+            cursor = tuples.get(i).getScore().longValue();
+        }
+        return new CardChanges(cards, cursor, tuples.size() > size);
+    }
+
+    private long currentSequence() {
+        String sequence = redisTemplate.opsForValue().get(MetricsKeys.registrySequenceKey());
+        try {
+            return sequence == null ? 0 : Long.parseLong(sequence);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private long scanPages(String registryKey, int pageSize, Consumer<List<String>> consumer) {
+        ScanOptions options = ScanOptions.scanOptions().count(pageSize).build();
+        long total = 0;
+        List<String> page = new ArrayList<>(pageSize);
+        try (Cursor<ZSetOperations.TypedTuple<String>> cursor = redisTemplate.opsForZSet().scan(registryKey, options)) {
+            while (cursor.hasNext()) {
+                page.add(cursor.next().getValue());
+                total++;
+                if (page.size() >= pageSize) {
+                    consumer.accept(page);
+                    page = new ArrayList<>(pageSize);
+                }
+            }
+        }
+        if (!page.isEmpty()) {
+            consumer.accept(page);
+        }
+        return total;
+    }
+
+    /**
+     * Transmet les clés de {@link #keys()} par pages de {@code pageSize} cartes ({@link #forEachCardPage}),
+     * les opérations de chaque page étant lues en un pipeline
+     *
+     * @return le nombre de clés transmises
+     */
+    public long forEachKeyPage(int pageSize, Consumer<List<String>> consumer) {
+        long[] total = new long[1];
+        forEachCardPage(pageSize, cards -> {
+            List<String> keys = withOperations(cards);
+            total[0] += keys.size();
+            consumer.accept(keys);
+        });
+        return total[0];
+    }
+
+    /**
+     * @return les clés {@code metrics:{typeCarte}} des cartes données suivies de leurs
+     *         {@code metrics:{typeCarte}:{op}}, lues en un pipeline
+     */
+    public List<String> keys(List<String> cards) {
+        return cards.isEmpty() ? Collections.emptyList() : withOperations(cards);
+    }
+
+    private List<String> withOperations(List<String> cards) {
+        List<Object> operations = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            cards.forEach(card -> connection.zSetCommands().zRange(bytes(MetricsKeys.registryOperationsKey(card)), 0, -1));
+            return null;
+        });
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < cards.size(); i++) {
+            keys.add(MetricsKeys.cardKey(cards.get(i)));
+            if (i < operations.size() && operations.get(i) instanceof Set<?> ops) {
+                for (Object op : ops) {
+                    keys.add(MetricsKeys.redisKey(cards.get(i), String.valueOf(op)));
+                }
+            }
+        }
+        return keys;
+    }
+
+    private static Set<String> orEmpty(Set<String> values) {
+        return values == null ? Collections.emptySet() : values;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Page du journal des modifications ({@link #changedSince})
+     */
+    public static final class CardChanges {
+        private final List<String> typeCartes;
+        private final long cursor;
+        private final boolean more;
+
+        CardChanges(List<String> typeCartes, long cursor, boolean more) {
+            this.typeCartes = typeCartes;
+            this.cursor = cursor;
+            this.more = more;
+        }
+
+        public List<String> getTypeCartes() {
+            return typeCartes;
+        }
+
+        /**
+         * @return le numéro de séquence à repasser comme {@code since} pour la page suivante
+         */
+        public long getCursor() {
+            return cursor;
+        }
+
+        /**
+         * @return true si d'autres cartes ont été modifiées après le curseur
+         */
+        public boolean hasMore() {
+            return more;
+        }
+    }
+}
@@ -1,4 +1,3 @@
-
 package com.test.projet.metric;
 
 public final class MetricsKeys {
@@ -6,4 +5,58 @@ public final class MetricsKeys {
     public static String redisKey(String entity, String op) {
         return "metrics:" + entity + ":" + op;
     }
+    public static String cardKey(String typeCarte) {
+        return "metrics:" + typeCarte;
+    }
+    public static String histogramKey(String typeCarte, String op) {
+        return "metrics-histogram:" + typeCarte + ":" + op;
+    }
+    public static String windowKey(String typeCarte, String op, long slot) {
+        return "metrics-window:" + typeCarte + ":" + op + ":" + slot;
+    }
+    public static String sketchKey(String typeCarte, String op, long windowStart) {
+        return "metrics-sketch:" + typeCarte + ":" + op + ":" + windowStart;
+    }
+    public static String historyKey(MetricsHistoryTier tier, String typeCarte, String op) {
+        return historyPrefix(tier) + typeCarte + ":" + op;
+    }
+    public static String historyPrefix(MetricsHistoryTier tier) {
+        return "metrics-history:" + tier.getLabel() + ":";
+    }
+    public static String historyLockKey(MetricsHistoryTier tier) {
+        return "metrics-history-lock:" + tier.getLabel();
+    }
+    public static String historyWatermarkKey(MetricsHistoryTier tier) {
+        return "metrics-history-watermark:" + tier.getLabel();
+    }
+    public static String historyPurgeKey(MetricsHistoryTier tier) {
+        return "metrics-history-purged:" + tier.getLabel();
+    }
+    public static String registryCardsKey() {
+        return "metrics-registry:cards";
+    }
+    public static String registryChangesKey() {
+        return "metrics-registry:changes";
+    }
+    public static String registrySequenceKey() {
+        return "metrics-registry:seq";
+    }
+    public static String registryOperationsKey() {
+        return "metrics-registry:ops";
+    }
+    public static String registryOperationsKey(String typeCarte) {
+        return "metrics-registry:ops:" + typeCarte;
+    }
+    public static String registryCrudKey() {
+        return "metrics-registry:crud";
+    }
+    public static String seriesKey(String typeCarte, String op, long period) {
+        return "metrics-series:" + typeCarte + ":" + op + ":" + period;
+    }
+    public static String seriesIndexKey(String typeCarte, String op, long period) {
+        return "metrics-series-index:" + typeCarte + ":" + op + ":" + period;
+    }
+    public static String seriesHeadKey(String typeCarte, String op) {
+        return "metrics-series-head:" + typeCarte + ":" + op;
+    }
 }
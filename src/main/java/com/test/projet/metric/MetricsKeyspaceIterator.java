@@ -0,0 +1,166 @@
+package com.test.projet.metric;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Parcours du keyspace par pages, sans KEYS.
+ *
+ * Les clés sont énumérées par SCAN (curseur, Redis n'est jamais bloqué) et regroupées en pages de
+ * {@code metrics.keyspace.page-size} clés ; chaque page de valeurs est lue par un seul MGET. Pour N
+ * clés : environ N / page-size allers-retours au lieu de KEYS suivi d'un GET par clé.
+ *
+ * SCAN peut rendre une clé deux fois si le keyspace est redimensionné pendant le parcours : les
+ * consommateurs doivent être idempotents par clé (typiquement, un put dans une map).
+ */
+@Component
+public class MetricsKeyspaceIterator {
+
+    private final StringRedisTemplate redisTemplate;
+    private final int pageSize;
+
+    public MetricsKeyspaceIterator(StringRedisTemplate redisTemplate,
+            @Value("${metrics.keyspace.page-size:1000}") int pageSize) {
+        this.redisTemplate = redisTemplate;
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Transmet les clés correspondant à {@code pattern}, page par page
+     *
+     * @return le nombre de clés parcourues
+     */
+    public long forEachPage(String pattern, Consumer<List<String>> consumer) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(pageSize).build();
+        long total = 0;
+        List<String> page = new ArrayList<>(pageSize);
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                page.add(cursor.next());
+                total++;
+                if (page.size() >= pageSize) {
+                    consumer.accept(page);
+                    page = new ArrayList<>(pageSize);
+                }
+            }
+        }
+        if (!page.isEmpty()) {
+            consumer.accept(page);
+        }
+        return total;
+    }
+
+    /**
+     * Transmet la valeur brute de chaque clé chaîne correspondant à {@code pattern} (un MGET par page).
+     * Les clés d'un autre type Redis (hash...) et celles supprimées entre-temps sont ignorées.
+     *
+     * @return le nombre de clés parcourues
+     */
+    public long forEachValue(String pattern, BiConsumer<String, byte[]> consumer) {
+        return forEachPage(pattern, keys -> readValues(keys, consumer));
+    }
+
+    /**
+     * Transmet une liste de clés connue (registre des clés) par pages de {@code page-size} clés, sans SCAN
+     *
+     * @return le nombre de clés transmises
+     */
+    public long forEachPage(Collection<String> keys, Consumer<List<String>> consumer) {
+        List<String> page = new ArrayList<>(Math.min(pageSize, keys.size()));
+        for (String key : keys) {
+            page.add(key);
+            if (page.size() >= pageSize) {
+                consumer.accept(page);
+                page = new ArrayList<>(pageSize);
+            }
+        }
+        if (!page.isEmpty()) {
+            consumer.accept(page);
+        }
+        return keys.size();
+    }
+
+    /**
+     * Transmet la valeur brute de chaque clé chaîne d'une liste connue, un MGET par page
+     *
+     * @return le nombre de clés parcourues
+     */
+    public long forEachValue(Collection<String> keys, BiConsumer<String, byte[]> consumer) {
+        return forEachPage(keys, page -> readValues(page, consumer));
+    }
+
+    /**
+     * Comme {@link #forEachValue(Collection, BiConsumer)}, mais les clés sans valeur chaîne sont relues
+     * par un pipeline de HGETALL : chaque hash non vide (disposition hash) est transmis à {@code hashes}.
+     *
+     * @return le nombre de clés parcourues
+     */
+    public long forEachValueOrHash(Collection<String> keys, BiConsumer<String, byte[]> values,
+            BiConsumer<String, Map<?, ?>> hashes) {
+        return forEachPage(keys, page -> {
+            List<String> missing = new ArrayList<>();
+            readValues(page, values, missing);
+            if (!missing.isEmpty()) {
+                readHashes(missing, hashes);
+            }
+        });
+    }
+
+    private void readHashes(List<String> keys, BiConsumer<String, Map<?, ?>> consumer) {
+        List<Object> entries;
+        try {
+            entries = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                keys.forEach(key -> connection.hashCommands().hGetAll(key.getBytes(StandardCharsets.UTF_8)));
+                return null;
+            });
+        } catch (RedisPipelineException e) {
+            // Clés d'un autre type Redis (zset...) : leurs résultats sont des erreurs, ignorées ci-dessous
+            entries = e.getResults();
+        }
+        for (int i = 0; i < keys.size() && i < entries.size(); i++) {
+            if (entries.get(i) instanceof Map<?, ?> fields && !fields.isEmpty()) {
+                consumer.accept(keys.get(i), fields);
+            }
+        }
+    }
+
+    private void readValues(List<String> keys, BiConsumer<String, byte[]> consumer) {
+        readValues(keys, consumer, null);
+    }
+
+    private void readValues(List<String> keys, BiConsumer<String, byte[]> consumer, List<String> missing) {
+        byte[][] rawKeys = new byte[keys.size()][];
+        for (int i = 0; i < keys.size(); i++) {
+            rawKeys[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        List<byte[]> values = redisTemplate.execute(
+                (RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(rawKeys));
+        if (values == null) {
+            return;
+        }
+        for (int i = 0; i < keys.size() && i < values.size(); i++) {
+            if (values.get(i) != null) {
+                consumer.accept(keys.get(i), values.get(i));
+            } else if (missing != null) {
+                missing.add(keys.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.test.projet.metric;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Cache local, borné, des vues décodées ({@link MetricsDto}, {@link MetricsAggregated}).
+ *
+ * Les entrées sont regroupées par clé Redis source : en disposition hash, la vue par carte et les vues
+ * de chaque opération dépendent toutes de {@code metrics:{typeCarte}}. Une écriture sur une clé
+ * {@code metrics:*}, de n'importe quelle instance, est signalée par les notifications de keyspace
+ * ({@code __keyspace@*__:metrics:*}) et invalide le groupe correspondant. Les notifications ne sont
+ * pas garanties (déconnexion, configuration refusée) : aucune entrée n'est servie au-delà de
+ * {@code metrics.near-cache.max-staleness-ms}.
+ *
+ * Une invalidation reçue pendant un chargement l'emporte : la valeur chargée est rendue à l'appelant
+ * mais pas conservée. Les vues servies depuis le cache sont partagées et ne doivent pas être modifiées ;
+ * les lectures suivies d'une réécriture passent par Redis.
+ */
+@Component
+public class MetricsNearCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsNearCache.class);
+
+    static final String KEYSPACE_PATTERN = "__keyspace@*__:metrics:*";
+
+    static final String NOTIFY_KEYSPACE_EVENTS = "notify-keyspace-events";
+
+    /** Classes d'événements qui modifient une clé metrics:* : génériques, chaînes, hash, expirations, évictions */
+    static final String REQUIRED_EVENT_CLASSES = "g$hxe";
+
+    private final RedisConnectionFactory connectionFactory;
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long maxStalenessMs;
+    private final boolean configureNotifications;
+    private final LongSupplier clock;
+
+    /** Groupes par clé Redis, du moins au plus récemment utilisé */
+    private final Map<String, Group> groups;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    public MetricsNearCache(RedisConnectionFactory connectionFactory, StringRedisTemplate redisTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${metrics.near-cache.enabled:false}") boolean enabled,
+            @Value("${metrics.near-cache.max-entries:10000}") int maxEntries,
+            @Value("${metrics.near-cache.max-staleness-ms:1000}") long maxStalenessMs,
+            @Value("${metrics.near-cache.configure-notifications:true}") boolean configureNotifications) {
+        this(connectionFactory, redisTemplate, enabled, maxEntries, maxStalenessMs, configureNotifications,
+                System::currentTimeMillis);
+        meterRegistry.gauge("metrics.near-cache.hits", hits, LongAdder::doubleValue);
+        meterRegistry.gauge("metrics.near-cache.misses", misses, LongAdder::doubleValue);
+        meterRegistry.gauge("metrics.near-cache.invalidations", invalidations, LongAdder::doubleValue);
+        meterRegistry.gauge("metrics.near-cache.size", this, MetricsNearCache::size);
+    }
+
+    MetricsNearCache(RedisConnectionFactory connectionFactory, StringRedisTemplate redisTemplate, boolean enabled,
+            int maxEntries, long maxStalenessMs, boolean configureNotifications, LongSupplier clock) {
+        this.connectionFactory = connectionFactory;
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxStalenessMs = Math.max(0, maxStalenessMs);
+        this.configureNotifications = configureNotifications;
+        this.clock = clock;
+        this.groups = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Group> eldest) {
+                return size() > MetricsNearCache.this.maxEntries;
+            }
+        };
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        checkNotifications();
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String key = keyOf(new String(message.getChannel(), StandardCharsets.UTF_8));
+            if (key != null) {
+                invalidate(key);
+            }
+        }, new PatternTopic(KEYSPACE_PATTERN));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+        LOG.info("Cache local des métriques actif ({} clés, obsolescence maximale {} ms)", maxEntries, maxStalenessMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (listenerContainer != null) {
+            try {
+                listenerContainer.destroy();
+            } catch (Exception e) {
+                LOG.error("Error while stopping near cache listener: ", e);
+            }
+        }
+    }
+
+    /**
+     * Vérifie que le serveur publie les notifications nécessaires à l'invalidation. Les drapeaux
+     * manquants sont ajoutés à la configuration existante (partagée avec les autres clients du serveur)
+     * si {@code metrics.near-cache.configure-notifications}, sinon signalés.
+     */
+    private void checkNotifications() {
+        try {
+            String current = redisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.serverCommands().getConfig(NOTIFY_KEYSPACE_EVENTS).getProperty(NOTIFY_KEYSPACE_EVENTS, ""));
+            String required = withRequiredFlags(current);
+            if (required.equals(current)) {
+                return;
+            }
+            if (!configureNotifications) {
+                LOG.warn("Keyspace notifications '{}' miss flags for the near cache (expected '{}'): near cache relies on max-staleness-ms only",
+                        current, required);
+                return;
+            }
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                connection.serverCommands().setConfig(NOTIFY_KEYSPACE_EVENTS, required);
+                return null;
+            });
+            LOG.info("Keyspace notifications extended from '{}' to '{}'", current, required);
+        } catch (Exception e) {
+            LOG.warn("Keyspace notifications not configured ({}): near cache relies on max-staleness-ms only",
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Ajoute à une valeur de {@code notify-keyspace-events} les drapeaux manquants : K (keyspace) et
+     * les classes de {@link #REQUIRED_EVENT_CLASSES}, déjà couvertes par l'alias A. Les drapeaux
+     * présents sont conservés.
+     */
+    static String withRequiredFlags(String current) {
+        String flags = current == null ? "" : current;
+        StringBuilder merged = new StringBuilder(flags);
+        if (flags.indexOf('K') < 0) {
+            merged.append('K');
+        }
+        if (flags.indexOf('A') < 0) {
+            for (char flag : REQUIRED_EVENT_CLASSES.toCharArray()) {
+                if (flags.indexOf(flag) < 0) {
+                    merged.append(flag);
+                }
+            }
+        }
+        return merged.toString();
+    }
+
+    /**
+     * @param channel canal d'une notification, {@code __keyspace@{db}__:{clé}}
+     * @return la clé notifiée, ou null
+     */
+    static String keyOf(String channel) {
+        int separator = channel.indexOf("__:");
+        return channel.startsWith("__keyspace@") && separator >= 0 ? channel.substring(separator + 3) : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Retourne la vue {@code view} de la clé Redis {@code redisKey}, chargée par {@code loader} si elle
+     * est absente ou plus ancienne que l'obsolescence maximale. Une vue null n'est pas conservée.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String redisKey, String view, Supplier<T> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        long now = clock.getAsLong();
+        Object token = new Object();
+        synchronized (groups) {
+            Group group = groups.get(redisKey);
+            Entry entry = group == null ? null : group.entries.get(view);
+            if (entry != null && entry.value != null && now - entry.loadedAt <= maxStalenessMs) {
+                hits.increment();
+                return (T) entry.value;
+            }
+            if (group == null) {
+                group = new Group();
+                groups.put(redisKey, group);
+            }
+            // Marqueur de chargement : une invalidation le supprime avant que la valeur ne soit conservée
+            group.entries.put(view, new Entry(null, now, token));
+        }
+        misses.increment();
+        T value = loader.get();
+        synchronized (groups) {
+            Group group = groups.get(redisKey);
+            Entry entry = group == null ? null : group.entries.get(view);
+            if (entry != null && entry.token == token) {
+                if (value == null) {
+                    group.entries.remove(view);
+                    if (group.entries.isEmpty()) {
+                        groups.remove(redisKey);
+                    }
+                } else {
+                    group.entries.put(view, new Entry(value, now, token));
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Oublie toutes les vues d'une clé Redis
+     */
+    public void invalidate(String redisKey) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (groups) {
+            groups.remove(redisKey);
+        }
+        invalidations.increment();
+    }
+
+    public void invalidateAll() {
+        synchronized (groups) {
+            groups.clear();
+        }
+    }
+
+    int size() {
+        synchronized (groups) {
+            return groups.size();
+        }
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    private static final class Group {
+        private final Map<String, Entry> entries = new LinkedHashMap<>();
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long loadedAt;
+        private final Object token;
+
+        Entry(Object value, long loadedAt, Object token) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+            this.token = token;
+        }
+    }
+}
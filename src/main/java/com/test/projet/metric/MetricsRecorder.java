@@ -1,25 +1,36 @@
-
 package com.test.projet.metric;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import org.springframework.stereotype.Component;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 
+/**
+ * Instrumentation des opérations CRUD.
+ *
+ * Les meters Micrometer sont enregistrés une seule fois par (entité, opération) puis conservés
+ * dans un cache : une fois chaud, {@link #start()} / {@link #stop} ne créent ni builder, ni liste
+ * de tags, ni Meter.Id, et ne font aucune recherche dans le registre.
+ */
 @Component
 public class MetricsRecorder {
 
     private final MeterRegistry registry;
     private final MetricsAggregator aggregator;
 
+    private final Map<String, Map<String, MeterHandles>> handles = new ConcurrentHashMap<>();
+
     public MetricsRecorder(MeterRegistry registry, MetricsAggregator aggregator) {
         this.registry = registry;
         this.aggregator = aggregator;
     }
 
     public <T> T timeAndRecord(String entity, String op, Supplier<T> action) {
-        Timer.Sample sample = Timer.start(registry);
+        long start = start();
         boolean error = false;
         try {
             return action.get();
@@ -27,28 +38,82 @@ public class MetricsRecorder {
             error = true;
             throw e;
         } finally {
-            long ms = (long) sample.stop(
-                Timer.builder("db.operation.time")
+            stop(entity, op, start, error);
+        }
+    }
+
+    /**
+     * Début d'une mesure, à passer à {@link #stop}
+     *
+     * @return l'instant de départ (horloge monotone du registre, en nanosecondes)
+     */
+    public long start() {
+        return registry.config().clock().monotonicTime();
+    }
+
+    /**
+     * Fin d'une mesure : met à jour les meters de (entité, opération) et l'agrégat Redis
+     */
+    public void stop(String entity, String op, long startNanos, boolean error) {
+        long nanos = registry.config().clock().monotonicTime() - startNanos;
+        MeterHandles meters = handles(entity, op);
+        meters.time.record(nanos, TimeUnit.NANOSECONDS);
+        meters.count.increment();
+        if (error) {
+            meters.errors().increment();
+        }
+        aggregator.record(entity, op, nanos / 1_000_000, error);
+    }
+
+    private MeterHandles handles(String entity, String op) {
+        Map<String, MeterHandles> operations = handles.get(entity);
+        if (operations == null) {
+            operations = handles.computeIfAbsent(entity, key -> new ConcurrentHashMap<>());
+        }
+        MeterHandles meters = operations.get(op);
+        if (meters == null) {
+            meters = operations.computeIfAbsent(op, key -> new MeterHandles(registry, entity, key));
+        }
+        return meters;
+    }
+
+    /**
+     * Meters d'un couple (entité, opération). Le compteur d'erreurs n'est enregistré qu'à la
+     * première erreur, comme auparavant : pas de série à zéro pour les opérations sans échec.
+     */
+    private static final class MeterHandles {
+        private final MeterRegistry registry;
+        private final String entity;
+        private final String op;
+        private final Timer time;
+        private final Counter count;
+        private volatile Counter errors;
+
+        MeterHandles(MeterRegistry registry, String entity, String op) {
+            this.registry = registry;
+            this.entity = entity;
+            this.op = op;
+            this.time = Timer.builder("db.operation.time")
                     .description("CRUD operation time")
                     .tag("entity", entity)
                     .tag("operation", op)
-                    .register(registry)
-            ) / 1_000_000;
-
-            Counter.builder("db.operation.count")
-                .tag("entity", entity)
-                .tag("operation", op)
-                .register(registry)
-                .increment();
-
-            if (error) {
-                Counter.builder("db.operation.errors")
+                    .register(registry);
+            this.count = Counter.builder("db.operation.count")
                     .tag("entity", entity)
                     .tag("operation", op)
-                    .register(registry)
-                    .increment();
+                    .register(registry);
+        }
+
+        Counter errors() {
+            Counter counter = errors;
+            if (counter == null) {
+                counter = Counter.builder("db.operation.errors")
+                        .tag("entity", entity)
+                        .tag("operation", op)
+                        .register(registry);
+                errors = counter;
             }
-            aggregator.record(entity, op, ms, error);
+            return counter;
         }
     }
 }
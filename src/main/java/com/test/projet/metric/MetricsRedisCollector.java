@@ -0,0 +1,178 @@
+package com.test.projet.metric;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Publication des agrégats stockés dans Redis (toutes instances confondues) sous forme de séries
+ * Micrometer, exposées notamment par {@code /actuator/prometheus} :
+ * <ul>
+ * <li>{@code metrics.redis.card} : statistiques par carte de {@link MetricsService}, étiquettes
+ * {@code typeCarte}, {@code operation}, {@code stat} (Number, Average, Max, Min) et {@code unit} ;</li>
+ * <li>{@code metrics.redis.crud} : agrégats de {@link MetricsAggregator}, étiquettes {@code entity},
+ * {@code operation} et {@code stat} (count, sumMs, errors, minMs, maxMs, lastMs, avgMs).</li>
+ * </ul>
+ *
+ * Les valeurs sont un instantané rechargé en tâche de fond toutes les
+ * {@code metrics.prometheus.refresh-interval-ms} ms (au plus une fois par seconde), page par page via
+ * les registres de clés : un scrape lit l'instantané et ne déclenche jamais de lecture Redis. Au-delà
+ * de {@code metrics.prometheus.max-series} séries, les suivantes sont ignorées.
+ *
+ * Chaque instance publie les mêmes séries : côté Prometheus, agréger avec {@code max} plutôt que {@code sum}.
+ */
+@Component
+public class MetricsRedisCollector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsRedisCollector.class);
+
+    private static final long MIN_REFRESH_INTERVAL_MS = 1000;
+
+    private static final String[] CRUD_STATS = { "count", "sumMs", "errors", "minMs", "maxMs", "lastMs", "avgMs" };
+
+    private final MetricsService metricsService;
+    private final MetricsAggregator aggregator;
+    private final MetricsKeyRegistry keyRegistry;
+    private final MetricsKeyspaceIterator keyspaceIterator;
+    private final boolean enabled;
+    private final long refreshIntervalMs;
+    private final int maxSeries;
+
+    private final MultiGauge cardGauge;
+    private final MultiGauge crudGauge;
+
+    private volatile long lastRefresh;
+    private volatile int series;
+    private ScheduledExecutorService scheduler;
+
+    public MetricsRedisCollector(MeterRegistry meterRegistry, MetricsService metricsService, MetricsAggregator aggregator,
+            MetricsKeyRegistry keyRegistry, MetricsKeyspaceIterator keyspaceIterator,
+            @Value("${metrics.prometheus.enabled:true}") boolean enabled,
+            @Value("${metrics.prometheus.refresh-interval-ms:30000}") long refreshIntervalMs,
+            @Value("${metrics.prometheus.max-series:10000}") int maxSeries) {
+        this.metricsService = metricsService;
+        this.aggregator = aggregator;
+        this.keyRegistry = keyRegistry;
+        this.keyspaceIterator = keyspaceIterator;
+        this.enabled = enabled;
+        this.refreshIntervalMs = Math.max(MIN_REFRESH_INTERVAL_MS, refreshIntervalMs);
+        this.maxSeries = Math.max(0, maxSeries);
+        this.cardGauge = MultiGauge.builder("metrics.redis.card")
+                .description("Statistiques par carte stockées dans Redis (instantané)")
+                .register(meterRegistry);
+        this.crudGauge = MultiGauge.builder("metrics.redis.crud")
+                .description("Agrégats CRUD stockés dans Redis (instantané)")
+                .register(meterRegistry);
+        meterRegistry.gauge("metrics.redis.snapshot.series", this, collector -> collector.series);
+        meterRegistry.gauge("metrics.redis.snapshot.age.ms", this, MetricsRedisCollector::getSnapshotAgeMs);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-redis-collector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            // L'instantané précédent reste publié
+            LOG.error("Error while refreshing Redis metrics snapshot: ", e);
+        }
+    }
+
+    /**
+     * Recharge l'instantané depuis Redis puis remplace les séries publiées
+     */
+    void refresh() {
+        List<MultiGauge.Row<?>> cardRows = new ArrayList<>();
+        List<MultiGauge.Row<?>> crudRows = new ArrayList<>();
+
+        metricsService.forEachCard((typeCarte, metrics) -> {
+            String unit = metrics.getUnit() == null ? MetricsTimeUnit.MILLISECONDS.getSymbol() : metrics.getUnit();
+            for (String operationType : metrics.getOperationTypes()) {
+                double[] stats = metrics.getStats(operationType);
+                for (int slot = 0; slot < stats.length; slot++) {
+                    if (!Double.isNaN(stats[slot]) && cardRows.size() < maxSeries) {
+                        cardRows.add(MultiGauge.Row.of(Tags.of("typeCarte", typeCarte, "operation", operationType,
+                                "stat", MetricsDto.getStatName(slot), "unit", unit), stats[slot]));
+                    }
+                }
+            }
+        });
+
+        keyRegistry.forEachCrudPage(keyspaceIterator.getPageSize(), pairs -> aggregator.readAll(pairs).forEach((pair, view) -> {
+            int separator = pair.lastIndexOf(':');
+            for (String stat : CRUD_STATS) {
+                Double value = toDouble(view.get(stat));
+                if (value != null && cardRows.size() + crudRows.size() < maxSeries) {
+                    crudRows.add(MultiGauge.Row.of(Tags.of("entity", pair.substring(0, separator),
+                            "operation", pair.substring(separator + 1), "stat", stat), value));
+                }
+            }
+        }));
+
+        int total = cardRows.size() + crudRows.size();
+        if (total >= maxSeries) {
+            LOG.warn("Redis metrics snapshot limited to {} series (metrics.prometheus.max-series)", maxSeries);
+        }
+        cardGauge.register(cardRows, true);
+        crudGauge.register(crudRows, true);
+        series = total;
+        lastRefresh = System.currentTimeMillis();
+    }
+
+    private static Double toDouble(Object value) {
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return l'âge de l'instantané publié en ms, ou -1 s'il n'a jamais été chargé
+     */
+    public long getSnapshotAgeMs() {
+        long refreshed = lastRefresh;
+        return refreshed == 0 ? -1 : System.currentTimeMillis() - refreshed;
+    }
+
+    int getSeries() {
+        return series;
+    }
+}
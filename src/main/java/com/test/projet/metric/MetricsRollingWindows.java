@@ -0,0 +1,169 @@
+package com.test.projet.metric;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fenêtres glissantes (dernière minute, 5 minutes, 15 minutes...) par (typeCarte, operationType).
+ *
+ * Chaque minute a son bucket : un hash {@code {minute, count, sum, min, max}} (durées en
+ * nanosecondes) stocké dans un anneau de {@code metrics.window.max-minutes} + 1 emplacements
+ * {@code metrics-window:{typeCarte}:{op}:{minute modulo taille de l'anneau}}. Un emplacement est
+ * réinitialisé quand il est réutilisé pour une nouvelle minute et expire après un tour d'anneau :
+ * le nombre de clés reste borné.
+ *
+ * L'écriture se fait dans le script d'accumulation (O(1) par événement, sans aller-retour
+ * supplémentaire), ou par {@code metrics-window.lua} pour les chemins hors script. La lecture
+ * fusionne les N derniers buckets en un seul pipeline : O(fenêtre / bucket).
+ */
+@Component
+public class MetricsRollingWindows {
+
+    static final RedisScript<Long> WINDOW_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/metrics-window.lua"), Long.class);
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsRollingWindows.class);
+
+    private static final long MINUTE_MS = 60_000L;
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    private final int maxMinutes;
+
+    public MetricsRollingWindows(StringRedisTemplate redisTemplate,
+            @Value("${metrics.window.enabled:false}") boolean enabled,
+            @Value("${metrics.window.max-minutes:15}") int maxMinutes) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.maxMinutes = Math.max(1, maxMinutes);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxMinutes() {
+        return maxMinutes;
+    }
+
+    /**
+     * Minute (depuis l'epoch) d'un horodatage en millisecondes
+     */
+    public static long minute(long now) {
+        return Math.floorDiv(now, MINUTE_MS);
+    }
+
+    /**
+     * Clé de l'emplacement de l'anneau correspondant à une minute. L'anneau compte une place de
+     * plus que la plus longue fenêtre : la minute écrasée n'est jamais lue.
+     */
+    public String key(String typeCarte, String operationType, long minute) {
+        return MetricsKeys.windowKey(typeCarte, operationType, Math.floorMod(minute, maxMinutes + 1));
+    }
+
+    /**
+     * Durée de vie d'un bucket : un tour d'anneau
+     */
+    public long ttlSeconds() {
+        return (maxMinutes + 1) * 60L;
+    }
+
+    /**
+     * Met à jour le bucket de la minute courante hors script d'accumulation
+     */
+    public void record(MetricsDelta delta, long now, MetricsTimeUnit unit) {
+        if (!enabled || delta.isEmpty()) {
+            return;
+        }
+        try {
+            long nanos = unit.getNanos();
+            long mean = delta.getSum() / delta.getCount();
+            redisTemplate.execute(WINDOW_SCRIPT,
+                    List.of(key(delta.getTypeCarte(), delta.getOperationType(), minute(now))),
+                    String.valueOf(minute(now)),
+                    String.valueOf(ttlSeconds()),
+                    String.valueOf(delta.getCount()),
+                    String.valueOf(delta.getSum() * nanos),
+                    String.valueOf((delta.hasExtremes() ? delta.getMin() : mean) * nanos),
+                    String.valueOf((delta.hasExtremes() ? delta.getMax() : mean) * nanos));
+        } catch (Exception e) {
+            LOG.error("Error while updating rolling window for {}/{}: ", delta.getTypeCarte(), delta.getOperationType(), e);
+        }
+    }
+
+    /**
+     * Fusionne les buckets des {@code minutes} dernières minutes (minute en cours comprise)
+     *
+     * @param unit l'unité des durées retournées
+     */
+    public WindowedMetricsResponse query(String typeCarte, String operationType, int minutes, MetricsTimeUnit unit) {
+        return query(typeCarte, operationType, minutes, unit, System.currentTimeMillis());
+    }
+
+    WindowedMetricsResponse query(String typeCarte, String operationType, int minutes, MetricsTimeUnit unit, long now) {
+        long current = minute(now);
+        long first = current - minutes + 1;
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long minute = first; minute <= current; minute++) {
+                connection.hashCommands().hGetAll(key(typeCarte, operationType, minute).getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+
+        long count = 0;
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        int buckets = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (!(results.get(i) instanceof Map<?, ?> entries)
+                    || !String.valueOf(first + i).equals(String.valueOf(entries.get("minute")))) {
+                // Emplacement vide, expiré, ou encore occupé par un tour d'anneau précédent
+                continue;
+            }
+            buckets++;
+            count += parse(entries.get("count"), 0);
+            sum += parse(entries.get("sum"), 0);
+            min = Math.min(min, parse(entries.get("min"), Long.MAX_VALUE));
+            max = Math.max(max, parse(entries.get("max"), Long.MIN_VALUE));
+        }
+
+        WindowedMetricsResponse response = new WindowedMetricsResponse();
+        response.setTypeCarte(typeCarte);
+        response.setOperationType(operationType);
+        response.setMinutes(minutes);
+        response.setFrom(first * MINUTE_MS);
+        response.setTo(now);
+        response.setBuckets(buckets);
+        response.setUnit(unit.getSymbol());
+        response.setCount(count);
+        if (count > 0) {
+            double nanos = unit.getNanos();
+            response.setAverageTime(sum / nanos / count);
+            response.setMinTime(min == Long.MAX_VALUE ? 0 : min / nanos);
+            response.setMaxTime(max == Long.MIN_VALUE ? 0 : max / nanos);
+        }
+        return response;
+    }
+
+    private static long parse(Object value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(String.valueOf(value));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.test.projet.metric;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import com.test.projet.metric.series.MetricsSeriesStore;
+import com.test.projet.metric.series.SeriesPoint;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Compactage périodique de l'historique : 10 s vers 1 min, 1 min vers 1 h, 1 h vers 1 jour.
+ *
+ * Chaque compactage tourne sous un verrou Redis ({@code metrics-history-lock:{niveau}}, SET NX PX) :
+ * une seule instance de l'application le réalise à un instant donné. Le verrou porte un jeton propre à
+ * chaque acquisition ; il est prolongé pendant le parcours, par un script qui compare le jeton, au plus
+ * une fois par tiers de sa durée de vie : une instance qui l'a perdu s'arrête à la vérification suivante.
+ * Entre deux vérifications, une instance en retard peut encore écrire quelques clés, sans effet : les
+ * buckets cibles sont recalculés entièrement à partir du niveau source et écrits par HSET, les purges
+ * sont des HDEL, et deux passages sur la même plage écrivent les mêmes valeurs. Seuls les curseurs,
+ * qui décident de la plage du passage suivant, ne sont avancés qu'après une vérification forcée.
+ *
+ * Un curseur par niveau cible ({@code metrics-history-watermark:{niveau}}) mémorise le dernier bucket
+ * calculé ; seuls les buckets cibles complets (fin antérieure au délai de grâce) sont calculés, en une
+ * fois, puis écrits par HSET : rejouer un compactage interrompu ne compte rien deux fois.
+ *
+ * Le même passage supprime du niveau source les buckets sortis de sa rétention depuis le précédent
+ * ({@code metrics-history-purged:{niveau}}). Les champs lus ou supprimés sont calculés à partir des
+ * curseurs (HMGET, HDEL) : aucun hash n'est relu en entier. Les buckets 1 min calculés alimentent
+ * aussi les séries compressées de {@link MetricsSeriesStore}, si elles sont activées.
+ */
+@Component
+public class MetricsRollupEngine {
+
+    static final RedisScript<Long> LOCK_RELEASE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/metrics-lock-release.lua"), Long.class);
+
+    static final RedisScript<Long> LOCK_RENEW_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/metrics-lock-renew.lua"), Long.class);
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsRollupEngine.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final MetricsHistoryStore historyStore;
+    private final MetricsSeriesStore seriesStore;
+    private final long intervalMs;
+
+    private ScheduledExecutorService scheduler;
+
+    public MetricsRollupEngine(StringRedisTemplate redisTemplate, MetricsHistoryStore historyStore,
+            MetricsSeriesStore seriesStore,
+            @Value("${metrics.history.rollup-interval-ms:60000}") long intervalMs) {
+        this.redisTemplate = redisTemplate;
+        this.historyStore = historyStore;
+        this.seriesStore = seriesStore;
+        this.intervalMs = Math.max(1000, intervalMs);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!historyStore.isEnabled()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-history-rollup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::rollupQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        LOG.info("Compactage de l'historique actif (toutes les {} ms)", intervalMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void rollupQuietly() {
+        try {
+            rollup();
+        } catch (Exception e) {
+            LOG.error("Error while rolling up metrics history: ", e);
+        }
+    }
+
+    /**
+     * Compacte chaque niveau dans le suivant et applique les rétentions
+     *
+     * @return le nombre de buckets écrits dans les niveaux cibles
+     */
+    public int rollup() {
+        return rollup(System.currentTimeMillis() / 1000L);
+    }
+
+    int rollup(long now) {
+        int written = 0;
+        for (MetricsHistoryTier tier : MetricsHistoryTier.values()) {
+            RollupLock lock = new RollupLock(MetricsKeys.historyLockKey(tier));
+            if (!lock.acquire()) {
+                // Compactage en cours sur une autre instance
+                continue;
+            }
+            try {
+                written += rollup(tier, now, lock);
+            } finally {
+                lock.release();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Compacte {@code source} dans le niveau suivant (s'il existe) et purge ses buckets expirés
+     */
+    private int rollup(MetricsHistoryTier source, long now, RollupLock lock) {
+        MetricsHistoryTier target = source.next();
+        long expiredBefore = now - historyStore.retentionSeconds(source);
+        // Délai de grâce d'un bucket source pour les écritures tardives
+        long limit = target != null ? target.bucketStart(now - source.getSeconds()) : 0;
+        // Sans curseur (premier passage, longue interruption), on ne remonte qu'une rétention en arrière :
+        // les clés inactives plus anciennes ont expiré d'elles-mêmes
+        long watermark = target != null ? readCursor(MetricsKeys.historyWatermarkKey(target), target.bucketStart(expiredBefore)) : 0;
+        long purged = readCursor(MetricsKeys.historyPurgeKey(source), expiredBefore - historyStore.retentionSeconds(source));
+        boolean compact = target != null && watermark < limit;
+        List<Object> compacted = compact ? bucketFields(source, watermark, limit) : List.of();
+        Object[] expired = bucketFields(source, purged, expiredBefore).toArray();
+
+        int written = 0;
+        String prefix = MetricsKeys.historyPrefix(source);
+        ScanOptions options = ScanOptions.scanOptions().match(prefix + "*").count(500).build();
+        try (Cursor<String> keys = redisTemplate.scan(options)) {
+            while (keys.hasNext()) {
+                String key = keys.next();
+                // Vérification périodique : les écritures par clé sont idempotentes
+                lock.keepAlive(false);
+                if (compact) {
+                    Map<Object, Object> entries = entries(compacted, redisTemplate.opsForHash().multiGet(key, compacted));
+                    Map<Long, MetricsHistoryStore.Bucket> rolled = compact(entries, target, watermark, limit);
+                    if (!rolled.isEmpty()) {
+                        String targetKey = MetricsKeys.historyPrefix(target) + key.substring(prefix.length());
+                        Map<String, String> fields = new HashMap<>();
+                        rolled.forEach((start, bucket) -> fields.put(String.valueOf(start), bucket.format()));
+                        redisTemplate.opsForHash().putAll(targetKey, fields);
+                        redisTemplate.expire(targetKey, Duration.ofSeconds(historyStore.retentionSeconds(target)));
+                        written += fields.size();
+                        if (target == MetricsHistoryTier.MINUTE && seriesStore.isEnabled()) {
+                            appendSeries(key.substring(prefix.length()), rolled);
+                        }
+                    }
+                }
+                if (expired.length > 0) {
+                    redisTemplate.opsForHash().delete(key, expired);
+                }
+            }
+        }
+        // Les curseurs ne sont avancés que si ce passage détient toujours le verrou
+        lock.keepAlive(true);
+        if (expired.length > 0) {
+            redisTemplate.opsForValue().set(MetricsKeys.historyPurgeKey(source), String.valueOf(expiredBefore));
+        }
+        if (compact) {
+            redisTemplate.opsForValue().set(MetricsKeys.historyWatermarkKey(target), String.valueOf(limit));
+            LOG.debug("History tier {} rolled up into {} until {} ({} buckets)",
+                    source.getLabel(), target.getLabel(), limit, written);
+        }
+        return written;
+    }
+
+    /**
+     * Ajoute les buckets 1 min d'un couple à sa série compressée
+     *
+     * @param pair {typeCarte}:{op}
+     */
+    private void appendSeries(String pair, Map<Long, MetricsHistoryStore.Bucket> rolled) {
+        int separator = pair.lastIndexOf(':');
+        if (separator < 0) {
+            return;
+        }
+        try {
+            seriesStore.append(pair.substring(0, separator), pair.substring(separator + 1), seriesPoints(rolled));
+        } catch (Exception e) {
+            LOG.error("Error while appending series points for {}: ", pair, e);
+        }
+    }
+
+    static List<SeriesPoint> seriesPoints(Map<Long, MetricsHistoryStore.Bucket> rolled) {
+        List<SeriesPoint> points = new ArrayList<>();
+        rolled.forEach((start, bucket) -> {
+            if (bucket.count > 0) {
+                points.add(new SeriesPoint(start * 1000L, bucket.count, (double) bucket.sum / bucket.count, bucket.max));
+            }
+        });
+        return points;
+    }
+
+    /**
+     * Lit un curseur de compactage ou de purge, jamais antérieur à {@code minimum}
+     */
+    private long readCursor(String key, long minimum) {
+        String value = redisTemplate.opsForValue().get(key);
+        if (value == null) {
+            return minimum;
+        }
+        try {
+            return Math.max(minimum, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return minimum;
+        }
+    }
+
+    /**
+     * Regroupe les buckets sources dont le début est dans [from, until) par bucket du niveau cible
+     *
+     * @return les buckets cibles, triés par début
+     */
+    static Map<Long, MetricsHistoryStore.Bucket> compact(Map<Object, Object> entries, MetricsHistoryTier target,
+            long from, long until) {
+        Map<Long, MetricsHistoryStore.Bucket> rolled = new TreeMap<>();
+        entries.forEach((field, value) -> {
+            Long start = parseStart(field);
+            MetricsHistoryStore.Bucket bucket = MetricsHistoryStore.Bucket.parse(value);
+            if (start != null && bucket != null && start >= from && start < until) {
+                rolled.merge(target.bucketStart(start), bucket, MetricsHistoryStore.Bucket::merge);
+            }
+        });
+        return rolled;
+    }
+
+    /**
+     * Champs des buckets de {@code tier} dont le début est dans [from, until)
+     */
+    static List<Object> bucketFields(MetricsHistoryTier tier, long from, long until) {
+        List<Object> fields = new ArrayList<>();
+        long start = tier.bucketStart(from);
+        if (start < from) {
+            start += tier.getSeconds();
+        }
+        for (; start < until; start += tier.getSeconds()) {
+            fields.add(String.valueOf(start));
+        }
+        return fields;
+    }
+
+    private static Map<Object, Object> entries(List<Object> fields, List<Object> values) {
+        Map<Object, Object> entries = new HashMap<>();
+        for (int i = 0; i < fields.size() && i < values.size(); i++) {
+            if (values.get(i) != null) {
+                entries.put(fields.get(i), values.get(i));
+            }
+        }
+        return entries;
+    }
+
+    private static Long parseStart(Object field) {
+        try {
+            return Long.parseLong(String.valueOf(field));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Verrou de compactage d'un niveau, identifié par un jeton propre à cette acquisition
+     */
+    private final class RollupLock {
+        private final String key;
+        private final String token = UUID.randomUUID().toString();
+        private long renewedAt;
+
+        RollupLock(String key) {
+            this.key = key;
+        }
+
+        boolean acquire() {
+            renewedAt = System.nanoTime();
+            return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, token, Duration.ofMillis(intervalMs)));
+        }
+
+        /**
+         * Prolonge le verrou (au plus une fois par tiers de sa durée de vie, sauf si {@code force})
+         *
+         * @throws IllegalStateException si le verrou a expiré ou appartient à une autre instance
+         */
+        void keepAlive(boolean force) {
+            long now = System.nanoTime();
+            if (!force && TimeUnit.NANOSECONDS.toMillis(now - renewedAt) < intervalMs / 3) {
+                return;
+            }
+            Long renewed = redisTemplate.execute(LOCK_RENEW_SCRIPT, List.of(key), token, String.valueOf(intervalMs));
+            if (renewed == null || renewed == 0) {
+                throw new IllegalStateException("Verrou de compactage perdu : " + key);
+            }
+            renewedAt = now;
+        }
+
+        void release() {
+            redisTemplate.execute(LOCK_RELEASE_SCRIPT, List.of(key), token);
+        }
+    }
+}
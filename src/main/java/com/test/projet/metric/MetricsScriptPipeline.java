@@ -0,0 +1,75 @@
+package com.test.projet.metric;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+/**
+ * Exécution d'un script Lua par EVALSHA dans un pipeline.
+ *
+ * Dans un pipeline, l'erreur NOSCRIPT n'est connue qu'au retour : pas de repli sur EVAL comme le
+ * fait {@code StringRedisTemplate.execute(RedisScript, ...)}. Le script est donc chargé par SCRIPT LOAD
+ * avant le premier pipeline ; si le cache de scripts de Redis a été vidé depuis (redémarrage, SCRIPT
+ * FLUSH), il est rechargé et le pipeline rejoué une fois.
+ */
+final class MetricsScriptPipeline {
+
+    private static final String NOSCRIPT_ERROR = "NOSCRIPT";
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisScript<?> script;
+
+    private volatile boolean loaded;
+
+    MetricsScriptPipeline(StringRedisTemplate redisTemplate, RedisScript<?> script) {
+        this.redisTemplate = redisTemplate;
+        this.script = script;
+    }
+
+    String getSha1() {
+        return script.getSha1();
+    }
+
+    /**
+     * @param pipeline envoie les EVALSHA de {@link #getSha1()} ; rejoué une fois si le script a disparu du cache
+     * @return le résultat du pipeline
+     */
+    <T> T execute(Supplier<T> pipeline) {
+        ensureLoaded();
+        try {
+            return pipeline.get();
+        } catch (RuntimeException e) {
+            if (!hasErrorMessage(e, NOSCRIPT_ERROR)) {
+                throw e;
+            }
+            loaded = false;
+            ensureLoaded();
+            return pipeline.get();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        byte[] source = script.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        redisTemplate.execute((RedisCallback<String>) connection -> connection.scriptingCommands().scriptLoad(source));
+        loaded = true;
+    }
+
+    /**
+     * Indique si l'erreur, ou l'une de ses causes, porte le message d'erreur Redis donné
+     */
+    static boolean hasErrorMessage(Throwable e, String error) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains(error)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
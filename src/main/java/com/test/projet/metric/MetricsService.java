@@ -1,50 +1,334 @@
 package com.test.projet.metric;
 
-import java.util.Collections;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.BiConsumer;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.projet.metric.codec.MetricsCodecRegistry;
+import com.test.projet.metric.sketch.MetricsSketchRegistry;
 
 import io.micrometer.core.instrument.MeterRegistry;
 
 @Service
 public class MetricsService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsService.class);
+
     @Autowired
     private MeterRegistry meterRegistry;
 
     @Autowired
     private StringRedisTemplate redisTemplate;
 
+    @Autowired
+    private MetricsAccumulationEngine accumulationEngine;
+
+    /**
+     * Accumulation atomique côté Redis (script Lua, un seul EVALSHA par événement).
+     * À désactiver uniquement pour un Redis sans scripting : on retombe alors sur
+     * le cycle GET / désérialisation / SET historique, qui n'est pas atomique.
+     */
+    @Value("${metrics.accumulation.atomic:true}")
+    private boolean atomicAccumulation;
+
+    @Autowired
+    private MetricsCodecRegistry codecRegistry;
+
+    @Autowired
+    private MetricsSketchRegistry sketchRegistry;
+
+    @Autowired
+    private MetricsRollingWindows rollingWindows;
+
+    @Autowired
+    private MetricsHistoryStore historyStore;
+
+    @Autowired
+    private MetricsKeyspaceIterator keyspaceIterator;
+
+    @Autowired
+    private MetricsKeyRegistry keyRegistry;
+
+    @Autowired
+    private MetricsNearCache nearCache;
+
+    @Autowired
+    private MetricsSingleFlight singleFlight;
+
+    /**
+     * Format de stockage des documents : json (historique), smile, cbor ou binary.
+     * En lecture, le format est détecté document par document, les clés JSON restent donc lisibles.
+     */
+    @Value("${metrics.codec:json}")
+    private String codecName;
+
+    /**
+     * DOCUMENT : un document par carte (historique) ; HASH : un champ par (opération, statistique),
+     * mis à jour par HINCRBY. En HASH, l'écriture passe toujours par le moteur d'accumulation.
+     */
+    @Value("${metrics.storage.layout:DOCUMENT}")
+    private MetricsStorageLayout storageLayout;
+
+    /**
+     * Unité de stockage des temps d'exécution ; les durées reçues par
+     * {@link #collectAndStoreMetrics(String, String, long)} sont déjà exprimées dans cette unité.
+     */
+    @Value("${metrics.time-unit:MILLISECONDS}")
+    private MetricsTimeUnit timeUnit = MetricsTimeUnit.MILLISECONDS;
+
+    /**
+     * Histogramme log-linéaire par (typeCarte, operationType), pour les percentiles
+     * ({@link #getPercentiles(String, String, MetricsTimeUnit)})
+     */
+    @Value("${metrics.histogram.enabled:false}")
+    private boolean histogramEnabled;
+
+    /**
+     * Lectures par carte en disposition document : les documents JSON stockés sont recopiés tels quels
+     * dans la réponse, sans décodage ni resérialisation. Sans effet si le cache local est activé, qui
+     * sert déjà des vues décodées.
+     */
+    @Value("${metrics.read.raw-json:true}")
+    private boolean rawJsonReads = true;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    /**
+     * @param executionTime le temps d'exécution, dans l'unité de stockage ({@code metrics.time-unit})
+     */
     public void collectAndStoreMetrics(String typeCarte, String operationType, long executionTime) {
-        // Récupérer les métriques existantes ou créer un nouvel objet
-        MetricsDto metricsObject = getMetricsFromRedis(typeCarte);
+        try {
+            storeMetrics(typeCarte, operationType, executionTime);
+        } catch (Exception e) {
+            LOG.error("Error while storing metrics for {}/{}: ", typeCarte, operationType, e);
+        }
+    }
+
+    /**
+     * Comme {@link #collectAndStoreMetrics(String, String, long)}, mais l'échec d'écriture des
+     * métriques dans Redis est propagé, une fois les traitements annexes effectués.
+     *
+     * @throws Exception si le cumul ou l'écriture du document a échoué
+     */
+    void storeMetrics(String typeCarte, String operationType, long executionTime) throws Exception {
+        sketchRegistry.record(typeCarte, operationType, executionTime, 1);
+
+        if (atomicAccumulation || storageLayout == MetricsStorageLayout.HASH) {
+            try {
+                accumulationEngine.apply(MetricsDelta.of(typeCarte, operationType, executionTime));
+            } finally {
+                invalidate(typeCarte, operationType);
+            }
+            return;
+        }
+
+        // Récupérer les métriques existantes ou créer un nouvel objet (lues dans Redis : elles sont réécrites)
+        MetricsDto metricsObject = loadCard(typeCarte);
         if (metricsObject == null) {
             metricsObject = new MetricsDto(typeCarte);
         }
 
+        // Aligner l'unité du document (historique : ms) sur l'unité de stockage
+        long factor = metricsObject.alignUnit(timeUnit);
+
         // Collecter et cumuler les métriques
-        MetricsUtils.collectAndAccumulateMetrics(metricsObject, meterRegistry, operationType, typeCarte, redisTemplate, executionTime);
+        MetricsUtils.collectAndAccumulateMetrics(metricsObject, meterRegistry, operationType, typeCarte, redisTemplate, executionTime * factor);
 
         // Convertir l'objet en JSON et le stocker
+        Exception writeFailure = null;
         try {
-            String json = objectMapper.writeValueAsString(metricsObject);
-            redisTemplate.opsForValue().set("metrics:" + typeCarte, json);
+            if (isBinaryCodec()) {
+                writeDocument("metrics:" + typeCarte, codecRegistry.encode(metricsObject));
+            } else {
+                String json = objectMapper.writeValueAsString(metricsObject);
+                redisTemplate.opsForValue().set("metrics:" + typeCarte, json);
+            }
         } catch (Exception e) {
-            e.printStackTrace(); // Gérer l'exception de manière appropriée
+            writeFailure = e;
         }
 
         // === NOUVELLE FONCTIONNALITÉ: Stocker aussi les métriques agrégées ===
         // Pour la compatibilité avec les tests fonctionnels réels
         storeAggregatedMetrics(typeCarte, operationType, executionTime);
+
+        if (histogramEnabled) {
+            recordHistogram(typeCarte, operationType, executionTime);
+        }
+        if (rollingWindows.isEnabled()) {
+            rollingWindows.record(MetricsDelta.of(typeCarte, operationType, executionTime), System.currentTimeMillis(), timeUnit);
+        }
+        if (historyStore.isEnabled()) {
+            historyStore.record(MetricsDelta.of(typeCarte, operationType, executionTime), System.currentTimeMillis(), timeUnit);
+        }
+        try {
+            keyRegistry.record(typeCarte, operationType, System.currentTimeMillis());
+        } catch (Exception e) {
+            LOG.error("Error while registering metrics keys for {}/{}: ", typeCarte, operationType, e);
+        }
+        invalidate(typeCarte, operationType);
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+    }
+
+    /**
+     * Invalide les vues en cache local d'une écriture de cette instance, sans attendre sa notification
+     */
+    private void invalidate(String typeCarte, String operationType) {
+        nearCache.invalidate(MetricsKeys.cardKey(typeCarte));
+        nearCache.invalidate(MetricsKeys.redisKey(typeCarte, operationType));
+    }
+
+    /**
+     * Collecte un lot de mesures : les éléments sont regroupés en mémoire par
+     * (typeCarte, operationType), puis les deltas fusionnés sont appliqués en un seul
+     * aller-retour pipeliné au lieu d'un cycle complet par élément.
+     *
+     * @param requests les mesures à collecter
+     * @return le résultat compact du lot (un résumé par groupe, le détail des seuls échecs)
+     */
+    public BatchCollectionResponse collectAndStoreMetricsBatch(List<MetricRequest> requests) {
+        BatchCollectionResponse response = new BatchCollectionResponse();
+        if (requests == null) {
+            return response;
+        }
+        response.setTotal(requests.size());
+
+        // Index des éléments valides, validés une seule fois pour les deux chemins
+        List<Integer> valid = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            MetricRequest request = requests.get(i);
+            String error = validate(request);
+            if (error != null) {
+                response.addFailure(i, request != null ? request.getTypeCarte() : null, error);
+            } else {
+                valid.add(i);
+            }
+        }
+        if (!atomicAccumulation && storageLayout != MetricsStorageLayout.HASH) {
+            storeOneByOne(requests, valid, response);
+            return response;
+        }
+
+        Map<String, Map<String, MetricsDelta>> grouped = new LinkedHashMap<>();
+        for (int index : valid) {
+            MetricRequest request = requests.get(index);
+            long executionTime = toStorageUnit(request.getExecutionTime(), request.getTimeUnit());
+            grouped.computeIfAbsent(request.getTypeCarte(), key -> new LinkedHashMap<>())
+                    .computeIfAbsent(request.getOperationType(), key -> new MetricsDelta(request.getTypeCarte(), key))
+                    .record(executionTime);
+            sketchRegistry.record(request.getTypeCarte(), request.getOperationType(), executionTime, 1);
+        }
+        List<MetricsDelta> deltas = new ArrayList<>();
+        grouped.values().forEach(operations -> deltas.addAll(operations.values()));
+        List<Object> results = null;
+        Exception failure = null;
+        try {
+            accumulationEngine.applyAll(deltas);
+        } catch (RedisPipelineException e) {
+            // Résultats alignés sur les deltas : seuls les groupes en échec sont rapportés comme tels
+            LOG.error("Error while storing metrics batch: ", e);
+            results = e.getResults();
+            failure = e;
+        } catch (Exception e) {
+            LOG.error("Error while storing metrics batch: ", e);
+            failure = e;
+        }
+        Map<String, Map<String, Boolean>> stored = new LinkedHashMap<>();
+        for (int i = 0; i < deltas.size(); i++) {
+            MetricsDelta delta = deltas.get(i);
+            Object result = results == null || i >= results.size() ? failure : results.get(i);
+            if (result instanceof Exception) {
+                response.addGroupFailure(delta.getTypeCarte(), delta.getOperationType(), delta.getCount(),
+                        ((Exception) result).getMessage());
+            } else {
+                response.addGroup(delta.getTypeCarte(), delta.getOperationType(), delta.getCount());
+            }
+            stored.computeIfAbsent(delta.getTypeCarte(), key -> new LinkedHashMap<>())
+                    .put(delta.getOperationType(), !(result instanceof Exception));
+            invalidate(delta.getTypeCarte(), delta.getOperationType());
+        }
+        for (int index : valid) {
+            MetricRequest request = requests.get(index);
+            if (stored.get(request.getTypeCarte()).get(request.getOperationType())) {
+                response.addSuccess(request.getTypeCarte());
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Chemin document non atomique : chaque élément valide est lu, cumulé puis réécrit, et son échec
+     * éventuel est rapporté à son index.
+     *
+     * @param valid index des éléments validés
+     */
+    private void storeOneByOne(List<MetricRequest> requests, List<Integer> valid, BatchCollectionResponse response) {
+        Map<String, Map<String, long[]>> counts = new LinkedHashMap<>();
+        Map<String, Map<String, String>> errors = new LinkedHashMap<>();
+        for (int i : valid) {
+            MetricRequest request = requests.get(i);
+            String typeCarte = request.getTypeCarte();
+            String operationType = request.getOperationType();
+            counts.computeIfAbsent(typeCarte, key -> new LinkedHashMap<>())
+                    .computeIfAbsent(operationType, key -> new long[2])[0]++;
+            try {
+                storeMetrics(typeCarte, operationType, toStorageUnit(request.getExecutionTime(), request.getTimeUnit()));
+                counts.get(typeCarte).get(operationType)[1]++;
+                response.addSuccess(typeCarte);
+            } catch (Exception e) {
+                LOG.error("Error while storing metrics batch item {}: ", i, e);
+                response.addFailure(i, typeCarte, e.getMessage());
+                errors.computeIfAbsent(typeCarte, key -> new LinkedHashMap<>()).put(operationType, e.getMessage());
+            }
+        }
+        counts.forEach((typeCarte, operations) -> operations.forEach((operationType, count) -> {
+            if (count[1] > 0) {
+                response.addGroup(typeCarte, operationType, count[1]);
+            }
+            if (count[1] < count[0]) {
+                response.addGroupFailure(typeCarte, operationType, count[0] - count[1],
+                        errors.get(typeCarte).get(operationType));
+            }
+        }));
+    }
+
+    private static String validate(MetricRequest request) {
+        if (request == null) {
+            return "Élément de lot vide";
+        }
+        if (request.getTypeCarte() == null || request.getTypeCarte().isBlank()) {
+            return "typeCarte manquant";
+        }
+        if (request.getOperationType() == null || request.getOperationType().isBlank()) {
+            return "operationType manquant";
+        }
+        if (request.getExecutionTime() < 0) {
+            return "executionTime négatif";
+        }
+        try {
+            MetricsTimeUnit.parse(request.getUnit());
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        return null;
     }
 
     /**
@@ -59,30 +343,104 @@ public class MetricsService {
         try {
             String redisKey = "metrics:" + typeCarte + ":" + operationType;
 
-            // Récupérer les métriques agrégées existantes
-            MetricsAggregated aggregated = getMetrics(typeCarte, operationType);
+            // Récupérer les métriques agrégées existantes (lues dans Redis : elles sont réécrites)
+            MetricsAggregated aggregated = loadOperation(typeCarte, operationType);
             if (aggregated == null) {
                 aggregated = new MetricsAggregated(typeCarte, operationType);
             }
 
             // Mettre à jour avec les nouvelles données
-            aggregated.updateMetrics(executionTime);
+            aggregated.updateMetrics(executionTime * aggregated.alignUnit(timeUnit));
 
             // Sauvegarder dans Redis
-            String json = objectMapper.writeValueAsString(aggregated);
-            redisTemplate.opsForValue().set(redisKey, json);
+            if (isBinaryCodec()) {
+                writeDocument(redisKey, codecRegistry.encode(aggregated));
+            } else {
+                String json = objectMapper.writeValueAsString(aggregated);
+                redisTemplate.opsForValue().set(redisKey, json);
+            }
 
         } catch (Exception e) {
             e.printStackTrace(); // Gérer l'exception de manière appropriée
         }
     }
 
+    /**
+     * Incrémente le bucket d'histogramme d'une exécution (chemin non atomique ; le moteur
+     * d'accumulation le fait dans son script)
+     */
+    private void recordHistogram(String typeCarte, String operationType, long executionTime) {
+        try {
+            long nanos = MetricsTimeUnit.NANOSECONDS.convert(executionTime, timeUnit);
+            redisTemplate.opsForHash().increment(MetricsKeys.histogramKey(typeCarte, operationType),
+                    String.valueOf(MetricsHistogram.bucketOf(nanos)), 1);
+        } catch (Exception e) {
+            LOG.error("Error while recording histogram for {}/{}: ", typeCarte, operationType, e);
+        }
+    }
+
+    /**
+     * Calcule p50, p90, p99 et p99.9 à partir de l'histogramme d'un couple (typeCarte, operationType).
+     * L'histogramme est partagé par toutes les instances : le résultat couvre l'ensemble des écrivains.
+     *
+     * @param unit l'unité des valeurs retournées
+     * @return les percentiles, ou null si aucun histogramme n'a été enregistré
+     */
+    public PercentilesResponse getPercentiles(String typeCarte, String operationType, MetricsTimeUnit unit) {
+        try {
+            Map<Integer, Long> buckets = MetricsHistogram.fromHash(
+                    redisTemplate.opsForHash().entries(MetricsKeys.histogramKey(typeCarte, operationType)));
+            long count = MetricsHistogram.totalCount(buckets);
+            if (count == 0) {
+                return null;
+            }
+            PercentilesResponse response = new PercentilesResponse();
+            response.setTypeCarte(typeCarte);
+            response.setOperationType(operationType);
+            response.setUnit(unit.getSymbol());
+            response.setCount(count);
+            response.setP50(toUnit(MetricsHistogram.percentile(buckets, 0.50), unit));
+            response.setP90(toUnit(MetricsHistogram.percentile(buckets, 0.90), unit));
+            response.setP99(toUnit(MetricsHistogram.percentile(buckets, 0.99), unit));
+            response.setP999(toUnit(MetricsHistogram.percentile(buckets, 0.999), unit));
+            return response;
+        } catch (Exception e) {
+            LOG.error("Error while computing percentiles for {}/{}: ", typeCarte, operationType, e);
+            return null;
+        }
+    }
+
+    private static double toUnit(long nanos, MetricsTimeUnit unit) {
+        return (double) nanos / unit.getNanos();
+    }
+
+    /**
+     * Métriques d'un type de carte, servies par le cache local s'il est activé ({@code metrics.near-cache}).
+     * Les lectures simultanées d'un même type de carte partagent un seul chargement.
+     */
     public MetricsDto getMetricsFromRedis(String typeCarte) {
+        return nearCache.get(MetricsKeys.cardKey(typeCarte), "card",
+                () -> singleFlight.execute("card:" + typeCarte, () -> loadCard(typeCarte)));
+    }
+
+    private MetricsDto loadCard(String typeCarte) {
         try {
+            if (storageLayout == MetricsStorageLayout.HASH) {
+                return MetricsHashLayout.toMetricsDto(typeCarte, redisTemplate.opsForHash().entries(MetricsKeys.cardKey(typeCarte)));
+            }
+            if (isBinaryCodec()) {
+                byte[] document = readDocument("metrics:" + typeCarte);
+                return document == null ? null : codecRegistry.decodeCard(document);
+            }
             String json = redisTemplate.opsForValue().get("metrics:" + typeCarte);
             if (json == null || json.trim().isEmpty()) {
                 return null;
             }
+            if (!isJsonText(json)) {
+                // Document écrit avec un codec binaire avant le retour au json : relu en octets et décodé selon son en-tête
+                byte[] document = readDocument("metrics:" + typeCarte);
+                return document == null ? null : codecRegistry.decodeCard(document);
+            }
             return objectMapper.readValue(json, MetricsDto.class);
         } catch (Exception e) {
             e.printStackTrace(); // Gérer l'exception de manière appropriée
@@ -92,7 +450,12 @@ public class MetricsService {
 
     public boolean deleteMetricsFromRedis(String typeCarte) {
         try {
-            return redisTemplate.delete("metrics:" + typeCarte);
+            boolean deleted = Boolean.TRUE.equals(redisTemplate.delete("metrics:" + typeCarte));
+            if (deleted) {
+                keyRegistry.remove(typeCarte);
+            }
+            nearCache.invalidate(MetricsKeys.cardKey(typeCarte));
+            return deleted;
         } catch (Exception e) {
             e.printStackTrace(); // Gérer l'exception de manière appropriée
             return false;
@@ -108,14 +471,44 @@ public class MetricsService {
      * @return un objet MetricsAggregated contenant les métriques agrégées, ou null si aucune métrique trouvée
      */
     public MetricsAggregated getMetrics(String typeCarte, String operationType) {
+        // En disposition hash, la vue de l'opération est lue dans le hash de la carte, à côté de la vue "card"
+        if (storageLayout == MetricsStorageLayout.HASH) {
+            return nearCache.get(MetricsKeys.cardKey(typeCarte), "op:" + operationType,
+                    () -> loadSharedOperation(typeCarte, operationType));
+        }
+        return nearCache.get(MetricsKeys.redisKey(typeCarte, operationType), "operation",
+                () -> loadSharedOperation(typeCarte, operationType));
+    }
+
+    private MetricsAggregated loadSharedOperation(String typeCarte, String operationType) {
+        return singleFlight.execute("operation:" + typeCarte + ":" + operationType,
+                () -> loadOperation(typeCarte, operationType));
+    }
+
+    private MetricsAggregated loadOperation(String typeCarte, String operationType) {
         try {
+            if (storageLayout == MetricsStorageLayout.HASH) {
+                // Seuls les champs de l'opération sont lus, sans charger le reste de la carte
+                List<Object> values = redisTemplate.opsForHash().multiGet(MetricsKeys.cardKey(typeCarte),
+                        new ArrayList<>(MetricsHashLayout.fields(operationType)));
+                return MetricsHashLayout.toAggregated(typeCarte, operationType, values);
+            }
+
             // Générer la clé Redis basée sur le type de carte et le type d'opération
             String redisKey = "metrics:" + typeCarte + ":" + operationType;
+            if (isBinaryCodec()) {
+                byte[] document = readDocument(redisKey);
+                return document == null ? null : codecRegistry.decodeOperation(document);
+            }
             String json = redisTemplate.opsForValue().get(redisKey);
 
             if (json == null || json.trim().isEmpty()) {
                 return null; // Aucune métrique trouvée
             }
+            if (!isJsonText(json)) {
+                byte[] document = readDocument(redisKey);
+                return document == null ? null : codecRegistry.decodeOperation(document);
+            }
 
             return objectMapper.readValue(json, MetricsAggregated.class);
         } catch (Exception e) {
@@ -134,19 +527,289 @@ public class MetricsService {
         return getMetricsFromRedis(typeCarte);
     }
 
-    // methode recupere toutes les cles redis
+    private long toStorageUnit(long executionTime, MetricsTimeUnit unit) {
+        return timeUnit.convert(executionTime, unit == null ? MetricsTimeUnit.MILLISECONDS : unit);
+    }
+
+    private boolean isBinaryCodec() {
+        return codecName != null && !"json".equalsIgnoreCase(codecName);
+    }
+
+    /**
+     * Indique si un document lu comme chaîne est du JSON ; sinon il a été écrit par un codec binaire
+     * et doit être relu en octets
+     */
+    private static boolean isJsonText(String document) {
+        return document.stripLeading().startsWith("{");
+    }
+
+    private byte[] readDocument(String key) {
+        byte[] document = redisTemplate.execute(
+                (RedisCallback<byte[]>) connection -> connection.stringCommands().get(key.getBytes(StandardCharsets.UTF_8)));
+        return document == null || document.length == 0 ? null : document;
+    }
+
+    private void writeDocument(String key, byte[] document) {
+        redisTemplate.execute(
+                (RedisCallback<Boolean>) connection -> connection.stringCommands().set(key.getBytes(StandardCharsets.UTF_8), document));
+    }
+
+    /**
+     * Récupère les métriques de toutes les cartes du registre des clés, par pages lues en un MGET
+     * (ou un pipeline de HGETALL en disposition hash), sans parcours du keyspace. Les clés illisibles
+     * comme MetricsDto sont ignorées. Les appels simultanés partagent la même lecture et le même résultat.
+     */
     public Map<String, MetricsDto> getAllRedisKeys() {
         try {
-            Set<String> keys = redisTemplate.keys("metrics:*");
-            if (keys == null || keys.isEmpty())
-                return Collections.emptyMap();
+            return singleFlight.execute("all", () -> readCards(keyRegistry.cardKeys()));
+        } catch (Exception e) {
+            LOG.error("Error while reading all metrics keys: ", e);
+            return null;
+        }
+    }
 
-            // filter not null values
-            return keys.stream().filter(key -> getMetricsFromRedis(key.replace("metrics:", "")) != null)
-                            .collect(Collectors.toMap(key -> key.replace("metrics:", ""), key -> getMetricsFromRedis(key.replace("metrics:", ""))));
+    /**
+     * Parcourt les métriques de toutes les cartes du registre une page à la fois (exports en flux) :
+     * seule la page courante est en mémoire
+     *
+     * @return le nombre de types de carte parcourus
+     */
+    public long forEachCard(BiConsumer<String, MetricsDto> consumer) {
+        return keyRegistry.forEachCardPage(keyspaceIterator.getPageSize(), cards -> {
+            List<String> cardKeys = new ArrayList<>(cards.size());
+            cards.forEach(typeCarte -> cardKeys.add(MetricsKeys.cardKey(typeCarte)));
+            readCards(cardKeys).forEach(consumer);
+        });
+    }
 
+    /**
+     * Récupère les métriques de plusieurs types de carte en un aller-retour : un MGET (un pipeline de
+     * HGETALL en disposition hash) par page de {@code metrics.keyspace.page-size} clés.
+     *
+     * @return les métriques par typeCarte, dans l'ordre demandé ; les types sans métriques sont absents
+     */
+    public Map<String, MetricsDto> getMetricsFromRedis(Collection<String> typeCartes) {
+        try {
+            List<String> cardKeys = new ArrayList<>();
+            new LinkedHashSet<>(typeCartes).forEach(typeCarte -> cardKeys.add(MetricsKeys.cardKey(typeCarte)));
+            return readCards(cardKeys);
+        } catch (Exception e) {
+            LOG.error("Error while reading metrics of {} card types: ", typeCartes.size(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Indique si les lectures par carte peuvent recopier les documents stockés dans la réponse
+     * ({@code metrics.read.raw-json}, disposition document, cache local désactivé)
+     */
+    public boolean isRawJsonReadable() {
+        return rawJsonReads && storageLayout != MetricsStorageLayout.HASH && !nearCache.isEnabled();
+    }
+
+    /**
+     * Document JSON des métriques d'un type de carte, tel que stocké. Un document binaire (smile, cbor,
+     * binary) est décodé puis sérialisé en JSON.
+     *
+     * @return le document, ou null si le type de carte n'a pas de métriques
+     */
+    public byte[] getRawMetricsJson(String typeCarte) {
+        return singleFlight.execute("raw-card:" + typeCarte, () -> {
+            try {
+                byte[] document = readDocument(MetricsKeys.cardKey(typeCarte));
+                return document == null ? null : toJson(document);
+            } catch (Exception e) {
+                LOG.error("Error while reading raw metrics of {}: ", typeCarte, e);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Objet JSON {@code {typeCarte: document}} assemblé à partir des documents stockés, lus par un MGET
+     * par page ; les types sans métriques sont absents.
+     *
+     * @return l'objet, dans l'ordre demandé, ou null en cas d'erreur
+     */
+    public byte[] getRawMetricsJson(Collection<String> typeCartes) {
+        try {
+            List<String> cardKeys = new ArrayList<>();
+            new LinkedHashSet<>(typeCartes).forEach(typeCarte -> cardKeys.add(MetricsKeys.cardKey(typeCarte)));
+            return spliceCards(cardKeys);
+        } catch (Exception e) {
+            LOG.error("Error while reading raw metrics of {} card types: ", typeCartes.size(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Objet JSON {@code {typeCarte: document}} de toutes les cartes du registre des clés
+     *
+     * @return l'objet, ou null en cas d'erreur
+     */
+    public byte[] getAllRawMetricsJson() {
+        try {
+            return singleFlight.execute("raw-all", () -> spliceCards(keyRegistry.cardKeys()));
+        } catch (Exception e) {
+            LOG.error("Error while reading all raw metrics: ", e);
+            return null;
+        }
+    }
+
+    private byte[] spliceCards(List<String> cardKeys) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('{');
+        keyspaceIterator.forEachValue(cardKeys, (key, document) -> {
+            byte[] json = toJson(document);
+            if (json == null) {
+                return;
+            }
+            if (out.size() > 1) {
+                out.write(',');
+            }
+            out.write('"');
+            out.writeBytes(JsonStringEncoder.getInstance().quoteAsUTF8(key.substring("metrics:".length())));
+            out.write('"');
+            out.write(':');
+            out.writeBytes(json);
+        });
+        out.write('}');
+        return out.toByteArray();
+    }
+
+    /**
+     * @return le document s'il est déjà en JSON, sinon sa conversion ; null s'il ne représente pas une carte
+     */
+    private byte[] toJson(byte[] document) {
+        if (codecRegistry.isJsonDocument(document)) {
+            return document;
+        }
+        try {
+            MetricsDto metrics = codecRegistry.decodeCard(document);
+            return metrics == null ? null : objectMapper.writeValueAsBytes(metrics);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Récupère les métriques agrégées de plusieurs couples en un aller-retour : un MGET des documents
+     * {@code metrics:{typeCarte}:{op}} par page, ou un pipeline de HMGET sur les champs de chaque
+     * opération en disposition hash.
+     *
+     * @param pairs les couples {@code typeCarte:operationType}
+     * @return les métriques par couple, dans l'ordre demandé ; les couples sans métriques sont absents
+     */
+    public Map<String, MetricsAggregated> getMetrics(Collection<String> pairs) {
+        try {
+            Map<String, MetricsAggregated> result = new LinkedHashMap<>();
+            List<String> distinct = new ArrayList<>(new LinkedHashSet<>(pairs));
+            if (storageLayout == MetricsStorageLayout.HASH) {
+                keyspaceIterator.forEachPage(distinct, page -> readHashOperations(page, result));
+                return result;
+            }
+            List<String> keys = new ArrayList<>();
+            distinct.forEach(pair -> keys.add("metrics:" + pair));
+            keyspaceIterator.forEachValue(keys, (key, document) -> {
+                MetricsAggregated aggregated = decodeOperation(document);
+                if (aggregated != null) {
+                    result.put(key.substring("metrics:".length()), aggregated);
+                }
+            });
+            return result;
+        } catch (Exception e) {
+            LOG.error("Error while reading metrics of {} operations: ", pairs.size(), e);
+            return null;
+        }
+    }
+
+    private Map<String, MetricsDto> readCards(List<String> cardKeys) {
+        Map<String, MetricsDto> result = new LinkedHashMap<>();
+        if (storageLayout == MetricsStorageLayout.HASH) {
+            keyspaceIterator.forEachPage(cardKeys, keys -> readHashPage(keys, result));
+        } else {
+            keyspaceIterator.forEachValue(cardKeys, (key, document) -> {
+                MetricsDto metrics = decodeCard(document);
+                if (metrics != null) {
+                    result.put(key.substring("metrics:".length()), metrics);
+                }
+            });
+        }
+        return result;
+    }
+
+    private void readHashOperations(List<String> pairs, Map<String, MetricsAggregated> result) {
+        List<String> valid = pairs.stream().filter(pair -> pair.lastIndexOf(':') > 0).toList();
+        List<Object> values;
+        try {
+            values = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String pair : valid) {
+                    int separator = pair.lastIndexOf(':');
+                    byte[][] fields = MetricsHashLayout.fields(pair.substring(separator + 1)).stream()
+                            .map(field -> field.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+                    connection.hashCommands().hMGet(MetricsKeys.cardKey(pair.substring(0, separator))
+                            .getBytes(StandardCharsets.UTF_8), fields);
+                }
+                return null;
+            });
+        } catch (RedisPipelineException e) {
+            // Cartes stockées en document JSON : leurs résultats sont des erreurs, ignorées ci-dessous
+            values = e.getResults();
+        }
+        for (int i = 0; i < valid.size() && i < values.size(); i++) {
+            if (values.get(i) instanceof List<?> fields) {
+                int separator = valid.get(i).lastIndexOf(':');
+                MetricsAggregated aggregated = MetricsHashLayout.toAggregated(valid.get(i).substring(0, separator),
+                        valid.get(i).substring(separator + 1), fields);
+                if (aggregated != null) {
+                    result.put(valid.get(i), aggregated);
+                }
+            }
+        }
+    }
+
+    private void readHashPage(List<String> keys, Map<String, MetricsDto> result) {
+        List<Object> entries;
+        try {
+            entries = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                keys.forEach(key -> connection.hashCommands().hGetAll(key.getBytes(StandardCharsets.UTF_8)));
+                return null;
+            });
+        } catch (RedisPipelineException e) {
+            // Clés d'un autre type (documents JSON) : leurs résultats sont des erreurs, ignorées ci-dessous
+            entries = e.getResults();
+        }
+        for (int i = 0; i < keys.size() && i < entries.size(); i++) {
+            if (entries.get(i) instanceof Map<?, ?> fields && !fields.isEmpty()) {
+                MetricsDto metrics = MetricsHashLayout.toMetricsDto(keys.get(i).substring("metrics:".length()), fields);
+                if (metrics != null) {
+                    result.put(keys.get(i).substring("metrics:".length()), metrics);
+                }
+            }
+        }
+    }
+
+    /**
+     * Le format est détecté sur chaque document et non d'après le codec configuré : un changement de
+     * codec laisse lisibles les documents écrits avant.
+     *
+     * @return le document décodé, ou null s'il ne représente pas les métriques d'une opération
+     */
+    private MetricsAggregated decodeOperation(byte[] document) {
+        try {
+            return codecRegistry.decodeOperation(document);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return le document décodé, ou null s'il ne représente pas les métriques d'une carte
+     */
+    private MetricsDto decodeCard(byte[] document) {
+        try {
+            return codecRegistry.decodeCard(document);
         } catch (Exception e) {
-            e.printStackTrace(); // Gérer l'exception de manière appropriée
             return null;
         }
     }
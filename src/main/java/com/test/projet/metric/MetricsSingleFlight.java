@@ -0,0 +1,84 @@
+package com.test.projet.metric;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Regroupement des lectures identiques simultanées (« single flight »).
+ *
+ * Le premier appelant d'une clé exécute le chargement ; ceux qui arrivent pendant qu'il est en cours
+ * attendent et reçoivent le même résultat (ou la même exception) au lieu de relancer la lecture Redis
+ * et le décodage. Rien n'est conservé une fois le chargement terminé : un appel ultérieur recharge.
+ * Le résultat étant partagé entre les appelants, il ne doit pas être modifié.
+ *
+ * Jauges : {@code metrics.single-flight.loads} (chargements exécutés), {@code metrics.single-flight.shared}
+ * (appels servis par le chargement d'un autre) et {@code metrics.single-flight.in-flight}.
+ */
+@Component
+public class MetricsSingleFlight {
+
+    private final boolean enabled;
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    public MetricsSingleFlight(MeterRegistry meterRegistry,
+            @Value("${metrics.single-flight.enabled:true}") boolean enabled) {
+        this(enabled);
+        meterRegistry.gauge("metrics.single-flight.loads", loads, LongAdder::doubleValue);
+        meterRegistry.gauge("metrics.single-flight.shared", shared, LongAdder::doubleValue);
+        meterRegistry.gauge("metrics.single-flight.in-flight", inFlight, ConcurrentMap::size);
+    }
+
+    MetricsSingleFlight(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Exécute {@code loader}, ou attend le résultat du chargement de {@code key} déjà en cours
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            shared.increment();
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        loads.increment();
+        try {
+            T value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    long getLoads() {
+        return loads.sum();
+    }
+
+    long getShared() {
+        return shared.sum();
+    }
+}
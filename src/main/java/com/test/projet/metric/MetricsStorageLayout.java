@@ -0,0 +1,17 @@
+package com.test.projet.metric;
+
+/**
+ * Disposition de la vue par carte {@code metrics:{typeCarte}} dans Redis
+ * (propriété {@code metrics.storage.layout}).
+ */
+public enum MetricsStorageLayout {
+
+    /** Un document (JSON ou codec binaire) par carte, plus un document agrégé par opération */
+    DOCUMENT,
+
+    /**
+     * Un hash par carte, un champ par (opération, statistique) : l'écriture d'un événement ne touche
+     * que les champs de son opération, et la lecture d'une opération se fait par HMGET
+     */
+    HASH
+}
@@ -0,0 +1,87 @@
+package com.test.projet.metric;
+
+/**
+ * Unité de stockage des temps d'exécution (propriété {@code metrics.time-unit}).
+ *
+ * Chaque document porte son unité ({@code unit}) ; un document sans unité date d'avant
+ * cette propriété et est en millisecondes. Lorsqu'une écriture et le document stocké n'ont pas la
+ * même unité, les deux sont ramenés à la plus fine : la conversion est une multiplication,
+ * sans perte de précision.
+ */
+public enum MetricsTimeUnit {
+
+    MILLISECONDS("ms", 1_000_000L),
+    MICROSECONDS("us", 1_000L),
+    NANOSECONDS("ns", 1L);
+
+    private final String symbol;
+    private final long nanos;
+
+    MetricsTimeUnit(String symbol, long nanos) {
+        this.symbol = symbol;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Symbole enregistré dans les documents : ms, us ou ns
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Nombre de nanosecondes par unité
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Unité d'un document stocké ; absente ou inconnue : millisecondes (données historiques)
+     */
+    public static MetricsTimeUnit fromSymbol(String symbol) {
+        if (symbol != null) {
+            for (MetricsTimeUnit unit : values()) {
+                if (unit.symbol.equals(symbol)) {
+                    return unit;
+                }
+            }
+        }
+        return MILLISECONDS;
+    }
+
+    /**
+     * Unité d'un paramètre REST : symbole (ms, us, ns) ou nom de la constante
+     */
+    public static MetricsTimeUnit parse(String value) {
+        if (value == null || value.isBlank()) {
+            return MILLISECONDS;
+        }
+        for (MetricsTimeUnit unit : values()) {
+            if (unit.symbol.equalsIgnoreCase(value) || unit.name().equalsIgnoreCase(value)) {
+                return unit;
+            }
+        }
+        throw new IllegalArgumentException("Unité de temps inconnue : " + value);
+    }
+
+    /**
+     * Convertit une durée exprimée dans {@code source} vers cette unité (troncature si plus grossière)
+     */
+    public long convert(long duration, MetricsTimeUnit source) {
+        if (source == this) {
+            return duration;
+        }
+        if (source.nanos > nanos) {
+            return duration * (source.nanos / nanos);
+        }
+        return duration / (nanos / source.nanos);
+    }
+
+    /**
+     * La plus fine des deux unités
+     */
+    public MetricsTimeUnit finest(MetricsTimeUnit other) {
+        return other.nanos < nanos ? other : this;
+    }
+}
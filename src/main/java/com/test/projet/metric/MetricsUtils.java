@@ -3,6 +3,8 @@ package com.test.projet.metric;
 import io.micrometer.core.instrument.Timer;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,6 +16,9 @@ public class MetricsUtils {
     
     private static final Logger LOG = LoggerFactory.getLogger(MetricsUtils.class);
     
+    // ObjectMapper est thread-safe une fois configuré : une seule instance partagée
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    
     private MetricsUtils() {
         // Constructeur privé pour classe utilitaire
     }
@@ -72,7 +77,7 @@ public class MetricsUtils {
         String existingMetricsJson = redisTemplate.opsForValue().get("metrics:" + typeCarte);
         if (existingMetricsJson != null) {
             try {
-                MetricsDto existingMetricsObject = new com.fasterxml.jackson.databind.ObjectMapper().readValue(existingMetricsJson, MetricsDto.class);
+                MetricsDto existingMetricsObject = OBJECT_MAPPER.readValue(existingMetricsJson, MetricsDto.class);
                 
                 // Calculer min et max
                 List<Double> minMax = calculateMinMax(existingMetricsObject, operationType, avg);
@@ -96,45 +101,37 @@ public class MetricsUtils {
     }
     
     /**
-     * Nouvelle méthode pour collecter et accumuler les métriques existantes
+     * Nouvelle méthode pour collecter et accumuler les métriques existantes.
+     * Accès direct aux emplacements indexés de MetricsDto : O(1) et sans allocation une fois
+     * l'opération connue.
      */
     public static void collectAndAccumulateMetrics(MetricsDto metricsObject, MeterRegistry meterRegistry, 
             String operationType, String typeCarte, StringRedisTemplate redisTemplate, long executionTime) {
         
         try {
-            // Rechercher les métriques existantes pour ce type d'opération
-            MetricInner existingNumber = findMetricByNameAndType(metricsObject, "Number", operationType);
-            MetricInner existingAverage = findMetricByNameAndType(metricsObject, "Average", operationType);
-            MetricInner existingMax = findMetricByNameAndType(metricsObject, "Max", operationType);
-            MetricInner existingMin = findMetricByNameAndType(metricsObject, "Min", operationType);
+            double[] stats = metricsObject.getStats(operationType);
             
-            double newCount, newAverage, newMax, newMin;
-            
-            if (existingNumber != null) {
+            if (stats != null && !Double.isNaN(stats[MetricsDto.NUMBER])) {
                 // Cumuler avec les valeurs existantes
-                double oldCount = existingNumber.getValue();
-                double oldAverage = existingAverage != null ? existingAverage.getValue() : executionTime;
-                double oldMax = existingMax != null ? existingMax.getValue() : executionTime;
-                double oldMin = existingMin != null ? existingMin.getValue() : executionTime;
+                double oldCount = stats[MetricsDto.NUMBER];
+                double oldAverage = valueOrDefault(stats[MetricsDto.AVERAGE], executionTime);
+                double oldMax = valueOrDefault(stats[MetricsDto.MAX], executionTime);
+                double oldMin = valueOrDefault(stats[MetricsDto.MIN], executionTime);
                 
                 // Calculs cumulatifs
-                newCount = oldCount + 1;
-                newAverage = ((oldAverage * oldCount) + executionTime) / newCount;
-                newMax = Math.max(oldMax, executionTime);
-                newMin = Math.min(oldMin, executionTime);
-                
-                // Mettre à jour les métriques existantes
-                updateOrAddMetric(metricsObject, "Number", newCount, operationType);
-                updateOrAddMetric(metricsObject, "Average", newAverage, operationType);
-                updateOrAddMetric(metricsObject, "Max", newMax, operationType);
-                updateOrAddMetric(metricsObject, "Min", newMin, operationType);
+                double newCount = oldCount + 1;
+                stats[MetricsDto.NUMBER] = newCount;
+                stats[MetricsDto.AVERAGE] = ((oldAverage * oldCount) + executionTime) / newCount;
+                stats[MetricsDto.MAX] = Math.max(oldMax, executionTime);
+                stats[MetricsDto.MIN] = Math.min(oldMin, executionTime);
                 
             } else {
                 // Première métrique pour ce type d'opération
-                updateOrAddMetric(metricsObject, "Number", 1.0, operationType);
-                updateOrAddMetric(metricsObject, "Average", (double) executionTime, operationType);
-                updateOrAddMetric(metricsObject, "Max", (double) executionTime, operationType);
-                updateOrAddMetric(metricsObject, "Min", (double) executionTime, operationType);
+                stats = metricsObject.getOrCreateStats(operationType);
+                stats[MetricsDto.NUMBER] = 1.0;
+                stats[MetricsDto.AVERAGE] = executionTime;
+                stats[MetricsDto.MAX] = executionTime;
+                stats[MetricsDto.MIN] = executionTime;
             }
             
         } catch (Exception e) {
@@ -143,27 +140,37 @@ public class MetricsUtils {
     }
     
     /**
-     * Recherche une métrique par nom et type dans l'objet MetricsDto
+     * Cumule un delta (plusieurs exécutions) dans la vue par carte, avec les mêmes règles que le
+     * script {@code metrics-accumulate.lua} : utilisé lorsque les documents ne sont pas stockés en JSON.
      */
-    private static MetricInner findMetricByNameAndType(MetricsDto metricsObject, String name, String type) {
-        return metricsObject.getMetrics().stream()
-                .filter(metric -> name.equals(metric.getName()) && type.equals(metric.getType()))
-                .findFirst()
-                .orElse(null);
-    }
-    
-    /**
-     * Met à jour une métrique existante ou en ajoute une nouvelle
-     */
-    private static void updateOrAddMetric(MetricsDto metricsObject, String name, double value, String type) {
-        MetricInner existingMetric = findMetricByNameAndType(metricsObject, name, type);
-        
-        if (existingMetric != null) {
-            // Mettre à jour la métrique existante
-            existingMetric.setValue(value);
+    public static void accumulate(MetricsDto metricsObject, MetricsDelta delta, MetricsTimeUnit deltaUnit) {
+        long factor = metricsObject.alignUnit(deltaUnit);
+        double sum = (double) delta.getSum() * factor;
+        double mean = sum / delta.getCount();
+        double min = delta.hasExtremes() ? (double) delta.getMin() * factor : mean;
+        double max = delta.hasExtremes() ? (double) delta.getMax() * factor : mean;
+        double[] stats = metricsObject.getStats(delta.getOperationType());
+
+        if (stats != null && !Double.isNaN(stats[MetricsDto.NUMBER])) {
+            double oldCount = stats[MetricsDto.NUMBER];
+            double oldAverage = valueOrDefault(stats[MetricsDto.AVERAGE], mean);
+            double newCount = oldCount + delta.getCount();
+            stats[MetricsDto.NUMBER] = newCount;
+            stats[MetricsDto.AVERAGE] = ((oldAverage * oldCount) + sum) / newCount;
+            if (delta.hasExtremes()) {
+                stats[MetricsDto.MAX] = Math.max(valueOrDefault(stats[MetricsDto.MAX], max), max);
+                stats[MetricsDto.MIN] = Math.min(valueOrDefault(stats[MetricsDto.MIN], min), min);
+            }
         } else {
-            // Ajouter une nouvelle métrique
-            metricsObject.addMetric(new MetricInner(name, value, type));
+            stats = metricsObject.getOrCreateStats(delta.getOperationType());
+            stats[MetricsDto.NUMBER] = delta.getCount();
+            stats[MetricsDto.AVERAGE] = mean;
+            stats[MetricsDto.MAX] = max;
+            stats[MetricsDto.MIN] = min;
         }
     }
+    
+    private static double valueOrDefault(double value, double defaultValue) {
+        return Double.isNaN(value) ? defaultValue : value;
+    }
 }
\ No newline at end of file
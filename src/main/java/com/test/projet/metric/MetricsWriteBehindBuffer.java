@@ -0,0 +1,202 @@
+package com.test.projet.metric;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.stereotype.Component;
+
+import com.test.projet.metric.sketch.MetricsSketchRegistry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Accumulateur en mémoire pour le mode {@link MetricsIngestionMode#WRITE_BEHIND}.
+ *
+ * Le thread métier ne fait que des incréments sur des cellules LongAdder/LongAccumulator
+ * (sans verrou) indexées par (typeCarte, operationType). Un planificateur vide les cellules
+ * toutes les {@code metrics.write-behind.flush-interval-ms} et pousse les deltas vers Redis
+ * en un seul pipeline, ainsi qu'à l'arrêt de l'application.
+ */
+@Component
+public class MetricsWriteBehindBuffer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsWriteBehindBuffer.class);
+
+    private final MetricsAccumulationEngine accumulationEngine;
+
+    private final MetricsSketchRegistry sketchRegistry;
+
+    private final Map<String, Map<String, Cell>> cells = new ConcurrentHashMap<>();
+
+    @Value("${metrics.ingestion.mode:SYNC}")
+    private MetricsIngestionMode ingestionMode;
+
+    @Value("${metrics.write-behind.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    private ScheduledExecutorService scheduler;
+
+    public MetricsWriteBehindBuffer(MetricsAccumulationEngine accumulationEngine, MetricsSketchRegistry sketchRegistry) {
+        this.accumulationEngine = accumulationEngine;
+        this.sketchRegistry = sketchRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (ingestionMode != MetricsIngestionMode.WRITE_BEHIND) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        LOG.info("Write-behind des métriques actif (flush toutes les {} ms)", flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Dernier flush pour ne rien perdre à l'arrêt
+        flushQuietly();
+    }
+
+    /**
+     * Enregistre une exécution : quelques incréments en mémoire, aucun accès Redis.
+     */
+    public void record(String typeCarte, String operationType, long executionTime) {
+        cell(typeCarte, operationType).record(executionTime);
+        sketchRegistry.record(typeCarte, operationType, executionTime, 1);
+    }
+
+    /**
+     * Pousse vers Redis les deltas accumulés depuis le dernier flush.
+     *
+     * @return le nombre de clés (typeCarte, operationType) écrites
+     */
+    public int flush() {
+        List<MetricsDelta> deltas = new ArrayList<>();
+        cells.forEach((typeCarte, operations) -> operations.forEach((operationType, cell) -> {
+            MetricsDelta delta = cell.drain(typeCarte, operationType);
+            if (delta != null) {
+                deltas.add(delta);
+            }
+        }));
+        if (deltas.isEmpty()) {
+            return 0;
+        }
+        try {
+            accumulationEngine.applyAll(deltas);
+        } catch (RedisPipelineException e) {
+            // Seuls les deltas en échec sont réinjectés : les autres sont déjà écrits et ne doivent pas être rejoués
+            List<Object> results = e.getResults();
+            for (int i = 0; i < deltas.size(); i++) {
+                if (i >= results.size() || results.get(i) instanceof Throwable) {
+                    restore(deltas.get(i));
+                }
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            // Réinjecter les deltas pour qu'ils soient retentés au prochain flush
+            deltas.forEach(this::restore);
+            throw e;
+        }
+        return deltas.size();
+    }
+
+    private void restore(MetricsDelta delta) {
+        cell(delta.getTypeCarte(), delta.getOperationType()).restore(delta);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            LOG.error("Error while flushing write-behind metrics: ", e);
+        }
+    }
+
+    private Cell cell(String typeCarte, String operationType) {
+        Map<String, Cell> operations = cells.get(typeCarte);
+        if (operations == null) {
+            operations = cells.computeIfAbsent(typeCarte, key -> new ConcurrentHashMap<>());
+        }
+        Cell cell = operations.get(operationType);
+        if (cell == null) {
+            cell = operations.computeIfAbsent(operationType, key -> new Cell());
+        }
+        return cell;
+    }
+
+    /**
+     * Cellule de cumul sans verrou.
+     *
+     * L'écriture met à jour somme et extrêmes avant le compteur, et le flush lit le compteur en
+     * premier : une exécution comptée dans un flush a donc toujours sa durée dans ce flush ou dans
+     * le précédent. Les totaux restent exacts ; seule la moyenne d'un flush isolé peut être
+     * légèrement décalée d'une exécution concurrente.
+     */
+    static final class Cell {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        private final Map<Integer, LongAdder> buckets = new ConcurrentHashMap<>();
+
+        void record(long executionTime) {
+            sum.add(executionTime);
+            min.accumulate(executionTime);
+            max.accumulate(executionTime);
+            bucket(MetricsHistogram.bucketOf(executionTime)).increment();
+            count.increment();
+        }
+
+        void restore(MetricsDelta delta) {
+            sum.add(delta.getSum());
+            min.accumulate(delta.getMin());
+            max.accumulate(delta.getMax());
+            delta.getBuckets().forEach((bucket, bucketCount) -> bucket(bucket).add(bucketCount));
+            count.add(delta.getCount());
+        }
+
+        private LongAdder bucket(int bucket) {
+            LongAdder adder = buckets.get(bucket);
+            if (adder == null) {
+                adder = buckets.computeIfAbsent(bucket, key -> new LongAdder());
+            }
+            return adder;
+        }
+
+        MetricsDelta drain(String typeCarte, String operationType) {
+            long drainedCount = count.sumThenReset();
+            if (drainedCount == 0) {
+                return null;
+            }
+            MetricsDelta delta = MetricsDelta.of(typeCarte, operationType, drainedCount,
+                    sum.sumThenReset(), min.getThenReset(), max.getThenReset());
+            buckets.forEach((bucket, adder) -> delta.recordBucket(bucket, adder.sumThenReset()));
+            return delta;
+        }
+    }
+}
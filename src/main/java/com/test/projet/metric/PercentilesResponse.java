@@ -0,0 +1,82 @@
+package com.test.projet.metric;
+
+/**
+ * Percentiles d'un couple (typeCarte, operationType), calculés à la lecture à partir des buckets
+ * de {@link MetricsHistogram}. Les valeurs sont exprimées dans {@code unit}.
+ */
+public class PercentilesResponse {
+    private String typeCarte;
+    private String operationType;
+    private String unit;
+    private long count;
+    private double p50;
+    private double p90;
+    private double p99;
+    private double p999;
+
+    public PercentilesResponse() {}
+
+    public String getTypeCarte() {
+        return typeCarte;
+    }
+
+    public void setTypeCarte(String typeCarte) {
+        this.typeCarte = typeCarte;
+    }
+
+    public String getOperationType() {
+        return operationType;
+    }
+
+    public void setOperationType(String operationType) {
+        this.operationType = operationType;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public void setUnit(String unit) {
+        this.unit = unit;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public void setP50(double p50) {
+        this.p50 = p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public void setP90(double p90) {
+        this.p90 = p90;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public void setP99(double p99) {
+        this.p99 = p99;
+    }
+
+    public double getP999() {
+        return p999;
+    }
+
+    public void setP999(double p999) {
+        this.p999 = p999;
+    }
+}
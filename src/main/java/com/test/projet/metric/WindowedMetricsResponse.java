@@ -0,0 +1,109 @@
+package com.test.projet.metric;
+
+/**
+ * Statistiques d'un couple (typeCarte, operationType) sur les dernières minutes, fusionnées à partir
+ * des buckets par minute de {@link MetricsRollingWindows}. Les durées sont exprimées dans {@code unit}.
+ */
+public class WindowedMetricsResponse {
+    private String typeCarte;
+    private String operationType;
+    private int minutes;
+    private long from;
+    private long to;
+    private int buckets;
+    private String unit;
+    private long count;
+    private double averageTime;
+    private double minTime;
+    private double maxTime;
+
+    public WindowedMetricsResponse() {}
+
+    public String getTypeCarte() {
+        return typeCarte;
+    }
+
+    public void setTypeCarte(String typeCarte) {
+        this.typeCarte = typeCarte;
+    }
+
+    public String getOperationType() {
+        return operationType;
+    }
+
+    public void setOperationType(String operationType) {
+        this.operationType = operationType;
+    }
+
+    public int getMinutes() {
+        return minutes;
+    }
+
+    public void setMinutes(int minutes) {
+        this.minutes = minutes;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public void setFrom(long from) {
+        this.from = from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    public void setTo(long to) {
+        this.to = to;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public void setBuckets(int buckets) {
+        this.buckets = buckets;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public void setUnit(String unit) {
+        this.unit = unit;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public double getAverageTime() {
+        return averageTime;
+    }
+
+    public void setAverageTime(double averageTime) {
+        this.averageTime = averageTime;
+    }
+
+    public double getMinTime() {
+        return minTime;
+    }
+
+    public void setMinTime(double minTime) {
+        this.minTime = minTime;
+    }
+
+    public double getMaxTime() {
+        return maxTime;
+    }
+
+    public void setMaxTime(double maxTime) {
+        this.maxTime = maxTime;
+    }
+}
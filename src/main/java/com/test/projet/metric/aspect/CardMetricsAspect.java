@@ -1,6 +1,10 @@
 package com.test.projet.metric.aspect;
 
+import com.test.projet.metric.MetricsIngestionMode;
+import com.test.projet.metric.MetricsIngestionPipeline;
 import com.test.projet.metric.MetricsService;
+import com.test.projet.metric.MetricsTimeUnit;
+import com.test.projet.metric.MetricsWriteBehindBuffer;
 import com.test.projet.metric.annotation.CardMetrics;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
@@ -8,6 +12,7 @@ import org.aspectj.lang.annotation.Aspect;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
@@ -26,6 +31,22 @@ public class CardMetricsAspect {
     @Autowired
     private MetricsService metricsService;
 
+    @Autowired
+    private MetricsWriteBehindBuffer writeBehindBuffer;
+
+    @Autowired
+    private MetricsIngestionPipeline ingestionPipeline;
+
+    @Value("${metrics.ingestion.mode:SYNC}")
+    private MetricsIngestionMode ingestionMode;
+
+    /**
+     * Unité de stockage des durées ; la mesure est toujours prise en nanosecondes (horloge monotone)
+     * puis convertie, pour que les appels de moins d'une milliseconde ne valent pas 0
+     */
+    @Value("${metrics.time-unit:MILLISECONDS}")
+    private MetricsTimeUnit timeUnit = MetricsTimeUnit.MILLISECONDS;
+
     /**
      * Intercepte toutes les méthodes annotées avec @CardMetrics
      * et collecte automatiquement les métriques d'exécution
@@ -37,7 +58,7 @@ public class CardMetricsAspect {
      */
     @Around("@annotation(cardMetrics)")
     public Object collectMetrics(ProceedingJoinPoint joinPoint, CardMetrics cardMetrics) throws Throwable {
-        long startTime = System.currentTimeMillis();
+        long startTime = System.nanoTime();
         String methodName = joinPoint.getSignature().getName();
         String className = joinPoint.getTarget().getClass().getSimpleName();
         
@@ -56,34 +77,52 @@ public class CardMetricsAspect {
             Object result = joinPoint.proceed();
             
             // Calculer le temps d'exécution
-            long executionTime = System.currentTimeMillis() - startTime;
+            long executionTime = elapsedSince(startTime);
             
             // Collecter les métriques en cas de succès
-            metricsService.collectAndStoreMetrics(typeCarte, operationType, executionTime);
+            store(typeCarte, operationType, executionTime);
             
-            logger.debug("Métriques collectées avec succès pour {}#{} - Temps: {}ms", 
-                        className, methodName, executionTime);
+            logger.debug("Métriques collectées avec succès pour {}#{} - Temps: {}{}", 
+                        className, methodName, executionTime, timeUnit.getSymbol());
             
             return result;
             
         } catch (Throwable throwable) {
             // Calculer le temps d'exécution même en cas d'exception
-            long executionTime = System.currentTimeMillis() - startTime;
+            long executionTime = elapsedSince(startTime);
             
             // Collecter les métriques en cas d'exception si configuré
             if (cardMetrics.collectOnException()) {
                 String exceptionOperationType = operationType + "_ERROR";
-                metricsService.collectAndStoreMetrics(typeCarte, exceptionOperationType, executionTime);
+                store(typeCarte, exceptionOperationType, executionTime);
                 
-                logger.debug("Métriques collectées pour exception dans {}#{} - Temps: {}ms, Type: {}", 
-                            className, methodName, executionTime, exceptionOperationType);
+                logger.debug("Métriques collectées pour exception dans {}#{} - Temps: {}{}, Type: {}", 
+                            className, methodName, executionTime, timeUnit.getSymbol(), exceptionOperationType);
             } else {
-                logger.debug("Exception dans {}#{} - Temps: {}ms, métriques non collectées", 
-                            className, methodName, executionTime);
+                logger.debug("Exception dans {}#{} - Temps: {}{}, métriques non collectées", 
+                            className, methodName, executionTime, timeUnit.getSymbol());
             }
             
             // Re-lancer l'exception
             throw throwable;
         }
     }
-}
\ No newline at end of file
+
+    private long elapsedSince(long startNanos) {
+        return timeUnit.convert(System.nanoTime() - startNanos, MetricsTimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Transmet la mesure selon le mode d'ingestion configuré : écriture Redis immédiate (SYNC),
+     * cumul en mémoire (WRITE_BEHIND) ou mise en file vers un écrivain dédié (ASYNC)
+     */
+    private void store(String typeCarte, String operationType, long executionTime) {
+        if (ingestionMode == MetricsIngestionMode.WRITE_BEHIND) {
+            writeBehindBuffer.record(typeCarte, operationType, executionTime);
+        } else if (ingestionMode == MetricsIngestionMode.ASYNC) {
+            ingestionPipeline.submit(typeCarte, operationType, executionTime);
+        } else {
+            metricsService.collectAndStoreMetrics(typeCarte, operationType, executionTime);
+        }
+    }
+}
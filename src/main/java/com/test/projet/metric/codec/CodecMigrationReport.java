@@ -0,0 +1,67 @@
+package com.test.projet.metric.codec;
+
+/**
+ * Bilan d'une migration des documents de métriques vers le codec actif
+ */
+public class CodecMigrationReport {
+    private String codec;
+    private long scanned;
+    private long migrated;
+    private long skipped;
+    private long failed;
+    private long durationMs;
+
+    public CodecMigrationReport() {}
+
+    public CodecMigrationReport(String codec) {
+        this.codec = codec;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    public long getScanned() {
+        return scanned;
+    }
+
+    public void setScanned(long scanned) {
+        this.scanned = scanned;
+    }
+
+    public long getMigrated() {
+        return migrated;
+    }
+
+    public void setMigrated(long migrated) {
+        this.migrated = migrated;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public void setSkipped(long skipped) {
+        this.skipped = skipped;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+}
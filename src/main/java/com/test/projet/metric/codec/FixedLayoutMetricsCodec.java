@@ -0,0 +1,187 @@
+package com.test.projet.metric.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import com.test.projet.metric.MetricInner;
+import com.test.projet.metric.MetricsAggregated;
+import com.test.projet.metric.MetricsDto;
+
+/**
+ * Format binaire à disposition fixe, sans nom de champ répété.
+ *
+ * <pre>
+ * en-tête      : 0xFE 'M' version(2) nature(1 = carte, 2 = opération) unité (chaîne, null = ms)
+ * chaîne       : longueur u16 (0xFFFF = null) + octets UTF-8
+ *
+ * carte        : typeCarte, nbOperations u16,
+ *                puis par opération : nom, Number, Average, Max, Min (4 x double, NaN = absent),
+ *                nbAutres u16, puis par métrique libre : name, value (double), type
+ * opération    : typeCarte, operationType, count, totalTime, averageTime (double),
+ *                minTime, maxTime, lastUpdated (long)
+ * </pre>
+ *
+ * La version 1 (sans unité) reste lisible.
+ */
+public final class FixedLayoutMetricsCodec implements MetricsCodec {
+
+    private static final byte MAGIC_0 = (byte) 0xFE;
+    private static final byte MAGIC_1 = 'M';
+    private static final byte VERSION = 2;
+    private static final byte VERSION_WITHOUT_UNIT = 1;
+    private static final byte KIND_CARD = 1;
+    private static final byte KIND_OPERATION = 2;
+    private static final int NULL_STRING = 0xFFFF;
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        return data != null && data.length >= 4 && data[0] == MAGIC_0 && data[1] == MAGIC_1;
+    }
+
+    @Override
+    public byte[] encode(MetricsDto metrics) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeHeader(out, KIND_CARD);
+        writeString(out, metrics.getUnit());
+        writeString(out, metrics.getTypeCarte());
+        Set<String> operationTypes = metrics.getOperationTypes();
+        out.writeShort(operationTypes.size());
+        for (String operationType : operationTypes) {
+            writeString(out, operationType);
+            for (double value : metrics.getStats(operationType)) {
+                out.writeDouble(value);
+            }
+        }
+        out.writeShort(metrics.getOtherMetrics().size());
+        for (MetricInner metric : metrics.getOtherMetrics()) {
+            writeString(out, metric.getName());
+            out.writeDouble(metric.getValue());
+            writeString(out, metric.getType());
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public byte[] encode(MetricsAggregated aggregated) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeHeader(out, KIND_OPERATION);
+        writeString(out, aggregated.getUnit());
+        writeString(out, aggregated.getTypeCarte());
+        writeString(out, aggregated.getOperationType());
+        out.writeLong(aggregated.getCount());
+        out.writeLong(aggregated.getTotalTime());
+        out.writeDouble(aggregated.getAverageTime());
+        out.writeLong(aggregated.getMinTime());
+        out.writeLong(aggregated.getMaxTime());
+        out.writeLong(aggregated.getLastUpdated());
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public MetricsDto decodeCard(byte[] data) throws IOException {
+        Object document = decode(data);
+        if (document instanceof MetricsDto metrics) {
+            return metrics;
+        }
+        throw new IOException("Document binaire inattendu : métriques d'opération au lieu de métriques de carte");
+    }
+
+    @Override
+    public MetricsAggregated decodeOperation(byte[] data) throws IOException {
+        Object document = decode(data);
+        if (document instanceof MetricsAggregated aggregated) {
+            return aggregated;
+        }
+        throw new IOException("Document binaire inattendu : métriques de carte au lieu de métriques d'opération");
+    }
+
+    @Override
+    public Object decode(byte[] data) throws IOException {
+        if (!canDecode(data)) {
+            throw new IOException("En-tête binaire de métriques absent");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 2, data.length - 2));
+        byte version = in.readByte();
+        if (version != VERSION && version != VERSION_WITHOUT_UNIT) {
+            throw new IOException("Version de format binaire non supportée : " + version);
+        }
+        byte kind = in.readByte();
+        String unit = version == VERSION ? readString(in) : null;
+        if (kind == KIND_CARD) {
+            MetricsDto metrics = new MetricsDto(readString(in));
+            metrics.setUnit(unit);
+            int operationCount = in.readUnsignedShort();
+            for (int i = 0; i < operationCount; i++) {
+                double[] stats = metrics.getOrCreateStats(readString(in));
+                for (int slot = 0; slot < stats.length; slot++) {
+                    stats[slot] = in.readDouble();
+                }
+            }
+            int otherCount = in.readUnsignedShort();
+            for (int i = 0; i < otherCount; i++) {
+                String name = readString(in);
+                double value = in.readDouble();
+                metrics.addMetric(new MetricInner(name, value, readString(in)));
+            }
+            return metrics;
+        }
+        if (kind == KIND_OPERATION) {
+            MetricsAggregated aggregated = new MetricsAggregated(readString(in), readString(in));
+            aggregated.setUnit(unit);
+            aggregated.setCount(in.readLong());
+            aggregated.setTotalTime(in.readLong());
+            aggregated.setAverageTime(in.readDouble());
+            long minTime = in.readLong();
+            if (aggregated.getCount() > 0) {
+                // Sans exécution, le minimum reste à la sentinelle de MetricsAggregated
+                aggregated.setMinTime(minTime);
+            }
+            aggregated.setMaxTime(in.readLong());
+            aggregated.setLastUpdated(in.readLong());
+            return aggregated;
+        }
+        throw new IOException("Nature de document binaire inconnue : " + kind);
+    }
+
+    private static void writeHeader(DataOutputStream out, byte kind) throws IOException {
+        out.writeByte(MAGIC_0);
+        out.writeByte(MAGIC_1);
+        out.writeByte(VERSION);
+        out.writeByte(kind);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(NULL_STRING);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length >= NULL_STRING) {
+            throw new IOException("Chaîne trop longue pour le format binaire : " + utf8.length + " octets");
+        }
+        out.writeShort(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readUnsignedShort();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
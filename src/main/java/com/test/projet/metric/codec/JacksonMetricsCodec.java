@@ -0,0 +1,115 @@
+package com.test.projet.metric.codec;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.test.projet.metric.MetricsAggregated;
+import com.test.projet.metric.MetricsDto;
+
+/**
+ * Codecs Jackson : JSON (format historique), Smile et CBOR.
+ * Smile et CBOR conservent le modèle JSON mais en binaire, avec un en-tête permettant la détection.
+ */
+public final class JacksonMetricsCodec implements MetricsCodec {
+
+    private static final byte[] SMILE_HEADER = { ':', ')', '\n' };
+    private static final byte[] CBOR_SELF_DESCRIBE_TAG = { (byte) 0xD9, (byte) 0xD9, (byte) 0xF7 };
+
+    private final String name;
+    private final ObjectMapper mapper;
+
+    private JacksonMetricsCodec(String name, ObjectMapper mapper) {
+        this.name = name;
+        this.mapper = mapper;
+    }
+
+    public static JacksonMetricsCodec json() {
+        return new JacksonMetricsCodec("json", new ObjectMapper());
+    }
+
+    public static JacksonMetricsCodec smile() {
+        SmileFactory factory = SmileFactory.builder()
+                .enable(SmileGenerator.Feature.WRITE_HEADER)
+                .build();
+        return new JacksonMetricsCodec("smile", new ObjectMapper(factory));
+    }
+
+    public static JacksonMetricsCodec cbor() {
+        CBORFactory factory = CBORFactory.builder()
+                .enable(CBORGenerator.Feature.WRITE_TYPE_HEADER)
+                .build();
+        return new JacksonMetricsCodec("cbor", new ObjectMapper(factory));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        return switch (name) {
+            case "smile" -> startsWith(data, SMILE_HEADER);
+            case "cbor" -> startsWith(data, CBOR_SELF_DESCRIBE_TAG);
+            default -> firstNonWhitespace(data) == '{';
+        };
+    }
+
+    @Override
+    public byte[] encode(MetricsDto metrics) throws IOException {
+        return mapper.writeValueAsBytes(metrics);
+    }
+
+    @Override
+    public byte[] encode(MetricsAggregated aggregated) throws IOException {
+        return mapper.writeValueAsBytes(aggregated);
+    }
+
+    @Override
+    public MetricsDto decodeCard(byte[] data) throws IOException {
+        return mapper.readValue(data, MetricsDto.class);
+    }
+
+    @Override
+    public MetricsAggregated decodeOperation(byte[] data) throws IOException {
+        return mapper.readValue(data, MetricsAggregated.class);
+    }
+
+    @Override
+    public Object decode(byte[] data) throws IOException {
+        JsonNode tree = mapper.readTree(data);
+        if (tree.has("operationType")) {
+            return mapper.treeToValue(tree, MetricsAggregated.class);
+        }
+        return mapper.treeToValue(tree, MetricsDto.class);
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        if (data == null || data.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int firstNonWhitespace(byte[] data) {
+        if (data == null) {
+            return -1;
+        }
+        for (byte b : data) {
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return b;
+            }
+        }
+        return -1;
+    }
+}
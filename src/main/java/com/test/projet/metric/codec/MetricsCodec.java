@@ -0,0 +1,38 @@
+package com.test.projet.metric.codec;
+
+import java.io.IOException;
+
+import com.test.projet.metric.MetricsAggregated;
+import com.test.projet.metric.MetricsDto;
+
+/**
+ * Format de stockage des documents de métriques dans Redis
+ * ({@code metrics:{typeCarte}} et {@code metrics:{typeCarte}:{op}}).
+ */
+public interface MetricsCodec {
+
+    /**
+     * Nom du codec, tel qu'attendu par la propriété {@code metrics.codec}
+     */
+    String getName();
+
+    /**
+     * Indique si les octets ont été produits par ce codec (détection par en-tête)
+     */
+    boolean canDecode(byte[] data);
+
+    byte[] encode(MetricsDto metrics) throws IOException;
+
+    byte[] encode(MetricsAggregated aggregated) throws IOException;
+
+    MetricsDto decodeCard(byte[] data) throws IOException;
+
+    MetricsAggregated decodeOperation(byte[] data) throws IOException;
+
+    /**
+     * Décode un document sans connaître son type à l'avance
+     *
+     * @return un {@link MetricsDto} ou un {@link MetricsAggregated}
+     */
+    Object decode(byte[] data) throws IOException;
+}
@@ -0,0 +1,156 @@
+package com.test.projet.metric.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import com.test.projet.metric.MetricsAggregated;
+import com.test.projet.metric.MetricsDto;
+import com.test.projet.metric.MetricsHashLayout;
+import com.test.projet.metric.MetricsStorageLayout;
+
+/**
+ * Réécrit les documents {@code metrics:*} existants dans le codec actif.
+ *
+ * Les clés sont parcourues par SCAN (sans bloquer Redis comme KEYS) ; chaque document est
+ * remplacé par compare-and-set, de sorte qu'une écriture concurrente n'est jamais écrasée :
+ * le document concerné est simplement compté comme ignoré et sera réécrit à sa prochaine mise à jour.
+ *
+ * En disposition {@link MetricsStorageLayout#HASH}, les documents de carte sont convertis en hash
+ * (count, sum, min, max par opération) ; les documents agrégés par opération ne sont plus utilisés
+ * et restent en l'état.
+ */
+@Component
+public class MetricsCodecMigrator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsCodecMigrator.class);
+
+    static final RedisScript<Long> COMPARE_AND_SET_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/metrics-compare-and-set.lua"), Long.class);
+
+    static final RedisScript<Long> DOCUMENT_TO_HASH_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/metrics-document-to-hash.lua"), Long.class);
+
+    private static final int SCAN_COUNT = 500;
+
+    private final StringRedisTemplate redisTemplate;
+    private final MetricsCodecRegistry codecRegistry;
+    private final MetricsStorageLayout storageLayout;
+
+    public MetricsCodecMigrator(StringRedisTemplate redisTemplate, MetricsCodecRegistry codecRegistry,
+            @Value("${metrics.storage.layout:DOCUMENT}") MetricsStorageLayout storageLayout) {
+        this.redisTemplate = redisTemplate;
+        this.codecRegistry = codecRegistry;
+        this.storageLayout = storageLayout;
+    }
+
+    public CodecMigrationReport migrate() {
+        long start = System.currentTimeMillis();
+        MetricsCodec target = codecRegistry.getActive();
+        CodecMigrationReport report = new CodecMigrationReport(
+                storageLayout == MetricsStorageLayout.HASH ? "hash" : target.getName());
+        ScanOptions options = ScanOptions.scanOptions().match("metrics:*").count(SCAN_COUNT).build();
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                String key = cursor.next();
+                report.setScanned(report.getScanned() + 1);
+                try {
+                    if (migrateKey(key, target)) {
+                        report.setMigrated(report.getMigrated() + 1);
+                    } else {
+                        report.setSkipped(report.getSkipped() + 1);
+                    }
+                } catch (Exception e) {
+                    report.setFailed(report.getFailed() + 1);
+                    LOG.error("Error while migrating metrics document {}: ", key, e);
+                }
+            }
+        }
+        report.setDurationMs(System.currentTimeMillis() - start);
+        LOG.info("Migration des métriques vers le format {} : {} clés parcourues, {} migrées, {} ignorées, {} en échec",
+                report.getCodec(), report.getScanned(), report.getMigrated(), report.getSkipped(), report.getFailed());
+        return report;
+    }
+
+    /**
+     * @return true si le document a été réécrit, false s'il est déjà au bon format,
+     *         n'est pas un document (autre type Redis) ou a changé pendant la migration
+     */
+    private boolean migrateKey(String key, MetricsCodec target) throws Exception {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        DataType type = redisTemplate.execute((RedisCallback<DataType>) connection -> connection.keyCommands().type(rawKey));
+        if (type != DataType.STRING) {
+            return false;
+        }
+        byte[] current = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+        if (current == null || current.length == 0) {
+            return false;
+        }
+        if (storageLayout == MetricsStorageLayout.HASH) {
+            Object document = codecRegistry.decode(current);
+            return document instanceof MetricsDto metrics && convertToHash(rawKey, current, metrics);
+        }
+        if (target.canDecode(current)) {
+            return false;
+        }
+
+        Object document = codecRegistry.decode(current);
+        byte[] migrated = document instanceof MetricsAggregated aggregated
+                ? target.encode(aggregated)
+                : target.encode((MetricsDto) document);
+
+        byte[] script = COMPARE_AND_SET_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        Long replaced = redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.scriptingCommands().eval(script, ReturnType.INTEGER, 1, rawKey, current, migrated));
+        return replaced != null && replaced == 1L;
+    }
+
+    private boolean convertToHash(byte[] rawKey, byte[] current, MetricsDto metrics) {
+        List<byte[]> args = new ArrayList<>();
+        args.add(rawKey);
+        args.add(current);
+        String now = String.valueOf(System.currentTimeMillis());
+        for (String operationType : metrics.getOperationTypes()) {
+            double[] stats = metrics.getStats(operationType);
+            if (Double.isNaN(stats[MetricsDto.NUMBER])) {
+                continue;
+            }
+            long count = (long) stats[MetricsDto.NUMBER];
+            double average = Double.isNaN(stats[MetricsDto.AVERAGE]) ? 0 : stats[MetricsDto.AVERAGE];
+            addField(args, operationType, MetricsHashLayout.COUNT, count);
+            addField(args, operationType, MetricsHashLayout.SUM, Math.round(average * count));
+            addField(args, operationType, MetricsHashLayout.MIN, (long) (Double.isNaN(stats[MetricsDto.MIN]) ? average : stats[MetricsDto.MIN]));
+            addField(args, operationType, MetricsHashLayout.MAX, (long) (Double.isNaN(stats[MetricsDto.MAX]) ? average : stats[MetricsDto.MAX]));
+            args.add(MetricsHashLayout.field(operationType, MetricsHashLayout.LAST_UPDATED).getBytes(StandardCharsets.UTF_8));
+            args.add(now.getBytes(StandardCharsets.UTF_8));
+        }
+        if (metrics.getUnit() != null) {
+            args.add(MetricsHashLayout.UNIT.getBytes(StandardCharsets.UTF_8));
+            args.add(metrics.getUnit().getBytes(StandardCharsets.UTF_8));
+        }
+
+        byte[] script = DOCUMENT_TO_HASH_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        byte[][] keysAndArgs = args.toArray(new byte[0][]);
+        Long converted = redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.scriptingCommands().eval(script, ReturnType.INTEGER, 1, keysAndArgs));
+        return converted != null && converted == 1L;
+    }
+
+    private static void addField(List<byte[]> args, String operationType, String stat, long value) {
+        args.add(MetricsHashLayout.field(operationType, stat).getBytes(StandardCharsets.UTF_8));
+        args.add(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,93 @@
+package com.test.projet.metric.codec;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.test.projet.metric.MetricsAggregated;
+import com.test.projet.metric.MetricsDto;
+
+/**
+ * Sélection du codec de stockage ({@code metrics.codec} : json, smile, cbor ou binary).
+ *
+ * L'écriture utilise toujours le codec actif ; la lecture détecte le format à partir de
+ * l'en-tête, ce qui permet de relire les clés JSON historiques (ou écrites avant un changement
+ * de codec) sans migration préalable.
+ */
+@Component
+public class MetricsCodecRegistry {
+
+    private final MetricsCodec json = JacksonMetricsCodec.json();
+
+    /** Ordre de détection : formats à en-tête d'abord, JSON en dernier recours */
+    private final List<MetricsCodec> codecs = List.of(
+            new FixedLayoutMetricsCodec(), JacksonMetricsCodec.smile(), JacksonMetricsCodec.cbor(), json);
+
+    private final MetricsCodec active;
+
+    public MetricsCodecRegistry(@Value("${metrics.codec:json}") String codecName) {
+        this.active = codecs.stream()
+                .filter(codec -> codec.getName().equalsIgnoreCase(codecName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Codec de métriques inconnu : " + codecName));
+    }
+
+    public MetricsCodec getActive() {
+        return active;
+    }
+
+    /**
+     * Indique si le codec actif est le JSON historique (seul format manipulable par les scripts Lua)
+     */
+    public boolean isJson() {
+        return active == json;
+    }
+
+    /**
+     * Codec ayant produit les octets, JSON par défaut
+     */
+    public MetricsCodec detect(byte[] data) {
+        for (MetricsCodec codec : codecs) {
+            if (codec.canDecode(data)) {
+                return codec;
+            }
+        }
+        return json;
+    }
+
+    /**
+     * Indique si les octets sont un document JSON, transmissible tel quel sans décodage
+     */
+    public boolean isJsonDocument(byte[] data) {
+        return detect(data) == json && json.canDecode(data);
+    }
+
+    /**
+     * Indique si les octets ont été produits par un codec binaire (smile, cbor, binary)
+     */
+    public boolean isBinaryDocument(byte[] data) {
+        return detect(data) != json;
+    }
+
+    public byte[] encode(MetricsDto metrics) throws IOException {
+        return active.encode(metrics);
+    }
+
+    public byte[] encode(MetricsAggregated aggregated) throws IOException {
+        return active.encode(aggregated);
+    }
+
+    public MetricsDto decodeCard(byte[] data) throws IOException {
+        return detect(data).decodeCard(data);
+    }
+
+    public MetricsAggregated decodeOperation(byte[] data) throws IOException {
+        return detect(data).decodeOperation(data);
+    }
+
+    public Object decode(byte[] data) throws IOException {
+        return detect(data).decode(data);
+    }
+}
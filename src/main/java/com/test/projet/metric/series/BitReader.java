@@ -0,0 +1,37 @@
+package com.test.projet.metric.series;
+
+/**
+ * Lecture bit à bit (bit de poids fort en premier), symétrique de {@link BitWriter}
+ */
+class BitReader {
+
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+
+    BitReader(byte[] buffer, int position) {
+        this.buffer = buffer;
+        this.limit = buffer.length * 8;
+        this.position = position;
+    }
+
+    long read(int bits) {
+        if (position + bits > limit) {
+            throw new IllegalArgumentException("Chunk tronqué : " + bits + " bits attendus en position " + position);
+        }
+        long value = 0;
+        for (int i = 0; i < bits; i++) {
+            value = (value << 1) | ((buffer[position >>> 3] >>> (7 - (position & 7))) & 1);
+            position++;
+        }
+        return value;
+    }
+
+    boolean readBit() {
+        return read(1) != 0;
+    }
+
+    int getPosition() {
+        return position;
+    }
+}
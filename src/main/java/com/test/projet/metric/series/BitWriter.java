@@ -0,0 +1,56 @@
+package com.test.projet.metric.series;
+
+/**
+ * Écriture bit à bit (bit de poids fort en premier) dans un tampon de taille fixe.
+ * Une écriture qui dépasse la capacité est marquée {@link #isOverflow()} : l'appelant revient alors
+ * à une position antérieure par {@link #truncate(int)}.
+ */
+class BitWriter {
+
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+    private boolean overflow;
+
+    BitWriter(byte[] buffer, int position) {
+        this.buffer = buffer;
+        this.limit = buffer.length * 8;
+        this.position = position;
+    }
+
+    void write(long value, int bits) {
+        for (int i = bits - 1; i >= 0; i--) {
+            if (position >= limit) {
+                overflow = true;
+                return;
+            }
+            if (((value >>> i) & 1L) != 0) {
+                buffer[position >>> 3] |= (byte) (0x80 >>> (position & 7));
+            }
+            position++;
+        }
+    }
+
+    void writeBit(boolean bit) {
+        write(bit ? 1 : 0, 1);
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    boolean isOverflow() {
+        return overflow;
+    }
+
+    /**
+     * Efface les bits écrits à partir de {@code newPosition}
+     */
+    void truncate(int newPosition) {
+        for (int bit = newPosition; bit < Math.min(position, limit); bit++) {
+            buffer[bit >>> 3] &= (byte) ~(0x80 >>> (bit & 7));
+        }
+        position = newPosition;
+        overflow = false;
+    }
+}
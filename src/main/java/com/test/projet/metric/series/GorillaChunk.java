@@ -0,0 +1,285 @@
+package com.test.projet.metric.series;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Chunk de taille fixe ({@link #CHUNK_BYTES} octets) d'une série de latence, compressé selon Gorilla.
+ *
+ * En-tête : version (1 octet), nombre de points (2 octets), horodatage du premier point (8 octets,
+ * epoch en secondes). Suit un flux de bits :
+ * <ul>
+ * <li>horodatages : delta-of-delta, 1 bit quand le pas est régulier (un point par minute) ;</li>
+ * <li>valeurs (nombre, moyenne, maximum) : XOR avec la valeur précédente de même nature,
+ * 1 bit si elle est inchangée, sinon seuls les bits significatifs du XOR sont écrits.</li>
+ * </ul>
+ * Le premier point porte ses trois valeurs en clair. Un chunk plein est complété par des zéros :
+ * tous les chunks d'une série ont la même taille et sont adressables par leur rang.
+ */
+public class GorillaChunk {
+
+    public static final int CHUNK_BYTES = 512;
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final int HEADER_BYTES = 11;
+
+    private static final int VALUES = 3;
+
+    private final byte[] buffer;
+    private final BitWriter writer;
+    private final List<SeriesPoint> points = new ArrayList<>();
+
+    private long firstTimestamp;
+    private long lastTimestamp;
+    private long lastDelta;
+    private final long[] previousBits = new long[VALUES];
+    private final int[] previousLeading = new int[VALUES];
+    private final int[] previousTrailing = new int[VALUES];
+
+    public GorillaChunk() {
+        this(new byte[CHUNK_BYTES], HEADER_BYTES * 8);
+        buffer[0] = FORMAT_VERSION;
+        Arrays.fill(previousLeading, -1);
+    }
+
+    private GorillaChunk(byte[] buffer, int position) {
+        this.buffer = buffer;
+        this.writer = new BitWriter(buffer, position);
+    }
+
+    /**
+     * Ajoute un point. Les horodatages doivent être strictement croissants.
+     *
+     * @param point le point, durées en nanosecondes
+     * @return false si le chunk est plein (il n'est pas modifié)
+     */
+    public boolean append(SeriesPoint point) {
+        long timestamp = Math.floorDiv(point.getTimestamp(), 1000L);
+        double[] values = {point.getCount(), point.getAverageTime(), point.getMaxTime()};
+        if (points.isEmpty()) {
+            for (double value : values) {
+                writer.write(Double.doubleToRawLongBits(value), 64);
+            }
+            if (writer.isOverflow()) {
+                throw new IllegalStateException("Chunk trop petit pour un point");
+            }
+            firstTimestamp = timestamp;
+            lastTimestamp = timestamp;
+            for (int k = 0; k < VALUES; k++) {
+                previousBits[k] = Double.doubleToRawLongBits(values[k]);
+            }
+            ByteBuffer.wrap(buffer, 3, 8).putLong(timestamp);
+            return add(point);
+        }
+        if (timestamp <= lastTimestamp) {
+            throw new IllegalArgumentException("Horodatage non croissant : " + timestamp + " <= " + lastTimestamp);
+        }
+
+        // Sauvegarde de l'état de l'encodeur : un point qui ne tient pas est annulé
+        int position = writer.getPosition();
+        long[] bits = previousBits.clone();
+        int[] leading = previousLeading.clone();
+        int[] trailing = previousTrailing.clone();
+
+        long delta = timestamp - lastTimestamp;
+        if (!writeDeltaOfDelta(delta - lastDelta)) {
+            return false;
+        }
+        for (int k = 0; k < VALUES; k++) {
+            writeXor(k, Double.doubleToRawLongBits(values[k]));
+        }
+        if (writer.isOverflow()) {
+            writer.truncate(position);
+            System.arraycopy(bits, 0, previousBits, 0, VALUES);
+            System.arraycopy(leading, 0, previousLeading, 0, VALUES);
+            System.arraycopy(trailing, 0, previousTrailing, 0, VALUES);
+            return false;
+        }
+        lastDelta = delta;
+        lastTimestamp = timestamp;
+        return add(point);
+    }
+
+    private boolean add(SeriesPoint point) {
+        points.add(point);
+        buffer[1] = (byte) (points.size() >>> 8);
+        buffer[2] = (byte) points.size();
+        return true;
+    }
+
+    private boolean writeDeltaOfDelta(long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            writer.writeBit(false);
+        } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+            writer.write(0b10, 2);
+            writer.write(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+            writer.write(0b110, 3);
+            writer.write(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+            writer.write(0b1110, 4);
+            writer.write(deltaOfDelta, 12);
+        } else if (deltaOfDelta >= Integer.MIN_VALUE && deltaOfDelta <= Integer.MAX_VALUE) {
+            writer.write(0b1111, 4);
+            writer.write(deltaOfDelta, 32);
+        } else {
+            // Trou de plusieurs dizaines d'années : nouveau chunk
+            return false;
+        }
+        return true;
+    }
+
+    private void writeXor(int k, long bits) {
+        long xor = bits ^ previousBits[k];
+        previousBits[k] = bits;
+        if (xor == 0) {
+            writer.writeBit(false);
+            return;
+        }
+        writer.writeBit(true);
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (previousLeading[k] >= 0 && leading >= previousLeading[k] && trailing >= previousTrailing[k]) {
+            // Les bits significatifs tiennent dans la fenêtre du XOR précédent
+            writer.writeBit(false);
+            writer.write(xor >>> previousTrailing[k], 64 - previousLeading[k] - previousTrailing[k]);
+            return;
+        }
+        int meaningful = 64 - leading - trailing;
+        writer.writeBit(true);
+        writer.write(leading, 5);
+        writer.write(meaningful == 64 ? 0 : meaningful, 6);
+        writer.write(xor >>> trailing, meaningful);
+        previousLeading[k] = leading;
+        previousTrailing[k] = trailing;
+    }
+
+    /**
+     * Décode un chunk, en restaurant l'état de l'encodeur : le chunk ouvert d'une série peut être
+     * relu puis complété.
+     */
+    public static GorillaChunk decode(byte[] bytes) {
+        if (bytes == null || bytes.length != CHUNK_BYTES || bytes[0] != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Chunk de série illisible");
+        }
+        int count = ((bytes[1] & 0xFF) << 8) | (bytes[2] & 0xFF);
+        byte[] buffer = bytes.clone();
+        BitReader reader = new BitReader(buffer, HEADER_BYTES * 8);
+        GorillaChunk chunk = new GorillaChunk(buffer, 0);
+        Arrays.fill(chunk.previousLeading, -1);
+        if (count == 0) {
+            chunk.writer.truncate(HEADER_BYTES * 8);
+            return chunk;
+        }
+
+        long timestamp = ByteBuffer.wrap(buffer, 3, 8).getLong();
+        for (int k = 0; k < VALUES; k++) {
+            chunk.previousBits[k] = reader.read(64);
+        }
+        chunk.firstTimestamp = timestamp;
+        chunk.points.add(chunk.point(timestamp));
+        for (int i = 1; i < count; i++) {
+            chunk.lastDelta += readDeltaOfDelta(reader);
+            timestamp += chunk.lastDelta;
+            for (int k = 0; k < VALUES; k++) {
+                chunk.readXor(reader, k);
+            }
+            chunk.points.add(chunk.point(timestamp));
+        }
+        chunk.lastTimestamp = timestamp;
+        // Positionne l'encodeur après le dernier point (les bits suivants sont nuls)
+        chunk.writer.truncate(reader.getPosition());
+        return chunk;
+    }
+
+    private SeriesPoint point(long timestamp) {
+        return new SeriesPoint(timestamp * 1000L, (long) Double.longBitsToDouble(previousBits[0]),
+                Double.longBitsToDouble(previousBits[1]), Double.longBitsToDouble(previousBits[2]));
+    }
+
+    private static long readDeltaOfDelta(BitReader reader) {
+        if (!reader.readBit()) {
+            return 0;
+        }
+        if (!reader.readBit()) {
+            return signed(reader.read(7), 7);
+        }
+        if (!reader.readBit()) {
+            return signed(reader.read(9), 9);
+        }
+        if (!reader.readBit()) {
+            return signed(reader.read(12), 12);
+        }
+        return signed(reader.read(32), 32);
+    }
+
+    /**
+     * Valeur signée (complément à deux) des {@code bits} bits lus
+     */
+    private static long signed(long value, int bits) {
+        long half = 1L << (bits - 1);
+        long decoded = value >= half ? value - (1L << bits) : value;
+        // Les plages sont [-63, 64], [-255, 256], [-2047, 2048] : le motif de -64 ne peut venir que de +64
+        return bits < 32 && decoded == -half ? half : decoded;
+    }
+
+    private void readXor(BitReader reader, int k) {
+        if (!reader.readBit()) {
+            return;
+        }
+        if (!reader.readBit()) {
+            int meaningful = 64 - previousLeading[k] - previousTrailing[k];
+            previousBits[k] ^= reader.read(meaningful) << previousTrailing[k];
+            return;
+        }
+        int leading = (int) reader.read(5);
+        int meaningful = (int) reader.read(6);
+        if (meaningful == 0) {
+            meaningful = 64;
+        }
+        int trailing = 64 - leading - meaningful;
+        previousBits[k] ^= reader.read(meaningful) << trailing;
+        previousLeading[k] = leading;
+        previousTrailing[k] = trailing;
+    }
+
+    /**
+     * Contenu du chunk, complété par des zéros jusqu'à {@link #CHUNK_BYTES}
+     */
+    public byte[] toBytes() {
+        return buffer.clone();
+    }
+
+    public List<SeriesPoint> getPoints() {
+        return Collections.unmodifiableList(points);
+    }
+
+    public boolean isEmpty() {
+        return points.isEmpty();
+    }
+
+    /**
+     * Horodatage (epoch, secondes) du premier point
+     */
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    /**
+     * Horodatage (epoch, secondes) du dernier point
+     */
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Octets effectivement occupés par le flux de bits, en-tête compris
+     */
+    public int getUsedBytes() {
+        return (writer.getPosition() + 7) / 8;
+    }
+}
@@ -0,0 +1,280 @@
+package com.test.projet.metric.series;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import com.test.projet.metric.MetricsKeys;
+import com.test.projet.metric.MetricsTimeUnit;
+
+/**
+ * Séries de latence par minute (nombre, moyenne, maximum) par (typeCarte, operationType),
+ * compressées en {@link GorillaChunk} de taille fixe.
+ *
+ * Les chunks pleins sont ajoutés par APPEND à une chaîne par période de 30 jours
+ * ({@code metrics-series:{typeCarte}:{op}:{période}}) ; l'horodatage de leur premier point est ajouté
+ * en parallèle à {@code metrics-series-index:{typeCarte}:{op}:{période}} (8 octets par chunk). Le chunk
+ * en cours de remplissage est gardé dans {@code metrics-series-head:{typeCarte}:{op}}. Chaque période
+ * expire avec la rétention ({@code metrics.series.retention-days}).
+ *
+ * Les points sont ceux du niveau 1 min de l'historique, ajoutés par {@code MetricsRollupEngine}. Chaque
+ * ajout lit la tête sous WATCH et l'écrit par MULTI / EXEC avec les chunks scellés : deux écrivains
+ * concurrents (verrou de compactage expiré par exemple) ne scellent jamais deux fois le même chunk.
+ * Une lecture ne récupère (GETRANGE) et ne décode que les chunks qui chevauchent la plage demandée.
+ */
+@Component
+public class MetricsSeriesStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsSeriesStore.class);
+
+    static final long PERIOD_SECONDS = 30L * 86_400;
+
+    private static final int INDEX_ENTRY_BYTES = Long.BYTES;
+
+    private static final int MAX_OPTIMISTIC_ATTEMPTS = 10;
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    private final long retentionSeconds;
+
+    public MetricsSeriesStore(StringRedisTemplate redisTemplate,
+            @Value("${metrics.series.enabled:false}") boolean enabled,
+            @Value("${metrics.series.retention-days:366}") long retentionDays) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.retentionSeconds = Math.max(1, retentionDays) * 86_400L + PERIOD_SECONDS;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Période de 30 jours d'un horodatage (epoch, secondes)
+     */
+    static long period(long epochSeconds) {
+        return Math.floorDiv(epochSeconds, PERIOD_SECONDS);
+    }
+
+    /**
+     * Ajoute des points, par horodatage croissant. Les points déjà présents (compactage rejoué ou
+     * concurrent) sont ignorés.
+     *
+     * @param points les points, durées en nanosecondes
+     * @throws IllegalStateException si les écritures concurrentes font échouer toutes les tentatives
+     */
+    public void append(String typeCarte, String operationType, List<SeriesPoint> points) {
+        if (!enabled || points.isEmpty()) {
+            return;
+        }
+        for (int attempt = 0; attempt < MAX_OPTIMISTIC_ATTEMPTS; attempt++) {
+            Boolean appended = redisTemplate.execute(
+                    (RedisCallback<Boolean>) connection -> appendOnce(connection, typeCarte, operationType, points));
+            if (appended != null) {
+                return;
+            }
+        }
+        throw new IllegalStateException("Écritures concurrentes répétées sur la série " + typeCarte + "/" + operationType);
+    }
+
+    /**
+     * @return true une fois les points ajoutés (ou déjà présents), null si la transaction a été annulée
+     *         par un écrivain concurrent
+     */
+    private Boolean appendOnce(RedisConnection connection, String typeCarte, String operationType,
+            List<SeriesPoint> points) {
+        byte[] headKey = bytes(MetricsKeys.seriesHeadKey(typeCarte, operationType));
+        // La tête est réécrite par chaque ajout : la surveiller suffit à détecter un écrivain concurrent
+        List<byte[]> watched = new ArrayList<>();
+        watched.add(headKey);
+        long firstPeriod = period(Math.floorDiv(points.get(0).getTimestamp(), 1000L));
+        long lastPeriod = period(Math.floorDiv(points.get(points.size() - 1).getTimestamp(), 1000L));
+        for (long period = firstPeriod; period <= lastPeriod; period++) {
+            watched.add(bytes(MetricsKeys.seriesIndexKey(typeCarte, operationType, period)));
+        }
+        connection.watch(watched.toArray(new byte[0][]));
+
+        byte[] raw = connection.stringCommands().get(headKey);
+        GorillaChunk head = new GorillaChunk();
+        if (raw != null) {
+            try {
+                head = GorillaChunk.decode(raw);
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Unreadable series head {}/{} replaced: {}", typeCarte, operationType, e.getMessage());
+            }
+        }
+
+        List<GorillaChunk> sealed = new ArrayList<>();
+        boolean changed = false;
+        for (SeriesPoint point : points) {
+            long timestamp = Math.floorDiv(point.getTimestamp(), 1000L);
+            if (!head.isEmpty() && timestamp <= head.getLastTimestamp()) {
+                continue;
+            }
+            // Un chunk ne déborde pas sur la période suivante : chaque période expire d'un bloc
+            if (!head.isEmpty() && period(timestamp) != period(head.getFirstTimestamp())) {
+                sealed.add(head);
+                head = new GorillaChunk();
+            }
+            if (!head.append(point)) {
+                sealed.add(head);
+                head = new GorillaChunk();
+                head.append(point);
+            }
+            changed = true;
+        }
+        if (!changed) {
+            connection.unwatch();
+            return Boolean.TRUE;
+        }
+
+        // Chunks scellés et nouvelle tête ensemble : un chunk n'est jamais ajouté deux fois
+        connection.multi();
+        for (GorillaChunk chunk : sealed) {
+            long period = period(chunk.getFirstTimestamp());
+            byte[] seriesKey = bytes(MetricsKeys.seriesKey(typeCarte, operationType, period));
+            byte[] indexKey = bytes(MetricsKeys.seriesIndexKey(typeCarte, operationType, period));
+            connection.stringCommands().append(seriesKey, chunk.toBytes());
+            connection.stringCommands().append(indexKey,
+                    ByteBuffer.allocate(INDEX_ENTRY_BYTES).putLong(chunk.getFirstTimestamp()).array());
+            connection.keyCommands().expire(seriesKey, retentionSeconds);
+            connection.keyCommands().expire(indexKey, retentionSeconds);
+        }
+        connection.stringCommands().set(headKey, head.toBytes());
+        connection.keyCommands().expire(headKey, retentionSeconds);
+        List<Object> results = connection.exec();
+        return results == null || results.isEmpty() ? null : Boolean.TRUE;
+    }
+
+    /**
+     * Points d'un couple (typeCarte, operationType) sur une plage
+     *
+     * @param from début de la plage (epoch, ms)
+     * @param to fin de la plage (epoch, ms)
+     * @param unit l'unité des durées retournées
+     */
+    public SeriesResponse query(String typeCarte, String operationType, long from, long to, MetricsTimeUnit unit) {
+        long fromSeconds = Math.floorDiv(from, 1000L);
+        long toSeconds = Math.floorDiv(to, 1000L);
+        // Seules les périodes encore retenues peuvent exister
+        long now = System.currentTimeMillis() / 1000L;
+        long firstPeriod = period(Math.max(fromSeconds, now - retentionSeconds));
+        long lastPeriod = period(Math.min(toSeconds, now));
+
+        // 1er aller-retour : index des périodes couvertes et chunk en cours
+        List<Object> indexes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long period = firstPeriod; period <= lastPeriod; period++) {
+                connection.stringCommands().get(bytes(MetricsKeys.seriesIndexKey(typeCarte, operationType, period)));
+            }
+            connection.stringCommands().get(bytes(MetricsKeys.seriesHeadKey(typeCarte, operationType)));
+            return null;
+        }, RedisSerializer.byteArray());
+
+        // 2e aller-retour : uniquement les chunks qui chevauchent la plage
+        List<Long> periods = new ArrayList<>();
+        List<int[]> ranges = new ArrayList<>();
+        for (int i = 0; i < indexes.size() - 1; i++) {
+            int[] range = indexes.get(i) instanceof byte[] index ? overlapping(index, fromSeconds, toSeconds) : null;
+            if (range != null) {
+                periods.add(firstPeriod + i);
+                ranges.add(range);
+            }
+        }
+        List<Object> blocks = ranges.isEmpty() ? List.of() : redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < ranges.size(); i++) {
+                connection.stringCommands().getRange(bytes(MetricsKeys.seriesKey(typeCarte, operationType, periods.get(i))),
+                        (long) ranges.get(i)[0] * GorillaChunk.CHUNK_BYTES,
+                        (long) (ranges.get(i)[1] + 1) * GorillaChunk.CHUNK_BYTES - 1);
+            }
+            return null;
+        }, RedisSerializer.byteArray());
+
+        List<GorillaChunk> chunks = new ArrayList<>();
+        for (Object block : blocks) {
+            if (block instanceof byte[] bytes) {
+                for (int offset = 0; offset + GorillaChunk.CHUNK_BYTES <= bytes.length; offset += GorillaChunk.CHUNK_BYTES) {
+                    decodeInto(chunks, Arrays.copyOfRange(bytes, offset, offset + GorillaChunk.CHUNK_BYTES));
+                }
+            }
+        }
+        if (indexes.get(indexes.size() - 1) instanceof byte[] head) {
+            decodeInto(chunks, head);
+        }
+
+        SeriesResponse response = new SeriesResponse();
+        response.setTypeCarte(typeCarte);
+        response.setOperationType(operationType);
+        response.setFrom(from);
+        response.setTo(to);
+        response.setUnit(unit.getSymbol());
+        double nanos = unit.getNanos();
+        List<SeriesPoint> points = new ArrayList<>();
+        int decoded = 0;
+        for (GorillaChunk chunk : chunks) {
+            if (chunk.isEmpty() || chunk.getFirstTimestamp() > toSeconds || chunk.getLastTimestamp() < fromSeconds) {
+                continue;
+            }
+            decoded++;
+            for (SeriesPoint point : chunk.getPoints()) {
+                if (point.getTimestamp() >= from && point.getTimestamp() <= to) {
+                    points.add(new SeriesPoint(point.getTimestamp(), point.getCount(),
+                            point.getAverageTime() / nanos, point.getMaxTime() / nanos));
+                }
+            }
+        }
+        response.setChunks(decoded);
+        response.setPoints(points);
+        return response;
+    }
+
+    private static void decodeInto(List<GorillaChunk> chunks, byte[] bytes) {
+        try {
+            chunks.add(GorillaChunk.decode(bytes));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Unreadable series chunk ignored: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Rangs du premier et du dernier chunk d'une période qui chevauchent [from, to]. Un chunk couvre
+     * son premier horodatage jusqu'au premier horodatage du suivant.
+     *
+     * @param index les premiers horodatages (epoch, secondes) des chunks, 8 octets chacun
+     * @return {premier, dernier}, ou null si aucun chunk ne chevauche la plage
+     */
+    static int[] overlapping(byte[] index, long from, long to) {
+        ByteBuffer buffer = ByteBuffer.wrap(index);
+        int chunks = index.length / INDEX_ENTRY_BYTES;
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < chunks; i++) {
+            long start = buffer.getLong(i * INDEX_ENTRY_BYTES);
+            long nextStart = i + 1 < chunks ? buffer.getLong((i + 1) * INDEX_ENTRY_BYTES) : Long.MAX_VALUE;
+            if (start > to) {
+                break;
+            }
+            if (nextStart > from) {
+                if (first < 0) {
+                    first = i;
+                }
+                last = i;
+            }
+        }
+        return first < 0 ? null : new int[] {first, last};
+    }
+
+    private static byte[] bytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,53 @@
+package com.test.projet.metric.series;
+
+/**
+ * Point d'une série de latence : nombre d'exécutions, temps moyen et temps maximum sur un bucket
+ * commençant à {@code timestamp} (epoch, ms).
+ */
+public class SeriesPoint {
+    private long timestamp;
+    private long count;
+    private double averageTime;
+    private double maxTime;
+
+    public SeriesPoint() {}
+
+    public SeriesPoint(long timestamp, long count, double averageTime, double maxTime) {
+        this.timestamp = timestamp;
+        this.count = count;
+        this.averageTime = averageTime;
+        this.maxTime = maxTime;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public double getAverageTime() {
+        return averageTime;
+    }
+
+    public void setAverageTime(double averageTime) {
+        this.averageTime = averageTime;
+    }
+
+    public double getMaxTime() {
+        return maxTime;
+    }
+
+    public void setMaxTime(double maxTime) {
+        this.maxTime = maxTime;
+    }
+}
@@ -0,0 +1,77 @@
+package com.test.projet.metric.series;
+
+import java.util.List;
+
+/**
+ * Points d'une série de latence compressée sur une plage ; les durées sont exprimées dans {@code unit}
+ */
+public class SeriesResponse {
+    private String typeCarte;
+    private String operationType;
+    private long from;
+    private long to;
+    private String unit;
+    private int chunks;
+    private List<SeriesPoint> points;
+
+    public SeriesResponse() {}
+
+    public String getTypeCarte() {
+        return typeCarte;
+    }
+
+    public void setTypeCarte(String typeCarte) {
+        this.typeCarte = typeCarte;
+    }
+
+    public String getOperationType() {
+        return operationType;
+    }
+
+    public void setOperationType(String operationType) {
+        this.operationType = operationType;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public void setFrom(long from) {
+        this.from = from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    public void setTo(long to) {
+        this.to = to;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public void setUnit(String unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * Nombre de chunks décodés pour répondre
+     */
+    public int getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(int chunks) {
+        this.chunks = chunks;
+    }
+
+    public List<SeriesPoint> getPoints() {
+        return points;
+    }
+
+    public void setPoints(List<SeriesPoint> points) {
+        this.points = points;
+    }
+}
@@ -0,0 +1,288 @@
+package com.test.projet.metric.sketch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Sketch de quantiles à erreur relative bornée (principe DDSketch), sur des durées en nanosecondes.
+ *
+ * Une valeur v &gt; 0 est rangée dans le bin {@code ceil(log(v) / log(gamma))} avec
+ * {@code gamma = (1 + alpha) / (1 - alpha)} : tout quantile est restitué à {@code alpha} près en
+ * relatif. Deux sketches de même précision se fusionnent en additionnant leurs bins, ce qui permet
+ * de combiner instances et fenêtres de temps sans conserver les échantillons.
+ *
+ * La mémoire est bornée par {@code maxBins} : au-delà, les bins les plus bas sont regroupés dans le
+ * premier bin conservé. Seuls les plus petits quantiles perdent alors en précision, la queue de
+ * distribution (p99, p99.9) reste exacte à {@code alpha} près.
+ *
+ * Les méthodes sont synchronisées : un sketch est partagé par les threads qui enregistrent et
+ * celui qui le sérialise.
+ */
+public class MetricsSketch {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    /** Marge allouée à chaque agrandissement du tableau de bins */
+    private static final int GROWTH = 64;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final int maxBins;
+
+    /** counts[i] : nombre de valeurs du bin d'index offset + i */
+    private long[] counts = new long[0];
+    private int offset;
+    private int minIndex = Integer.MAX_VALUE;
+    private int maxIndex = Integer.MIN_VALUE;
+
+    private long zeroCount;
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public MetricsSketch(double relativeAccuracy, int maxBins) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("Précision relative hors de ]0, 1[ : " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.maxBins = Math.max(1, maxBins);
+    }
+
+    /**
+     * Enregistre {@code weight} occurrences d'une durée (nanosecondes)
+     */
+    public synchronized void add(long value, long weight) {
+        if (weight <= 0) {
+            return;
+        }
+        if (value <= 0) {
+            zeroCount += weight;
+        } else {
+            addToBin((int) Math.ceil(Math.log(value) / logGamma), weight);
+        }
+        count += weight;
+        min = Math.min(min, Math.max(value, 0));
+        max = Math.max(max, Math.max(value, 0));
+    }
+
+    /**
+     * Ajoute le contenu d'un autre sketch de même précision
+     */
+    public void merge(MetricsSketch other) {
+        if (Math.abs(other.relativeAccuracy - relativeAccuracy) > 1e-12) {
+            throw new IllegalArgumentException("Sketches de précisions différentes : "
+                    + other.relativeAccuracy + " / " + relativeAccuracy);
+        }
+        long[] otherCounts;
+        int otherOffset;
+        int otherMin;
+        int otherMax;
+        long otherZero;
+        long otherCount;
+        long otherMinValue;
+        long otherMaxValue;
+        synchronized (other) {
+            otherCounts = other.counts.clone();
+            otherOffset = other.offset;
+            otherMin = other.minIndex;
+            otherMax = other.maxIndex;
+            otherZero = other.zeroCount;
+            otherCount = other.count;
+            otherMinValue = other.min;
+            otherMaxValue = other.max;
+        }
+        synchronized (this) {
+            for (int index = otherMin; index <= otherMax; index++) {
+                long binCount = otherCounts[index - otherOffset];
+                if (binCount > 0) {
+                    addToBin(index, binCount);
+                }
+            }
+            zeroCount += otherZero;
+            count += otherCount;
+            min = Math.min(min, otherMinValue);
+            max = Math.max(max, otherMaxValue);
+        }
+    }
+
+    /**
+     * Valeur du quantile {@code quantile} (entre 0 et 1), en nanosecondes
+     *
+     * @return la valeur estimée, ou NaN si le sketch est vide
+     */
+    public synchronized double quantile(double quantile) {
+        if (count == 0 || quantile < 0 || quantile > 1) {
+            return Double.NaN;
+        }
+        double rank = quantile * (count - 1);
+        long seen = zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+        for (int index = minIndex; index <= maxIndex; index++) {
+            seen += counts[index - offset];
+            if (seen > rank) {
+                return clamp(valueOf(index));
+            }
+        }
+        return max;
+    }
+
+    private double valueOf(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private double clamp(double value) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private void addToBin(int index, long weight) {
+        ensureRange(index);
+        counts[Math.max(index, minIndex) - offset] += weight;
+    }
+
+    /**
+     * Étend la plage [minIndex, maxIndex] pour couvrir {@code index}, en regroupant les bins les
+     * plus bas si elle dépasse {@code maxBins}
+     */
+    private void ensureRange(int index) {
+        boolean empty = minIndex > maxIndex;
+        int newMax = empty ? index : Math.max(maxIndex, index);
+        int newMin = empty ? index : Math.min(minIndex, index);
+        if ((long) newMax - newMin + 1 > maxBins) {
+            newMin = newMax - maxBins + 1;
+        }
+        if (!empty && newMin == minIndex && newMax == maxIndex) {
+            return;
+        }
+        if (newMin >= offset && newMax < offset + counts.length) {
+            // Place suffisante : regroupement éventuel des bins devenus trop bas
+            for (int i = minIndex; !empty && i < newMin; i++) {
+                counts[newMin - offset] += counts[i - offset];
+                counts[i - offset] = 0;
+            }
+        } else {
+            int span = newMax - newMin + 1;
+            int length = Math.min(maxBins, span + GROWTH);
+            int newOffset = newMin - (length - span) / 2;
+            long[] resized = new long[length];
+            for (int i = minIndex; !empty && i <= maxIndex; i++) {
+                resized[Math.max(i, newMin) - newOffset] += counts[i - offset];
+            }
+            counts = resized;
+            offset = newOffset;
+        }
+        minIndex = newMin;
+        maxIndex = newMax;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public int getMaxBins() {
+        return maxBins;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Nombre de bins alloués
+     */
+    public synchronized int getAllocatedBins() {
+        return counts.length;
+    }
+
+    /**
+     * Taille mémoire estimée (en-tête d'objet, champs et tableau de bins)
+     */
+    public synchronized long getEstimatedBytes() {
+        return 96 + 16 + 8L * counts.length;
+    }
+
+    /**
+     * Forme sérialisée compacte : en-tête, extrêmes, puis compteurs des bins en entiers de taille
+     * variable (un octet par bin vide)
+     */
+    public synchronized byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + Math.max(0, maxIndex - minIndex + 1) * 2);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            out.writeDouble(relativeAccuracy);
+            out.writeInt(maxBins);
+            writeVarLong(out, count);
+            writeVarLong(out, zeroCount);
+            writeVarLong(out, count == 0 ? 0 : min);
+            writeVarLong(out, count == 0 ? 0 : max);
+            int bins = minIndex > maxIndex ? 0 : maxIndex - minIndex + 1;
+            out.writeInt(minIndex > maxIndex ? 0 : minIndex);
+            out.writeInt(bins);
+            for (int index = minIndex; bins > 0 && index <= maxIndex; index++) {
+                writeVarLong(out, counts[index - offset]);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static MetricsSketch decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Version de sketch non supportée : " + version);
+        }
+        MetricsSketch sketch = new MetricsSketch(in.readDouble(), in.readInt());
+        sketch.count = readVarLong(in);
+        sketch.zeroCount = readVarLong(in);
+        long min = readVarLong(in);
+        long max = readVarLong(in);
+        if (sketch.count > 0) {
+            sketch.min = min;
+            sketch.max = max;
+        }
+        int firstIndex = in.readInt();
+        int bins = in.readInt();
+        for (int i = 0; i < bins; i++) {
+            long binCount = readVarLong(in);
+            if (binCount > 0) {
+                sketch.addToBin(firstIndex + i, binCount);
+            }
+        }
+        return sketch;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Entier de taille variable invalide");
+    }
+}
@@ -0,0 +1,328 @@
+package com.test.projet.metric.sketch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import com.test.projet.metric.MetricsKeys;
+import com.test.projet.metric.MetricsTimeUnit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Sketches de quantiles de la JVM, par fenêtre de temps et par (typeCarte, operationType).
+ *
+ * Chaque exécution est ajoutée au {@link MetricsSketch} de la fenêtre courante
+ * ({@code metrics.sketch.window-seconds}). Toutes les {@code metrics.sketch.flush-interval-ms},
+ * les sketches sont sérialisés dans le hash {@code metrics-sketch:{typeCarte}:{op}:{début de fenêtre}},
+ * un champ par instance : la réécriture est idempotente et les instances n'interfèrent pas.
+ * Une fenêtre close est conservée en mémoire le temps d'un dernier flush, puis libérée ; les clés
+ * Redis expirent après {@code metrics.sketch.retention-minutes}.
+ *
+ * La lecture fusionne tous les champs des fenêtres demandées : quantiles à erreur relative bornée
+ * sur une période quelconque, toutes instances confondues, sans échantillons bruts.
+ */
+@Component
+public class MetricsSketchRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsSketchRegistry.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    private final double relativeAccuracy;
+    private final int maxBins;
+    private final long windowMs;
+    private final long retentionMs;
+    private final long flushIntervalMs;
+    private final MetricsTimeUnit timeUnit;
+
+    /** Identifiant de l'instance : champ des hash de sketches */
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private volatile Window current;
+    private final Queue<Window> closed = new ConcurrentLinkedQueue<>();
+
+    private ScheduledExecutorService scheduler;
+
+    public MetricsSketchRegistry(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry,
+            @Value("${metrics.sketch.enabled:false}") boolean enabled,
+            @Value("${metrics.sketch.relative-accuracy:0.01}") double relativeAccuracy,
+            @Value("${metrics.sketch.max-bins:2048}") int maxBins,
+            @Value("${metrics.sketch.window-seconds:60}") long windowSeconds,
+            @Value("${metrics.sketch.retention-minutes:1440}") long retentionMinutes,
+            @Value("${metrics.sketch.flush-interval-ms:10000}") long flushIntervalMs,
+            @Value("${metrics.time-unit:MILLISECONDS}") MetricsTimeUnit timeUnit) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.relativeAccuracy = relativeAccuracy;
+        this.maxBins = maxBins;
+        this.windowMs = TimeUnit.SECONDS.toMillis(Math.max(1, windowSeconds));
+        this.retentionMs = TimeUnit.MINUTES.toMillis(Math.max(1, retentionMinutes));
+        this.flushIntervalMs = Math.max(100, flushIntervalMs);
+        this.timeUnit = timeUnit;
+        meterRegistry.gauge("metrics.sketch.memory", this, registry -> registry.getStatus().getMemoryBytes());
+        meterRegistry.gauge("metrics.sketch.count", this, registry -> registry.getStatus().getSketches());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-sketch-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        LOG.info("Sketches de quantiles actifs (précision {}, fenêtres de {} s, flush toutes les {} ms)",
+                relativeAccuracy, windowMs / 1000, flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Période interrogeable au plus : au-delà, les sketches ont expiré dans Redis
+     */
+    public long getRetentionMinutes() {
+        return TimeUnit.MILLISECONDS.toMinutes(retentionMs);
+    }
+
+    /**
+     * Ajoute une exécution (ou {@code weight} exécutions échantillonnées) au sketch de la fenêtre courante
+     *
+     * @param executionTime le temps d'exécution, dans l'unité de stockage ({@code metrics.time-unit})
+     */
+    public void record(String typeCarte, String operationType, long executionTime, long weight) {
+        if (!enabled) {
+            return;
+        }
+        long nanos = MetricsTimeUnit.NANOSECONDS.convert(executionTime, timeUnit);
+        window(System.currentTimeMillis()).sketch(typeCarte, operationType, relativeAccuracy, maxBins).add(nanos, weight);
+    }
+
+    private Window window(long now) {
+        long start = now - Math.floorMod(now, windowMs);
+        Window window = current;
+        if (window != null && window.start >= start) {
+            // Fenêtre courante, ou horloge revenue en arrière : rattachement à la fenêtre courante
+            return window;
+        }
+        synchronized (this) {
+            window = current;
+            if (window == null || window.start < start) {
+                if (window != null) {
+                    window.closedAt = now;
+                    closed.add(window);
+                }
+                window = new Window(start);
+                current = window;
+            }
+            return window;
+        }
+    }
+
+    /**
+     * Écrit les sketches en mémoire dans Redis (un HSET par sketch, pipeliné).
+     *
+     * @return le nombre de sketches écrits
+     */
+    public int flush() {
+        List<Window> windows = new ArrayList<>(closed);
+        Window window = current;
+        if (window != null) {
+            windows.add(window);
+        }
+        long now = System.currentTimeMillis();
+        byte[] field = instanceId.getBytes(StandardCharsets.UTF_8);
+        List<Window> released = new ArrayList<>();
+        int[] written = {0};
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Window flushed : windows) {
+                flushed.sketches.forEach((typeCarte, operations) -> operations.forEach((operationType, sketch) -> {
+                    if (sketch.isEmpty()) {
+                        return;
+                    }
+                    byte[] key = MetricsKeys.sketchKey(typeCarte, operationType, flushed.start).getBytes(StandardCharsets.UTF_8);
+                    connection.hashCommands().hSet(key, field, sketch.encode());
+                    connection.keyCommands().pExpire(key, retentionMs + windowMs);
+                    written[0]++;
+                }));
+                // Un écrivain peut encore tenir une fenêtre tout juste close : elle est libérée au flush suivant
+                if (flushed != window && now - flushed.closedAt >= flushIntervalMs) {
+                    released.add(flushed);
+                }
+            }
+            return null;
+        });
+        closed.removeAll(released);
+        return written[0];
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            LOG.error("Error while flushing quantile sketches: ", e);
+        }
+    }
+
+    /**
+     * Fusionne les sketches de toutes les instances sur les fenêtres couvrant [from, to]. {@code from} est
+     * ramené à la rétention : les fenêtres plus anciennes ont expiré et le nombre de clés lues reste borné.
+     *
+     * @return le sketch fusionné (vide si aucune donnée) et le nombre de fenêtres lues
+     */
+    public SketchQueryResult query(String typeCarte, String operationType, long from, long to) {
+        from = Math.max(from, to - retentionMs);
+        List<byte[]> keys = new ArrayList<>();
+        for (long start = from - Math.floorMod(from, windowMs); start <= to; start += windowMs) {
+            keys.add(MetricsKeys.sketchKey(typeCarte, operationType, start).getBytes(StandardCharsets.UTF_8));
+        }
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            keys.forEach(key -> connection.hashCommands().hGetAll(key));
+            return null;
+        }, RedisSerializer.byteArray());
+
+        MetricsSketch merged = new MetricsSketch(relativeAccuracy, maxBins);
+        int windows = 0;
+        for (Object result : results) {
+            if (!(result instanceof Map<?, ?> entries) || entries.isEmpty()) {
+                continue;
+            }
+            windows++;
+            for (Object value : entries.values()) {
+                try {
+                    merged.merge(MetricsSketch.decode((byte[]) value));
+                } catch (IOException | IllegalArgumentException e) {
+                    // Sketch d'une autre version ou d'une autre précision : ignoré
+                    LOG.warn("Unreadable quantile sketch for {}/{} ignored: {}", typeCarte, operationType, e.getMessage());
+                }
+            }
+        }
+        return new SketchQueryResult(merged, windows);
+    }
+
+    /**
+     * p50, p90, p99 et p99.9 sur les {@code minutes} dernières minutes, toutes instances confondues ;
+     * la période est bornée à la rétention ({@link #getRetentionMinutes()})
+     *
+     * @param unit l'unité des valeurs retournées
+     * @return les percentiles, ou null si aucun sketch n'a été enregistré sur la période
+     */
+    public SketchPercentilesResponse percentiles(String typeCarte, String operationType, long minutes, MetricsTimeUnit unit) {
+        long to = System.currentTimeMillis();
+        long from = to - TimeUnit.MINUTES.toMillis(Math.max(1, Math.min(minutes, getRetentionMinutes())));
+        SketchQueryResult result = query(typeCarte, operationType, from, to);
+        MetricsSketch sketch = result.getSketch();
+        if (sketch.isEmpty()) {
+            return null;
+        }
+        SketchPercentilesResponse response = new SketchPercentilesResponse();
+        response.setTypeCarte(typeCarte);
+        response.setOperationType(operationType);
+        response.setUnit(unit.getSymbol());
+        response.setCount(sketch.getCount());
+        response.setP50(sketch.quantile(0.50) / unit.getNanos());
+        response.setP90(sketch.quantile(0.90) / unit.getNanos());
+        response.setP99(sketch.quantile(0.99) / unit.getNanos());
+        response.setP999(sketch.quantile(0.999) / unit.getNanos());
+        response.setFrom(from);
+        response.setTo(to);
+        response.setWindows(result.getWindows());
+        response.setRelativeAccuracy(relativeAccuracy);
+        return response;
+    }
+
+    /**
+     * Occupation mémoire des sketches de la JVM
+     */
+    public SketchStatus getStatus() {
+        SketchStatus status = new SketchStatus();
+        status.setEnabled(enabled);
+        status.setInstanceId(instanceId);
+        status.setRelativeAccuracy(relativeAccuracy);
+        status.setMaxBins(maxBins);
+        status.setWindowSeconds(windowMs / 1000);
+        List<Window> windows = new ArrayList<>(closed);
+        Window window = current;
+        if (window != null) {
+            windows.add(window);
+        }
+        status.setWindows(windows.size());
+        for (Window inMemory : windows) {
+            inMemory.sketches.values().forEach(operations -> operations.values().forEach(sketch -> {
+                status.setSketches(status.getSketches() + 1);
+                status.setAllocatedBins(status.getAllocatedBins() + sketch.getAllocatedBins());
+                status.setMemoryBytes(status.getMemoryBytes() + sketch.getEstimatedBytes());
+            }));
+        }
+        // Borne : chaque sketch plafonne à maxBins compteurs de 8 octets
+        status.setMaxMemoryBytes(status.getSketches() * (96 + 16 + 8L * maxBins));
+        return status;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * Sketches d'une fenêtre, indexés par (typeCarte, operationType)
+     */
+    private static final class Window {
+        private final long start;
+        private volatile long closedAt;
+        private final Map<String, Map<String, MetricsSketch>> sketches = new ConcurrentHashMap<>();
+
+        Window(long start) {
+            this.start = start;
+        }
+
+        MetricsSketch sketch(String typeCarte, String operationType, double relativeAccuracy, int maxBins) {
+            Map<String, MetricsSketch> operations = sketches.get(typeCarte);
+            if (operations == null) {
+                operations = sketches.computeIfAbsent(typeCarte, key -> new ConcurrentHashMap<>());
+            }
+            MetricsSketch sketch = operations.get(operationType);
+            if (sketch == null) {
+                sketch = operations.computeIfAbsent(operationType, key -> new MetricsSketch(relativeAccuracy, maxBins));
+            }
+            return sketch;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.test.projet.metric.sketch;
+
+import com.test.projet.metric.PercentilesResponse;
+
+/**
+ * Percentiles calculés par fusion des sketches de toutes les instances sur une période
+ */
+public class SketchPercentilesResponse extends PercentilesResponse {
+    private long from;
+    private long to;
+    private int windows;
+    private double relativeAccuracy;
+
+    public SketchPercentilesResponse() {}
+
+    public long getFrom() {
+        return from;
+    }
+
+    public void setFrom(long from) {
+        this.from = from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    public void setTo(long to) {
+        this.to = to;
+    }
+
+    public int getWindows() {
+        return windows;
+    }
+
+    public void setWindows(int windows) {
+        this.windows = windows;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public void setRelativeAccuracy(double relativeAccuracy) {
+        this.relativeAccuracy = relativeAccuracy;
+    }
+}
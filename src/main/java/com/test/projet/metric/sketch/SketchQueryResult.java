@@ -0,0 +1,22 @@
+package com.test.projet.metric.sketch;
+
+/**
+ * Résultat d'une lecture de sketches : sketch fusionné et nombre de fenêtres contenant des données
+ */
+public class SketchQueryResult {
+    private final MetricsSketch sketch;
+    private final int windows;
+
+    public SketchQueryResult(MetricsSketch sketch, int windows) {
+        this.sketch = sketch;
+        this.windows = windows;
+    }
+
+    public MetricsSketch getSketch() {
+        return sketch;
+    }
+
+    public int getWindows() {
+        return windows;
+    }
+}
@@ -0,0 +1,101 @@
+package com.test.projet.metric.sketch;
+
+/**
+ * Occupation mémoire des sketches de quantiles de l'instance.
+ * {@code memoryBytes} est l'estimation courante, {@code maxMemoryBytes} le plafond atteint si
+ * chaque sketch en mémoire utilisait {@code maxBins} bins.
+ */
+public class SketchStatus {
+    private boolean enabled;
+    private String instanceId;
+    private double relativeAccuracy;
+    private int maxBins;
+    private long windowSeconds;
+    private int windows;
+    private long sketches;
+    private long allocatedBins;
+    private long memoryBytes;
+    private long maxMemoryBytes;
+
+    public SketchStatus() {}
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(String instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public void setRelativeAccuracy(double relativeAccuracy) {
+        this.relativeAccuracy = relativeAccuracy;
+    }
+
+    public int getMaxBins() {
+        return maxBins;
+    }
+
+    public void setMaxBins(int maxBins) {
+        this.maxBins = maxBins;
+    }
+
+    public long getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    public void setWindowSeconds(long windowSeconds) {
+        this.windowSeconds = windowSeconds;
+    }
+
+    public int getWindows() {
+        return windows;
+    }
+
+    public void setWindows(int windows) {
+        this.windows = windows;
+    }
+
+    public long getSketches() {
+        return sketches;
+    }
+
+    public void setSketches(long sketches) {
+        this.sketches = sketches;
+    }
+
+    public long getAllocatedBins() {
+        return allocatedBins;
+    }
+
+    public void setAllocatedBins(long allocatedBins) {
+        this.allocatedBins = allocatedBins;
+    }
+
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public void setMemoryBytes(long memoryBytes) {
+        this.memoryBytes = memoryBytes;
+    }
+
+    public long getMaxMemoryBytes() {
+        return maxMemoryBytes;
+    }
+
+    public void setMaxMemoryBytes(long maxMemoryBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+}
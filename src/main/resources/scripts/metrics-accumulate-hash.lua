@@ -0,0 +1,160 @@
+-- Accumulation atomique des métriques d'une carte en disposition hash (metrics.storage.layout=HASH).
+-- Seuls les champs de l'opération sont lus ou écrits : le coût ne dépend pas du nombre d'opérations.
+--
+-- KEYS[1] = metrics:{typeCarte}          hash {op}:count, {op}:sum, {op}:min, {op}:max, {op}:lastUpdated,
+--                                        et unit (unité des durées de toute la carte, absente = ms)
+-- KEYS[2..] = clés optionnelles, reconnues par leur préfixe :
+--   metrics-histogram:{typeCarte}:{op}        hash bucket -> compteur (metrics.histogram.enabled)
+--   metrics-window:{typeCarte}:{op}:{slot}    bucket de fenêtre glissante (metrics.window.enabled)
+--   metrics-history:10s:{typeCarte}:{op}      niveau 10 s de l'historique (metrics.history.enabled)
+--   metrics-registry:cards, metrics-registry:ops, metrics-registry:ops:{typeCarte}
+--                                             registre des clés (ZSET, score = dernière mise à jour)
+--   metrics-registry:changes, metrics-registry:seq
+--                                             journal de l'export incrémental (ZSET, score = INCR de
+--                                             metrics-registry:seq, la clé qui suit)
+--
+-- ARGV[1] = operationType
+-- ARGV[2] = nombre d'exécutions du delta
+-- ARGV[3] = somme des temps d'exécution du delta
+-- ARGV[4] = temps minimum du delta (vide si inconnu : l'extrême stocké est conservé)
+-- ARGV[5] = temps maximum du delta (vide si inconnu : l'extrême stocké est conservé)
+-- ARGV[6] = horodatage (ms) fourni par l'appelant
+-- ARGV[7] = unité des durées du delta : ms, us ou ns (vide : ms)
+-- ARGV[8]  = minute courante (fenêtres glissantes)
+-- ARGV[9]  = durée de vie (s) d'un bucket de fenêtre
+-- ARGV[10] = début (epoch, s) du bucket 10 s de l'historique
+-- ARGV[11] = durée de vie (s) du niveau 10 s
+-- ARGV[12..] = paires (bucket, compteur) de l'histogramme, buckets calculés sur les nanosecondes
+--
+-- Retourne le nombre cumulé d'exécutions pour l'opération.
+-- Si metrics:{typeCarte} est encore un document (JSON ou codec binaire, écrit avant le passage en
+-- disposition hash), rien n'est écrit et l'erreur METRICS_NOT_HASH est retournée : l'appelant
+-- convertit le document en hash puis rejoue le delta.
+
+local keyType = redis.call('TYPE', KEYS[1])['ok']
+if keyType ~= 'none' and keyType ~= 'hash' then
+    return redis.error_reply('METRICS_NOT_HASH ' .. KEYS[1])
+end
+
+local NANOS = { ms = 1000000, us = 1000, ns = 1 }
+local unit = NANOS[ARGV[7]] and ARGV[7] or 'ms'
+
+-- Bucket d'une fenêtre glissante : hash {minute, count, sum, min, max}, durées en nanosecondes.
+-- L'emplacement de l'anneau est réinitialisé quand il est réutilisé pour une nouvelle minute.
+local function accumulateWindow(key, minute, ttl, count, sumNs, minNs, maxNs)
+    local stored = tonumber(redis.call('HGET', key, 'minute'))
+    if stored and stored > tonumber(minute) then
+        -- Écriture tardive (horloge d'une autre instance en retard) : le bucket a déjà été recyclé
+        return
+    end
+    if stored ~= tonumber(minute) then
+        redis.call('DEL', key)
+        redis.call('HSET', key, 'minute', minute)
+    end
+    redis.call('HINCRBY', key, 'count', count)
+    redis.call('HINCRBY', key, 'sum', string.format('%d', sumNs))
+    local currentMin = tonumber(redis.call('HGET', key, 'min'))
+    if not currentMin or minNs < currentMin then
+        redis.call('HSET', key, 'min', string.format('%d', minNs))
+    end
+    local currentMax = tonumber(redis.call('HGET', key, 'max'))
+    if not currentMax or maxNs > currentMax then
+        redis.call('HSET', key, 'max', string.format('%d', maxNs))
+    end
+    redis.call('EXPIRE', key, ttl)
+end
+
+-- Bucket du niveau 10 s de l'historique : champ {début du bucket} = "count sum min max" (ns).
+-- Les niveaux plus grossiers sont calculés par compactage (MetricsRollupEngine).
+local function accumulateHistory(key, bucket, ttl, count, sumNs, minNs, maxNs)
+    local stored = redis.call('HGET', key, bucket)
+    if stored then
+        local c, s, mn, mx = string.match(stored, '^(%d+) (%d+) (%d+) (%d+)$')
+        if c then
+            count = count + tonumber(c)
+            sumNs = sumNs + tonumber(s)
+            minNs = math.min(minNs, tonumber(mn))
+            maxNs = math.max(maxNs, tonumber(mx))
+        end
+    end
+    redis.call('HSET', key, bucket, string.format('%d %d %d %d', count, sumNs, minNs, maxNs))
+    redis.call('EXPIRE', key, ttl)
+end
+
+-- Registre des clés, histogramme log-linéaire (un HINCRBY par bucket touché), fenêtres glissantes, historique
+for k = 2, #KEYS do
+    if KEYS[k] == 'metrics-registry:cards' then
+        -- typeCarte : KEYS[1] sans le préfixe 'metrics:'
+        redis.call('ZADD', KEYS[k], ARGV[6], string.sub(KEYS[1], 9))
+    elseif KEYS[k] == 'metrics-registry:changes' then
+        redis.call('ZADD', KEYS[k], redis.call('INCR', KEYS[k + 1]), string.sub(KEYS[1], 9))
+    elseif string.find(KEYS[k], '^metrics%-registry:ops') then
+        redis.call('ZADD', KEYS[k], ARGV[6], ARGV[1])
+    elseif string.find(KEYS[k], '^metrics%-histogram:') then
+        for i = 12, #ARGV - 1, 2 do
+            redis.call('HINCRBY', KEYS[k], ARGV[i], ARGV[i + 1])
+        end
+    else
+        local deltaCount = tonumber(ARGV[2])
+        local deltaSum = tonumber(ARGV[3])
+        local mean = deltaSum / deltaCount
+        local deltaMin = (tonumber(ARGV[4]) or mean) * NANOS[unit]
+        local deltaMax = (tonumber(ARGV[5]) or mean) * NANOS[unit]
+        if string.find(KEYS[k], '^metrics%-window:') then
+            accumulateWindow(KEYS[k], ARGV[8], ARGV[9], deltaCount, deltaSum * NANOS[unit], deltaMin, deltaMax)
+        elseif string.find(KEYS[k], '^metrics%-history:') then
+            accumulateHistory(KEYS[k], ARGV[10], ARGV[11], deltaCount, deltaSum * NANOS[unit], deltaMin, deltaMax)
+        end
+    end
+end
+
+-- Unité du hash : celle du premier delta pour un hash neuf, ms pour un hash historique.
+-- Le hash et le delta sont ramenés à la plus fine des deux unités.
+local current = redis.call('HGET', KEYS[1], 'unit')
+if not current then
+    current = keyType == 'none' and unit or 'ms'
+end
+local target = NANOS[current] < NANOS[unit] and current or unit
+local documentFactor = NANOS[current] / NANOS[target]
+if documentFactor > 1 then
+    local entries = redis.call('HGETALL', KEYS[1])
+    for i = 1, #entries, 2 do
+        local field = entries[i]
+        if string.find(field, ':sum$') or string.find(field, ':min$') or string.find(field, ':max$') then
+            redis.call('HSET', KEYS[1], field, string.format('%d', tonumber(entries[i + 1]) * documentFactor))
+        end
+    end
+end
+if current ~= target or keyType == 'none' then
+    redis.call('HSET', KEYS[1], 'unit', target)
+end
+local factor = NANOS[unit] / NANOS[target]
+
+local prefix = ARGV[1] .. ':'
+local count = tonumber(ARGV[2])
+local sum = tonumber(ARGV[3]) * factor
+local min = tonumber(ARGV[4]) and tonumber(ARGV[4]) * factor
+local max = tonumber(ARGV[5]) and tonumber(ARGV[5]) * factor
+
+local total = redis.call('HINCRBY', KEYS[1], prefix .. 'count', count)
+redis.call('HINCRBY', KEYS[1], prefix .. 'sum', string.format('%d', sum))
+
+if min and max then
+    local currentMin = tonumber(redis.call('HGET', KEYS[1], prefix .. 'min'))
+    if not currentMin or min < currentMin then
+        redis.call('HSET', KEYS[1], prefix .. 'min', string.format('%d', min))
+    end
+    local currentMax = tonumber(redis.call('HGET', KEYS[1], prefix .. 'max'))
+    if not currentMax or max > currentMax then
+        redis.call('HSET', KEYS[1], prefix .. 'max', string.format('%d', max))
+    end
+elseif total == count then
+    -- Première écriture sans extrêmes connus : la moyenne du delta sert de min et de max
+    -- (valeurs formatées en entiers : un nombre Lua peut être formaté en notation exponentielle)
+    local mean = string.format('%d', math.floor(sum / count))
+    redis.call('HSET', KEYS[1], prefix .. 'min', mean)
+    redis.call('HSET', KEYS[1], prefix .. 'max', mean)
+end
+
+redis.call('HSET', KEYS[1], prefix .. 'lastUpdated', ARGV[6])
+return total
@@ -0,0 +1,264 @@
+-- Accumulation atomique des métriques d'une carte en un seul aller-retour.
+--
+-- KEYS[1] = metrics:{typeCarte}          document MetricsDto (JSON)
+-- KEYS[2] = metrics:{typeCarte}:{op}     document MetricsAggregated (JSON)
+-- KEYS[3..] = clés optionnelles, reconnues par leur préfixe :
+--   metrics-histogram:{typeCarte}:{op}        hash bucket -> compteur (metrics.histogram.enabled)
+--   metrics-window:{typeCarte}:{op}:{slot}    bucket de fenêtre glissante (metrics.window.enabled)
+--   metrics-history:10s:{typeCarte}:{op}      niveau 10 s de l'historique (metrics.history.enabled)
+--   metrics-registry:cards, metrics-registry:ops, metrics-registry:ops:{typeCarte}
+--                                             registre des clés (ZSET, score = dernière mise à jour)
+--   metrics-registry:changes, metrics-registry:seq
+--                                             journal de l'export incrémental (ZSET, score = INCR de
+--                                             metrics-registry:seq, la clé qui suit)
+--
+-- ARGV[1] = typeCarte
+-- ARGV[2] = operationType
+-- ARGV[3] = nombre d'exécutions du delta
+-- ARGV[4] = somme des temps d'exécution du delta
+-- ARGV[5] = temps minimum du delta (vide si inconnu : l'extrême stocké est conservé)
+-- ARGV[6] = temps maximum du delta (vide si inconnu : l'extrême stocké est conservé)
+-- ARGV[7] = horodatage (ms) fourni par l'appelant : TIME est interdit avant une écriture
+-- ARGV[8] = unité des durées du delta : ms, us ou ns (vide : ms)
+-- ARGV[9]  = minute courante (fenêtres glissantes)
+-- ARGV[10] = durée de vie (s) d'un bucket de fenêtre
+-- ARGV[11] = début (epoch, s) du bucket 10 s de l'historique
+-- ARGV[12] = durée de vie (s) du niveau 10 s
+-- ARGV[13..] = paires (bucket, compteur) de l'histogramme, buckets calculés sur les nanosecondes
+--
+-- Chaque document porte son unité (champ unit, absent = ms). Si elle diffère de celle du delta,
+-- document et delta sont ramenés à la plus fine des deux (multiplication, sans perte).
+--
+-- Retourne le nombre cumulé d'exécutions pour (typeCarte, operationType).
+-- Si l'un des documents est stocké dans un autre codec que JSON (metrics.codec), rien n'est
+-- écrit et l'erreur METRICS_NOT_JSON est retournée : l'appelant applique alors le delta côté Java.
+
+local typeCarte = ARGV[1]
+local op = ARGV[2]
+local count = tonumber(ARGV[3])
+local sum = tonumber(ARGV[4])
+local min = tonumber(ARGV[5]) or (sum / count)
+local max = tonumber(ARGV[6]) or (sum / count)
+local hasExtremes = tonumber(ARGV[5]) ~= nil and tonumber(ARGV[6]) ~= nil
+local now = tonumber(ARGV[7])
+local NANOS = { ms = 1000000, us = 1000, ns = 1 }
+local unit = NANOS[ARGV[8]] and ARGV[8] or 'ms'
+
+-- Aligne l'unité d'un document sur celle du delta ; convertit les durées listées du document
+-- si nécessaire et retourne le facteur à appliquer aux durées du delta
+local function alignUnit(document, convert)
+    local current = NANOS[document.unit] and document.unit or 'ms'
+    local target = NANOS[current] < NANOS[unit] and current or unit
+    local documentFactor = NANOS[current] / NANOS[target]
+    if documentFactor > 1 then
+        convert(documentFactor)
+    end
+    document.unit = target
+    return NANOS[unit] / NANOS[target]
+end
+
+-- cjson.encode n'écrit que 14 chiffres significatifs : un total en ns (ou un document ms converti)
+-- dépasse vite 1e14 et serait arrondi. Les nombres sont remplacés par des jetons avant l'encodage,
+-- puis réinsérés exactement : entiers en %d (exacts jusqu'à 2^53), réels en %.17g (aller-retour exact).
+local function encode(value)
+    local numbers = {}
+    local function mark(t)
+        for k, v in pairs(t) do
+            if type(v) == 'number' and v == v and v ~= math.huge and v ~= -math.huge then
+                table.insert(numbers, v)
+                t[k] = '\1' .. #numbers
+            elseif type(v) == 'table' then
+                mark(v)
+            end
+        end
+    end
+    mark(value)
+    local json = cjson.encode(value)
+    return (string.gsub(json, '"\\u0001(%d+)"', function(i)
+        local v = numbers[tonumber(i)]
+        if v == math.floor(v) and math.abs(v) < 2 ^ 53 then
+            return string.format('%d', v)
+        end
+        return string.format('%.17g', v)
+    end))
+end
+
+-- Bucket d'une fenêtre glissante : hash {minute, count, sum, min, max}, durées en nanosecondes.
+-- L'emplacement de l'anneau est réinitialisé quand il est réutilisé pour une nouvelle minute.
+local function accumulateWindow(key, minute, ttl, count, sumNs, minNs, maxNs)
+    local stored = tonumber(redis.call('HGET', key, 'minute'))
+    if stored and stored > tonumber(minute) then
+        -- Écriture tardive (horloge d'une autre instance en retard) : le bucket a déjà été recyclé
+        return
+    end
+    if stored ~= tonumber(minute) then
+        redis.call('DEL', key)
+        redis.call('HSET', key, 'minute', minute)
+    end
+    redis.call('HINCRBY', key, 'count', count)
+    redis.call('HINCRBY', key, 'sum', string.format('%d', sumNs))
+    local currentMin = tonumber(redis.call('HGET', key, 'min'))
+    if not currentMin or minNs < currentMin then
+        redis.call('HSET', key, 'min', string.format('%d', minNs))
+    end
+    local currentMax = tonumber(redis.call('HGET', key, 'max'))
+    if not currentMax or maxNs > currentMax then
+        redis.call('HSET', key, 'max', string.format('%d', maxNs))
+    end
+    redis.call('EXPIRE', key, ttl)
+end
+
+-- Bucket du niveau 10 s de l'historique : champ {début du bucket} = "count sum min max" (ns).
+-- Les niveaux plus grossiers sont calculés par compactage (MetricsRollupEngine).
+local function accumulateHistory(key, bucket, ttl, count, sumNs, minNs, maxNs)
+    local stored = redis.call('HGET', key, bucket)
+    if stored then
+        local c, s, mn, mx = string.match(stored, '^(%d+) (%d+) (%d+) (%d+)$')
+        if c then
+            count = count + tonumber(c)
+            sumNs = sumNs + tonumber(s)
+            minNs = math.min(minNs, tonumber(mn))
+            maxNs = math.max(maxNs, tonumber(mx))
+        end
+    end
+    redis.call('HSET', key, bucket, string.format('%d %d %d %d', count, sumNs, minNs, maxNs))
+    redis.call('EXPIRE', key, ttl)
+end
+
+-- Lit un document JSON ; retourne (nil, true) si la clé est absente ou illisible,
+-- (nil, false) si la clé existe avec un autre type Redis (ex : hash de MetricsAggregator),
+-- (nil, nil) si la clé contient un document binaire (Smile, CBOR, format fixe)
+local function readDocument(key)
+    local keyType = redis.call('TYPE', key)['ok']
+    if keyType == 'none' then
+        return nil, true
+    end
+    if keyType ~= 'string' then
+        return nil, false
+    end
+    local raw = redis.call('GET', key)
+    if string.find(raw, '%S') and not string.find(raw, '^%s*{') then
+        return nil, nil
+    end
+    local ok, decoded = pcall(cjson.decode, raw)
+    if ok and type(decoded) == 'table' then
+        return decoded, true
+    end
+    return nil, true
+end
+
+local doc, writable = readDocument(KEYS[1])
+local agg, aggWritable = readDocument(KEYS[2])
+if writable == nil or aggWritable == nil then
+    return redis.error_reply('METRICS_NOT_JSON ' .. typeCarte .. ' ' .. op)
+end
+
+-- === Registre des clés, histogramme log-linéaire (un HINCRBY par bucket touché), fenêtres glissantes, historique ===
+for k = 3, #KEYS do
+    if KEYS[k] == 'metrics-registry:cards' then
+        redis.call('ZADD', KEYS[k], ARGV[7], typeCarte)
+    elseif KEYS[k] == 'metrics-registry:changes' then
+        redis.call('ZADD', KEYS[k], redis.call('INCR', KEYS[k + 1]), typeCarte)
+    elseif string.find(KEYS[k], '^metrics%-registry:ops') then
+        redis.call('ZADD', KEYS[k], ARGV[7], op)
+    elseif string.find(KEYS[k], '^metrics%-histogram:') then
+        for i = 13, #ARGV - 1, 2 do
+            redis.call('HINCRBY', KEYS[k], ARGV[i], ARGV[i + 1])
+        end
+    elseif string.find(KEYS[k], '^metrics%-window:') then
+        accumulateWindow(KEYS[k], ARGV[9], ARGV[10], count,
+            sum * NANOS[unit], min * NANOS[unit], max * NANOS[unit])
+    elseif string.find(KEYS[k], '^metrics%-history:') then
+        accumulateHistory(KEYS[k], ARGV[11], ARGV[12], count,
+            sum * NANOS[unit], min * NANOS[unit], max * NANOS[unit])
+    end
+end
+
+-- === Vue par carte : liste de {name, value, type} ===
+if writable then
+    if not doc then
+        doc = { typeCarte = typeCarte }
+    end
+    if type(doc.metrics) ~= 'table' then
+        doc.metrics = {}
+    end
+    local factor = alignUnit(doc, function(documentFactor)
+        for _, metric in ipairs(doc.metrics) do
+            if metric.name == 'Average' or metric.name == 'Max' or metric.name == 'Min' then
+                metric.value = (tonumber(metric.value) or 0) * documentFactor
+            end
+        end
+    end)
+    local sum, min, max = sum * factor, min * factor, max * factor
+
+    local stats = {}
+    for _, metric in ipairs(doc.metrics) do
+        if metric.type == op then
+            stats[metric.name] = metric
+        end
+    end
+
+    local function put(name, value)
+        local metric = stats[name]
+        if metric then
+            metric.value = value
+        else
+            metric = { name = name, value = value, type = op }
+            table.insert(doc.metrics, metric)
+            stats[name] = metric
+        end
+    end
+
+    local existing = stats['Number']
+    if existing then
+        local oldCount = tonumber(existing.value) or 0
+        local oldAverage = stats['Average'] and tonumber(stats['Average'].value) or (sum / count)
+        local oldMax = stats['Max'] and tonumber(stats['Max'].value) or max
+        local oldMin = stats['Min'] and tonumber(stats['Min'].value) or min
+        local newCount = oldCount + count
+        put('Number', newCount)
+        put('Average', ((oldAverage * oldCount) + sum) / newCount)
+        if hasExtremes then
+            put('Max', math.max(oldMax, max))
+            put('Min', math.min(oldMin, min))
+        end
+    else
+        put('Number', count)
+        put('Average', sum / count)
+        put('Max', max)
+        put('Min', min)
+    end
+
+    redis.call('SET', KEYS[1], encode(doc))
+end
+
+-- === Vue agrégée par opération ===
+if not aggWritable then
+    return 0
+end
+if not agg then
+    agg = { typeCarte = typeCarte, operationType = op }
+end
+local factor = alignUnit(agg, function(documentFactor)
+    agg.totalTime = (tonumber(agg.totalTime) or 0) * documentFactor
+    agg.averageTime = (tonumber(agg.averageTime) or 0) * documentFactor
+    agg.minTime = (tonumber(agg.minTime) or 0) * documentFactor
+    agg.maxTime = (tonumber(agg.maxTime) or 0) * documentFactor
+end)
+sum, min, max = sum * factor, min * factor, max * factor
+
+local previousCount = tonumber(agg.count) or 0
+agg.count = previousCount + count
+agg.totalTime = (tonumber(agg.totalTime) or 0) + sum
+agg.averageTime = agg.totalTime / agg.count
+if previousCount == 0 or (hasExtremes and min < (tonumber(agg.minTime) or min)) then
+    agg.minTime = min
+end
+if previousCount == 0 or (hasExtremes and max > (tonumber(agg.maxTime) or 0)) then
+    agg.maxTime = max
+end
+agg.lastUpdated = now
+
+local total = agg.count
+redis.call('SET', KEYS[2], encode(agg))
+return total
@@ -0,0 +1,37 @@
+-- Enregistrement atomique d'un ou plusieurs échantillons CRUD (MetricsAggregator) en un seul aller-retour.
+--
+-- KEYS[1] = metrics:{entity}:{op}        hash count, sumMs, lastMs, errors, minMs, maxMs
+-- KEYS[2] = metrics-registry:crud         (optionnel) registre des couples {entity}:{op}, score = ARGV[7]
+--
+-- ARGV[1] = nombre d'échantillons
+-- ARGV[2] = somme des durées (ms)
+-- ARGV[3] = durée du dernier échantillon (ms)
+-- ARGV[4] = nombre d'échantillons en erreur
+-- ARGV[5] = durée minimum (ms)
+-- ARGV[6] = durée maximum (ms)
+-- ARGV[7] = horodatage de l'écriture (ms), avec KEYS[2]
+--
+-- Retourne le nombre cumulé d'échantillons.
+
+local count = redis.call('HINCRBY', KEYS[1], 'count', ARGV[1])
+redis.call('HINCRBY', KEYS[1], 'sumMs', ARGV[2])
+redis.call('HSET', KEYS[1], 'lastMs', ARGV[3])
+if tonumber(ARGV[4]) > 0 then
+    redis.call('HINCRBY', KEYS[1], 'errors', ARGV[4])
+end
+
+-- Comparaison et mise à jour dans le script : aucune écriture concurrente ne peut s'intercaler
+local max = tonumber(redis.call('HGET', KEYS[1], 'maxMs'))
+if not max or tonumber(ARGV[6]) > max then
+    redis.call('HSET', KEYS[1], 'maxMs', ARGV[6])
+end
+local min = tonumber(redis.call('HGET', KEYS[1], 'minMs'))
+if not min or tonumber(ARGV[5]) < min then
+    redis.call('HSET', KEYS[1], 'minMs', ARGV[5])
+end
+
+if KEYS[2] then
+    redis.call('ZADD', KEYS[2], ARGV[7], string.sub(KEYS[1], 9))
+end
+
+return count
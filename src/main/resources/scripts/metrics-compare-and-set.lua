@@ -0,0 +1,13 @@
+-- Remplace un document uniquement s'il n'a pas changé depuis sa lecture.
+--
+-- KEYS[1] = clé du document
+-- ARGV[1] = contenu lu
+-- ARGV[2] = nouveau contenu
+--
+-- Retourne 1 si le document a été remplacé, 0 s'il a été modifié entre-temps.
+
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    redis.call('SET', KEYS[1], ARGV[2])
+    return 1
+end
+return 0
@@ -0,0 +1,17 @@
+-- Convertit un document de carte en hash (metrics.storage.layout=HASH), uniquement s'il n'a pas
+-- changé depuis sa lecture.
+--
+-- KEYS[1] = metrics:{typeCarte}
+-- ARGV[1] = document lu
+-- ARGV[2..n] = paires champ / valeur du hash
+--
+-- Retourne 1 si le document a été converti, 0 s'il a été modifié entre-temps.
+
+if redis.call('GET', KEYS[1]) ~= ARGV[1] then
+    return 0
+end
+redis.call('DEL', KEYS[1])
+if #ARGV > 1 then
+    redis.call('HMSET', KEYS[1], unpack(ARGV, 2))
+end
+return 1
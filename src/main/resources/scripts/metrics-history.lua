@@ -0,0 +1,34 @@
+-- Mise à jour d'un bucket 10 s de l'historique hors script d'accumulation (codec binaire,
+-- accumulation non atomique). Même logique que accumulateHistory dans metrics-accumulate.lua.
+--
+-- KEYS[1] = metrics-history:10s:{typeCarte}:{op}   hash {début du bucket} -> "count sum min max" (ns)
+--
+-- ARGV[1] = début (epoch, s) du bucket
+-- ARGV[2] = durée de vie (s) du niveau 10 s
+-- ARGV[3] = nombre d'exécutions
+-- ARGV[4] = somme des temps d'exécution (ns)
+-- ARGV[5] = temps minimum (ns)
+-- ARGV[6] = temps maximum (ns)
+--
+-- Retourne le nombre d'exécutions du bucket.
+
+local key = KEYS[1]
+local bucket = ARGV[1]
+local count = tonumber(ARGV[3])
+local sum = tonumber(ARGV[4])
+local min = tonumber(ARGV[5])
+local max = tonumber(ARGV[6])
+
+local stored = redis.call('HGET', key, bucket)
+if stored then
+    local c, s, mn, mx = string.match(stored, '^(%d+) (%d+) (%d+) (%d+)$')
+    if c then
+        count = count + tonumber(c)
+        sum = sum + tonumber(s)
+        min = math.min(min, tonumber(mn))
+        max = math.max(max, tonumber(mx))
+    end
+end
+redis.call('HSET', key, bucket, string.format('%d %d %d %d', count, sum, min, max))
+redis.call('EXPIRE', key, ARGV[2])
+return count
@@ -0,0 +1,12 @@
+-- Libère un verrou uniquement s'il appartient encore à l'instance appelante
+-- (il a pu expirer puis être repris par une autre instance).
+--
+-- KEYS[1] = clé du verrou
+-- ARGV[1] = jeton du propriétaire
+--
+-- Retourne 1 si le verrou a été libéré, 0 sinon.
+
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
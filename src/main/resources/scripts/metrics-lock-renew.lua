@@ -0,0 +1,13 @@
+-- Prolonge un verrou uniquement s'il appartient encore à l'appelant
+-- (il a pu expirer puis être repris par une autre instance).
+--
+-- KEYS[1] = clé du verrou
+-- ARGV[1] = jeton du propriétaire
+-- ARGV[2] = nouvelle durée de vie (ms)
+--
+-- Retourne 1 si le verrou a été prolongé, 0 sinon.
+
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+end
+return 0
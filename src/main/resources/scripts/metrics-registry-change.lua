@@ -0,0 +1,13 @@
+-- Inscrit une modification (écriture ou suppression) d'un type de carte au journal de l'export
+-- incrémental. Le numéro de séquence est attribué par Redis : il ne dépend pas de l'horloge des
+-- instances et ne recule jamais.
+--
+-- KEYS[1] = metrics-registry:changes   ZSET typeCarte -> numéro de sa dernière modification
+-- KEYS[2] = metrics-registry:seq       compteur de séquence
+-- ARGV[1] = typeCarte
+--
+-- Retourne le numéro de séquence attribué.
+
+local seq = redis.call('INCR', KEYS[2])
+redis.call('ZADD', KEYS[1], seq, ARGV[1])
+return seq
@@ -0,0 +1,37 @@
+-- Mise à jour d'un bucket de fenêtre glissante hors script d'accumulation (codec binaire,
+-- accumulation non atomique). Même logique que accumulateWindow dans metrics-accumulate.lua.
+--
+-- KEYS[1] = metrics-window:{typeCarte}:{op}:{slot}   hash {minute, count, sum, min, max}, durées en ns
+--
+-- ARGV[1] = minute courante
+-- ARGV[2] = durée de vie (s) du bucket
+-- ARGV[3] = nombre d'exécutions
+-- ARGV[4] = somme des temps d'exécution (ns)
+-- ARGV[5] = temps minimum (ns)
+-- ARGV[6] = temps maximum (ns)
+--
+-- Retourne le nombre d'exécutions du bucket, ou -1 pour une écriture tardive ignorée.
+
+local key = KEYS[1]
+local minute = ARGV[1]
+
+local stored = tonumber(redis.call('HGET', key, 'minute'))
+if stored and stored > tonumber(minute) then
+    return -1
+end
+if stored ~= tonumber(minute) then
+    redis.call('DEL', key)
+    redis.call('HSET', key, 'minute', minute)
+end
+local total = redis.call('HINCRBY', key, 'count', ARGV[3])
+redis.call('HINCRBY', key, 'sum', ARGV[4])
+local currentMin = tonumber(redis.call('HGET', key, 'min'))
+if not currentMin or tonumber(ARGV[5]) < currentMin then
+    redis.call('HSET', key, 'min', ARGV[5])
+end
+local currentMax = tonumber(redis.call('HGET', key, 'max'))
+if not currentMax or tonumber(ARGV[6]) > currentMax then
+    redis.call('HSET', key, 'max', ARGV[6])
+end
+redis.call('EXPIRE', key, ARGV[2])
+return total
@@ -0,0 +1,84 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class MetricsAccumulationEngineTest {
+
+    @Test
+    void testDeltaRecordsCountSumMinMax() {
+        MetricsDelta delta = new MetricsDelta("VISA", "PAYMENT")
+                .record(100)
+                .record(200)
+                .record(125);
+
+        assertEquals(3, delta.getCount());
+        assertEquals(425, delta.getSum());
+        assertEquals(100, delta.getMin());
+        assertEquals(200, delta.getMax());
+    }
+
+    @Test
+    void testDeltaMerge() {
+        MetricsDelta first = MetricsDelta.of("VISA", "PAYMENT", 50);
+        MetricsDelta second = MetricsDelta.of("VISA", "PAYMENT", 150).record(10);
+
+        first.merge(second).merge(new MetricsDelta("VISA", "PAYMENT"));
+
+        assertEquals(3, first.getCount());
+        assertEquals(210, first.getSum());
+        assertEquals(10, first.getMin());
+        assertEquals(150, first.getMax());
+    }
+
+    @Test
+    void testScriptKeysAndArguments() {
+        MetricsDelta delta = MetricsDelta.of("MASTERCARD", "REFUND", 42);
+
+        assertEquals(List.of("metrics:MASTERCARD", "metrics:MASTERCARD:REFUND"),
+                MetricsAccumulationEngine.keys(delta));
+        assertArrayEquals(new String[] {"MASTERCARD", "REFUND", "1", "42", "42", "42", "1700000000000", "ms"},
+                MetricsAccumulationEngine.args(delta, 1_700_000_000_000L, MetricsTimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testHashScriptKeysAndArguments() {
+        MetricsDelta delta = MetricsDelta.of("VISA", "PAYMENT", 2, 300, 100, 200);
+
+        assertEquals(List.of("metrics:VISA"), MetricsAccumulationEngine.hashKeys(delta));
+        assertArrayEquals(new String[] {"PAYMENT", "2", "300", "100", "200", "1700000000000", "us"},
+                MetricsAccumulationEngine.hashArgs(delta, 1_700_000_000_000L, MetricsTimeUnit.MICROSECONDS));
+    }
+
+    @Test
+    void testHashLayoutRebuildsMetricsDtoAndAggregated() {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("PAYMENT:count", "4");
+        entries.put("PAYMENT:sum", "500");
+        entries.put("PAYMENT:min", "50");
+        entries.put("PAYMENT:max", "200");
+        entries.put("PAYMENT:lastUpdated", "1700000000000");
+        entries.put("REFUND:count", "1");
+        entries.put("REFUND:sum", "80");
+
+        MetricsDto metrics = MetricsHashLayout.toMetricsDto("VISA", entries);
+
+        assertArrayEquals(new double[] {4, 125, 200, 50}, metrics.getStats("PAYMENT"));
+        assertEquals(80.0, metrics.getStats("REFUND")[MetricsDto.AVERAGE]);
+        assertNull(MetricsHashLayout.toMetricsDto("VISA", Map.of()));
+
+        MetricsAggregated aggregated = MetricsHashLayout.toAggregated("VISA", "PAYMENT",
+                Arrays.asList("4", "500", "50", "200", "1700000000000"));
+        assertEquals(4, aggregated.getCount());
+        assertEquals(125.0, aggregated.getAverageTime());
+        assertEquals(50, aggregated.getMinTime());
+        assertEquals(1_700_000_000_000L, aggregated.getLastUpdated());
+        assertNull(MetricsHashLayout.toAggregated("VISA", "CAPTURE", Arrays.asList(null, null, null, null, null)));
+    }
+}
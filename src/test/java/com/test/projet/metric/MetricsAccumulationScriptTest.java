@@ -0,0 +1,271 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.test.projet.metric.codec.MetricsCodecRegistry;
+
+import redis.embedded.RedisServer;
+
+/**
+ * Exécution réelle de {@code metrics-accumulate.lua} sur un Redis embarqué : les documents écrits par
+ * le script doivent être ceux que produit le chemin Java ({@link MetricsUtils#accumulate},
+ * {@link MetricsAggregated#updateMetrics(MetricsDelta, long, MetricsTimeUnit)}) pour les mêmes deltas.
+ */
+class MetricsAccumulationScriptTest {
+
+    private static RedisServer redisServer;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    private final MetricsCodecRegistry codecRegistry = new MetricsCodecRegistry("json");
+
+    private MetricsDto expectedCard;
+    private Map<String, MetricsAggregated> expectedOperations;
+    private long now;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        try {
+            redisServer = RedisServer.builder().port(port).setting("bind 127.0.0.1").build();
+            redisServer.start();
+        } catch (RuntimeException e) {
+            Assumptions.abort("Redis embarqué indisponible : " + e.getMessage());
+        }
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+        expectedCard = new MetricsDto("VISA");
+        expectedOperations = new LinkedHashMap<>();
+        now = 1_700_000_000_000L;
+    }
+
+    @Test
+    void testScriptMatchesJavaAccumulation() throws IOException {
+        // Création des deux documents, puis cumul avec et sans nouvel extrême
+        apply(new MetricsDelta("VISA", "PAYMENT").record(100).record(200).record(125), MetricsTimeUnit.MILLISECONDS);
+        apply(MetricsDelta.of("VISA", "PAYMENT", 2, 300, 40, 260), MetricsTimeUnit.MILLISECONDS);
+        apply(MetricsDelta.of("VISA", "PAYMENT", 50), MetricsTimeUnit.MILLISECONDS);
+        // Nouvelle opération dans un document de carte existant
+        apply(MetricsDelta.of("VISA", "REFUND", 75), MetricsTimeUnit.MILLISECONDS);
+
+        assertStoredDocumentsMatchJava();
+        assertArrayEquals(new double[] {6, 775.0 / 6, 260, 40}, expectedCard.getStats("PAYMENT"), 1e-9);
+    }
+
+    @Test
+    void testDeltaWithoutExtremesKeepsStoredMinAndMax() throws IOException {
+        apply(MetricsDelta.of("VISA", "PAYMENT", 3, 300, 20, 180), MetricsTimeUnit.MILLISECONDS);
+        // Extrêmes inconnus (delta cumulé) : seuls le nombre et la moyenne évoluent
+        apply(MetricsDelta.of("VISA", "PAYMENT", 4, 1000, Long.MAX_VALUE, Long.MIN_VALUE), MetricsTimeUnit.MILLISECONDS);
+
+        assertStoredDocumentsMatchJava();
+        MetricsAggregated stored = readOperation("metrics:VISA:PAYMENT");
+        assertEquals(20, stored.getMinTime());
+        assertEquals(180, stored.getMaxTime());
+    }
+
+    @Test
+    void testLegacyMillisecondDocumentIsConvertedToTheFinerUnit() throws IOException {
+        apply(MetricsDelta.of("VISA", "PAYMENT", 2, 30, 10, 20), MetricsTimeUnit.MILLISECONDS);
+        apply(MetricsDelta.of("VISA", "PAYMENT", 1, 1500, 1500, 1500), MetricsTimeUnit.MICROSECONDS);
+
+        assertStoredDocumentsMatchJava();
+        MetricsAggregated stored = readOperation("metrics:VISA:PAYMENT");
+        assertEquals("us", stored.getTimeUnit().getSymbol());
+        assertEquals(31_500, stored.getTotalTime());
+        assertEquals(1_500, stored.getMinTime());
+    }
+
+    @Test
+    void testLargeNanosecondTotalsAreStoredExactly() throws IOException {
+        // Document historique en ms converti en ns (facteur 1e6), puis cumul au-delà de 1e14 ns (environ 28 h)
+        apply(MetricsDelta.of("VISA", "PAYMENT", 3, 123_456_789, 40_000_001, 43_456_787), MetricsTimeUnit.MILLISECONDS);
+        apply(MetricsDelta.of("VISA", "PAYMENT", 2, 200_000_000_000_123L, 7, 199_999_999_999_999L), MetricsTimeUnit.NANOSECONDS);
+        apply(MetricsDelta.of("VISA", "PAYMENT", 99_999_999_999_978L), MetricsTimeUnit.NANOSECONDS);
+
+        assertStoredDocumentsMatchJava();
+        MetricsAggregated stored = readOperation("metrics:VISA:PAYMENT");
+        assertEquals("ns", stored.getTimeUnit().getSymbol());
+        // 14 chiffres significatifs auraient donné 4.2345678900010e14
+        assertEquals(423_456_789_000_101L, stored.getTotalTime());
+        assertEquals(199_999_999_999_999L, stored.getMaxTime());
+        assertEquals(7, stored.getMinTime());
+    }
+
+    @Test
+    void testNonJsonDocumentIsRejectedWithoutWriting() throws IOException {
+        byte[] smile = new MetricsCodecRegistry("smile").encode(new MetricsDto("VISA"));
+        redisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.stringCommands().set(bytes("metrics:VISA"), smile));
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> runScript(MetricsDelta.of("VISA", "PAYMENT", 10)));
+
+        assertTrue(hasMessage(error, "METRICS_NOT_JSON"), String.valueOf(error));
+        assertArrayEquals(smile, redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(bytes("metrics:VISA"))));
+        assertFalse(redisTemplate.hasKey("metrics:VISA:PAYMENT"));
+    }
+
+    @Test
+    void testOperationKeyOfAnotherRedisTypeIsLeftUntouched() throws IOException {
+        // Hash de MetricsAggregator sur la même clé : seule la vue par carte est écrite
+        redisTemplate.opsForHash().put("metrics:VISA:PAYMENT", "count", "7");
+
+        assertEquals(0L, runScript(MetricsDelta.of("VISA", "PAYMENT", 10)));
+
+        assertEquals("7", redisTemplate.opsForHash().get("metrics:VISA:PAYMENT", "count"));
+        assertEquals(1.0, readCard().getStats("PAYMENT")[MetricsDto.NUMBER]);
+    }
+
+    @Test
+    void testDocumentIsConvertedOnFirstHashLayoutWrite() throws IOException {
+        // Documents écrits avant le passage en disposition hash : JSON pour VISA, smile pour AMEX
+        MetricsDto visa = new MetricsDto("VISA");
+        MetricsUtils.accumulate(visa, MetricsDelta.of("VISA", "PAYMENT", 2, 30, 10, 20), MetricsTimeUnit.MILLISECONDS);
+        redisTemplate.opsForValue().set("metrics:VISA", new String(codecRegistry.encode(visa), StandardCharsets.UTF_8));
+        MetricsDto amex = new MetricsDto("AMEX");
+        MetricsUtils.accumulate(amex, MetricsDelta.of("AMEX", "REFUND", 5), MetricsTimeUnit.MILLISECONDS);
+        byte[] smile = new MetricsCodecRegistry("smile").encode(amex);
+        redisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.stringCommands().set(bytes("metrics:AMEX"), smile));
+        MetricsAccumulationEngine engine = new MetricsAccumulationEngine(redisTemplate, codecRegistry,
+                MetricsStorageLayout.HASH, MetricsTimeUnit.MILLISECONDS, false, mock(MetricsRollingWindows.class),
+                mock(MetricsHistoryStore.class), mock(MetricsKeyRegistry.class));
+
+        assertEquals(3L, engine.apply(MetricsDelta.of("VISA", "PAYMENT", 30)));
+        engine.applyAll(List.of(MetricsDelta.of("AMEX", "REFUND", 7), MetricsDelta.of("AMEX", "REFUND", 9)));
+
+        Map<Object, Object> visaFields = redisTemplate.opsForHash().entries("metrics:VISA");
+        assertEquals("3", visaFields.get("PAYMENT:count"));
+        assertEquals("60", visaFields.get("PAYMENT:sum"));
+        assertEquals("10", visaFields.get("PAYMENT:min"));
+        assertEquals("30", visaFields.get("PAYMENT:max"));
+        assertEquals("ms", visaFields.get("unit"));
+        Map<Object, Object> amexFields = redisTemplate.opsForHash().entries("metrics:AMEX");
+        assertEquals("3", amexFields.get("REFUND:count"));
+        assertEquals("21", amexFields.get("REFUND:sum"));
+    }
+
+    @Test
+    void testChangesJournalIsNumberedByRedis() {
+        MetricsAccumulationEngine engine = new MetricsAccumulationEngine(redisTemplate, codecRegistry,
+                MetricsStorageLayout.DOCUMENT, MetricsTimeUnit.MILLISECONDS, false, mock(MetricsRollingWindows.class),
+                mock(MetricsHistoryStore.class), mock(MetricsKeyRegistry.class));
+
+        engine.apply(MetricsDelta.of("VISA", "PAYMENT", 10));
+        engine.apply(MetricsDelta.of("AMEX", "REFUND", 20));
+        engine.apply(MetricsDelta.of("VISA", "CAPTURE", 30));
+
+        // Séquence Redis, indépendante de l'horloge de l'appelant : la dernière écriture a le plus grand numéro
+        assertEquals(2.0, redisTemplate.opsForZSet().score("metrics-registry:changes", "AMEX"));
+        assertEquals(3.0, redisTemplate.opsForZSet().score("metrics-registry:changes", "VISA"));
+        assertEquals("3", redisTemplate.opsForValue().get("metrics-registry:seq"));
+    }
+
+    /**
+     * Applique le delta par le script et, en parallèle, par le chemin Java
+     */
+    private void apply(MetricsDelta delta, MetricsTimeUnit unit) {
+        Long count = redisTemplate.execute(MetricsAccumulationEngine.ACCUMULATE_SCRIPT,
+                MetricsAccumulationEngine.keys(delta), (Object[]) MetricsAccumulationEngine.args(delta, now, unit));
+
+        MetricsUtils.accumulate(expectedCard, delta, unit);
+        MetricsAggregated expected = expectedOperations.computeIfAbsent(delta.getOperationType(),
+                operation -> new MetricsAggregated("VISA", operation));
+        expected.updateMetrics(delta, now, unit);
+
+        assertEquals(expected.getCount(), count);
+        now += 1000;
+    }
+
+    private Long runScript(MetricsDelta delta) {
+        return redisTemplate.execute(MetricsAccumulationEngine.ACCUMULATE_SCRIPT, MetricsAccumulationEngine.keys(delta),
+                (Object[]) MetricsAccumulationEngine.args(delta, now, MetricsTimeUnit.MILLISECONDS));
+    }
+
+    private void assertStoredDocumentsMatchJava() throws IOException {
+        MetricsDto card = readCard();
+        assertEquals(expectedCard.getOperationTypes(), card.getOperationTypes());
+        assertEquals(expectedCard.getUnit(), card.getUnit());
+        for (String operation : expectedCard.getOperationTypes()) {
+            double[] expected = expectedCard.getStats(operation);
+            double[] stored = card.getStats(operation);
+            for (int slot = 0; slot < expected.length; slot++) {
+                // Tolérance relative : les moyennes en ns dépassent 1e11
+                assertEquals(expected[slot], stored[slot], Math.max(1e-9, Math.abs(expected[slot]) * 1e-15),
+                        operation + " " + MetricsDto.getStatName(slot));
+            }
+        }
+        for (MetricsAggregated expected : expectedOperations.values()) {
+            MetricsAggregated stored = readOperation("metrics:VISA:" + expected.getOperationType());
+            assertEquals(expected.getCount(), stored.getCount());
+            assertEquals(expected.getTotalTime(), stored.getTotalTime());
+            assertEquals(expected.getAverageTime(), stored.getAverageTime(), 1e-9);
+            assertEquals(expected.getMinTime(), stored.getMinTime());
+            assertEquals(expected.getMaxTime(), stored.getMaxTime());
+            assertEquals(expected.getLastUpdated(), stored.getLastUpdated());
+            assertEquals(expected.getTimeUnit(), stored.getTimeUnit());
+        }
+    }
+
+    private MetricsDto readCard() throws IOException {
+        return codecRegistry.decodeCard(bytes(redisTemplate.opsForValue().get("metrics:VISA")));
+    }
+
+    private MetricsAggregated readOperation(String key) throws IOException {
+        return codecRegistry.decodeOperation(bytes(redisTemplate.opsForValue().get(key)));
+    }
+
+    private static boolean hasMessage(Throwable error, String message) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains(message)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -91,6 +91,22 @@ public class MetricsAccumulationTest {
         assertEquals(75.0, findMetric("Min", "REFUND").getValue(), 0.001);
     }
 
+    @Test
+    void testIndexedStatsAreUpdatedInPlace() {
+        MetricsUtils.collectAndAccumulateMetrics(metricsDto, null, "CAPTURE", "VISA", null, 40);
+        double[] stats = metricsDto.getStats("CAPTURE");
+
+        MetricsUtils.collectAndAccumulateMetrics(metricsDto, null, "CAPTURE", "VISA", null, 20);
+
+        // Même tableau, mis à jour sans nouvelle allocation
+        assertSame(stats, metricsDto.getStats("CAPTURE"));
+        assertEquals(2.0, stats[MetricsDto.NUMBER], 0.001);
+        assertEquals(30.0, stats[MetricsDto.AVERAGE], 0.001);
+        assertEquals(40.0, stats[MetricsDto.MAX], 0.001);
+        assertEquals(20.0, stats[MetricsDto.MIN], 0.001);
+        assertNull(metricsDto.getStats("PAYMENT"));
+    }
+
     private MetricInner findMetric(String name, String type) {
         return metricsDto.getMetrics().stream()
                 .filter(metric -> name.equals(metric.getName()) && type.equals(metric.getType()))
@@ -0,0 +1,57 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsAggregatorTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Test
+    void testRecordIsASingleScriptCall() {
+        MetricsAggregator aggregator = new MetricsAggregator(redisTemplate);
+
+        aggregator.record("Customer", "UPDATE", 42, true);
+
+        // Le couple est inscrit au registre CRUD dans le même script (dernier argument : horodatage)
+        verify(redisTemplate).execute(eq(MetricsAggregator.RECORD_SCRIPT),
+                eq(List.of("metrics:Customer:UPDATE", "metrics-registry:crud")),
+                eq("1"), eq("42"), eq("42"), eq("1"), eq("42"), eq("42"), matches("\\d+"));
+        verifyNoMoreInteractions(redisTemplate);
+    }
+
+    @Test
+    void testRecordAllGroupsSamplesPerKey() {
+        Map<String, MetricsAggregator.SampleGroup> groups = MetricsAggregator.group(List.of(
+                new MetricsAggregator.Sample("Customer", "UPDATE", 30, false),
+                new MetricsAggregator.Sample("Customer", "DELETE", 5, false),
+                new MetricsAggregator.Sample("Customer", "UPDATE", 90, true),
+                new MetricsAggregator.Sample("Customer", "UPDATE", 60, false)));
+
+        assertEquals(List.of("metrics:Customer:UPDATE", "metrics:Customer:DELETE"), List.copyOf(groups.keySet()));
+        // count, sumMs, lastMs, errors, minMs, maxMs
+        assertArrayEquals(new String[] {"3", "180", "60", "1", "30", "90"},
+                groups.get("metrics:Customer:UPDATE").args());
+        assertArrayEquals(new String[] {"1", "5", "5", "0", "5", "5"},
+                groups.get("metrics:Customer:DELETE").args());
+    }
+
+    @Test
+    void testRecordAllWithoutSamplesDoesNothing() {
+        new MetricsAggregator(redisTemplate).recordAll(List.of());
+
+        verifyNoInteractions(redisTemplate);
+    }
+}
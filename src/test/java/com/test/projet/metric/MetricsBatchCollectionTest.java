@@ -0,0 +1,160 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.test.projet.metric.sketch.MetricsSketchRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsBatchCollectionTest {
+
+    @Mock
+    private MetricsAccumulationEngine accumulationEngine;
+
+    @Mock
+    private MetricsSketchRegistry sketchRegistry;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private MetricsRollingWindows rollingWindows;
+
+    @Mock
+    private MetricsHistoryStore historyStore;
+
+    @Mock
+    private MetricsKeyRegistry keyRegistry;
+
+    @InjectMocks
+    private MetricsService metricsService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(metricsService, "atomicAccumulation", true);
+        // Cache local désactivé : lectures directes
+        ReflectionTestUtils.setField(metricsService, "nearCache",
+                new MetricsNearCache(null, null, false, 1, 0, false, System::currentTimeMillis));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchIsPreAggregatedIntoOneDeltaPerKey() {
+        List<MetricRequest> requests = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            requests.add(new MetricRequest("VISA", "PAYMENT", i));
+            requests.add(new MetricRequest("AMEX", i % 2 == 0 ? "REFUND" : "CAPTURE", 10));
+        }
+
+        BatchCollectionResponse response = metricsService.collectAndStoreMetricsBatch(requests);
+
+        ArgumentCaptor<Collection<MetricsDelta>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(accumulationEngine, times(1)).applyAll(captor.capture());
+        List<MetricsDelta> deltas = new ArrayList<>(captor.getValue());
+        assertEquals(3, deltas.size());
+        MetricsDelta visa = deltas.get(0);
+        assertEquals("VISA", visa.getTypeCarte());
+        assertEquals(1000, visa.getCount());
+        assertEquals(500500, visa.getSum());
+        assertEquals(1, visa.getMin());
+        assertEquals(1000, visa.getMax());
+
+        assertEquals(2000, response.getTotal());
+        assertEquals(2000, response.getAccepted());
+        assertEquals(3, response.getGroups().size());
+        assertEquals(2000, response.getSuccesses().size());
+        assertTrue(response.getFailures().isEmpty());
+    }
+
+    @Test
+    void testInvalidItemsAreReportedByIndex() {
+        List<MetricRequest> requests = List.of(
+                new MetricRequest("VISA", "PAYMENT", 100),
+                new MetricRequest(null, "PAYMENT", 100),
+                new MetricRequest("VISA", "PAYMENT", -5));
+
+        BatchCollectionResponse response = metricsService.collectAndStoreMetricsBatch(requests);
+
+        assertEquals(3, response.getTotal());
+        assertEquals(1, response.getAccepted());
+        assertEquals(2, response.getFailures().size());
+        assertEquals(1, response.getFailures().get(0).getIndex());
+        assertEquals(2, response.getFailures().get(1).getIndex());
+    }
+
+    @Test
+    void testRedisFailureMarksGroupsAsFailed() {
+        doThrow(new IllegalStateException("Redis indisponible")).when(accumulationEngine).applyAll(anyCollection());
+
+        BatchCollectionResponse response = metricsService.collectAndStoreMetricsBatch(
+                List.of(new MetricRequest("VISA", "PAYMENT", 100), new MetricRequest("VISA", "PAYMENT", 200)));
+
+        assertEquals(0, response.getAccepted());
+        assertEquals(1, response.getGroups().size());
+        assertEquals(2, response.getGroups().get(0).getCount());
+        assertEquals("Redis indisponible", response.getGroups().get(0).getErrorMessage());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPartialPipelineFailureOnlyFailsTheAffectedGroup() {
+        doAnswer(invocation -> {
+            List<Object> results = new ArrayList<>();
+            for (MetricsDelta delta : (Collection<MetricsDelta>) invocation.getArgument(0)) {
+                results.add("AMEX".equals(delta.getTypeCarte()) ? new RedisSystemException("OOM", null) : 1L);
+            }
+            throw new RedisPipelineException("Échec partiel du pipeline", results);
+        }).when(accumulationEngine).applyAll(anyCollection());
+
+        BatchCollectionResponse response = metricsService.collectAndStoreMetricsBatch(List.of(
+                new MetricRequest("VISA", "PAYMENT", 100),
+                new MetricRequest("AMEX", "PAYMENT", 200),
+                new MetricRequest("VISA", "PAYMENT", 300)));
+
+        assertEquals(2, response.getAccepted());
+        assertEquals(List.of("VISA", "VISA"), response.getSuccesses());
+        assertNull(response.getGroups().get(0).getErrorMessage());
+        assertEquals("OOM", response.getGroups().get(1).getErrorMessage());
+    }
+
+    @Test
+    void testDocumentPathReportsEachFailedItem() {
+        ReflectionTestUtils.setField(metricsService, "atomicAccumulation", false);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        doThrow(new RedisSystemException("READONLY", null)).when(valueOperations).set(eq("metrics:AMEX"), anyString());
+
+        BatchCollectionResponse response = metricsService.collectAndStoreMetricsBatch(List.of(
+                new MetricRequest("VISA", "PAYMENT", 100),
+                new MetricRequest("AMEX", "PAYMENT", 200),
+                new MetricRequest("VISA", "PAYMENT", 300)));
+
+        // Un échec d'écriture n'est plus compté comme un succès
+        assertEquals(2, response.getAccepted());
+        assertEquals(List.of("VISA", "VISA"), response.getSuccesses());
+        assertEquals(1, response.getFailures().size());
+        assertEquals(1, response.getFailures().get(0).getIndex());
+        assertEquals("READONLY", response.getFailures().get(0).getErrorMessage());
+        verifyNoInteractions(accumulationEngine);
+    }
+}
@@ -0,0 +1,110 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsBulkReadTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @InjectMocks
+    private MetricsService metricsService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(metricsService, "keyspaceIterator", new MetricsKeyspaceIterator(redisTemplate, 1000));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testCardsAreReadWithASingleMget() throws Exception {
+        MetricsDto visa = new MetricsDto("VISA");
+        visa.addMetric(new MetricInner("Number", 3.0, "PAYMENT"));
+        // AMEX n'a pas de métriques : MGET retourne null
+        when(redisTemplate.execute(any(RedisCallback.class)))
+                .thenReturn(Arrays.asList(objectMapper.writeValueAsBytes(visa), null));
+
+        Map<String, MetricsDto> result = metricsService.getMetricsFromRedis(List.of("VISA", "AMEX", "VISA"));
+
+        assertEquals(List.of("VISA"), List.copyOf(result.keySet()));
+        assertEquals("VISA", result.get("VISA").getTypeCarte());
+        verify(redisTemplate, times(1)).execute(any(RedisCallback.class));
+        verify(redisTemplate, never()).opsForValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testOperationsAreReadWithASingleMget() throws Exception {
+        MetricsAggregated payment = new MetricsAggregated("VISA", "PAYMENT", 4, 400, 100.0, 50, 150);
+        MetricsAggregated refund = new MetricsAggregated("AMEX", "REFUND", 1, 20, 20.0, 20, 20);
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(
+                Arrays.asList(objectMapper.writeValueAsBytes(payment), objectMapper.writeValueAsBytes(refund)));
+
+        Map<String, MetricsAggregated> result = metricsService.getMetrics(List.of("VISA:PAYMENT", "AMEX:REFUND"));
+
+        assertEquals(List.of("VISA:PAYMENT", "AMEX:REFUND"), List.copyOf(result.keySet()));
+        assertEquals(4, result.get("VISA:PAYMENT").getCount());
+        assertEquals(20, result.get("AMEX:REFUND").getMaxTime());
+        verify(redisTemplate, times(1)).execute(any(RedisCallback.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testHashLayoutOperationsAreReadWithOnePipeline() {
+        ReflectionTestUtils.setField(metricsService, "storageLayout", MetricsStorageLayout.HASH);
+        // count, sum, min, max, lastUpdated, unit
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of(
+                Arrays.asList("2", "300", "100", "200", "1700000000000", "us"),
+                Arrays.asList(null, null, null, null, null, null)));
+
+        Map<String, MetricsAggregated> result = metricsService.getMetrics(List.of("VISA:PAYMENT", "VISA:VOID", "invalid"));
+
+        assertEquals(List.of("VISA:PAYMENT"), List.copyOf(result.keySet()));
+        assertEquals(150.0, result.get("VISA:PAYMENT").getAverageTime());
+        assertEquals("us", result.get("VISA:PAYMENT").getUnit());
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testCrudAggregatesAreReadWithOnePipeline() {
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of(
+                Map.of("count", "4", "sumMs", "100"), Map.of()));
+        MetricsAggregator aggregator = new MetricsAggregator(redisTemplate);
+
+        Map<String, Map<String, Object>> result = aggregator.readAll(List.of("Customer:UPDATE", "Customer:DELETE"));
+
+        assertEquals(List.of("Customer:UPDATE"), List.copyOf(result.keySet()));
+        assertEquals(25.0, result.get("Customer:UPDATE").get("avgMs"));
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+        verify(redisTemplate, never()).opsForHash();
+    }
+
+    @Test
+    void testEmptyCrudRequestDoesNothing() {
+        assertTrue(new MetricsAggregator(redisTemplate).readAll(List.of()).isEmpty());
+
+        verifyNoInteractions(redisTemplate);
+    }
+}
@@ -0,0 +1,33 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.StringWriter;
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+
+class MetricsCsvWriterTest {
+
+    @Test
+    void testNumbersMatchFixedSixDecimalsFormat() throws Exception {
+        double[] values = { 0, 1, -1, 0.5, 1e-7, 5e-6, 123456.789, -2.25, 0.9999996, 999_999_999.25, 1e9, -3e15,
+                Double.NaN, Double.POSITIVE_INFINITY };
+        for (double value : values) {
+            StringWriter out = new StringWriter();
+            new MetricsCsvWriter(out).field(value);
+            assertEquals(String.format(Locale.ROOT, "%.6f", value), out.toString(), "valeur " + value);
+        }
+    }
+
+    @Test
+    void testFieldsAreQuotedOnlyWhenNeeded() throws Exception {
+        StringWriter out = new StringWriter();
+        MetricsCsvWriter csv = new MetricsCsvWriter(out);
+
+        csv.field("VISA").field("a,b").field("dit \"bonjour\"").field((String) null).field(2.5).endRow();
+        csv.field("ligne\nsuivante").endRow();
+
+        assertEquals("VISA,\"a,b\",\"dit \"\"bonjour\"\"\",,2.500000\n\"ligne\nsuivante\"\n", out.toString());
+    }
+}
@@ -0,0 +1,272 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.projet.metric.codec.JacksonMetricsCodec;
+import com.test.projet.metric.codec.MetricsCodecRegistry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsExportControllerTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private MetricsKeyRegistry keyRegistry;
+
+    @Mock
+    private MetricsService metricsService;
+
+    @InjectMocks
+    private MetricsExportController exportController;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        meterRegistry.counter("metrics.test.counter", "typeCarte", "VISA").increment(2);
+        ReflectionTestUtils.setField(exportController, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(exportController, "keyspaceIterator", new MetricsKeyspaceIterator(redisTemplate, 2));
+        ReflectionTestUtils.setField(exportController, "codecRegistry", new MetricsCodecRegistry("json"));
+        ReflectionTestUtils.setField(exportController, "aggregator", new MetricsAggregator(redisTemplate));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenTwoRegistryPages() {
+        doAnswer(invocation -> {
+            Consumer<List<String>> consumer = invocation.getArgument(1);
+            consumer.accept(List.of("metrics:VISA", "metrics:VISA:PAYMENT"));
+            consumer.accept(List.of("metrics:AMEX"));
+            return 3L;
+        }).when(keyRegistry).forEachKeyPage(eq(2), any(Consumer.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testRedisExportIsWrittenPageByPage() throws Exception {
+        givenTwoRegistryPages();
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(
+                Arrays.asList(bytes("{\"typeCarte\":\"VISA\",\"metrics\":[]}"), bytes("{\"count\":4}")),
+                Arrays.asList(bytes("pas du JSON")));
+
+        JsonNode export = objectMapper.readTree(write(exportController.exportRedisMetrics().getBody()));
+
+        assertEquals("VISA", export.get("metrics").get("metrics:VISA").get("typeCarte").asText());
+        assertEquals(4, export.get("metrics").get("metrics:VISA:PAYMENT").get("count").asInt());
+        assertEquals("pas du JSON", export.get("metrics").get("metrics:AMEX").asText());
+        assertEquals(3, export.get("totalKeys").asLong());
+        // Un MGET par page, sans construire la liste complète des clés
+        verify(redisTemplate, times(2)).execute(any(RedisCallback.class));
+        verify(keyRegistry, never()).keys();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testBinaryDocumentsAreDecodedInTheRedisExport() throws Exception {
+        MetricsDto amex = new MetricsDto("AMEX");
+        amex.addMetric(new MetricInner("Number", 2.0, "REFUND"));
+        givenTwoRegistryPages();
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(
+                Arrays.asList(bytes("{\"typeCarte\":\"VISA\"}"), null),
+                Arrays.asList(JacksonMetricsCodec.smile().encode(amex)));
+
+        JsonNode export = objectMapper.readTree(write(exportController.exportRedisMetrics().getBody()));
+
+        JsonNode card = export.get("metrics").get("metrics:AMEX");
+        assertEquals("AMEX", card.get("typeCarte").asText());
+        assertEquals("REFUND", card.get("metrics").get(0).get("type").asText());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testHashLayoutCardsAreReadByHgetall() throws Exception {
+        doAnswer(invocation -> {
+            ((Consumer<List<String>>) invocation.getArgument(1)).accept(List.of("metrics:VISA", "metrics:VISA:PAYMENT"));
+            return 2L;
+        }).when(keyRegistry).forEachKeyPage(eq(2), any(Consumer.class));
+        // Disposition hash : MGET ne rend rien pour la carte, ni pour l'opération (lue dans le hash de la carte)
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(Arrays.asList(null, null));
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Arrays.asList(
+                Map.of("PAYMENT:count", "4", "PAYMENT:sum", "100", "PAYMENT:min", "10", "PAYMENT:max", "40"), Map.of()));
+
+        JsonNode export = objectMapper.readTree(write(exportController.exportRedisMetrics().getBody()));
+
+        JsonNode card = export.get("metrics").get("metrics:VISA");
+        assertEquals("VISA", card.get("typeCarte").asText());
+        assertEquals(4.0, card.get("metrics").get(0).get("value").asDouble());
+        assertFalse(export.get("metrics").has("metrics:VISA:PAYMENT"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testRedisFailureMidStreamStillProducesValidJson() throws Exception {
+        givenTwoRegistryPages();
+        when(redisTemplate.execute(any(RedisCallback.class)))
+                .thenReturn(Arrays.asList(bytes("{\"typeCarte\":\"VISA\"}"), null))
+                .thenThrow(new RedisConnectionFailureException("Redis indisponible"));
+
+        JsonNode export = objectMapper.readTree(write(exportController.exportMetricsAsJson().getBody()));
+
+        JsonNode customMetrics = export.get("customMetrics");
+        assertTrue(customMetrics.has("metrics:VISA"));
+        assertTrue(customMetrics.get("error").asText().contains("Redis indisponible"));
+        assertEquals(2.0, export.get("systemMetrics").get("metrics.test.counter").get("measurements").get(0)
+                .get("value").asDouble());
+        assertEquals("VISA", export.get("systemMetrics").get("metrics.test.counter").get("tags").get("typeCarte").asText());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testCsvHasOneRowPerMeasurementAndIncludesRedisCards() throws Exception {
+        MetricsDto visa = new MetricsDto("VISA");
+        visa.addMetric(new MetricInner("Number", 3.0, "PAYMENT"));
+        visa.addMetric(new MetricInner("Average", 12.5, "PAYMENT"));
+        doAnswer(invocation -> {
+            ((BiConsumer<String, MetricsDto>) invocation.getArgument(0)).accept("VISA", visa);
+            return 1L;
+        }).when(metricsService).forEachCard(any(BiConsumer.class));
+
+        ResponseEntity<StreamingResponseBody> response = exportController.exportMetricsAsCsv(null);
+        String[] lines = write(response.getBody()).split("\n");
+
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("timestamp,source,metric_name,metric_type,tags,statistic,value", lines[0]);
+        assertEquals(4, lines.length);
+        assertTrue(lines[1].endsWith(",micrometer,metrics.test.counter,COUNTER,typeCarte=VISA,COUNT,2.000000"), lines[1]);
+        assertTrue(lines[2].endsWith(",redis,VISA,CARD,operationType=PAYMENT,Number,3.000000"), lines[2]);
+        assertTrue(lines[3].endsWith(",redis,VISA,CARD,operationType=PAYMENT,Average,12.500000"), lines[3]);
+    }
+
+    @Test
+    void testCsvIsGzippedWhenAccepted() throws Exception {
+        ResponseEntity<StreamingResponseBody> response = exportController.exportMetricsAsCsv("deflate, gzip;q=0.8");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            String csv = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(csv.startsWith("timestamp,source,metric_name"));
+            assertTrue(csv.contains("metrics.test.counter"));
+        }
+        assertFalse(MetricsExportController.acceptsGzip("gzip;q=0, identity"));
+        assertTrue(MetricsExportController.acceptsGzip("*"));
+        assertFalse(MetricsExportController.acceptsGzip(null));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testCrudExportIncludesTheAggregatorHashesOfTheEntity() throws Exception {
+        MetricsAggregator aggregator = (MetricsAggregator) ReflectionTestUtils.getField(exportController, "aggregator");
+        aggregator.record("Customer", "UPDATE", 40, false);
+        verify(redisTemplate).execute(eq(MetricsAggregator.RECORD_SCRIPT),
+                eq(List.of("metrics:Customer:UPDATE", "metrics-registry:crud")),
+                eq("1"), eq("40"), eq("40"), eq("0"), eq("40"), eq("40"), matches("\\d+"));
+        // Registre CRUD tel qu'alimenté par le script, hash tel qu'écrit par lui
+        doAnswer(invocation -> {
+            ((Consumer<List<String>>) invocation.getArgument(1)).accept(List.of("Customer:UPDATE", "Order:CREATE"));
+            return 2L;
+        }).when(keyRegistry).forEachCrudPage(eq(2), any(Consumer.class));
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of(
+                Map.of("count", "1", "sumMs", "40", "lastMs", "40", "minMs", "40", "maxMs", "40")));
+
+        JsonNode export = objectMapper.readTree(write(exportController.exportCrudMetrics("Customer").getBody()));
+
+        JsonNode update = export.get("metrics").get("metrics:Customer:UPDATE");
+        assertEquals(1, update.get("count").asInt());
+        assertEquals(40.0, update.get("avgMs").asDouble());
+        assertFalse(export.get("metrics").has("metrics:Order:CREATE"));
+        assertEquals(1, export.get("totalKeys").asLong());
+        // Un seul HGETALL, pour le couple de l'entité demandée
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testChangesExportOnlyCardsWrittenSinceTheCursor() throws Exception {
+        MetricsKeyRegistry.CardChanges changes = new MetricsKeyRegistry.CardChanges(List.of("VISA"), 2000, true);
+        when(keyRegistry.changedSince(1000, 500)).thenReturn(changes);
+        when(keyRegistry.keys(List.of("VISA"))).thenReturn(List.of("metrics:VISA", "metrics:VISA:PAYMENT"));
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(
+                Arrays.asList(bytes("{\"typeCarte\":\"VISA\"}"), bytes("{\"count\":4}")));
+
+        JsonNode export = objectMapper.readTree(write(exportController.exportRedisChanges(1000, 500).getBody()));
+
+        assertEquals(2, export.get("metrics").size());
+        assertEquals(4, export.get("metrics").get("metrics:VISA:PAYMENT").get("count").asInt());
+        assertEquals(2000, export.get("cursor").asLong());
+        assertTrue(export.get("hasMore").asBoolean());
+        assertEquals(0, export.get("deleted").size());
+        verify(keyRegistry, never()).forEachKeyPage(anyInt(), any(Consumer.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testChangesExportReadsHashCardsAndListsDeletedOnes() throws Exception {
+        MetricsKeyRegistry.CardChanges changes = new MetricsKeyRegistry.CardChanges(List.of("VISA", "AMEX"), 42, false);
+        when(keyRegistry.changedSince(40, 500)).thenReturn(changes);
+        when(keyRegistry.keys(List.of("VISA", "AMEX"))).thenReturn(List.of("metrics:VISA", "metrics:AMEX"));
+        // Disposition hash : MGET ne rend rien, HGETALL rend la carte VISA ; AMEX a été supprimée
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(Arrays.asList(null, null));
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Arrays.asList(
+                Map.of("PAYMENT:count", "4", "PAYMENT:sum", "100", "PAYMENT:min", "10", "PAYMENT:max", "40"), Map.of()));
+
+        JsonNode export = objectMapper.readTree(write(exportController.exportRedisChanges(40, 500).getBody()));
+
+        assertEquals("VISA", export.get("metrics").get("metrics:VISA").get("typeCarte").asText());
+        assertEquals(1, export.get("deleted").size());
+        assertEquals("AMEX", export.get("deleted").get(0).asText());
+        assertEquals(42, export.get("cursor").asLong());
+    }
+
+    @Test
+    void testChangesExportKeepsTheCursorOnRedisFailure() throws Exception {
+        when(keyRegistry.changedSince(1000, 10_000)).thenThrow(new RedisConnectionFailureException("Redis indisponible"));
+
+        JsonNode export = objectMapper.readTree(write(exportController.exportRedisChanges(1000, 1_000_000).getBody()));
+
+        assertTrue(export.get("error").asText().contains("Redis indisponible"));
+        assertEquals(1000, export.get("cursor").asLong());
+    }
+
+    private static String write(StreamingResponseBody body) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,92 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+class MetricsHistogramTest {
+
+    @Test
+    void testBucketsAreContiguousAndContainTheirValues() {
+        assertEquals(0, MetricsHistogram.bucketOf(-5));
+        for (int bucket = 0; bucket < MetricsHistogram.MAX_BUCKET; bucket++) {
+            long lower = MetricsHistogram.lowerBound(bucket);
+            long upper = MetricsHistogram.upperBound(bucket);
+            assertEquals(bucket, MetricsHistogram.bucketOf(lower));
+            assertEquals(bucket, MetricsHistogram.bucketOf(upper));
+            assertEquals(upper + 1, MetricsHistogram.lowerBound(bucket + 1));
+        }
+        assertEquals(Long.MAX_VALUE, MetricsHistogram.upperBound(MetricsHistogram.MAX_BUCKET));
+    }
+
+    @Test
+    void testRelativeErrorIsBounded() {
+        for (long value = 1; value < 100_000_000L; value = value * 3 + 1) {
+            long midpoint = MetricsHistogram.midpoint(MetricsHistogram.bucketOf(value));
+            assertTrue(Math.abs(midpoint - value) <= value / 16.0 + 1, "valeur " + value);
+        }
+    }
+
+    @Test
+    void testPercentiles() {
+        Map<Integer, Long> buckets = new TreeMap<>();
+        // 990 exécutions à 1 ms, 9 à 50 ms, 1 à 2 s (en nanosecondes)
+        buckets.merge(MetricsHistogram.bucketOf(1_000_000L), 990L, Long::sum);
+        buckets.merge(MetricsHistogram.bucketOf(50_000_000L), 9L, Long::sum);
+        buckets.merge(MetricsHistogram.bucketOf(2_000_000_000L), 1L, Long::sum);
+
+        assertEquals(1000, MetricsHistogram.totalCount(buckets));
+        assertEquals(1_000_000L, MetricsHistogram.percentile(buckets, 0.50), 1_000_000L / 16);
+        assertEquals(1_000_000L, MetricsHistogram.percentile(buckets, 0.99), 1_000_000L / 16);
+        assertEquals(50_000_000L, MetricsHistogram.percentile(buckets, 0.999), 50_000_000L / 16);
+        assertEquals(2_000_000_000L, MetricsHistogram.percentile(buckets, 1.0), 2_000_000_000L / 16);
+        assertEquals(-1, MetricsHistogram.percentile(Map.of(), 0.5));
+    }
+
+    @Test
+    void testHistogramsFromSeveralInstancesMerge() {
+        Map<Object, Object> first = new LinkedHashMap<>();
+        first.put("120", "3");
+        first.put("unit", "ns");
+        Map<Object, Object> second = new LinkedHashMap<>();
+        second.put("120", "2");
+        second.put("130", "1");
+
+        Map<Integer, Long> merged = MetricsHistogram.merge(
+                MetricsHistogram.fromHash(first), MetricsHistogram.fromHash(second));
+
+        assertEquals(Map.of(120, 5L, 130, 1L), merged);
+    }
+
+    @Test
+    void testDeltaBucketsAreConvertedToNanoseconds() {
+        MetricsDelta delta = new MetricsDelta("VISA", "PAYMENT").record(3).record(3).record(5, 2);
+
+        assertEquals(Map.of(3, 2L, 5, 2L), delta.getBuckets());
+
+        Map<Integer, Long> nanos = MetricsAccumulationEngine.histogramBuckets(delta, MetricsTimeUnit.MILLISECONDS);
+        Map<Integer, Long> expected = new HashMap<>();
+        expected.put(MetricsHistogram.bucketOf(3_000_000L), 2L);
+        expected.put(MetricsHistogram.bucketOf(5_000_000L), 2L);
+        assertEquals(expected, nanos);
+
+        String[] args = MetricsAccumulationEngine.histogramArgs(delta, MetricsTimeUnit.NANOSECONDS);
+        assertEquals(4, args.length);
+        assertEquals("3", args[0]);
+        assertEquals("2", args[1]);
+    }
+
+    @Test
+    void testCumulatedDeltaWithoutBuckets() {
+        // Valeurs déjà cumulées : seul un delta de durées identiques alimente l'histogramme
+        assertEquals(Map.of(MetricsHistogram.bucketOf(7), 4L), MetricsAccumulationEngine.histogramBuckets(
+                MetricsDelta.of("VISA", "PAYMENT", 4, 28, 7, 7), MetricsTimeUnit.NANOSECONDS));
+        assertTrue(MetricsAccumulationEngine.histogramBuckets(
+                MetricsDelta.of("VISA", "PAYMENT", 2, 30, 10, 20), MetricsTimeUnit.NANOSECONDS).isEmpty());
+    }
+}
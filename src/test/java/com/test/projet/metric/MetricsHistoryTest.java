@@ -0,0 +1,185 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import com.test.projet.metric.series.MetricsSeriesStore;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsHistoryTest {
+
+    private static final long NOW = 1_700_000_000L;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private MetricsSeriesStore seriesStore;
+
+    private MetricsHistoryStore store() {
+        // Rétentions : 6 h, 7 jours, 90 jours, 5 ans
+        return new MetricsHistoryStore(redisTemplate, true, 360, 10_080, 129_600, 2_628_000);
+    }
+
+    @Test
+    void testTiersAndBuckets() {
+        assertEquals(MetricsHistoryTier.MINUTE, MetricsHistoryTier.TEN_SECONDS.next());
+        assertNull(MetricsHistoryTier.DAY.next());
+        assertEquals(MetricsHistoryTier.HOUR, MetricsHistoryTier.fromLabel("1h"));
+        assertEquals(1_699_999_200L, MetricsHistoryTier.HOUR.bucketStart(NOW));
+        assertEquals(1_700_000_000L, MetricsHistoryStore.bucket(1_700_000_009_999L));
+        assertEquals("metrics-history:10s:VISA:PAYMENT", store().key("VISA", "PAYMENT"));
+    }
+
+    @Test
+    void testQueriesReadTheCoarsestSufficientTier() {
+        MetricsHistoryStore store = store();
+
+        // Dernière heure en 300 points : pas de 12 s, le niveau 10 s suffit
+        assertEquals(MetricsHistoryTier.TEN_SECONDS, store.selectTier(NOW - 3_600, NOW, 12, NOW));
+        // Dernier jour en 300 points : pas de 288 s, hors rétention du niveau 10 s
+        assertEquals(MetricsHistoryTier.MINUTE, store.selectTier(NOW - 86_400, NOW, 288, NOW));
+        // Dernière année : quelques centaines de points journaliers au lieu de millions
+        assertEquals(MetricsHistoryTier.DAY, store.selectTier(NOW - 365 * 86_400L, NOW, 105_120, NOW));
+        // Résolution trop fine pour une plage ancienne : niveau le plus fin qui la couvre
+        assertEquals(MetricsHistoryTier.HOUR, store.selectTier(NOW - 30 * 86_400L, NOW - 29 * 86_400L, 10, NOW));
+    }
+
+    @Test
+    void testRetentionCoversAtLeastOneBucketOfTheNextTier() {
+        MetricsHistoryStore store = new MetricsHistoryStore(redisTemplate, true, 0, 1, 1, 1);
+
+        assertTrue(store.retentionSeconds(MetricsHistoryTier.TEN_SECONDS) >= 2 * 60);
+        assertTrue(store.retentionSeconds(MetricsHistoryTier.HOUR) >= 2 * 86_400);
+    }
+
+    @Test
+    void testCompactionMergesCompleteSourceBuckets() {
+        Map<Object, Object> entries = new LinkedHashMap<>();
+        entries.put("1699999930", "2 30000000 10000000 20000000");
+        entries.put("1699999970", "1 90000000 90000000 90000000");
+        entries.put("1700000000", "5 5 1 1");
+        entries.put("1700000040", "1 7 7 7");
+        entries.put("unit", "ns");
+
+        Map<Long, MetricsHistoryStore.Bucket> rolled = MetricsRollupEngine.compact(
+                entries, MetricsHistoryTier.MINUTE, 1_699_999_920L, 1_700_000_040L);
+
+        assertEquals(List.of(1_699_999_920L, 1_699_999_980L), List.copyOf(rolled.keySet()));
+        assertEquals("3 120000000 10000000 90000000", rolled.get(1_699_999_920L).format());
+        // Le bucket 1700000040 appartient à la minute suivante, pas encore close
+        assertEquals("5 5 1 1", rolled.get(1_699_999_980L).format());
+    }
+
+    @Test
+    void testBucketFieldsAreComputedFromTheRange() {
+        assertEquals(List.of("100", "110", "120"), MetricsRollupEngine.bucketFields(MetricsHistoryTier.TEN_SECONDS, 100, 130));
+        assertEquals(List.of("110"), MetricsRollupEngine.bucketFields(MetricsHistoryTier.TEN_SECONDS, 105, 120));
+        assertTrue(MetricsRollupEngine.bucketFields(MetricsHistoryTier.MINUTE, 120, 120).isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testQueryIsBoundedByTheRetentionAndMaxPoints() {
+        when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+        when(hashOperations.multiGet(anyString(), anyCollection())).thenReturn(List.of());
+        long now = System.currentTimeMillis();
+
+        HistoryResponse response = store().query("VISA", "PAYMENT", 0, now, 10, 300, MetricsTimeUnit.MILLISECONDS);
+
+        ArgumentCaptor<Collection<Object>> fields = ArgumentCaptor.forClass(Collection.class);
+        verify(hashOperations).multiGet(eq("metrics-history:1d:VISA:PAYMENT"), fields.capture());
+        assertTrue(fields.getValue().size() <= MetricsHistoryStore.MAX_POINTS);
+        // Début ramené à la rétention du niveau 1 jour (5 ans)
+        assertTrue(response.getFrom() >= now - 2_628_000L * 60_000 - 1000);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRollupReadsAndPurgesOnlyComputedFields() {
+        String key = "metrics-history:10s:VISA:PAYMENT";
+        Map<String, String> cursors = Map.of(
+                "metrics-history-watermark:1m", "1699999860",
+                "metrics-history-purged:10s", "1699978380");
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        when(valueOperations.get(anyString())).thenAnswer(invocation -> cursors.get(invocation.getArgument(0, String.class)));
+        when(redisTemplate.execute(eq(MetricsRollupEngine.LOCK_RENEW_SCRIPT), anyList(), any(), any())).thenReturn(1L);
+        when(redisTemplate.execute(eq(MetricsRollupEngine.LOCK_RELEASE_SCRIPT), anyList(), any())).thenReturn(1L);
+        when(redisTemplate.scan(any(ScanOptions.class))).thenReturn(cursor(key), cursor(), cursor(), cursor());
+        when(hashOperations.multiGet(eq(key), anyList())).thenAnswer(invocation -> {
+            List<Object> values = new ArrayList<>();
+            for (Object field : (List<Object>) invocation.getArgument(1)) {
+                values.add("1699999870".equals(field) ? "1 10 10 10" : "1699999930".equals(field) ? "2 40 15 25" : null);
+            }
+            return values;
+        });
+
+        MetricsRollupEngine engine = new MetricsRollupEngine(redisTemplate, store(), seriesStore, 60_000);
+        assertEquals(2, engine.rollup(NOW));
+
+        verify(hashOperations).putAll("metrics-history:1m:VISA:PAYMENT",
+                Map.of("1699999860", "1 10 10 10", "1699999920", "2 40 15 25"));
+        verify(hashOperations).delete(key, "1699978380", "1699978390");
+        verify(hashOperations, never()).entries(anyString());
+        verify(valueOperations).set("metrics-history-watermark:1m", "1699999980");
+        verify(valueOperations).set("metrics-history-purged:10s", "1699978400");
+    }
+
+    @Test
+    void testRollupStopsWhenTheLockIsLost() {
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        when(redisTemplate.execute(eq(MetricsRollupEngine.LOCK_RENEW_SCRIPT), anyList(), any(), any())).thenReturn(0L);
+        when(redisTemplate.execute(eq(MetricsRollupEngine.LOCK_RELEASE_SCRIPT), anyList(), any())).thenReturn(0L);
+        when(redisTemplate.scan(any(ScanOptions.class))).thenReturn(cursor());
+
+        MetricsRollupEngine engine = new MetricsRollupEngine(redisTemplate, store(), seriesStore, 60_000);
+
+        assertThrows(IllegalStateException.class, () -> engine.rollup(NOW));
+        verify(valueOperations, never()).set(anyString(), anyString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Cursor<String> cursor(String... keys) {
+        Iterator<String> iterator = List.of(keys).iterator();
+        Cursor<String> cursor = mock(Cursor.class);
+        lenient().when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        lenient().when(cursor.next()).thenAnswer(invocation -> iterator.next());
+        return cursor;
+    }
+
+    @Test
+    void testUnreadableBucketsAreIgnored() {
+        assertNull(MetricsHistoryStore.Bucket.parse(null));
+        assertNull(MetricsHistoryStore.Bucket.parse("1 2 3"));
+        assertNull(MetricsHistoryStore.Bucket.parse("a b c d"));
+    }
+}
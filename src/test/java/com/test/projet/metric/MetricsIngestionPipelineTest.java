@@ -0,0 +1,160 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+import com.test.projet.metric.MetricsIngestionPipeline.OverflowPolicy;
+import com.test.projet.metric.sketch.MetricsSketchRegistry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsIngestionPipelineTest {
+
+    @Mock
+    private MetricsAccumulationEngine accumulationEngine;
+
+    @Mock
+    private MetricsSketchRegistry sketchRegistry;
+
+    private MetricsIngestionPipeline pipeline(MetricsIngestionMode mode, int capacity, OverflowPolicy policy) {
+        return new MetricsIngestionPipeline(accumulationEngine, sketchRegistry, new SimpleMeterRegistry(),
+                mode, 2, capacity, 64, policy, 4);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testEventsAreWrittenByPartitionWorkers() {
+        List<MetricsDelta> applied = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> applied.addAll(invocation.getArgument(0, Collection.class)))
+                .when(accumulationEngine).applyAll(anyCollection());
+
+        MetricsIngestionPipeline pipeline = pipeline(MetricsIngestionMode.ASYNC, 1024, OverflowPolicy.BLOCK);
+        pipeline.start();
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(pipeline.submit("VISA", "PAYMENT", i));
+            assertTrue(pipeline.submit("AMEX", "REFUND", 10));
+        }
+        pipeline.stop();
+
+        long visaCount = applied.stream().filter(d -> "VISA".equals(d.getTypeCarte())).mapToLong(MetricsDelta::getCount).sum();
+        long visaSum = applied.stream().filter(d -> "VISA".equals(d.getTypeCarte())).mapToLong(MetricsDelta::getSum).sum();
+        long amexCount = applied.stream().filter(d -> "AMEX".equals(d.getTypeCarte())).mapToLong(MetricsDelta::getCount).sum();
+        assertEquals(100, visaCount);
+        assertEquals(5050, visaSum);
+        assertEquals(100, amexCount);
+        assertEquals(0, pipeline.getDroppedCount());
+    }
+
+    @Test
+    void testDropPolicyRejectsWhenFull() {
+        // Workers non démarrés : la file se remplit
+        MetricsIngestionPipeline pipeline = pipeline(MetricsIngestionMode.ASYNC, 2, OverflowPolicy.DROP);
+
+        int accepted = 0;
+        for (int i = 0; i < 5; i++) {
+            if (pipeline.submit("VISA", "PAYMENT", 1)) {
+                accepted++;
+            }
+        }
+
+        assertEquals(2, accepted);
+        assertEquals(3, pipeline.getDroppedCount());
+        assertEquals(2, java.util.Arrays.stream(pipeline.getQueueDepths()).sum());
+        verifyNoInteractions(accumulationEngine);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSamplePolicyKeepsWeightedEvents() {
+        List<MetricsDelta> applied = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> applied.addAll(invocation.getArgument(0, Collection.class)))
+                .when(accumulationEngine).applyAll(anyCollection());
+
+        MetricsIngestionPipeline pipeline = pipeline(MetricsIngestionMode.ASYNC, 8, OverflowPolicy.SAMPLE);
+        // Workers démarrés après coup : 6 événements atteignent le seuil (75 %), puis 1 sur 4 est conservé avec un poids 4
+        for (int i = 0; i < 14; i++) {
+            pipeline.submit("MASTERCARD", "CAPTURE", 10);
+        }
+        assertEquals(6, pipeline.getSampledOutCount());
+
+        pipeline.start();
+        pipeline.stop();
+
+        assertEquals(14, applied.stream().mapToLong(MetricsDelta::getCount).sum());
+        assertEquals(140, applied.stream().mapToLong(MetricsDelta::getSum).sum());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSamplingIsCountedPerKey() {
+        List<MetricsDelta> applied = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> applied.addAll(invocation.getArgument(0, Collection.class)))
+                .when(accumulationEngine).applyAll(anyCollection());
+
+        MetricsIngestionPipeline pipeline = new MetricsIngestionPipeline(accumulationEngine, sketchRegistry,
+                new SimpleMeterRegistry(), MetricsIngestionMode.ASYNC, 1, 64, 64, OverflowPolicy.SAMPLE, 4);
+        for (int i = 0; i < 48; i++) {
+            pipeline.submit("VISA", "PAYMENT", 10);
+        }
+        // Au-delà du seuil, une clé rare intercalée avec une clé fréquente garde sa propre cadence
+        for (int i = 0; i < 4; i++) {
+            pipeline.submit("VISA", "PAYMENT", 10);
+            pipeline.submit("VISA", "PAYMENT", 10);
+            pipeline.submit("VISA", "PAYMENT", 10);
+            pipeline.submit("AMEX", "REFUND", 20);
+        }
+
+        pipeline.start();
+        pipeline.stop();
+
+        assertEquals(4, applied.stream().filter(d -> "AMEX".equals(d.getTypeCarte())).mapToLong(MetricsDelta::getCount).sum());
+        assertEquals(60, applied.stream().filter(d -> "VISA".equals(d.getTypeCarte())).mapToLong(MetricsDelta::getCount).sum());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedWriteIsRetriedInsteadOfDropped() {
+        List<MetricsDelta> applied = Collections.synchronizedList(new ArrayList<>());
+        doThrow(new RedisConnectionFailureException("Redis indisponible"))
+                .doAnswer(invocation -> applied.addAll(invocation.getArgument(0, Collection.class)))
+                .when(accumulationEngine).applyAll(anyCollection());
+
+        MetricsIngestionPipeline pipeline = pipeline(MetricsIngestionMode.ASYNC, 64, OverflowPolicy.DROP);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(pipeline.submit("VISA", "PAYMENT", 10));
+        }
+        pipeline.start();
+        pipeline.stop();
+
+        assertEquals(10, applied.stream().mapToLong(MetricsDelta::getCount).sum());
+        assertEquals(100, applied.stream().mapToLong(MetricsDelta::getSum).sum());
+        assertEquals(10, pipeline.getFailedCount());
+        assertEquals(0, pipeline.getDroppedCount());
+        // Les sketches ne sont alimentés qu'une fois par événement
+        verify(sketchRegistry, times(10)).record("VISA", "PAYMENT", 10, 1);
+    }
+
+    @Test
+    void testNothingIsAllocatedOutsideAsyncMode() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MetricsIngestionPipeline pipeline = new MetricsIngestionPipeline(accumulationEngine, sketchRegistry,
+                meterRegistry, MetricsIngestionMode.SYNC, 4, 8192, 64, OverflowPolicy.DROP, 4);
+
+        assertEquals(0, pipeline.getQueueDepths().length);
+        assertNull(meterRegistry.find("metrics.ingestion.queue.depth").gauge());
+        assertThrows(IllegalStateException.class, () -> pipeline.submit("VISA", "PAYMENT", 1));
+    }
+}
@@ -0,0 +1,267 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsKeyRegistryTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private MetricsKeyspaceIterator keyspaceIterator;
+
+    @Test
+    void testBloomFilterNeverForgetsAnInsertedValue() {
+        MetricsBloomFilter filter = new MetricsBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("CARD-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("CARD-" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("UNKNOWN-" + i)) {
+                falsePositives++;
+            }
+        }
+        // fpp de 1 % avec une marge
+        assertTrue(falsePositives < 300, "faux positifs : " + falsePositives);
+        assertEquals(7, filter.getHashCount());
+    }
+
+    @Test
+    void testMurmurHashMatchesReferenceVectors() {
+        // MurmurHash3 x64 128 bits, graine 0
+        assertArrayEquals(new long[] {0, 0}, MetricsBloomFilter.hash(""));
+        assertArrayEquals(new long[] {0xcbd8a7b341bd9b02L, 0x5b1e906a48ae1d19L}, MetricsBloomFilter.hash("hello"));
+        assertArrayEquals(new long[] {0xe34bbc7bbc071b6cL, 0x7a433ca9c49a9347L},
+                MetricsBloomFilter.hash("The quick brown fox jumps over the lazy dog"));
+    }
+
+    @Test
+    void testUnknownCardIsRejectedOnlyOnceLoaded() {
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(redisTemplate.hasKey("metrics-registry:cards")).thenReturn(true);
+        when(redisTemplate.hasKey("metrics-registry:changes")).thenReturn(true);
+        when(zSetOperations.rangeByScore(eq("metrics-registry:cards"), anyDouble(), anyDouble()))
+                .thenReturn(Set.of("VISA", "AMEX"));
+        MetricsKeyRegistry registry = new MetricsKeyRegistry(redisTemplate, keyspaceIterator, 1000, 0.01, 60_000);
+
+        // Avant chargement : aucun refus
+        assertTrue(registry.mightContain("JCB"));
+
+        registry.start();
+        try {
+            assertTrue(registry.mightContain("VISA"));
+            assertTrue(registry.mightContain("AMEX"));
+            assertFalse(registry.mightContain("JCB"));
+            registry.remember("JCB");
+            assertTrue(registry.mightContain("JCB"));
+            verify(keyspaceIterator, never()).forEachPage(anyString(), any());
+        } finally {
+            registry.stop();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testMissingRegistryIsRebuiltFromExistingKeys() {
+        doAnswer(invocation -> {
+            Consumer<List<String>> consumer = invocation.getArgument(1);
+            consumer.accept(List.of("metrics:VISA", "metrics:VISA:PAYMENT", "metrics:VISA:REFUND",
+                    "metrics:Customer:UPDATE", "metrics:AMEX"));
+            return 5L;
+        }).when(keyspaceIterator).forEachPage(eq("metrics:*"), any(Consumer.class));
+        MetricsKeyRegistry registry = new MetricsKeyRegistry(redisTemplate, keyspaceIterator, 1000, 0.01, 60_000);
+
+        registry.rebuild();
+
+        ArgumentCaptor<RedisCallback<Object>> pipeline = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(redisTemplate).executePipelined(pipeline.capture());
+        RedisConnection connection = mock(RedisConnection.class);
+        RedisZSetCommands zSetCommands = mock(RedisZSetCommands.class);
+        RedisScriptingCommands scriptingCommands = mock(RedisScriptingCommands.class);
+        when(connection.zSetCommands()).thenReturn(zSetCommands);
+        when(connection.scriptingCommands()).thenReturn(scriptingCommands);
+        pipeline.getValue().doInRedis(connection);
+
+        verify(zSetCommands).zAdd(eq(bytes("metrics-registry:cards")), anyDouble(), eq(bytes("VISA")));
+        verify(zSetCommands).zAdd(eq(bytes("metrics-registry:cards")), anyDouble(), eq(bytes("AMEX")));
+        verify(zSetCommands).zAdd(eq(bytes("metrics-registry:ops:VISA")), anyDouble(), eq(bytes("REFUND")));
+        verify(zSetCommands, times(2)).zAdd(eq(bytes("metrics-registry:ops")), anyDouble(), any(byte[].class));
+        // L'entité CRUD sans vue par carte (MetricsAggregator) n'est pas un type de carte
+        verify(zSetCommands, never()).zAdd(any(byte[].class), anyDouble(), eq(bytes("Customer")));
+        verify(zSetCommands, never()).zAdd(any(byte[].class), anyDouble(), eq(bytes("UPDATE")));
+        verify(zSetCommands).zAdd(eq(bytes("metrics-registry:crud")), anyDouble(), eq(bytes("Customer:UPDATE")));
+        // Les cartes reconstruites sont inscrites au journal des modifications
+        verify(scriptingCommands).eval(any(byte[].class), eq(ReturnType.INTEGER), eq(2),
+                eq(bytes("metrics-registry:changes")), eq(bytes("metrics-registry:seq")), eq(bytes("VISA")));
+        verify(scriptingCommands).eval(any(byte[].class), eq(ReturnType.INTEGER), eq(2),
+                eq(bytes("metrics-registry:changes")), eq(bytes("metrics-registry:seq")), eq(bytes("AMEX")));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testRegistryWithoutChangesJournalIsSeededOldestFirst() {
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(zSetOperations.range("metrics-registry:cards", 0, -1)).thenReturn(new LinkedHashSet<>(List.of("AMEX", "VISA")));
+        MetricsKeyRegistry registry = new MetricsKeyRegistry(redisTemplate, keyspaceIterator, 1000, 0.01, 60_000);
+
+        registry.seedChanges();
+
+        ArgumentCaptor<RedisCallback<Object>> pipeline = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(redisTemplate).executePipelined(pipeline.capture());
+        RedisConnection connection = mock(RedisConnection.class);
+        RedisScriptingCommands scriptingCommands = mock(RedisScriptingCommands.class);
+        when(connection.scriptingCommands()).thenReturn(scriptingCommands);
+        pipeline.getValue().doInRedis(connection);
+
+        ArgumentCaptor<byte[]> cards = ArgumentCaptor.forClass(byte[].class);
+        verify(scriptingCommands, times(2)).eval(any(byte[].class), eq(ReturnType.INTEGER), eq(2),
+                any(byte[].class), any(byte[].class), cards.capture());
+        assertArrayEquals(bytes("AMEX"), cards.getAllValues().get(0));
+        assertArrayEquals(bytes("VISA"), cards.getAllValues().get(1));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testKeysListCardsThenTheirOperations() {
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(zSetOperations.reverseRange("metrics-registry:cards", 0, -1))
+                .thenReturn(new LinkedHashSet<>(List.of("VISA", "AMEX")));
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(
+                List.of(new LinkedHashSet<>(List.of("PAYMENT", "REFUND")), Set.of()));
+        MetricsKeyRegistry registry = new MetricsKeyRegistry(redisTemplate, keyspaceIterator, 1000, 0.01, 60_000);
+
+        assertEquals(List.of("metrics:VISA", "metrics:VISA:PAYMENT", "metrics:VISA:REFUND", "metrics:AMEX"),
+                registry.keys());
+        assertEquals(List.of("metrics:VISA", "metrics:AMEX"), registry.cardKeys());
+        verify(redisTemplate, never()).scan(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testKeysArePagedWithoutLoadingTheWholeRegistry() {
+        Cursor<ZSetOperations.TypedTuple<String>> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true, true, true, false);
+        when(cursor.next()).thenReturn(ZSetOperations.TypedTuple.of("VISA", 2.0),
+                ZSetOperations.TypedTuple.of("AMEX", 1.0), ZSetOperations.TypedTuple.of("JCB", 3.0));
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(zSetOperations.scan(eq("metrics-registry:cards"), any(ScanOptions.class))).thenReturn(cursor);
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(
+                List.of(Set.of("PAYMENT"), Set.of()), List.of(Set.of("REFUND")));
+        MetricsKeyRegistry registry = new MetricsKeyRegistry(redisTemplate, keyspaceIterator, 1000, 0.01, 60_000);
+        List<List<String>> pages = new ArrayList<>();
+
+        long total = registry.forEachKeyPage(2, pages::add);
+
+        assertEquals(List.of(List.of("metrics:VISA", "metrics:VISA:PAYMENT", "metrics:AMEX"),
+                List.of("metrics:JCB", "metrics:JCB:REFUND")), pages);
+        assertEquals(5, total);
+        verify(cursor).close();
+        verify(zSetOperations, never()).reverseRange(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    void testChangesAreReadBySequenceNumber() {
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get("metrics-registry:seq")).thenReturn("1503");
+        when(zSetOperations.rangeByScoreWithScores("metrics-registry:changes", 1001, Double.POSITIVE_INFINITY, 0, 3))
+                .thenReturn(new LinkedHashSet<>(List.of(ZSetOperations.TypedTuple.of("VISA", 1501.0),
+                        ZSetOperations.TypedTuple.of("AMEX", 1502.0), ZSetOperations.TypedTuple.of("JCB", 1503.0))));
+        MetricsKeyRegistry registry = new MetricsKeyRegistry(redisTemplate, keyspaceIterator, 1000, 0.01, 60_000);
+
+        MetricsKeyRegistry.CardChanges changes = registry.changedSince(1000, 2);
+
+        assertEquals(List.of("VISA", "AMEX"), changes.getTypeCartes());
+        assertEquals(1502, changes.getCursor());
+        assertTrue(changes.hasMore());
+    }
+
+    @Test
+    void testCursorAheadOfTheSequenceRestartsFromTheBeginning() {
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get("metrics-registry:seq")).thenReturn("2");
+        when(zSetOperations.rangeByScoreWithScores("metrics-registry:changes", 1, Double.POSITIVE_INFINITY, 0, 11))
+                .thenReturn(new LinkedHashSet<>(List.of(ZSetOperations.TypedTuple.of("VISA", 1.0),
+                        ZSetOperations.TypedTuple.of("AMEX", 2.0))));
+        MetricsKeyRegistry registry = new MetricsKeyRegistry(redisTemplate, keyspaceIterator, 1000, 0.01, 60_000);
+
+        // Curseur horodaté (ms) d'une version antérieure
+        MetricsKeyRegistry.CardChanges changes = registry.changedSince(1_700_000_000_000L, 10);
+
+        assertEquals(List.of("VISA", "AMEX"), changes.getTypeCartes());
+        assertEquals(2, changes.getCursor());
+        assertFalse(changes.hasMore());
+    }
+
+    @Test
+    void testRemovedCardIsRecordedAsAChange() {
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        MetricsKeyRegistry registry = new MetricsKeyRegistry(redisTemplate, keyspaceIterator, 1000, 0.01, 60_000);
+
+        registry.remove("VISA");
+
+        verify(zSetOperations).remove("metrics-registry:cards", "VISA");
+        verify(redisTemplate).execute(MetricsKeyRegistry.CHANGE_SCRIPT,
+                List.of("metrics-registry:changes", "metrics-registry:seq"), "VISA");
+    }
+
+    @Test
+    void testNoChangeKeepsTheCursor() {
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get("metrics-registry:seq")).thenReturn("5000");
+        when(zSetOperations.rangeByScoreWithScores("metrics-registry:changes", 5001, Double.POSITIVE_INFINITY, 0, 11))
+                .thenReturn(Set.of());
+        MetricsKeyRegistry registry = new MetricsKeyRegistry(redisTemplate, keyspaceIterator, 1000, 0.01, 60_000);
+
+        MetricsKeyRegistry.CardChanges changes = registry.changedSince(5000, 10);
+
+        assertTrue(changes.getTypeCartes().isEmpty());
+        assertEquals(5000, changes.getCursor());
+        assertFalse(changes.hasMore());
+        assertTrue(registry.keys(changes.getTypeCartes()).isEmpty());
+        verify(redisTemplate, never()).executePipelined(any(RedisCallback.class));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,71 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsKeyspaceIteratorTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private Cursor<String> cursor;
+
+    @Test
+    void testKeysAreGroupedInPages() {
+        when(redisTemplate.scan(any(ScanOptions.class))).thenReturn(cursor);
+        when(cursor.hasNext()).thenReturn(true, true, true, true, true, false);
+        when(cursor.next()).thenReturn("metrics:A", "metrics:B", "metrics:C", "metrics:D", "metrics:E");
+        MetricsKeyspaceIterator iterator = new MetricsKeyspaceIterator(redisTemplate, 2);
+
+        List<List<String>> pages = new ArrayList<>();
+        long total = iterator.forEachPage("metrics:*", pages::add);
+
+        assertEquals(5, total);
+        assertEquals(List.of(List.of("metrics:A", "metrics:B"), List.of("metrics:C", "metrics:D"), List.of("metrics:E")), pages);
+        verify(cursor).close();
+        verify(redisTemplate, never()).keys(anyString());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testValuesAreReadWithOneMgetPerPage() {
+        when(redisTemplate.scan(any(ScanOptions.class))).thenReturn(cursor);
+        when(cursor.hasNext()).thenReturn(true, true, true, false);
+        when(cursor.next()).thenReturn("metrics:A", "metrics:B", "metrics:C");
+        // metrics:B est un hash : MGET retourne null pour cette clé
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(
+                Arrays.asList(bytes("{\"a\":1}"), null), Arrays.asList(bytes("{\"c\":3}")));
+        MetricsKeyspaceIterator iterator = new MetricsKeyspaceIterator(redisTemplate, 2);
+
+        Map<String, String> values = new LinkedHashMap<>();
+        long total = iterator.forEachValue("metrics:*",
+                (key, value) -> values.put(key, new String(value, StandardCharsets.UTF_8)));
+
+        assertEquals(3, total);
+        assertEquals(Map.of("metrics:A", "{\"a\":1}", "metrics:C", "{\"c\":3}"), values);
+        verify(redisTemplate, times(2)).execute(any(RedisCallback.class));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,116 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class MetricsNearCacheTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000);
+
+    private MetricsNearCache cache(boolean enabled, int maxEntries) {
+        return new MetricsNearCache(null, null, enabled, maxEntries, 500, false, clock::get);
+    }
+
+    @Test
+    void testHitUntilInvalidated() {
+        MetricsNearCache cache = cache(true, 100);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("VISA", cache.get("metrics:VISA", "card", () -> {
+                loads.incrementAndGet();
+                return "VISA";
+            }));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.getHits());
+
+        cache.invalidate(MetricsNearCache.keyOf("__keyspace@0__:metrics:VISA"));
+        cache.get("metrics:VISA", "card", loads::incrementAndGet);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testEntriesAreNotServedBeyondMaxStaleness() {
+        MetricsNearCache cache = cache(true, 100);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("metrics:VISA", "card", loads::incrementAndGet);
+        clock.addAndGet(500);
+        cache.get("metrics:VISA", "card", loads::incrementAndGet);
+        assertEquals(1, loads.get());
+
+        // Notification perdue : l'entrée est rechargée passé le délai
+        clock.addAndGet(1);
+        assertEquals(2, cache.get("metrics:VISA", "card", loads::incrementAndGet));
+    }
+
+    @Test
+    void testInvalidationDuringLoadWins() {
+        MetricsNearCache cache = cache(true, 100);
+
+        Object loaded = cache.get("metrics:VISA:PAYMENT", "operation", () -> {
+            // Écriture notifiée pendant la lecture Redis
+            cache.invalidate("metrics:VISA:PAYMENT");
+            return "ancienne valeur";
+        });
+
+        assertEquals("ancienne valeur", loaded);
+        assertEquals("nouvelle valeur", cache.get("metrics:VISA:PAYMENT", "operation", () -> "nouvelle valeur"));
+    }
+
+    @Test
+    void testHashLayoutViewsShareTheirCardKey() {
+        MetricsNearCache cache = cache(true, 100);
+        cache.get("metrics:VISA", "card", () -> "card");
+        cache.get("metrics:VISA", "op:PAYMENT", () -> "payment");
+        // Une opération nommée "card" a sa propre vue
+        assertEquals("operation card", cache.get("metrics:VISA", "op:card", () -> "operation card"));
+
+        cache.invalidate("metrics:VISA");
+
+        assertEquals(0, cache.size());
+        assertEquals("payment v2", cache.get("metrics:VISA", "op:PAYMENT", () -> "payment v2"));
+    }
+
+    @Test
+    void testRequiredNotificationFlagsAreMergedIntoTheCurrentOnes() {
+        assertEquals("Kg$hxe", MetricsNearCache.withRequiredFlags(""));
+        assertEquals("ElKg$hxe", MetricsNearCache.withRequiredFlags("El"));
+        assertEquals("KA", MetricsNearCache.withRequiredFlags("KA"));
+        assertEquals("EAK", MetricsNearCache.withRequiredFlags("EA"));
+        assertEquals("Kg$hxe", MetricsNearCache.withRequiredFlags("Kg$hxe"));
+    }
+
+    @Test
+    void testSizeIsBoundedAndNullsAreNotCached() {
+        MetricsNearCache cache = cache(true, 2);
+        cache.get("metrics:A", "card", () -> "A");
+        cache.get("metrics:B", "card", () -> "B");
+        cache.get("metrics:A", "card", () -> "A2");
+        cache.get("metrics:C", "card", () -> "C");
+
+        assertEquals(2, cache.size());
+        // B, le moins récemment utilisé, a été évincé
+        assertEquals("B2", cache.get("metrics:B", "card", () -> "B2"));
+        assertNull(cache.get("metrics:D", "card", () -> null));
+        assertEquals("D", cache.get("metrics:D", "card", () -> "D"));
+    }
+
+    @Test
+    void testDisabledCacheAlwaysLoads() {
+        MetricsNearCache cache = cache(false, 100);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("metrics:VISA", "card", loads::incrementAndGet);
+        cache.get("metrics:VISA", "card", loads::incrementAndGet);
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+        assertNull(MetricsNearCache.keyOf("metrics:VISA"));
+    }
+}
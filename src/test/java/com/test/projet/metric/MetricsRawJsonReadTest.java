@@ -0,0 +1,123 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.projet.metric.codec.FixedLayoutMetricsCodec;
+import com.test.projet.metric.codec.JacksonMetricsCodec;
+import com.test.projet.metric.codec.MetricsCodecRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsRawJsonReadTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @InjectMocks
+    private MetricsService metricsService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(metricsService, "codecRegistry", new MetricsCodecRegistry("json"));
+        ReflectionTestUtils.setField(metricsService, "keyspaceIterator", new MetricsKeyspaceIterator(redisTemplate, 1000));
+        ReflectionTestUtils.setField(metricsService, "singleFlight", new MetricsSingleFlight(true));
+        ReflectionTestUtils.setField(metricsService, "nearCache",
+                new MetricsNearCache(null, null, false, 1, 0, false, System::currentTimeMillis));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testStoredJsonIsReturnedUntouched() {
+        byte[] stored = "{\"typeCarte\":\"VISA\",\"metrics\":[{\"name\":\"Number\",\"value\":3,\"type\":\"PAYMENT\"}]}"
+                .getBytes(StandardCharsets.UTF_8);
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(stored);
+
+        assertTrue(metricsService.isRawJsonReadable());
+        assertSame(stored, metricsService.getRawMetricsJson("VISA"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testDocumentsAreSplicedIntoOneObject() throws Exception {
+        MetricsDto visa = new MetricsDto("VISA");
+        visa.addMetric(new MetricInner("Number", 3.0, "PAYMENT"));
+        MetricsDto amex = new MetricsDto("AMEX \"gold\"");
+        amex.addMetric(new MetricInner("Number", 1.0, "REFUND"));
+        // AMEX "gold" est stocké au format binaire : il est décodé puis sérialisé en JSON
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(Arrays.asList(
+                objectMapper.writeValueAsBytes(visa), null, new FixedLayoutMetricsCodec().encode(amex)));
+
+        byte[] json = metricsService.getRawMetricsJson(List.of("VISA", "JCB", "AMEX \"gold\""));
+
+        JsonNode result = objectMapper.readTree(json);
+        assertEquals(List.of("VISA", "AMEX \"gold\""), names(result.fieldNames()));
+        assertEquals(3.0, result.get("VISA").get("metrics").get(0).get("value").asDouble());
+        assertEquals("REFUND", result.get("AMEX \"gold\"").get("metrics").get(0).get("type").asText());
+        verify(redisTemplate, times(1)).execute(any(RedisCallback.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testMissingCardsGiveAnEmptyObject() {
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(Arrays.asList((byte[]) null));
+
+        assertEquals("{}", new String(metricsService.getRawMetricsJson(List.of("JCB")), StandardCharsets.UTF_8));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testBinaryDocumentIsStillReadAfterSwitchingBackToJson() throws Exception {
+        MetricsDto visa = new MetricsDto("VISA");
+        visa.addMetric(new MetricInner("Number", 3.0, "PAYMENT"));
+        byte[] smile = JacksonMetricsCodec.smile().encode(visa);
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get("metrics:VISA")).thenReturn(new String(smile, StandardCharsets.UTF_8));
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(smile);
+
+        // Codec configuré : json ; le document a été écrit en smile
+        MetricsDto metrics = metricsService.getMetricsFromRedis("VISA");
+
+        assertNotNull(metrics);
+        assertEquals(3.0, metrics.getMetrics().get(0).getValue());
+    }
+
+    @Test
+    void testHashLayoutAndNearCacheUseDecodedViews() {
+        ReflectionTestUtils.setField(metricsService, "storageLayout", MetricsStorageLayout.HASH);
+        assertFalse(metricsService.isRawJsonReadable());
+
+        ReflectionTestUtils.setField(metricsService, "storageLayout", MetricsStorageLayout.DOCUMENT);
+        ReflectionTestUtils.setField(metricsService, "nearCache",
+                new MetricsNearCache(null, null, true, 1, 0, false, System::currentTimeMillis));
+        assertFalse(metricsService.isRawJsonReadable());
+    }
+
+    private static List<String> names(Iterator<String> fieldNames) {
+        List<String> names = new ArrayList<>();
+        fieldNames.forEachRemaining(names::add);
+        return names;
+    }
+}
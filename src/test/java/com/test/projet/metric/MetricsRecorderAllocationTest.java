@@ -0,0 +1,109 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Micro-benchmark d'allocation du chemin CRUD : octets alloués par appel avec l'enregistrement
+ * des meters à chaque appel (ancienne implémentation) et avec les meters en cache.
+ */
+class MetricsRecorderAllocationTest {
+
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 100_000;
+    /** Meilleure de plusieurs mesures : une compilation JIT ou un GC pendant l'une d'elles ne la fausse pas */
+    private static final int ROUNDS = 3;
+
+    // Agrégat Redis neutralisé : seule l'instrumentation Micrometer est mesurée
+    private static final MetricsAggregator NO_OP_AGGREGATOR = new MetricsAggregator(null) {
+        @Override
+        public void record(String entity, String op, long durationMs, boolean error) {
+        }
+    };
+
+    @Test
+    void testCachedMeterHandlesDoNotAllocatePerCall() {
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+
+        MeterRegistry legacyRegistry = new SimpleMeterRegistry();
+        Runnable legacy = () -> registerOnEveryCall(legacyRegistry, "Customer", "UPDATE", 1_000_000L);
+
+        MetricsRecorder recorder = new MetricsRecorder(new SimpleMeterRegistry(), NO_OP_AGGREGATOR);
+        Runnable cached = () -> recorder.stop("Customer", "UPDATE", recorder.start(), false);
+
+        double legacyBytes = bytesPerCall(threads, legacy);
+        double cachedBytes = bytesPerCall(threads, cached);
+        String measured = String.format("builders %.1f octets/appel, meters en cache %.1f octets/appel",
+                legacyBytes, cachedBytes);
+
+        assertTrue(legacyBytes > 100, "l'enregistrement à chaque appel doit allouer (builders, tags, Meter.Id) : " + measured);
+        // Borne relative : le chemin en cache alloue au moins dix fois moins, quelle que soit la JVM
+        assertTrue(cachedBytes * 10 < legacyBytes, "le chemin en cache ne doit presque plus allouer une fois chaud : " + measured);
+    }
+
+    @Test
+    void testCachedHandlesRecordSameMetersAsBefore() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MetricsRecorder recorder = new MetricsRecorder(registry, NO_OP_AGGREGATOR);
+
+        recorder.stop("Customer", "UPDATE", recorder.start(), false);
+        recorder.stop("Customer", "UPDATE", recorder.start(), true);
+        assertThrows(IllegalStateException.class, () -> recorder.timeAndRecord("Customer", "DELETE", () -> {
+            throw new IllegalStateException("échec");
+        }));
+
+        assertEquals(2, registry.get("db.operation.time").tags("entity", "Customer", "operation", "UPDATE").timer().count());
+        assertEquals(2.0, registry.get("db.operation.count").tags("entity", "Customer", "operation", "UPDATE").counter().count());
+        assertEquals(1.0, registry.get("db.operation.errors").tags("entity", "Customer", "operation", "UPDATE").counter().count());
+        assertEquals(1.0, registry.get("db.operation.errors").tags("entity", "Customer", "operation", "DELETE").counter().count());
+    }
+
+    // Reproduction de l'ancienne implémentation de MetricsRecorder.timeAndRecord
+    private static void registerOnEveryCall(MeterRegistry registry, String entity, String op, long nanos) {
+        Timer.builder("db.operation.time")
+                .description("CRUD operation time")
+                .tag("entity", entity)
+                .tag("operation", op)
+                .register(registry)
+                .record(nanos, java.util.concurrent.TimeUnit.NANOSECONDS);
+        Counter.builder("db.operation.count")
+                .tag("entity", entity)
+                .tag("operation", op)
+                .register(registry)
+                .increment();
+    }
+
+    private static double bytesPerCall(com.sun.management.ThreadMXBean threads, Runnable call) {
+        for (int i = 0; i < WARMUP; i++) {
+            call.run();
+        }
+        long threadId = Thread.currentThread().threadId();
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ITERATIONS; i++) {
+                call.run();
+            }
+            best = Math.min(best, (double) (threads.getThreadAllocatedBytes(threadId) - before) / ITERATIONS);
+        }
+        return best;
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(bean instanceof com.sun.management.ThreadMXBean,
+                "mesure d'allocation par thread indisponible sur cette JVM");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        return threads;
+    }
+}
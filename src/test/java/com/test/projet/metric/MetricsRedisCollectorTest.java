@@ -0,0 +1,118 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsRedisCollectorTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private MetricsService metricsService;
+
+    @Mock
+    private MetricsAggregator aggregator;
+
+    @Mock
+    private MetricsKeyRegistry keyRegistry;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private MetricsRedisCollector collector(int maxSeries) {
+        return new MetricsRedisCollector(meterRegistry, metricsService, aggregator, keyRegistry,
+                new MetricsKeyspaceIterator(redisTemplate, 50), true, 30000, maxSeries);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenRedisAggregates() {
+        MetricsDto visa = new MetricsDto("VISA");
+        visa.addMetric(new MetricInner("Number", 3.0, "PAYMENT"));
+        visa.addMetric(new MetricInner("Average", 12.5, "PAYMENT"));
+        doAnswer(invocation -> {
+            ((BiConsumer<String, MetricsDto>) invocation.getArgument(0)).accept("VISA", visa);
+            return 1L;
+        }).when(metricsService).forEachCard(any(BiConsumer.class));
+        doAnswer(invocation -> {
+            ((Consumer<List<String>>) invocation.getArgument(1)).accept(List.of("Customer:UPDATE"));
+            return 1L;
+        }).when(keyRegistry).forEachCrudPage(eq(50), any(Consumer.class));
+        Map<String, Object> update = new LinkedHashMap<>();
+        update.put("count", "4");
+        update.put("sumMs", "100");
+        update.put("errors", "1");
+        update.put("avgMs", 25.0);
+        when(aggregator.readAll(List.of("Customer:UPDATE"))).thenReturn(Map.of("Customer:UPDATE", update));
+    }
+
+    @Test
+    void testRefreshPublishesLabeledSeries() {
+        givenRedisAggregates();
+        MetricsRedisCollector collector = collector(100);
+
+        collector.refresh();
+
+        assertEquals(3.0, meterRegistry.get("metrics.redis.card")
+                .tags("typeCarte", "VISA", "operation", "PAYMENT", "stat", "Number", "unit", "ms").gauge().value());
+        assertEquals(12.5, meterRegistry.get("metrics.redis.card").tags("stat", "Average").gauge().value());
+        // Statistiques absentes (Max, Min) : pas de série
+        assertEquals(2, meterRegistry.find("metrics.redis.card").gauges().size());
+        assertEquals(25.0, meterRegistry.get("metrics.redis.crud")
+                .tags("entity", "Customer", "operation", "UPDATE", "stat", "avgMs").gauge().value());
+        assertEquals(4.0, meterRegistry.get("metrics.redis.crud").tags("stat", "count").gauge().value());
+        assertEquals(6, collector.getSeries());
+    }
+
+    @Test
+    void testScrapeIsServedFromTheSnapshot() {
+        givenRedisAggregates();
+        MetricsRedisCollector collector = collector(100);
+        collector.refresh();
+        clearInvocations(metricsService, keyRegistry, aggregator);
+
+        meterRegistry.find("metrics.redis.card").gauges().forEach(gauge -> gauge.value());
+        meterRegistry.find("metrics.redis.crud").gauges().forEach(gauge -> gauge.value());
+
+        assertTrue(collector.getSnapshotAgeMs() >= 0);
+        verifyNoInteractions(metricsService, keyRegistry, aggregator, redisTemplate);
+    }
+
+    @Test
+    void testSeriesAreCapped() {
+        givenRedisAggregates();
+        MetricsRedisCollector collector = collector(3);
+
+        collector.refresh();
+
+        assertEquals(3, collector.getSeries());
+        assertEquals(2, meterRegistry.find("metrics.redis.card").gauges().size());
+        assertEquals(1, meterRegistry.find("metrics.redis.crud").gauges().size());
+    }
+
+    @Test
+    void testDisabledCollectorNeverReadsRedis() {
+        MetricsRedisCollector collector = new MetricsRedisCollector(meterRegistry, metricsService, aggregator, keyRegistry,
+                new MetricsKeyspaceIterator(redisTemplate, 50), false, 10, 100);
+
+        collector.start();
+
+        assertEquals(-1, collector.getSnapshotAgeMs());
+        verifyNoInteractions(metricsService, keyRegistry, aggregator, redisTemplate);
+    }
+}
@@ -0,0 +1,71 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsRollingWindowsTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Test
+    void testRingSlotsAndTtl() {
+        MetricsRollingWindows windows = new MetricsRollingWindows(redisTemplate, true, 15);
+
+        assertEquals(28_333_333L, MetricsRollingWindows.minute(1_700_000_000_000L));
+        // 16 emplacements : la minute 16 réutilise l'emplacement de la minute 0
+        assertEquals("metrics-window:VISA:PAYMENT:0", windows.key("VISA", "PAYMENT", 0));
+        assertEquals("metrics-window:VISA:PAYMENT:15", windows.key("VISA", "PAYMENT", 15));
+        assertEquals("metrics-window:VISA:PAYMENT:0", windows.key("VISA", "PAYMENT", 16));
+        assertEquals(16 * 60, windows.ttlSeconds());
+    }
+
+    @Test
+    void testQueryMergesOnlyBucketsOfTheWindow() {
+        MetricsRollingWindows windows = new MetricsRollingWindows(redisTemplate, true, 15);
+        long now = 1_700_000_000_000L;
+        long current = MetricsRollingWindows.minute(now);
+        // Minutes current-2, current-1 (emplacement encore occupé par un tour précédent) et current
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Arrays.asList(
+                Map.of("minute", String.valueOf(current - 2), "count", "2", "sum", "30000000",
+                        "min", "10000000", "max", "20000000"),
+                Map.of("minute", String.valueOf(current - 1 - 16), "count", "100", "sum", "1",
+                        "min", "1", "max", "1"),
+                Map.of("minute", String.valueOf(current), "count", "1", "sum", "90000000",
+                        "min", "90000000", "max", "90000000")));
+
+        WindowedMetricsResponse response = windows.query("VISA", "PAYMENT", 3, MetricsTimeUnit.MILLISECONDS, now);
+
+        assertEquals(2, response.getBuckets());
+        assertEquals(3, response.getCount());
+        assertEquals(40.0, response.getAverageTime(), 0.001);
+        assertEquals(10.0, response.getMinTime(), 0.001);
+        assertEquals(90.0, response.getMaxTime(), 0.001);
+        assertEquals("ms", response.getUnit());
+        assertEquals((current - 2) * 60_000L, response.getFrom());
+    }
+
+    @Test
+    void testEmptyWindow() {
+        MetricsRollingWindows windows = new MetricsRollingWindows(redisTemplate, true, 15);
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Arrays.asList(Map.of(), Map.of()));
+
+        WindowedMetricsResponse response = windows.query("VISA", "PAYMENT", 2, MetricsTimeUnit.MICROSECONDS, 0L);
+
+        assertEquals(0, response.getCount());
+        assertEquals(0, response.getBuckets());
+        assertEquals(0.0, response.getAverageTime());
+    }
+}
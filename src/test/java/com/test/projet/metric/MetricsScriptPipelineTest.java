@@ -0,0 +1,65 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsScriptPipelineTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testScriptIsLoadedOnceThenReusedByEveryPipeline() {
+        MetricsScriptPipeline pipeline = new MetricsScriptPipeline(redisTemplate, MetricsAggregator.RECORD_SCRIPT);
+
+        assertEquals("OK", pipeline.execute(() -> "OK"));
+        assertEquals("OK", pipeline.execute(() -> "OK"));
+
+        verify(redisTemplate, times(1)).execute(any(RedisCallback.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testNoScriptReloadsAndReplaysOnce() {
+        MetricsScriptPipeline pipeline = new MetricsScriptPipeline(redisTemplate, MetricsAccumulationEngine.ACCUMULATE_SCRIPT);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = pipeline.execute(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new RedisSystemException("Pipeline failed",
+                        new IllegalStateException("NOSCRIPT No matching script. Please use EVAL."));
+            }
+            return "OK";
+        });
+
+        assertEquals("OK", result);
+        assertEquals(2, attempts.get());
+        // Chargement initial, puis rechargement après SCRIPT FLUSH
+        verify(redisTemplate, times(2)).execute(any(RedisCallback.class));
+    }
+
+    @Test
+    void testOtherErrorsAreNotReplayed() {
+        MetricsScriptPipeline pipeline = new MetricsScriptPipeline(redisTemplate, MetricsAggregator.RECORD_SCRIPT);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> pipeline.execute(() -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("OOM command not allowed");
+        }));
+        assertEquals(1, attempts.get());
+    }
+}
@@ -13,9 +13,11 @@ import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.projet.metric.sketch.MetricsSketchRegistry;
 
 import io.micrometer.core.instrument.MeterRegistry;
 
@@ -31,6 +33,18 @@ class MetricsServiceTest {
     @Mock
     private ValueOperations<String, String> valueOperations;
 
+    @Mock
+    private MetricsSketchRegistry sketchRegistry;
+
+    @Mock
+    private MetricsRollingWindows rollingWindows;
+
+    @Mock
+    private MetricsHistoryStore historyStore;
+
+    @Mock
+    private MetricsKeyRegistry keyRegistry;
+
     @InjectMocks
     private MetricsService metricsService;
 
@@ -40,6 +54,10 @@ class MetricsServiceTest {
     void setUp() {
         objectMapper = new ObjectMapper();
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        // Cache local désactivé : lectures directes
+        ReflectionTestUtils.setField(metricsService, "nearCache",
+                new MetricsNearCache(null, null, false, 1, 0, false, System::currentTimeMillis));
+        ReflectionTestUtils.setField(metricsService, "singleFlight", new MetricsSingleFlight(true));
     }
 
     @Test
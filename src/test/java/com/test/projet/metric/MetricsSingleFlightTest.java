@@ -0,0 +1,101 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class MetricsSingleFlightTest {
+
+    @Test
+    void testConcurrentReadsShareOneLoad() throws Exception {
+        MetricsSingleFlight singleFlight = new MetricsSingleFlight(true);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<MetricsDto> first = executor.submit(() -> singleFlight.execute("card:VISA", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return new MetricsDto("VISA");
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            List<Future<MetricsDto>> waiters = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                waiters.add(executor.submit(() -> singleFlight.execute("card:VISA", () -> {
+                    loads.incrementAndGet();
+                    return new MetricsDto("VISA");
+                })));
+            }
+            // Les 7 appels sont en attente du chargement en cours
+            while (singleFlight.getShared() < 7) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            MetricsDto result = first.get(5, TimeUnit.SECONDS);
+            for (Future<MetricsDto> waiter : waiters) {
+                assertSame(result, waiter.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+            assertEquals(1, singleFlight.getLoads());
+            assertEquals(7, singleFlight.getShared());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testCompletedLoadIsNotReused() {
+        MetricsSingleFlight singleFlight = new MetricsSingleFlight(true);
+        AtomicInteger loads = new AtomicInteger();
+
+        singleFlight.execute("all", loads::incrementAndGet);
+        singleFlight.execute("all", loads::incrementAndGet);
+        singleFlight.execute("card:VISA", loads::incrementAndGet);
+
+        assertEquals(3, loads.get());
+        assertEquals(0, singleFlight.getShared());
+    }
+
+    @Test
+    void testFailureIsPropagatedAndForgotten() {
+        MetricsSingleFlight singleFlight = new MetricsSingleFlight(true);
+
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("all", () -> {
+            throw new IllegalStateException("Redis indisponible");
+        }));
+        assertEquals("ok", singleFlight.execute("all", () -> "ok"));
+    }
+
+    @Test
+    void testDisabledSingleFlightAlwaysLoads() {
+        MetricsSingleFlight singleFlight = new MetricsSingleFlight(false);
+        AtomicInteger loads = new AtomicInteger();
+
+        singleFlight.execute("all", loads::incrementAndGet);
+        singleFlight.execute("all", loads::incrementAndGet);
+
+        assertEquals(2, loads.get());
+        assertEquals(0, singleFlight.getLoads());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class MetricsTimeUnitTest {
+
+    @Test
+    void testConvertBetweenUnits() {
+        assertEquals(1_500_000, MetricsTimeUnit.NANOSECONDS.convert(1_500, MetricsTimeUnit.MICROSECONDS));
+        assertEquals(2_000, MetricsTimeUnit.MICROSECONDS.convert(2, MetricsTimeUnit.MILLISECONDS));
+        assertEquals(0, MetricsTimeUnit.MILLISECONDS.convert(750_000, MetricsTimeUnit.NANOSECONDS));
+        assertEquals(MetricsTimeUnit.MICROSECONDS, MetricsTimeUnit.parse("us"));
+        assertEquals(MetricsTimeUnit.NANOSECONDS, MetricsTimeUnit.parse("nanoseconds"));
+        assertEquals(MetricsTimeUnit.MILLISECONDS, MetricsTimeUnit.parse(null));
+        assertThrows(IllegalArgumentException.class, () -> MetricsTimeUnit.parse("s"));
+    }
+
+    @Test
+    void testLegacyMillisecondDocumentIsReadAndConvertedToFinerUnit() throws Exception {
+        // Document historique sans champ unit : millisecondes
+        String json = "{\"typeCarte\":\"VISA\",\"operationType\":\"PAYMENT\",\"count\":2,\"totalTime\":30,"
+                + "\"averageTime\":15.0,\"minTime\":10,\"maxTime\":20,\"lastUpdated\":1700000000000}";
+        MetricsAggregated aggregated = new ObjectMapper().readValue(json, MetricsAggregated.class);
+        assertEquals(MetricsTimeUnit.MILLISECONDS, aggregated.getTimeUnit());
+
+        // Écriture d'une mesure de 500 µs
+        long factor = aggregated.alignUnit(MetricsTimeUnit.MICROSECONDS);
+        aggregated.updateMetrics(500 * factor);
+
+        assertEquals("us", aggregated.getUnit());
+        assertEquals(3, aggregated.getCount());
+        assertEquals(30_500, aggregated.getTotalTime());
+        assertEquals(500, aggregated.getMinTime());
+        assertEquals(20_000, aggregated.getMaxTime());
+    }
+
+    @Test
+    void testCoarserWriteIsConvertedToDocumentUnit() {
+        MetricsDto metrics = new MetricsDto("VISA");
+        metrics.setUnit("ns");
+        MetricsUtils.accumulate(metrics, MetricsDelta.of("VISA", "PAYMENT", 1, 2, 2, 2), MetricsTimeUnit.MILLISECONDS);
+
+        assertEquals("ns", metrics.getUnit());
+        assertEquals(2_000_000.0, metrics.getStats("PAYMENT")[MetricsDto.AVERAGE]);
+        assertEquals(2_000_000.0, metrics.getStats("PAYMENT")[MetricsDto.MIN]);
+    }
+}
@@ -0,0 +1,116 @@
+package com.test.projet.metric;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisPipelineException;
+
+import com.test.projet.metric.sketch.MetricsSketchRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsWriteBehindBufferTest {
+
+    @Mock
+    private MetricsAccumulationEngine accumulationEngine;
+
+    @Mock
+    private MetricsSketchRegistry sketchRegistry;
+
+    private MetricsWriteBehindBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        buffer = new MetricsWriteBehindBuffer(accumulationEngine, sketchRegistry);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlushPushesOneDeltaPerKey() {
+        buffer.record("VISA", "PAYMENT", 100);
+        buffer.record("VISA", "PAYMENT", 200);
+        buffer.record("VISA", "PAYMENT", 50);
+        buffer.record("VISA", "REFUND", 75);
+
+        assertEquals(2, buffer.flush());
+
+        ArgumentCaptor<Collection<MetricsDelta>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(accumulationEngine).applyAll(captor.capture());
+        MetricsDelta payment = captor.getValue().stream()
+                .filter(delta -> "PAYMENT".equals(delta.getOperationType()))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(3, payment.getCount());
+        assertEquals(350, payment.getSum());
+        assertEquals(50, payment.getMin());
+        assertEquals(200, payment.getMax());
+    }
+
+    @Test
+    void testFlushWithoutNewEventsWritesNothing() {
+        buffer.record("VISA", "PAYMENT", 100);
+        buffer.flush();
+
+        assertEquals(0, buffer.flush());
+        verify(accumulationEngine, times(1)).applyAll(anyCollection());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedFlushIsRetried() {
+        List<MetricsDelta> applied = new ArrayList<>();
+        doThrow(new IllegalStateException("Redis indisponible"))
+                .doAnswer(invocation -> applied.addAll(invocation.getArgument(0, Collection.class)))
+                .when(accumulationEngine).applyAll(anyCollection());
+
+        buffer.record("AMEX", "CAPTURE", 10);
+        buffer.record("AMEX", "CAPTURE", 30);
+
+        assertThrows(IllegalStateException.class, buffer::flush);
+        assertEquals(1, buffer.flush());
+
+        assertEquals(1, applied.size());
+        assertEquals(2, applied.get(0).getCount());
+        assertEquals(40, applied.get(0).getSum());
+        assertEquals(10, applied.get(0).getMin());
+        assertEquals(30, applied.get(0).getMax());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testOnlyFailedDeltasOfAPartialPipelineAreRetried() {
+        List<MetricsDelta> applied = new ArrayList<>();
+        doAnswer(invocation -> {
+            List<Object> results = new ArrayList<>();
+            for (MetricsDelta delta : (Collection<MetricsDelta>) invocation.getArgument(0)) {
+                results.add("REFUND".equals(delta.getOperationType()) ? new RedisSystemException("OOM", null) : 2L);
+            }
+            throw new RedisPipelineException("Échec partiel du pipeline", results);
+        }).doAnswer(invocation -> applied.addAll(invocation.getArgument(0, Collection.class)))
+                .when(accumulationEngine).applyAll(anyCollection());
+
+        buffer.record("VISA", "PAYMENT", 100);
+        buffer.record("VISA", "PAYMENT", 300);
+        buffer.record("VISA", "REFUND", 75);
+
+        assertThrows(RedisPipelineException.class, buffer::flush);
+        assertEquals(1, buffer.flush());
+
+        // PAYMENT a été écrit par le premier pipeline : le rejouer doublerait ses compteurs
+        assertEquals(1, applied.size());
+        assertEquals("REFUND", applied.get(0).getOperationType());
+        assertEquals(1, applied.get(0).getCount());
+        assertEquals(75, applied.get(0).getSum());
+    }
+}
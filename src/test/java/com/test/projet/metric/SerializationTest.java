@@ -46,4 +46,25 @@ public class SerializationTest {
         assertEquals("VISA", deserializedDto.getTypeCarte());
         assertEquals(2, deserializedDto.getMetrics().size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testIndexedMetricsDtoKeepsJsonShape() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        
+        // JSON historique : liste de {name, value, type}, statistiques standard et métrique libre
+        String json = "{\"typeCarte\":\"AMEX\",\"metrics\":["
+                + "{\"name\":\"Number\",\"value\":2.0,\"type\":\"PAYMENT\"},"
+                + "{\"name\":\"Average\",\"value\":150.0,\"type\":\"PAYMENT\"},"
+                + "{\"name\":\"gauge.memory\",\"value\":512.0,\"type\":\"Gauge\"}]}";
+        
+        MetricsDto dto = mapper.readValue(json, MetricsDto.class);
+        
+        // Accès indexé
+        assertEquals(2.0, dto.getStats("PAYMENT")[MetricsDto.NUMBER], 0.001);
+        assertEquals(150.0, dto.getStats("PAYMENT")[MetricsDto.AVERAGE], 0.001);
+        assertTrue(Double.isNaN(dto.getStats("PAYMENT")[MetricsDto.MAX]));
+        
+        // Re-sérialisation à l'identique
+        assertEquals(mapper.readTree(json), mapper.readTree(mapper.writeValueAsString(dto)));
+    }
+}
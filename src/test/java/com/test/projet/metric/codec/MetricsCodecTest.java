@@ -0,0 +1,96 @@
+package com.test.projet.metric.codec;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.test.projet.metric.MetricInner;
+import com.test.projet.metric.MetricsAggregated;
+import com.test.projet.metric.MetricsDto;
+
+public class MetricsCodecTest {
+
+    private static MetricsDto sampleCard() {
+        MetricsDto dto = new MetricsDto("VISA");
+        dto.addMetric("Number", 3.0, "PAYMENT");
+        dto.addMetric("Average", 120.5, "PAYMENT");
+        dto.addMetric("Max", 200.0, "PAYMENT");
+        dto.addMetric("Min", 80.0, "PAYMENT");
+        dto.addMetric("Number", 1.0, "REFUND");
+        dto.addMetric(new MetricInner("gauge.memory", 512.0, "Gauge"));
+        return dto;
+    }
+
+    @Test
+    public void testFixedLayoutRoundTripKeepsCardMetrics() throws Exception {
+        FixedLayoutMetricsCodec codec = new FixedLayoutMetricsCodec();
+        MetricsDto original = sampleCard();
+
+        byte[] encoded = codec.encode(original);
+        MetricsDto decoded = codec.decodeCard(encoded);
+
+        assertTrue(codec.canDecode(encoded));
+        assertEquals("VISA", decoded.getTypeCarte());
+        assertArrayEquals(original.getStats("PAYMENT"), decoded.getStats("PAYMENT"));
+        // Statistique absente conservée comme absente
+        assertTrue(Double.isNaN(decoded.getStats("REFUND")[MetricsDto.AVERAGE]));
+        assertEquals(original.getMetrics().size(), decoded.getMetrics().size());
+        assertEquals("gauge.memory", decoded.getOtherMetrics().get(0).getName());
+
+        byte[] json = JacksonMetricsCodec.json().encode(original);
+        assertTrue(encoded.length < json.length, "le format fixe doit être plus compact que le JSON");
+    }
+
+    @Test
+    public void testFixedLayoutRoundTripKeepsAggregatedMetrics() throws Exception {
+        FixedLayoutMetricsCodec codec = new FixedLayoutMetricsCodec();
+        MetricsAggregated original = new MetricsAggregated("AMEX", "REFUND", 4, 400, 100.0, 50, 150);
+        original.setLastUpdated(1_700_000_000_000L);
+
+        Object decoded = codec.decode(codec.encode(original));
+
+        assertTrue(decoded instanceof MetricsAggregated);
+        MetricsAggregated aggregated = (MetricsAggregated) decoded;
+        assertEquals("AMEX", aggregated.getTypeCarte());
+        assertEquals("REFUND", aggregated.getOperationType());
+        assertEquals(4, aggregated.getCount());
+        assertEquals(400, aggregated.getTotalTime());
+        assertEquals(50, aggregated.getMinTime());
+        assertEquals(150, aggregated.getMaxTime());
+        assertEquals(1_700_000_000_000L, aggregated.getLastUpdated());
+    }
+
+    @Test
+    public void testRegistryReadsLegacyJsonWhateverTheActiveCodec() throws Exception {
+        MetricsCodecRegistry registry = new MetricsCodecRegistry("binary");
+        byte[] legacy = "{\"typeCarte\":\"VISA\",\"metrics\":[{\"name\":\"Number\",\"value\":2.0,\"type\":\"PAYMENT\"}]}"
+                .getBytes(StandardCharsets.UTF_8);
+
+        assertFalse(registry.isJson());
+        assertEquals("json", registry.detect(legacy).getName());
+        assertEquals(2.0, registry.decodeCard(legacy).getStats("PAYMENT")[MetricsDto.NUMBER]);
+
+        // Réécriture dans le codec actif, puis relecture par détection d'en-tête
+        byte[] rewritten = registry.encode(registry.decodeCard(legacy));
+        assertEquals("binary", registry.detect(rewritten).getName());
+        assertEquals("VISA", registry.decodeCard(rewritten).getTypeCarte());
+    }
+
+    @Test
+    public void testRegistryDetectsJacksonBinaryFormats() throws Exception {
+        MetricsCodecRegistry registry = new MetricsCodecRegistry("json");
+
+        for (JacksonMetricsCodec codec : new JacksonMetricsCodec[] { JacksonMetricsCodec.smile(), JacksonMetricsCodec.cbor() }) {
+            byte[] encoded = codec.encode(sampleCard());
+            assertEquals(codec.getName(), registry.detect(encoded).getName());
+            assertEquals(3.0, registry.decodeCard(encoded).getStats("PAYMENT")[MetricsDto.NUMBER]);
+        }
+    }
+
+    @Test
+    public void testUnknownCodecIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new MetricsCodecRegistry("protobuf"));
+    }
+}
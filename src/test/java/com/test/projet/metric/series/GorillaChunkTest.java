@@ -0,0 +1,108 @@
+package com.test.projet.metric.series;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class GorillaChunkTest {
+
+    private static final long START = 1_700_000_040_000L;
+
+    @Test
+    void testRoundTripAcrossChunks() {
+        Random random = new Random(42);
+        List<SeriesPoint> expected = new ArrayList<>();
+        List<GorillaChunk> chunks = new ArrayList<>();
+        GorillaChunk chunk = new GorillaChunk();
+        chunks.add(chunk);
+        long timestamp = START;
+        for (int i = 0; i < 5_000; i++) {
+            // Une minute sans exécution de temps en temps : pas irrégulier
+            timestamp += i % 50 == 0 ? 120_000 : 60_000;
+            SeriesPoint point = new SeriesPoint(timestamp, 50 + random.nextInt(10),
+                    Math.round(1_000_000 + random.nextGaussian() * 50_000), 3_000_000 + random.nextInt(5) * 1000);
+            if (!chunk.append(point)) {
+                chunk = new GorillaChunk();
+                chunks.add(chunk);
+                assertTrue(chunk.append(point));
+            }
+            expected.add(point);
+        }
+
+        List<SeriesPoint> decoded = new ArrayList<>();
+        for (GorillaChunk written : chunks) {
+            byte[] bytes = written.toBytes();
+            assertEquals(GorillaChunk.CHUNK_BYTES, bytes.length);
+            decoded.addAll(GorillaChunk.decode(bytes).getPoints());
+        }
+        assertEquals(expected.size(), decoded.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTimestamp(), decoded.get(i).getTimestamp());
+            assertEquals(expected.get(i).getCount(), decoded.get(i).getCount());
+            assertEquals(expected.get(i).getAverageTime(), decoded.get(i).getAverageTime());
+            assertEquals(expected.get(i).getMaxTime(), decoded.get(i).getMaxTime());
+        }
+        // Bien en dessous des 32 octets d'un point non compressé
+        assertTrue(chunks.size() * GorillaChunk.CHUNK_BYTES / (double) expected.size() < 8);
+    }
+
+    @Test
+    void testRegularStableSeriesCompressesToFewBitsPerPoint() {
+        GorillaChunk chunk = new GorillaChunk();
+        for (int i = 0; i < 500; i++) {
+            assertTrue(chunk.append(new SeriesPoint(START + i * 60_000L, 10, 1_500_000, 2_000_000)));
+        }
+        // 1 bit d'horodatage + 3 bits de valeurs inchangées par point
+        assertTrue(chunk.getUsedBytes() < 300, "octets utilisés : " + chunk.getUsedBytes());
+    }
+
+    @Test
+    void testReopenedChunkKeepsAppending() {
+        GorillaChunk chunk = new GorillaChunk();
+        for (int i = 0; i < 5; i++) {
+            chunk.append(new SeriesPoint(START + i * 60_000L, i, i * 1.5, i * 2));
+        }
+
+        GorillaChunk reopened = GorillaChunk.decode(chunk.toBytes());
+        assertTrue(reopened.append(new SeriesPoint(START + 7 * 60_000L, 9, 9.5, 64)));
+        List<SeriesPoint> points = GorillaChunk.decode(reopened.toBytes()).getPoints();
+
+        assertEquals(6, points.size());
+        assertEquals(START + 7 * 60_000L, points.get(5).getTimestamp());
+        assertEquals(64, points.get(5).getMaxTime());
+        assertEquals(START / 1000 + 7 * 60, reopened.getLastTimestamp());
+        assertThrows(IllegalArgumentException.class, () -> reopened.append(new SeriesPoint(START, 1, 1, 1)));
+    }
+
+    @Test
+    void testFullChunkIsLeftUnchanged() {
+        GorillaChunk chunk = new GorillaChunk();
+        Random random = new Random(7);
+        long timestamp = START;
+        while (chunk.append(new SeriesPoint(timestamp, random.nextInt(), random.nextDouble(), random.nextDouble()))) {
+            timestamp += 60_000;
+        }
+        byte[] full = chunk.toBytes();
+        int points = chunk.getPoints().size();
+
+        assertFalse(chunk.append(new SeriesPoint(timestamp + 60_000, 1, 2, 3)));
+        assertArrayEquals(full, chunk.toBytes());
+        assertEquals(points, GorillaChunk.decode(full).getPoints().size());
+    }
+
+    @Test
+    void testOnlyOverlappingChunksAreRead() {
+        ByteBuffer index = ByteBuffer.allocate(4 * Long.BYTES);
+        index.putLong(1_000).putLong(2_000).putLong(3_000).putLong(4_000);
+
+        assertArrayEquals(new int[] {1, 2}, MetricsSeriesStore.overlapping(index.array(), 2_500, 3_500));
+        assertArrayEquals(new int[] {1, 1}, MetricsSeriesStore.overlapping(index.array(), 2_000, 2_999));
+        assertArrayEquals(new int[] {3, 3}, MetricsSeriesStore.overlapping(index.array(), 9_000, 9_500));
+        assertNull(MetricsSeriesStore.overlapping(index.array(), 0, 999));
+    }
+}
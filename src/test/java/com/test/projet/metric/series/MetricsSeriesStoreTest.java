@@ -0,0 +1,61 @@
+package com.test.projet.metric.series;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisKeyCommands;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsSeriesStoreTest {
+
+    private static final long START = 1_700_000_040_000L;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private RedisConnection connection;
+
+    @Mock
+    private RedisStringCommands stringCommands;
+
+    @Mock
+    private RedisKeyCommands keyCommands;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testAbortedAppendIsReplayedOnTheConcurrentHead() {
+        SeriesPoint first = new SeriesPoint(START, 10, 1_000_000, 2_000_000);
+        SeriesPoint second = new SeriesPoint(START + 60_000, 12, 1_100_000, 2_500_000);
+        // Un écrivain concurrent a ajouté le premier point pendant la première tentative
+        GorillaChunk concurrent = new GorillaChunk();
+        concurrent.append(first);
+        when(redisTemplate.execute(any(RedisCallback.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0, RedisCallback.class).doInRedis(connection));
+        when(connection.stringCommands()).thenReturn(stringCommands);
+        when(connection.keyCommands()).thenReturn(keyCommands);
+        when(stringCommands.get(any(byte[].class))).thenReturn(null, concurrent.toBytes());
+        when(connection.exec()).thenReturn(null, List.of(true, true));
+
+        new MetricsSeriesStore(redisTemplate, true, 366).append("VISA", "PAYMENT", List.of(first, second));
+
+        ArgumentCaptor<byte[]> heads = ArgumentCaptor.forClass(byte[].class);
+        verify(stringCommands, times(2)).set(any(byte[].class), heads.capture());
+        // Le premier point n'est pas ajouté une seconde fois à la tête
+        List<SeriesPoint> points = GorillaChunk.decode(heads.getValue()).getPoints();
+        assertEquals(2, points.size());
+        assertEquals(START + 60_000, points.get(1).getTimestamp());
+    }
+}
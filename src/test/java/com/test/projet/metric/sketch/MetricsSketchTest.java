@@ -0,0 +1,124 @@
+package com.test.projet.metric.sketch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisHashCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import com.test.projet.metric.MetricsTimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MetricsSketchTest {
+
+    private static final double ACCURACY = 0.01;
+
+    @Test
+    void testQuantilesHaveBoundedRelativeError() {
+        MetricsSketch sketch = new MetricsSketch(ACCURACY, 2048);
+        Random random = new Random(42);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            // Distribution log-normale : l'essentiel autour de 1 ms, une longue queue
+            values[i] = (long) Math.exp(14 + random.nextGaussian());
+            sketch.add(values[i], 1);
+        }
+        Arrays.sort(values);
+
+        for (double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+            long expected = values[(int) (quantile * (values.length - 1))];
+            assertEquals(expected, sketch.quantile(quantile), expected * ACCURACY * 1.01, "quantile " + quantile);
+        }
+        assertEquals(values.length, sketch.getCount());
+    }
+
+    @Test
+    void testMergeEqualsSingleSketch() {
+        MetricsSketch all = new MetricsSketch(ACCURACY, 2048);
+        MetricsSketch first = new MetricsSketch(ACCURACY, 2048);
+        MetricsSketch second = new MetricsSketch(ACCURACY, 2048);
+        for (long value = 1; value <= 10_000; value++) {
+            all.add(value * 1000, 1);
+            (value % 3 == 0 ? first : second).add(value * 1000, 1);
+        }
+
+        first.merge(second);
+
+        assertEquals(all.getCount(), first.getCount());
+        for (double quantile : new double[] {0, 0.5, 0.99, 1}) {
+            assertEquals(all.quantile(quantile), first.quantile(quantile), 1e-6);
+        }
+    }
+
+    @Test
+    void testMemoryIsBoundedByMaxBins() {
+        MetricsSketch sketch = new MetricsSketch(ACCURACY, 128);
+        long largest = 0;
+        for (long value = 1; value < Long.MAX_VALUE / 4; value *= 2) {
+            sketch.add(value, 1);
+            largest = value;
+        }
+        sketch.add(0, 3);
+
+        assertTrue(sketch.getAllocatedBins() <= 128);
+        // Les petites valeurs sont regroupées, la queue reste précise
+        double max = sketch.quantile(1);
+        assertEquals(largest, max, largest * ACCURACY);
+        assertEquals(0, sketch.quantile(0));
+    }
+
+    @Test
+    void testEncodeDecodeRoundTrip() throws Exception {
+        MetricsSketch sketch = new MetricsSketch(ACCURACY, 2048);
+        sketch.add(0, 2);
+        sketch.add(1_500_000, 10);
+        sketch.add(80_000_000, 1);
+
+        MetricsSketch decoded = MetricsSketch.decode(sketch.encode());
+
+        assertEquals(13, decoded.getCount());
+        assertEquals(ACCURACY, decoded.getRelativeAccuracy());
+        for (double quantile : new double[] {0, 0.5, 1}) {
+            assertEquals(sketch.quantile(quantile), decoded.quantile(quantile), 1e-6);
+        }
+        assertTrue(Double.isNaN(new MetricsSketch(ACCURACY, 16).quantile(0.5)));
+    }
+
+    @Test
+    void testSketchesWithDifferentAccuracyAreNotMerged() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new MetricsSketch(0.01, 64).merge(new MetricsSketch(0.02, 64)));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testQueryIsBoundedByTheRetention() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        RedisConnection connection = mock(RedisConnection.class);
+        RedisHashCommands hashCommands = mock(RedisHashCommands.class);
+        when(connection.hashCommands()).thenReturn(hashCommands);
+        when(redisTemplate.executePipelined(any(RedisCallback.class), any(RedisSerializer.class))).thenAnswer(invocation -> {
+            ((RedisCallback<Object>) invocation.getArgument(0)).doInRedis(connection);
+            return List.of();
+        });
+        // Fenêtres d'une minute, rétention d'une heure
+        MetricsSketchRegistry registry = new MetricsSketchRegistry(redisTemplate, new SimpleMeterRegistry(),
+                true, ACCURACY, 2048, 60, 60, 10_000, MetricsTimeUnit.MILLISECONDS);
+
+        // Un an demandé : seules les fenêtres encore conservées sont lues
+        registry.query("VISA", "PAYMENT", 0, 365L * 24 * 3_600_000);
+
+        assertEquals(60, registry.getRetentionMinutes());
+        verify(hashCommands, atMost(62)).hGetAll(any(byte[].class));
+    }
+}